@@ -9,12 +9,13 @@ package com.icoin.axonsupport.domain;
  */
 
 import com.homhon.base.domain.Entity;
-import com.homhon.base.domain.utils.Domains;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.axonframework.eventsourcing.annotation.AbstractAnnotatedAggregateRoot;
 
 import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.homhon.base.domain.utils.Domains.identityFieldDetermination;
 
@@ -26,22 +27,35 @@ import static com.homhon.base.domain.utils.Domains.identityFieldDetermination;
  * To change this template use File | Settings | File Templates.
  */
 public class AxonAnnotatedAggregateRoot<T extends AxonAnnotatedAggregateRoot, ID> extends AbstractAnnotatedAggregateRoot<ID> implements Entity<T, ID> {
+    //the identity field of every aggregate class, looked up once per class rather than once per aggregate loaded,
+    //and kept out of the aggregate so it is never serialized with its snapshots
+    private static final ConcurrentMap<Class<?>, Field> IDENTITY_FIELDS = new ConcurrentHashMap<Class<?>, Field>();
 
-    private Field identityField;
+    private static Field identityFieldOf(Class<?> type) {
+        Field identityField = IDENTITY_FIELDS.get(type);
+        if (identityField == null) {
+            identityField = identityFieldDetermination(type);
+            identityField.setAccessible(true);
+            IDENTITY_FIELDS.putIfAbsent(type, identityField);
+        }
+        return identityField;
+    }
 
     @Override
     public final boolean sameIdentityAs(final T other) {
-        return Domains.sameIdentityAs(this, other);
+        if (other == null) {
+            return false;
+        }
+
+        final ID identity = identity();
+        return identity == null ? other.identity() == null : identity.equals(other.identity());
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public final ID identity() {
-        if (identityField == null) {
-            identityField = identityFieldDetermination(this.getClass());
-        }
-
         try {
-            return (ID) identityField.get(this);
+            return (ID) identityFieldOf(getClass()).get(this);
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
@@ -75,6 +89,9 @@ public class AxonAnnotatedAggregateRoot<T extends AxonAnnotatedAggregateRoot, ID
                 '}';
     }
 
+    /**
+     * Renders every field reflectively, callers logging it should check the log level first.
+     */
     @Override
     public String describe() {
         return ReflectionToStringBuilder.toString(this, ToStringStyle.SHORT_PREFIX_STYLE);
@@ -0,0 +1,234 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Moves the events already covered by the latest snapshot of their aggregate from the hot collection of a
+ * partition to its monthly archive buckets. An aggregate is loaded from its latest snapshot on, so loads never
+ * miss an archived event, and the hot collection and its indexes only grow with the events not snapshotted yet.
+ * <p/>
+ * An event is copied to its bucket before it is removed from the hot collection, an archival stopped half way
+ * is simply run again. {@link #restore(EventStorePartition, String, String)} moves the events of an aggregate
+ * back, for when its snapshots have to be dropped.
+ */
+public class EventArchiver {
+    private static Logger logger = LoggerFactory.getLogger(EventArchiver.class);
+    static final String AGGREGATE_IDENTIFIER = "aggregateIdentifier";
+    static final String AGGREGATE_TYPE = "type";
+    static final String SEQUENCE_NUMBER = "sequenceNumber";
+    static final String TIMESTAMP = "timeStamp";
+    private static final String ID = "_id";
+
+    private final int batchSize;
+    private long eventsToKeep;
+
+    private final AtomicLong archivedEvents = new AtomicLong();
+    private final AtomicLong restoredEvents = new AtomicLong();
+    private volatile long lastArchiveMillis;
+
+    public EventArchiver(int batchSize) {
+        isTrue(batchSize > 0, "Batch size should be greater than 0!");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of events archived
+     */
+    public long archive(EventStorePartition partition) {
+        notNull(partition);
+        final long start = System.currentTimeMillis();
+
+        long archived = 0L;
+        for (Map.Entry<Aggregate, Long> entry : latestSnapshots(partition).entrySet()) {
+            final long lastArchived = entry.getValue() - eventsToKeep;
+            if (lastArchived >= 0L) {
+                archived += archive(partition, entry.getKey(), lastArchived);
+            }
+        }
+
+        lastArchiveMillis = System.currentTimeMillis() - start;
+        logger.info("archived {} events of partition {} in {} ms", archived, partition, lastArchiveMillis);
+        return archived;
+    }
+
+    private Map<Aggregate, Long> latestSnapshots(EventStorePartition partition) {
+        final Map<Aggregate, Long> latest = new HashMap<Aggregate, Long>();
+        final DBCursor cursor = partition.getTemplate().snapshotEventCollection().find(
+                new BasicDBObject(),
+                new BasicDBObject(AGGREGATE_IDENTIFIER, 1).append(AGGREGATE_TYPE, 1).append(SEQUENCE_NUMBER, 1));
+        try {
+            while (cursor.hasNext()) {
+                final DBObject snapshot = cursor.next();
+                final Aggregate aggregate = new Aggregate(
+                        (String) snapshot.get(AGGREGATE_TYPE), String.valueOf(snapshot.get(AGGREGATE_IDENTIFIER)));
+                final long sequenceNumber = ((Number) snapshot.get(SEQUENCE_NUMBER)).longValue();
+                final Long known = latest.get(aggregate);
+                if (known == null || known < sequenceNumber) {
+                    latest.put(aggregate, sequenceNumber);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return latest;
+    }
+
+    private long archive(EventStorePartition partition, Aggregate aggregate, long lastArchived) {
+        final DBCollection events = partition.getTemplate().domainEventCollection();
+        final DBObject covered = aggregate.query()
+                .append(SEQUENCE_NUMBER, new BasicDBObject("$lte", lastArchived));
+
+        final List<Object> moved = new ArrayList<Object>(batchSize);
+        long archived = 0L;
+        final DBCursor cursor = events.find(covered).sort(new BasicDBObject(SEQUENCE_NUMBER, 1)).batchSize(batchSize);
+        try {
+            while (cursor.hasNext()) {
+                final DBObject event = cursor.next();
+                //save rather than insert, an event copied by an archival stopped half way is copied again
+                partition.archiveCollection(partition.archiveCollectionName((String) event.get(TIMESTAMP))).save(event);
+                moved.add(event.get(ID));
+                if (moved.size() >= batchSize) {
+                    archived += remove(events, moved);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        archived += remove(events, moved);
+        archivedEvents.addAndGet(archived);
+        return archived;
+    }
+
+    private static int remove(DBCollection collection, List<Object> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        final int removed = collection.remove(new BasicDBObject(ID, new BasicDBObject("$in", ids))).getN();
+        ids.clear();
+        return removed;
+    }
+
+    /**
+     * Moves the archived events of the aggregate back to the hot collection of its partition.
+     *
+     * @return the number of events restored
+     */
+    public long restore(EventStorePartition partition, String aggregateType, String aggregateIdentifier) {
+        notNull(partition);
+        final Aggregate aggregate = new Aggregate(aggregateType, aggregateIdentifier);
+        final DBCollection events = partition.getTemplate().domainEventCollection();
+
+        long restored = 0L;
+        for (String bucket : partition.archiveCollectionNames()) {
+            restored += move(partition.archiveCollection(bucket), events, aggregate.query());
+        }
+
+        restoredEvents.addAndGet(restored);
+        logger.info("restored {} archived events of {} {}", restored, aggregateType, aggregateIdentifier);
+        return restored;
+    }
+
+    /**
+     * Moves the hot events and the snapshots of the aggregate type from one partition to another, for when the
+     * type is given a partition of its own. No aggregate of the type should be written meanwhile.
+     *
+     * @return the number of events moved
+     */
+    public long migrate(EventStorePartition from, EventStorePartition to, String aggregateType) {
+        notNull(from);
+        notNull(to);
+        isTrue(from != to, "Events cannot be moved to their own partition!");
+        final DBObject query = new BasicDBObject(AGGREGATE_TYPE, aggregateType);
+
+        final long moved = move(from.getTemplate().domainEventCollection(), to.getTemplate().domainEventCollection(), query);
+        final long snapshots = move(from.getTemplate().snapshotEventCollection(), to.getTemplate().snapshotEventCollection(), query);
+        logger.info("moved {} events and {} snapshots of {} from partition {} to {}",
+                moved, snapshots, aggregateType, from, to);
+        return moved;
+    }
+
+    private long move(DBCollection from, DBCollection to, DBObject query) {
+        final List<Object> moved = new ArrayList<Object>(batchSize);
+        long count = 0L;
+        final DBCursor cursor = from.find(query).batchSize(batchSize);
+        try {
+            while (cursor.hasNext()) {
+                final DBObject document = cursor.next();
+                to.save(document);
+                moved.add(document.get(ID));
+                if (moved.size() >= batchSize) {
+                    count += remove(from, moved);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return count + remove(from, moved);
+    }
+
+    /**
+     * @param eventsToKeep the events before the latest snapshot left in the hot collection
+     */
+    public void setEventsToKeep(long eventsToKeep) {
+        isTrue(eventsToKeep >= 0L, "Events to keep should not be negative!");
+        this.eventsToKeep = eventsToKeep;
+    }
+
+    public long getArchivedEvents() {
+        return archivedEvents.get();
+    }
+
+    public long getRestoredEvents() {
+        return restoredEvents.get();
+    }
+
+    public long getLastArchiveMillis() {
+        return lastArchiveMillis;
+    }
+
+    private static class Aggregate {
+        private final String type;
+        private final String identifier;
+
+        private Aggregate(String type, String identifier) {
+            this.type = type;
+            this.identifier = identifier;
+        }
+
+        private BasicDBObject query() {
+            return new BasicDBObject(AGGREGATE_IDENTIFIER, identifier).append(AGGREGATE_TYPE, type);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Aggregate)) {
+                return false;
+            }
+            final Aggregate that = (Aggregate) o;
+            return identifier.equals(that.identifier) && (type == null ? that.type == null : type.equals(that.type));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * identifier.hashCode() + (type == null ? 0 : type.hashCode());
+        }
+    }
+}
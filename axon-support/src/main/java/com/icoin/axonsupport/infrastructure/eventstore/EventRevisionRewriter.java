@@ -0,0 +1,186 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.axonframework.domain.MetaData;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SerializedType;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.axonframework.serializer.SimpleSerializedType;
+import org.axonframework.serializer.UnknownSerializedTypeException;
+import org.axonframework.upcasting.SimpleUpcasterChain;
+import org.axonframework.upcasting.UpcasterChain;
+import org.axonframework.upcasting.UpcastingContext;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Rewrites the hot events of a partition stored with an older revision of their payload to the latest one: the
+ * stored payload goes through the upcaster chain, is deserialized and serialized again in place by the serializer
+ * of the partition. Afterwards loading the aggregates needs no upcasting, and the upcasters of the rewritten
+ * revisions are only needed for the archives.
+ * <p/>
+ * Payloads already at the revision of their class are skipped without being deserialized. An event upcast into
+ * several events cannot be rewritten in place and is left as it is. To be run while no command is handled.
+ */
+public class EventRevisionRewriter {
+    private static Logger logger = LoggerFactory.getLogger(EventRevisionRewriter.class);
+    static final String AGGREGATE_IDENTIFIER = "aggregateIdentifier";
+    static final String SEQUENCE_NUMBER = "sequenceNumber";
+    static final String TIMESTAMP = "timeStamp";
+    static final String EVENT_IDENTIFIER = "eventIdentifier";
+    static final String PAYLOAD = "serializedPayload";
+    static final String PAYLOAD_TYPE = "payloadType";
+    static final String PAYLOAD_REVISION = "payloadRevision";
+    static final String META_DATA = "serializedMetaData";
+    private static final String ID = "_id";
+
+    private final Serializer serializer;
+    private final int batchSize;
+    private UpcasterChain upcasterChain = SimpleUpcasterChain.EMPTY;
+
+    //the latest revision per payload type, an unknown type maps to itself so it is always upcast
+    private final Map<String, String> latestRevisions = new HashMap<String, String>();
+
+    public EventRevisionRewriter(Serializer serializer, int batchSize) {
+        notNull(serializer);
+        isTrue(batchSize > 0, "Batch size should be greater than 0!");
+        this.serializer = serializer;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of events rewritten
+     */
+    public synchronized long rewrite(EventStorePartition partition) {
+        notNull(partition);
+        final long start = System.currentTimeMillis();
+        final DBCollection events = partition.getTemplate().domainEventCollection();
+
+        long rewritten = 0L;
+        long skipped = 0L;
+        final DBCursor cursor = events.find().batchSize(batchSize);
+        try {
+            while (cursor.hasNext()) {
+                final DBObject event = cursor.next();
+                final String type = (String) event.get(PAYLOAD_TYPE);
+                final String revision = (String) event.get(PAYLOAD_REVISION);
+                if (isLatest(type, revision)) {
+                    continue;
+                }
+
+                final DBObject update = rewrite(event, new SimpleSerializedType(type, revision), partition.getSerializer());
+                if (update == null) {
+                    skipped++;
+                    continue;
+                }
+                events.update(new BasicDBObject(ID, event.get(ID)), new BasicDBObject("$set", update));
+                rewritten++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        logger.info("rewrote {} events of partition {} to their latest revision in {} ms, {} left as they are",
+                rewritten, partition, System.currentTimeMillis() - start, skipped);
+        return rewritten;
+    }
+
+    private boolean isLatest(String type, String revision) {
+        String latest = latestRevisions.get(type);
+        if (latest == null && !latestRevisions.containsKey(type)) {
+            try {
+                latest = serializer.typeForClass(serializer.classForType(new SimpleSerializedType(type, revision)))
+                        .getRevision();
+            } catch (UnknownSerializedTypeException e) {
+                //the class is gone, the events of the type can only be upcast
+                latest = type;
+            }
+            latestRevisions.put(type, latest);
+        }
+        return latest == null ? revision == null : latest.equals(revision);
+    }
+
+    /**
+     * @param storeSerializer the serializer of the partition, which wrote the event
+     * @return the fields to update, null if the event cannot be rewritten in place
+     */
+    @SuppressWarnings("unchecked")
+    private DBObject rewrite(DBObject event, SerializedType type, Serializer storeSerializer) {
+        final Object data = event.get(PAYLOAD);
+        final Class representation = data.getClass();
+        final List<SerializedObject> upcast = upcasterChain.upcast(
+                new SimpleSerializedObject(data, representation, type), new StoredEventContext(event, storeSerializer));
+        if (upcast.size() != 1) {
+            logger.warn("event {} is upcast into {} events, left as it is", event.get(EVENT_IDENTIFIER), upcast.size());
+            return null;
+        }
+
+        final Object payload = storeSerializer.deserialize(upcast.get(0));
+        final SerializedObject rewritten = storeSerializer.serialize(payload, representation);
+        return new BasicDBObject(PAYLOAD, rewritten.getData())
+                .append(PAYLOAD_TYPE, rewritten.getType().getName())
+                .append(PAYLOAD_REVISION, rewritten.getType().getRevision());
+    }
+
+    public void setUpcasterChain(UpcasterChain upcasterChain) {
+        notNull(upcasterChain);
+        this.upcasterChain = upcasterChain;
+    }
+
+    private static class StoredEventContext implements UpcastingContext {
+        private final DBObject event;
+        private final Serializer serializer;
+        private MetaData metaData;
+
+        private StoredEventContext(DBObject event, Serializer serializer) {
+            this.event = event;
+            this.serializer = serializer;
+        }
+
+        @Override
+        public String getMessageIdentifier() {
+            return (String) event.get(EVENT_IDENTIFIER);
+        }
+
+        @Override
+        public Object getAggregateIdentifier() {
+            return event.get(AGGREGATE_IDENTIFIER);
+        }
+
+        @Override
+        public Long getSequenceNumber() {
+            return ((Number) event.get(SEQUENCE_NUMBER)).longValue();
+        }
+
+        @Override
+        public DateTime getTimestamp() {
+            return new DateTime(event.get(TIMESTAMP));
+        }
+
+        //only deserialized for the upcasters asking for it
+        @SuppressWarnings("unchecked")
+        @Override
+        public MetaData getMetaData() {
+            if (metaData == null) {
+                final Object data = event.get(META_DATA);
+                metaData = data == null
+                        ? MetaData.emptyInstance()
+                        : (MetaData) serializer.deserialize(
+                        new SimpleSerializedObject(data, data.getClass(), MetaData.class.getName(), null));
+            }
+            return metaData;
+        }
+    }
+}
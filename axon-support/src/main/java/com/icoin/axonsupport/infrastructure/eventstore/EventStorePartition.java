@@ -0,0 +1,145 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import com.icoin.axonsupport.infrastructure.mongo.EventStoreTemplete;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import org.axonframework.eventstore.mongo.MongoEventStore;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.upcasting.UpcasterChain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Hot domain events and snapshots of some aggregate types, and the cold collections their archived events are
+ * moved to. Archived events are bucketed per month of their time stamp, in collections named after the hot one
+ * followed by "_archive_" and the year and month, so a bucket is dropped or exported as a whole.
+ * <p/>
+ * Aggregates are only ever loaded from the hot collection, the archive buckets are read when visiting events.
+ */
+public class EventStorePartition {
+    static final String ARCHIVE_INFIX = "_archive_";
+    static final String TIMESTAMP = "timeStamp";
+    static final String SEQUENCE_NUMBER = "sequenceNumber";
+
+    private final String name;
+    private final EventStoreTemplete template;
+    private final Serializer serializer;
+    private final MongoEventStore eventStore;
+    private final ConcurrentMap<String, MongoEventStore> archives = new ConcurrentHashMap<String, MongoEventStore>();
+    private volatile UpcasterChain upcasterChain;
+
+    public EventStorePartition(String name, EventStoreTemplete template, Serializer serializer) {
+        hasLength(name);
+        notNull(template);
+        notNull(serializer);
+        this.name = name;
+        this.template = template;
+        this.serializer = serializer;
+        this.eventStore = new MongoEventStore(serializer, template);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EventStoreTemplete getTemplate() {
+        return template;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    public MongoEventStore getEventStore() {
+        return eventStore;
+    }
+
+    /**
+     * @param timestamp the time stamp of an event as stored, an ISO date time
+     * @return the archive bucket of the event
+     */
+    public String archiveCollectionName(String timestamp) {
+        hasLength(timestamp);
+        return template.getDomainEventsCollectionName() + ARCHIVE_INFIX
+                + timestamp.substring(0, Math.min(7, timestamp.length())).replace('-', '_');
+    }
+
+    /**
+     * @return the archive buckets of the partition, oldest first
+     */
+    public List<String> archiveCollectionNames() {
+        final String prefix = template.getDomainEventsCollectionName() + ARCHIVE_INFIX;
+        final List<String> names = new ArrayList<String>();
+        for (String collectionName : template.database().getCollectionNames()) {
+            if (collectionName.startsWith(prefix)) {
+                names.add(collectionName);
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    public DBCollection archiveCollection(String collectionName) {
+        return template.database().getCollection(collectionName);
+    }
+
+    /**
+     * @return one store per archive bucket, oldest first, followed by the hot event store, for visiting only
+     */
+    public List<MongoEventStore> visitableEventStores() {
+        final List<MongoEventStore> stores = new ArrayList<MongoEventStore>();
+        for (String collectionName : archiveCollectionNames()) {
+            stores.add(archiveEventStore(collectionName));
+        }
+        stores.add(eventStore);
+        return stores;
+    }
+
+    private MongoEventStore archiveEventStore(String collectionName) {
+        MongoEventStore archive = archives.get(collectionName);
+        if (archive == null) {
+            archive = new MongoEventStore(serializer, template.withDomainEventCollection(collectionName));
+            if (upcasterChain != null) {
+                archive.setUpcasterChain(upcasterChain);
+            }
+            final MongoEventStore existing = archives.putIfAbsent(collectionName, archive);
+            if (existing != null) {
+                archive = existing;
+            }
+        }
+        return archive;
+    }
+
+    public void setUpcasterChain(UpcasterChain upcasterChain) {
+        this.upcasterChain = upcasterChain;
+        eventStore.setUpcasterChain(upcasterChain);
+        for (MongoEventStore archive : archives.values()) {
+            archive.setUpcasterChain(upcasterChain);
+        }
+    }
+
+    /**
+     * Indexes the hot events per aggregate as the event store does, and every collection by time stamp for
+     * visiting the events in order.
+     */
+    public void ensureIndexes() {
+        eventStore.ensureIndexes();
+        final BasicDBObject timeOrder = new BasicDBObject(TIMESTAMP, 1).append(SEQUENCE_NUMBER, 1);
+        template.domainEventCollection().ensureIndex(timeOrder);
+        for (String collectionName : archiveCollectionNames()) {
+            archiveCollection(collectionName).ensureIndex(timeOrder);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + template.getDomainEventsCollectionName() + ")";
+    }
+}
@@ -0,0 +1,167 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.EventStoreManagement;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Visits the events of several stores as one stream in time stamp order. Every store is visited on a thread of
+ * its own into a bounded buffer, the caller takes the oldest head event of the buffers each time. Events with the
+ * same time stamp are taken by aggregate identifier then sequence number, so the events of an aggregate split
+ * between an archive bucket and the hot collection keep their order, then in the order of the stores.
+ */
+public class EventStreamMerger {
+    private static final Object END = new Object();
+
+    private final int bufferSize;
+
+    public EventStreamMerger(int bufferSize) {
+        isTrue(bufferSize > 0, "Buffer size should be greater than 0!");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @param criteria the criteria of the events of every store, null for all of them
+     */
+    public void visit(List<? extends EventStoreManagement> stores, Criteria criteria, EventVisitor visitor) {
+        notNull(stores);
+        notNull(visitor);
+        if (stores.size() == 1) {
+            visitOne(stores.get(0), criteria, visitor);
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(stores.size());
+        try {
+            final PriorityQueue<Head> heads = new PriorityQueue<Head>(stores.size(), new HeadComparator());
+            for (int i = 0; i < stores.size(); i++) {
+                final Head head = new Head(i, new ArrayBlockingQueue<Object>(bufferSize));
+                executor.execute(new Producer(stores.get(i), criteria, head.buffer));
+                if (head.advance()) {
+                    heads.add(head);
+                }
+            }
+
+            while (!heads.isEmpty()) {
+                final Head oldest = heads.poll();
+                visitor.doWithEvent(oldest.event);
+                if (oldest.advance()) {
+                    heads.add(oldest);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while merging the event streams", e);
+        } finally {
+            //stops the stores still visited when the visitor gave up
+            executor.shutdownNow();
+        }
+    }
+
+    private static void visitOne(EventStoreManagement store, Criteria criteria, EventVisitor visitor) {
+        if (criteria == null) {
+            store.visitEvents(visitor);
+        } else {
+            store.visitEvents(criteria, visitor);
+        }
+    }
+
+    private static class Producer implements Runnable {
+        private final EventStoreManagement store;
+        private final Criteria criteria;
+        private final BlockingQueue<Object> buffer;
+
+        private Producer(EventStoreManagement store, Criteria criteria, BlockingQueue<Object> buffer) {
+            this.store = store;
+            this.criteria = criteria;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                visitOne(store, criteria, new EventVisitor() {
+                    @Override
+                    public void doWithEvent(DomainEventMessage domainEvent) {
+                        put(domainEvent);
+                    }
+                });
+                put(END);
+            } catch (StoppedException e) {
+                //the merge is over
+            } catch (RuntimeException e) {
+                put(e);
+            }
+        }
+
+        private void put(Object element) {
+            try {
+                buffer.put(element);
+            } catch (InterruptedException e) {
+                throw new StoppedException();
+            }
+        }
+    }
+
+    private static class StoppedException extends RuntimeException {
+    }
+
+    private static class Head {
+        private final int store;
+        private final BlockingQueue<Object> buffer;
+        private DomainEventMessage event;
+
+        private Head(int store, BlockingQueue<Object> buffer) {
+            this.store = store;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return false once the store has no more events
+         */
+        private boolean advance() throws InterruptedException {
+            final Object next = buffer.take();
+            if (next == END) {
+                return false;
+            }
+            if (next instanceof RuntimeException) {
+                throw (RuntimeException) next;
+            }
+            event = (DomainEventMessage) next;
+            return true;
+        }
+    }
+
+    private static class HeadComparator implements Comparator<Head> {
+        @Override
+        public int compare(Head left, Head right) {
+            final int byTime = left.event.getTimestamp().compareTo(right.event.getTimestamp());
+            if (byTime != 0) {
+                return byTime;
+            }
+            final int byAggregate = String.valueOf(left.event.getAggregateIdentifier())
+                    .compareTo(String.valueOf(right.event.getAggregateIdentifier()));
+            if (byAggregate != 0) {
+                return byAggregate;
+            }
+            final long leftSequence = left.event.getSequenceNumber();
+            final long rightSequence = right.event.getSequenceNumber();
+            if (leftSequence != rightSequence) {
+                return leftSequence < rightSequence ? -1 : 1;
+            }
+            return left.store < right.store ? -1 : (left.store == right.store ? 0 : 1);
+        }
+    }
+}
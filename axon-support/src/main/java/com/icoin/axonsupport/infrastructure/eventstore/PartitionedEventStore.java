@@ -0,0 +1,125 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.SnapshotEventStore;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.CriteriaBuilder;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.axonframework.eventstore.mongo.MongoEventStore;
+import org.axonframework.upcasting.UpcasterAware;
+import org.axonframework.upcasting.UpcasterChain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Event store routing every aggregate type to the partition holding its events, the types without a partition of
+ * their own stay in the default one. Loading and appending only touch the hot collections of one partition.
+ * <p/>
+ * Visiting merges the hot and archived events of all the partitions in time stamp order, so the whole history
+ * stays available for replays.
+ */
+public class PartitionedEventStore implements SnapshotEventStore, EventStoreManagement, UpcasterAware {
+    private final EventStorePartition defaultPartition;
+    private final Map<String, EventStorePartition> partitions = new HashMap<String, EventStorePartition>();
+    private EventStreamMerger merger = new EventStreamMerger(1024);
+
+    public PartitionedEventStore(EventStorePartition defaultPartition) {
+        notNull(defaultPartition);
+        this.defaultPartition = defaultPartition;
+    }
+
+    /**
+     * Routes the events of the aggregate type to the partition from now on, events appended before stay where
+     * they are until moved.
+     */
+    public void addPartition(String aggregateType, EventStorePartition partition) {
+        notNull(aggregateType);
+        notNull(partition);
+        partitions.put(aggregateType, partition);
+    }
+
+    public EventStorePartition partitionOf(String aggregateType) {
+        final EventStorePartition partition = partitions.get(aggregateType);
+        return partition == null ? defaultPartition : partition;
+    }
+
+    public EventStorePartition getDefaultPartition() {
+        return defaultPartition;
+    }
+
+    /**
+     * @return the default partition followed by the others, each once
+     */
+    public List<EventStorePartition> getPartitions() {
+        final Set<EventStorePartition> all = new LinkedHashSet<EventStorePartition>();
+        all.add(defaultPartition);
+        all.addAll(partitions.values());
+        return Collections.unmodifiableList(new ArrayList<EventStorePartition>(all));
+    }
+
+    @Override
+    public void appendEvents(String type, DomainEventStream events) {
+        partitionOf(type).getEventStore().appendEvents(type, events);
+    }
+
+    @Override
+    public DomainEventStream readEvents(String type, Object identifier) {
+        return partitionOf(type).getEventStore().readEvents(type, identifier);
+    }
+
+    @Override
+    public void appendSnapshotEvent(String type, DomainEventMessage snapshotEvent) {
+        partitionOf(type).getEventStore().appendSnapshotEvent(type, snapshotEvent);
+    }
+
+    @Override
+    public void visitEvents(EventVisitor visitor) {
+        merger.visit(visitableEventStores(), null, visitor);
+    }
+
+    @Override
+    public void visitEvents(Criteria criteria, EventVisitor visitor) {
+        merger.visit(visitableEventStores(), criteria, visitor);
+    }
+
+    private List<MongoEventStore> visitableEventStores() {
+        final List<MongoEventStore> stores = new ArrayList<MongoEventStore>();
+        for (EventStorePartition partition : getPartitions()) {
+            stores.addAll(partition.visitableEventStores());
+        }
+        return stores;
+    }
+
+    @Override
+    public CriteriaBuilder newCriteriaBuilder() {
+        return defaultPartition.getEventStore().newCriteriaBuilder();
+    }
+
+    @Override
+    public void setUpcasterChain(UpcasterChain upcasterChain) {
+        for (EventStorePartition partition : getPartitions()) {
+            partition.setUpcasterChain(upcasterChain);
+        }
+    }
+
+    public void ensureIndexes() {
+        for (EventStorePartition partition : getPartitions()) {
+            partition.ensureIndexes();
+        }
+    }
+
+    public void setMerger(EventStreamMerger merger) {
+        notNull(merger);
+        this.merger = merger;
+    }
+}
@@ -51,4 +51,19 @@ public class EventStoreTemplete implements MongoTemplate {
     public DB database() {
         return mongoDbFactory.getDb();
     }
+
+    /**
+     * @return a template on the same database whose domain events are kept in the given collection
+     */
+    public EventStoreTemplete withDomainEventCollection(String domainEventsCollectionName) {
+        return new EventStoreTemplete(domainEventsCollectionName, snapshotEventsCollectionName, mongoDbFactory);
+    }
+
+    public String getDomainEventsCollectionName() {
+        return domainEventsCollectionName;
+    }
+
+    public String getSnapshotEventsCollectionName() {
+        return snapshotEventsCollectionName;
+    }
 }
\ No newline at end of file
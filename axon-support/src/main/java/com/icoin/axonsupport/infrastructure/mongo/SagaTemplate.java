@@ -1,5 +1,6 @@
 package com.icoin.axonsupport.infrastructure.mongo;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import org.axonframework.saga.repository.mongo.MongoTemplate;
@@ -25,6 +26,16 @@ public class SagaTemplate implements MongoTemplate {
         return database().getCollection(SAGA_COLLECTION);
     }
 
+    /**
+     * Indexes the sagas by identifier for loading and saving, and by their association values, matched as
+     * a whole key and value sub document, for finding the sagas of an event.
+     */
+    public void ensureIndexes() {
+        final DBCollection sagas = sagaCollection();
+        sagas.ensureIndex(new BasicDBObject("sagaIdentifier", 1));
+        sagas.ensureIndex(new BasicDBObject("associations", 1).append("sagaType", 1));
+    }
+
     private DB database() {
         return mongoDbFactory.getDb();
     }
@@ -0,0 +1,365 @@
+package com.icoin.axonsupport.infrastructure.saga;
+
+import org.axonframework.saga.AssociationValue;
+import org.axonframework.saga.Saga;
+import org.axonframework.saga.SagaRepository;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Saga repository keeping the live sagas and the sagas found per association value in memory, in front of the
+ * stored sagas. A saga committed several times in one unit of work, once per event it handles, is written once
+ * after the unit of work commits; sagas ending are removed right away and forgotten. Both caches are bounded,
+ * anything evicted is read from the stored sagas again. The stored sagas are never read holding the lock of the
+ * association cache.
+ * <p/>
+ * A write failing after the commit is tried again up to the write attempts, then the saga and its association
+ * values are evicted and the failure is thrown to the committing unit of work.
+ */
+public class CoalescingSagaRepository implements SagaRepository {
+    private static Logger logger = LoggerFactory.getLogger(CoalescingSagaRepository.class);
+    private final SagaRepository delegate;
+    private final Map<String, Saga> sagas;
+    private final Map<String, Set<String>> associations;
+    private final ThreadLocal<Map<UnitOfWork, PendingWrites>> pending = new ThreadLocal<Map<UnitOfWork, PendingWrites>>() {
+        @Override
+        protected Map<UnitOfWork, PendingWrites> initialValue() {
+            return new IdentityHashMap<UnitOfWork, PendingWrites>();
+        }
+    };
+    private final AtomicLong sagaHits = new AtomicLong();
+    private final AtomicLong sagaMisses = new AtomicLong();
+    private final AtomicLong associationHits = new AtomicLong();
+    private final AtomicLong associationMisses = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private int writeAttempts = 3;
+
+    public CoalescingSagaRepository(SagaRepository delegate, int maxSagas, int maxAssociations) {
+        notNull(delegate);
+        isTrue(maxSagas > 0, "max sagas should be greater than 0");
+        isTrue(maxAssociations > 0, "max associations should be greater than 0");
+        this.delegate = delegate;
+        this.sagas = lruMap(maxSagas);
+        this.associations = lruMap(maxAssociations);
+    }
+
+    private static <K, V> Map<K, V> lruMap(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    @Override
+    public Set<String> find(Class<? extends Saga> type, AssociationValue associationValue) {
+        final String key = keyOf(type, associationValue);
+        synchronized (associations) {
+            final Set<String> identifiers = associations.get(key);
+            if (identifiers != null) {
+                associationHits.incrementAndGet();
+                return new HashSet<String>(identifiers);
+            }
+        }
+
+        associationMisses.incrementAndGet();
+        final Set<String> identifiers = associatedSagas(key, type, associationValue);
+        synchronized (associations) {
+            return new HashSet<String>(identifiers);
+        }
+    }
+
+    //the cached sagas of the association value, read from the stored sagas when missing, outside of the lock
+    private Set<String> associatedSagas(String key, Class<? extends Saga> type, AssociationValue associationValue) {
+        synchronized (associations) {
+            final Set<String> identifiers = associations.get(key);
+            if (identifiers != null) {
+                return identifiers;
+            }
+        }
+
+        final Set<String> stored = new HashSet<String>(delegate.find(type, associationValue));
+        synchronized (associations) {
+            final Set<String> identifiers = associations.get(key);
+            if (identifiers != null) {
+                return identifiers;
+            }
+            associations.put(key, stored);
+            return stored;
+        }
+    }
+
+    @Override
+    public Saga load(String sagaIdentifier) {
+        final Saga cached = sagas.get(sagaIdentifier);
+        if (cached != null) {
+            sagaHits.incrementAndGet();
+            return cached;
+        }
+
+        sagaMisses.incrementAndGet();
+        final Saga saga = delegate.load(sagaIdentifier);
+        if (saga != null && saga.isActive()) {
+            sagas.put(sagaIdentifier, saga);
+        }
+        return saga;
+    }
+
+    @Override
+    public void add(Saga saga) {
+        delegate.add(saga);
+        writes.incrementAndGet();
+
+        final PendingWrites pendingWrites = CurrentUnitOfWork.isStarted() ? pendingWrites(CurrentUnitOfWork.get()) : null;
+        for (AssociationValue associationValue : saga.getAssociationValues()) {
+            associate(saga, associationValue, pendingWrites);
+        }
+        if (saga.isActive()) {
+            sagas.put(saga.getSagaIdentifier(), saga);
+        }
+    }
+
+    @Override
+    public void commit(Saga saga) {
+        commits.incrementAndGet();
+
+        if (!saga.isActive()) {
+            forget(saga);
+            write(saga);
+            return;
+        }
+
+        final PendingWrites pendingWrites = CurrentUnitOfWork.isStarted() ? pendingWrites(CurrentUnitOfWork.get()) : null;
+        for (AssociationValue associationValue : saga.getAssociationValues().addedAssociations()) {
+            associate(saga, associationValue, pendingWrites);
+        }
+        for (AssociationValue associationValue : saga.getAssociationValues().removedAssociations()) {
+            dissociate(saga, associationValue, pendingWrites);
+        }
+        sagas.put(saga.getSagaIdentifier(), saga);
+
+        if (pendingWrites == null) {
+            write(saga);
+            return;
+        }
+        pendingWrites.add(saga);
+    }
+
+    //tried again up to the write attempts, the last failure is thrown
+    private void write(Saga saga) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                delegate.commit(saga);
+                writes.incrementAndGet();
+                return;
+            } catch (RuntimeException e) {
+                failedWrites.incrementAndGet();
+                if (attempt >= writeAttempts) {
+                    evict(saga);
+                    throw e;
+                }
+                logger.warn("Writing saga {} failed, attempt {} of {}", saga.getSagaIdentifier(), attempt, writeAttempts, e);
+            }
+        }
+    }
+
+    private PendingWrites pendingWrites(UnitOfWork unitOfWork) {
+        final Map<UnitOfWork, PendingWrites> writesOfThread = pending.get();
+        PendingWrites pendingWrites = writesOfThread.get(unitOfWork);
+        if (pendingWrites == null) {
+            pendingWrites = new PendingWrites();
+            writesOfThread.put(unitOfWork, pendingWrites);
+            unitOfWork.registerListener(pendingWrites);
+        }
+        return pendingWrites;
+    }
+
+    private void associate(Saga saga, AssociationValue associationValue, PendingWrites pendingWrites) {
+        update(saga, associationValue, pendingWrites, true);
+    }
+
+    private void dissociate(Saga saga, AssociationValue associationValue, PendingWrites pendingWrites) {
+        update(saga, associationValue, pendingWrites, false);
+    }
+
+    private void update(Saga saga, AssociationValue associationValue, PendingWrites pendingWrites, boolean add) {
+        final String key = keyOf(saga.getClass(), associationValue);
+        if (pendingWrites != null) {
+            pendingWrites.touch(key);
+        }
+
+        final Set<String> identifiers = associatedSagas(key, saga.getClass(), associationValue);
+        synchronized (associations) {
+            //the sagas read may have been evicted since, the ones cached now are updated
+            Set<String> cached = associations.get(key);
+            if (cached == null) {
+                cached = identifiers;
+                associations.put(key, cached);
+            }
+            if (add) {
+                cached.add(saga.getSagaIdentifier());
+            } else {
+                cached.remove(saga.getSagaIdentifier());
+            }
+        }
+    }
+
+    //the stored saga may be behind the cached one, both are read from the stored sagas again
+    private void evict(Saga saga) {
+        sagas.remove(saga.getSagaIdentifier());
+        synchronized (associations) {
+            for (AssociationValue associationValue : saga.getAssociationValues()) {
+                associations.remove(keyOf(saga.getClass(), associationValue));
+            }
+            for (AssociationValue associationValue : saga.getAssociationValues().removedAssociations()) {
+                associations.remove(keyOf(saga.getClass(), associationValue));
+            }
+        }
+    }
+
+    private void forget(Saga saga) {
+        sagas.remove(saga.getSagaIdentifier());
+        for (AssociationValue associationValue : saga.getAssociationValues()) {
+            dropAssociation(saga, associationValue);
+        }
+        for (AssociationValue associationValue : saga.getAssociationValues().removedAssociations()) {
+            dropAssociation(saga, associationValue);
+        }
+    }
+
+    private void dropAssociation(Saga saga, AssociationValue associationValue) {
+        synchronized (associations) {
+            final Set<String> identifiers = associations.get(keyOf(saga.getClass(), associationValue));
+            if (identifiers != null) {
+                identifiers.remove(saga.getSagaIdentifier());
+            }
+        }
+    }
+
+    private static String keyOf(Class<?> type, AssociationValue associationValue) {
+        return type.getName() + '\u0000' + associationValue.getKey() + '\u0000' + associationValue.getValue();
+    }
+
+    public long getSagaHits() {
+        return sagaHits.get();
+    }
+
+    public long getSagaMisses() {
+        return sagaMisses.get();
+    }
+
+    public long getAssociationHits() {
+        return associationHits.get();
+    }
+
+    public long getAssociationMisses() {
+        return associationMisses.get();
+    }
+
+    /**
+     * @return the commits of the saga manager, every commit of the same saga in a unit of work after the first
+     *         one saved a write
+     */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    public void setWriteAttempts(int writeAttempts) {
+        isTrue(writeAttempts > 0, "write attempts should be greater than 0");
+        this.writeAttempts = writeAttempts;
+    }
+
+    public int getCachedSagas() {
+        return sagas.size();
+    }
+
+    /**
+     * Sagas committed during one unit of work, written once when it commits and dropped from the caches when it
+     * rolls back, as their state in memory was changed by the events rolled back. Only the association values the
+     * unit of work changed are dropped with them.
+     */
+    private class PendingWrites extends UnitOfWorkListenerAdapter {
+        private final Map<String, Saga> sagasToWrite = new LinkedHashMap<String, Saga>();
+        private final Set<String> touchedAssociations = new HashSet<String>();
+        private boolean done;
+
+        void add(Saga saga) {
+            sagasToWrite.put(saga.getSagaIdentifier(), saga);
+        }
+
+        void touch(String associationKey) {
+            touchedAssociations.add(associationKey);
+        }
+
+        @Override
+        public void afterCommit(UnitOfWork unitOfWork) {
+            flush();
+        }
+
+        @Override
+        public void onRollback(UnitOfWork unitOfWork, Throwable failureCause) {
+            done = true;
+            for (Saga saga : sagasToWrite.values()) {
+                sagas.remove(saga.getSagaIdentifier());
+            }
+            synchronized (associations) {
+                for (String key : touchedAssociations) {
+                    associations.remove(key);
+                }
+            }
+        }
+
+        @Override
+        public void onCleanup(UnitOfWork unitOfWork) {
+            pending.get().remove(unitOfWork);
+        }
+
+        //every saga is written, the first failure is thrown once all were tried
+        private void flush() {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            RuntimeException failure = null;
+            for (Saga saga : sagasToWrite.values()) {
+                try {
+                    write(saga);
+                } catch (RuntimeException e) {
+                    logger.error("Writing saga " + saga.getSagaIdentifier() + " failed", e);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.icoin.axonsupport.infrastructure.snapshot;
+
+import net.sf.jsr107cache.Cache;
+import net.sf.jsr107cache.CacheListener;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.eventsourcing.SnapshotterTrigger;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Snapshotter trigger deciding by the measured cost of loading the aggregates of its repository instead of
+ * a fixed event count. Every replay is timed, and an aggregate is snapshotted once replaying the events since
+ * its last snapshot is estimated to take longer than the target reload time, or once it has the maximum number
+ * of events since. Aggregates with fewer than the minimum number of events are never snapshotted, so idle
+ * aggregates don't produce snapshots only slightly shorter than their streams.
+ * <p/>
+ * Events are counted per aggregate. The counters are dropped with the aggregates evicted from the cache of the
+ * repository, and are bounded by the maximum number of tracked aggregates either way: beyond it counters are
+ * dropped, their aggregates are counted again from their next load.
+ */
+public class AdaptiveSnapshotterTrigger implements SnapshotterTrigger {
+    private final ConcurrentMap<Object, AtomicInteger> counters = new ConcurrentHashMap<Object, AtomicInteger>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong replayedEvents = new AtomicLong();
+    private final AtomicLong replayNanos = new AtomicLong();
+    private final AtomicLong triggered = new AtomicLong();
+    private Snapshotter snapshotter;
+    private int minEvents = 20;
+    private int maxEvents = 500;
+    private long targetReloadMillis = 20;
+    private int maxTrackedAggregates = 100000;
+
+    @Override
+    public DomainEventStream decorateForRead(String aggregateType, Object aggregateIdentifier, DomainEventStream eventStream) {
+        final AtomicInteger counter = new AtomicInteger(0);
+        if (counters.put(aggregateIdentifier, counter) == null) {
+            bound();
+        }
+        return new MeasuringEventStream(eventStream, counter);
+    }
+
+    @Override
+    public DomainEventStream decorateForAppend(String aggregateType, EventSourcedAggregateRoot aggregate, DomainEventStream eventStream) {
+        final Object aggregateIdentifier = aggregate.getIdentifier();
+        return new TriggeringEventStream(aggregateType, aggregateIdentifier, eventStream, counterOf(aggregateIdentifier));
+    }
+
+    private AtomicInteger counterOf(Object aggregateIdentifier) {
+        AtomicInteger counter = counters.get(aggregateIdentifier);
+        if (counter == null) {
+            counter = new AtomicInteger(0);
+            final AtomicInteger existing = counters.putIfAbsent(aggregateIdentifier, counter);
+            if (existing != null) {
+                counter = existing;
+            } else {
+                bound();
+            }
+        }
+        return counter;
+    }
+
+    //any counters go, not the least used ones, it is only a memory bound when no cache evicts them
+    private void bound() {
+        final Iterator<Object> keys = counters.keySet().iterator();
+        while (counters.size() > maxTrackedAggregates && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    /**
+     * @return whether replaying the number of events is worth a snapshot
+     */
+    boolean shouldSnapshot(int events) {
+        if (events < minEvents) {
+            return false;
+        }
+        if (events >= maxEvents) {
+            return true;
+        }
+
+        final long measuredEvents = replayedEvents.get();
+        if (measuredEvents == 0) {
+            return false;
+        }
+        final long estimatedNanos = replayNanos.get() / measuredEvents * events;
+        return estimatedNanos >= TimeUnit.MILLISECONDS.toNanos(targetReloadMillis);
+    }
+
+    private void triggerSnapshotIfRequired(String aggregateType, Object aggregateIdentifier, AtomicInteger counter) {
+        if (shouldSnapshot(counter.get())) {
+            triggered.incrementAndGet();
+            snapshotter.scheduleSnapshot(aggregateType, aggregateIdentifier);
+            counter.set(1);
+        }
+    }
+
+    private void recordReplay(int events, long nanos) {
+        loads.incrementAndGet();
+        replayedEvents.addAndGet(events);
+        replayNanos.addAndGet(nanos);
+    }
+
+    public void setSnapshotter(Snapshotter snapshotter) {
+        notNull(snapshotter);
+        this.snapshotter = snapshotter;
+    }
+
+    /**
+     * Drops the counters of the aggregates evicted from the cache of the repository, they are counted again
+     * from their next load.
+     */
+    public void setAggregateCache(Cache cache) {
+        notNull(cache);
+        cache.addListener(new CacheListener() {
+            @Override
+            public void onLoad(Object key) {
+            }
+
+            @Override
+            public void onPut(Object key) {
+            }
+
+            @Override
+            public void onEvict(Object key) {
+                counters.remove(key);
+            }
+
+            @Override
+            public void onRemove(Object key) {
+                counters.remove(key);
+            }
+
+            @Override
+            public void onClear() {
+                counters.clear();
+            }
+        });
+    }
+
+    public void setMinEvents(int minEvents) {
+        isTrue(minEvents > 0, "minimal events should be greater than 0");
+        this.minEvents = minEvents;
+    }
+
+    public void setMaxEvents(int maxEvents) {
+        isTrue(maxEvents > 0, "maximal events should be greater than 0");
+        this.maxEvents = maxEvents;
+    }
+
+    public void setMaxTrackedAggregates(int maxTrackedAggregates) {
+        isTrue(maxTrackedAggregates > 0, "maximal tracked aggregates should be greater than 0");
+        this.maxTrackedAggregates = maxTrackedAggregates;
+    }
+
+    public void setTargetReloadMillis(long targetReloadMillis) {
+        isTrue(targetReloadMillis > 0, "target reload time should be greater than 0");
+        this.targetReloadMillis = targetReloadMillis;
+    }
+
+    public long getLoads() {
+        return loads.get();
+    }
+
+    public long getReplayedEvents() {
+        return replayedEvents.get();
+    }
+
+    /**
+     * @return average replay time of one event in microseconds, 0 before the first load
+     */
+    public long getReplayMicrosPerEvent() {
+        final long events = replayedEvents.get();
+        return events == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(replayNanos.get() / events);
+    }
+
+    /**
+     * @return average time to read and apply the snapshot and events of one aggregate in microseconds
+     */
+    public long getAverageLoadMicros() {
+        final long count = loads.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(replayNanos.get() / count);
+    }
+
+    public long getTriggered() {
+        return triggered.get();
+    }
+
+    public int getTrackedAggregates() {
+        return counters.size();
+    }
+
+    /**
+     * Counts and times the events the repository replays, events are deserialized and applied lazily while
+     * it iterates, so the time includes both.
+     */
+    private class MeasuringEventStream implements DomainEventStream {
+        private final DomainEventStream delegate;
+        private final AtomicInteger counter;
+        private long start;
+        private int events;
+        private boolean done;
+
+        private MeasuringEventStream(DomainEventStream delegate, AtomicInteger counter) {
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (start == 0) {
+                start = System.nanoTime();
+            }
+            final boolean hasNext = delegate.hasNext();
+            if (!hasNext && !done) {
+                done = true;
+                recordReplay(events, System.nanoTime() - start);
+            }
+            return hasNext;
+        }
+
+        @Override
+        public DomainEventMessage next() {
+            if (start == 0) {
+                start = System.nanoTime();
+            }
+            events++;
+            counter.incrementAndGet();
+            return delegate.next();
+        }
+
+        @Override
+        public DomainEventMessage peek() {
+            return delegate.peek();
+        }
+    }
+
+    private class TriggeringEventStream implements DomainEventStream {
+        private final String aggregateType;
+        private final Object aggregateIdentifier;
+        private final DomainEventStream delegate;
+        private final AtomicInteger counter;
+        private boolean done;
+
+        private TriggeringEventStream(String aggregateType,
+                                      Object aggregateIdentifier,
+                                      DomainEventStream delegate,
+                                      AtomicInteger counter) {
+            this.aggregateType = aggregateType;
+            this.aggregateIdentifier = aggregateIdentifier;
+            this.delegate = delegate;
+            this.counter = counter;
+        }
+
+        @Override
+        public boolean hasNext() {
+            final boolean hasNext = delegate.hasNext();
+            if (!hasNext && !done) {
+                done = true;
+                if (CurrentUnitOfWork.isStarted()) {
+                    CurrentUnitOfWork.get().registerListener(new UnitOfWorkListenerAdapter() {
+                        @Override
+                        public void afterCommit(UnitOfWork unitOfWork) {
+                            triggerSnapshotIfRequired(aggregateType, aggregateIdentifier, counter);
+                        }
+                    });
+                } else {
+                    triggerSnapshotIfRequired(aggregateType, aggregateIdentifier, counter);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public DomainEventMessage next() {
+            counter.incrementAndGet();
+            return delegate.next();
+        }
+
+        @Override
+        public DomainEventMessage peek() {
+            return delegate.peek();
+        }
+    }
+}
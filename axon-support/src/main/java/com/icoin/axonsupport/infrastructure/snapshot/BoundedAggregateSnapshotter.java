@@ -0,0 +1,137 @@
+package com.icoin.axonsupport.infrastructure.snapshot;
+
+import org.axonframework.eventsourcing.SpringAggregateSnapshotter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.isTrue;
+
+/**
+ * Snapshotter running on threads of its own with a bounded queue, so snapshots never compete with the shared
+ * task executor. An aggregate already waiting for or taking its snapshot is not scheduled again, snapshots not
+ * fitting in the queue are dropped, the aggregate is triggered again by its next events. After a snapshot the
+ * superseded ones are pruned when a pruner is set.
+ */
+public class BoundedAggregateSnapshotter extends SpringAggregateSnapshotter implements DisposableBean {
+    private static Logger logger = LoggerFactory.getLogger(BoundedAggregateSnapshotter.class);
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+    private MongoSnapshotPruner pruner;
+
+    public BoundedAggregateSnapshotter(int threads, int queueCapacity) {
+        isTrue(threads > 0, "snapshotter threads should be greater than 0");
+        isTrue(queueCapacity > 0, "snapshotter queue capacity should be greater than 0");
+
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "snapshotter-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        setExecutor(executor);
+    }
+
+    @Override
+    public void scheduleSnapshot(final String typeIdentifier, final Object aggregateIdentifier) {
+        final String key = typeIdentifier + ":" + aggregateIdentifier;
+        if (!inFlight.add(key)) {
+            deduplicated.incrementAndGet();
+            return;
+        }
+
+        final Runnable task = createSnapshotterTask(typeIdentifier, aggregateIdentifier);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                        prune(typeIdentifier, aggregateIdentifier);
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                        logger.warn("snapshot of {} {} failed", typeIdentifier, aggregateIdentifier, e);
+                    } finally {
+                        inFlight.remove(key);
+                    }
+                }
+            });
+            scheduled.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            dropped.incrementAndGet();
+            logger.debug("snapshot queue is full, dropping the snapshot of {} {}", typeIdentifier, aggregateIdentifier);
+        }
+    }
+
+    private void prune(String typeIdentifier, Object aggregateIdentifier) {
+        if (pruner == null) {
+            return;
+        }
+        pruned.addAndGet(pruner.prune(typeIdentifier, aggregateIdentifier));
+    }
+
+    public void setPruner(MongoSnapshotPruner pruner) {
+        this.pruner = pruner;
+    }
+
+    public long getScheduled() {
+        return scheduled.get();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getPruned() {
+        return pruned.get();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            logger.warn("{} snapshots were not taken before shutdown", executor.getQueue().size());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.icoin.axonsupport.infrastructure.snapshot;
+
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.axonframework.eventstore.mongo.MongoTemplate;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Removes the snapshots of an aggregate superseded by its newer ones, the event store only ever reads the latest.
+ * Given a partitioned event store, the snapshots are removed from the partition of the aggregate type.
+ */
+public class MongoSnapshotPruner {
+    static final String AGGREGATE_IDENTIFIER = "aggregateIdentifier";
+    static final String AGGREGATE_TYPE = "type";
+    static final String SEQUENCE_NUMBER = "sequenceNumber";
+
+    private final MongoTemplate mongoTemplate;
+    private final PartitionedEventStore eventStore;
+    private int snapshotsToKeep = 1;
+
+    public MongoSnapshotPruner(MongoTemplate mongoTemplate) {
+        notNull(mongoTemplate);
+        this.mongoTemplate = mongoTemplate;
+        this.eventStore = null;
+    }
+
+    public MongoSnapshotPruner(PartitionedEventStore eventStore) {
+        notNull(eventStore);
+        this.mongoTemplate = null;
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * @return the number of snapshots removed
+     */
+    public int prune(String aggregateType, Object aggregateIdentifier) {
+        final DBCollection snapshots = eventStore == null
+                ? mongoTemplate.snapshotEventCollection()
+                : eventStore.partitionOf(aggregateType).getTemplate().snapshotEventCollection();
+        final DBObject aggregate = new BasicDBObject(AGGREGATE_IDENTIFIER, aggregateIdentifier.toString())
+                .append(AGGREGATE_TYPE, aggregateType);
+
+        final DBCursor cursor = snapshots.find(aggregate, new BasicDBObject(SEQUENCE_NUMBER, 1))
+                .sort(new BasicDBObject(SEQUENCE_NUMBER, -1))
+                .skip(snapshotsToKeep - 1)
+                .limit(1);
+        try {
+            if (!cursor.hasNext()) {
+                return 0;
+            }
+
+            final Number oldestKept = (Number) cursor.next().get(SEQUENCE_NUMBER);
+            final DBObject superseded = new BasicDBObject(AGGREGATE_IDENTIFIER, aggregateIdentifier.toString())
+                    .append(AGGREGATE_TYPE, aggregateType)
+                    .append(SEQUENCE_NUMBER, new BasicDBObject("$lt", oldestKept.longValue()));
+            return snapshots.remove(superseded).getN();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void setSnapshotsToKeep(int snapshotsToKeep) {
+        isTrue(snapshotsToKeep > 0, "at least the latest snapshot should be kept");
+        this.snapshotsToKeep = snapshotsToKeep;
+    }
+}
@@ -0,0 +1,131 @@
+package com.icoin.axonsupport.domain;
+
+import com.homhon.base.domain.Identity;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.axonframework.eventsourcing.annotation.AbstractAnnotatedEntity;
+import org.axonframework.eventsourcing.annotation.AggregateIdentifier;
+import org.axonframework.eventsourcing.annotation.EventSourcedMember;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class AxonAnnotatedAggregateRootTest {
+
+    @Test
+    public void testSubclassesFindTheIdentityOfTheirBase() throws Exception {
+        final Savings savings = new Savings("savings");
+        final Checking checking = new Checking("checking");
+
+        assertThat(savings.identity(), is("savings"));
+        assertThat(checking.identity(), is("checking"));
+        assertThat(checking.getIdentifier(), is("checking"));
+        assertThat(new Checking("checking").equals(checking), is(true));
+        assertThat(new Checking("checking").hashCode(), is(checking.hashCode()));
+    }
+
+    @Test
+    public void testCachedFieldsFindTheEventSourcedMembersOfSubclasses() throws Exception {
+        //the identity field of the class is cached before the aggregate is loaded
+        assertThat(new Checking("cached").identity(), is("cached"));
+
+        final Checking checking = new Checking("checking");
+        checking.deposit(10L);
+        checking.deposit(5L);
+
+        assertThat(checking.balance, is(15L));
+        assertThat(checking.ledger.entries, contains(10L, 5L));
+        assertThat(checking.identity(), is("checking"));
+    }
+
+    @Test
+    public void testMembersOfOneSubclassNotSharedWithAnother() throws Exception {
+        final Savings savings = new Savings("savings");
+        savings.deposit(7L);
+
+        assertThat(savings.balance, is(7L));
+        assertThat(new Checking("checking").ledger.entries.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testNoIdentityBeforeCreated() throws Exception {
+        assertThat(new Checking().identity(), nullValue());
+        assertThat(new Checking().sameIdentityAs(null), is(false));
+    }
+
+    private static class OpenedEvent {
+        private final String accountId;
+
+        private OpenedEvent(String accountId) {
+            this.accountId = accountId;
+        }
+    }
+
+    private static class DepositedEvent {
+        private final long amount;
+
+        private DepositedEvent(long amount) {
+            this.amount = amount;
+        }
+    }
+
+    private abstract static class Account<T extends Account> extends AxonAnnotatedAggregateRoot<T, String> {
+        @AggregateIdentifier
+        @Identity
+        protected String accountId;
+        protected long balance;
+
+        protected Account() {
+        }
+
+        protected Account(String accountId) {
+            apply(new OpenedEvent(accountId));
+        }
+
+        public void deposit(long amount) {
+            apply(new DepositedEvent(amount));
+        }
+
+        @EventHandler
+        public void onOpened(OpenedEvent event) {
+            this.accountId = event.accountId;
+        }
+
+        @EventHandler
+        public void onDeposited(DepositedEvent event) {
+            this.balance += event.amount;
+        }
+    }
+
+    private static class Savings extends Account<Savings> {
+        private Savings(String accountId) {
+            super(accountId);
+        }
+    }
+
+    private static class Checking extends Account<Checking> {
+        @EventSourcedMember
+        private final Ledger ledger = new Ledger();
+
+        private Checking() {
+        }
+
+        private Checking(String accountId) {
+            super(accountId);
+        }
+    }
+
+    private static class Ledger extends AbstractAnnotatedEntity {
+        private final List<Long> entries = new ArrayList<Long>();
+
+        @EventHandler
+        public void onDeposited(DepositedEvent event) {
+            entries.add(event.amount);
+        }
+    }
+}
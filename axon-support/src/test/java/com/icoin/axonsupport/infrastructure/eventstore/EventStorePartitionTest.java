@@ -0,0 +1,71 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import com.icoin.axonsupport.infrastructure.mongo.EventStoreTemplete;
+import com.mongodb.DB;
+import org.axonframework.eventstore.mongo.MongoEventStore;
+import org.axonframework.serializer.Serializer;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.MongoDbFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EventStorePartitionTest {
+    private DB database;
+    private EventStorePartition partition;
+
+    @Before
+    public void setUp() throws Exception {
+        final MongoDbFactory mongoDbFactory = mock(MongoDbFactory.class);
+        database = mock(DB.class);
+        when(mongoDbFactory.getDb()).thenReturn(database);
+
+        partition = new EventStorePartition("orders",
+                new EventStoreTemplete("orderevents", "ordersnapshots", mongoDbFactory), mock(Serializer.class));
+    }
+
+    @Test
+    public void testArchiveBucketPerMonth() throws Exception {
+        assertThat(partition.archiveCollectionName("2014-05-03T10:00:00.000+08:00"), is("orderevents_archive_2014_05"));
+        assertThat(partition.archiveCollectionName("2013-12-31T23:59:59.999Z"), is("orderevents_archive_2013_12"));
+    }
+
+    @Test
+    public void testArchiveBucketsOfThePartitionOldestFirst() throws Exception {
+        when(database.getCollectionNames()).thenReturn(collections("orderevents", "ordersnapshots",
+                "orderevents_archive_2014_05", "domainevents_archive_2014_01", "orderevents_archive_2013_12"));
+
+        assertThat(partition.archiveCollectionNames(),
+                contains("orderevents_archive_2013_12", "orderevents_archive_2014_05"));
+    }
+
+    @Test
+    public void testVisitsTheArchivesBeforeTheHotEvents() throws Exception {
+        when(database.getCollectionNames()).thenReturn(collections("orderevents", "orderevents_archive_2014_05"));
+
+        final List<MongoEventStore> stores = partition.visitableEventStores();
+        final List<MongoEventStore> again = partition.visitableEventStores();
+
+        assertThat(stores, hasSize(2));
+        assertThat(stores.get(0), not(sameInstance(partition.getEventStore())));
+        assertThat(stores.get(1), sameInstance(partition.getEventStore()));
+        //one store per bucket, however often visited
+        assertThat(again.get(0), sameInstance(stores.get(0)));
+    }
+
+    private static Set<String> collections(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,137 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.MetaData;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class EventStreamMergerTest {
+    private static final DateTime TIME = new DateTime(2014, 5, 3, 10, 0, 0, 0);
+
+    private final EventStreamMerger merger = new EventStreamMerger(2);
+
+    @Test
+    public void testMergesInTimeStampOrder() throws Exception {
+        final EventStoreManagement first = store(event("a", 0L, TIME), event("a", 1L, TIME.plusSeconds(2)),
+                event("a", 2L, TIME.plusSeconds(4)));
+        final EventStoreManagement second = store(event("b", 0L, TIME.plusSeconds(1)), event("b", 1L, TIME.plusSeconds(3)));
+
+        assertThat(visit(Arrays.asList(first, second), null), contains("a0", "b0", "a1", "b1", "a2"));
+    }
+
+    @Test
+    public void testSameTimeStampKeepsTheAggregateOrder() throws Exception {
+        //the later events of the aggregate are in the store listed first
+        final EventStoreManagement hot = store(event("a", 2L, TIME), event("a", 3L, TIME));
+        final EventStoreManagement archive = store(event("a", 0L, TIME), event("a", 1L, TIME), event("b", 0L, TIME));
+
+        assertThat(visit(Arrays.asList(hot, archive), null), contains("a0", "a1", "a2", "a3", "b0"));
+    }
+
+    @Test
+    public void testVisitsWithTheCriteria() throws Exception {
+        final Criteria criteria = mock(Criteria.class);
+        final EventStoreManagement first = store(event("a", 0L, TIME));
+        final EventStoreManagement second = store(event("b", 0L, TIME.plusSeconds(1)));
+        doAnswer(replay(event("a", 5L, TIME))).when(first).visitEvents(same(criteria), any(EventVisitor.class));
+        doAnswer(replay()).when(second).visitEvents(same(criteria), any(EventVisitor.class));
+
+        assertThat(visit(Arrays.asList(first, second), criteria), contains("a5"));
+    }
+
+    @Test
+    public void testSingleStoreVisitedDirectly() throws Exception {
+        final EventStoreManagement only = store(event("a", 0L, TIME), event("a", 1L, TIME));
+
+        assertThat(visit(Arrays.asList(only), null), contains("a0", "a1"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStoreFailureStopsTheMerge() throws Exception {
+        final EventStoreManagement failing = mock(EventStoreManagement.class);
+        doThrow(new IllegalStateException("unreachable")).when(failing).visitEvents(any(EventVisitor.class));
+
+        visit(Arrays.asList(store(event("a", 0L, TIME)), failing), null);
+    }
+
+    @Test
+    public void testVisitorGivingUpStopsTheStores() throws Exception {
+        final List<DomainEventMessage> many = new ArrayList<DomainEventMessage>();
+        for (long sequence = 0L; sequence < 100L; sequence++) {
+            many.add(event("a", sequence, TIME.plusMillis((int) sequence)));
+        }
+        final EventStoreManagement first = store(many.toArray(new DomainEventMessage[many.size()]));
+        final EventStoreManagement second = store(event("b", 0L, TIME.plusSeconds(1)));
+
+        final List<String> visited = new ArrayList<String>();
+        try {
+            merger.visit(Arrays.asList(first, second), null, new EventVisitor() {
+                @Override
+                public void doWithEvent(DomainEventMessage domainEvent) {
+                    if (domainEvent.getSequenceNumber() == 3L) {
+                        throw new IllegalArgumentException("enough");
+                    }
+                    visited.add(domainEvent.getAggregateIdentifier() + "" + domainEvent.getSequenceNumber());
+                }
+            });
+        } catch (IllegalArgumentException e) {
+            //the producers blocked on their full buffers are interrupted
+        }
+
+        assertThat(visited, contains("a0", "a1", "a2"));
+    }
+
+    private List<String> visit(List<EventStoreManagement> stores, Criteria criteria) {
+        final List<String> visited = new ArrayList<String>();
+        merger.visit(stores, criteria, new EventVisitor() {
+            @Override
+            public void doWithEvent(DomainEventMessage domainEvent) {
+                visited.add(domainEvent.getAggregateIdentifier() + "" + domainEvent.getSequenceNumber());
+            }
+        });
+        return visited;
+    }
+
+    private static EventStoreManagement store(DomainEventMessage... events) {
+        final EventStoreManagement store = mock(EventStoreManagement.class);
+        doAnswer(replay(events)).when(store).visitEvents(any(EventVisitor.class));
+        return store;
+    }
+
+    private static Answer<Void> replay(final DomainEventMessage... events) {
+        return new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                final Object[] arguments = invocation.getArguments();
+                final EventVisitor visitor = (EventVisitor) arguments[arguments.length - 1];
+                for (DomainEventMessage event : events) {
+                    visitor.doWithEvent(event);
+                }
+                return null;
+            }
+        };
+    }
+
+    private static DomainEventMessage event(String aggregateIdentifier, long sequenceNumber, DateTime timestamp) {
+        return new GenericDomainEventMessage<String>(aggregateIdentifier + sequenceNumber, timestamp,
+                aggregateIdentifier, sequenceNumber, "payload", MetaData.emptyInstance());
+    }
+}
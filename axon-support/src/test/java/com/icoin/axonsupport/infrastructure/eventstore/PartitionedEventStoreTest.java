@@ -0,0 +1,95 @@
+package com.icoin.axonsupport.infrastructure.eventstore;
+
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.axonframework.eventstore.mongo.MongoEventStore;
+import org.axonframework.upcasting.UpcasterChain;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PartitionedEventStoreTest {
+    private EventStorePartition defaultPartition;
+    private EventStorePartition orderPartition;
+    private MongoEventStore defaultStore;
+    private MongoEventStore orderStore;
+    private EventStreamMerger merger;
+    private PartitionedEventStore eventStore;
+
+    @Before
+    public void setUp() throws Exception {
+        defaultPartition = mock(EventStorePartition.class);
+        orderPartition = mock(EventStorePartition.class);
+        defaultStore = mock(MongoEventStore.class);
+        orderStore = mock(MongoEventStore.class);
+        when(defaultPartition.getEventStore()).thenReturn(defaultStore);
+        when(orderPartition.getEventStore()).thenReturn(orderStore);
+        merger = mock(EventStreamMerger.class);
+
+        eventStore = new PartitionedEventStore(defaultPartition);
+        eventStore.addPartition("Order", orderPartition);
+        eventStore.addPartition("BuyOrder", orderPartition);
+        eventStore.setMerger(merger);
+    }
+
+    @Test
+    public void testRoutesByAggregateType() throws Exception {
+        final DomainEventStream events = mock(DomainEventStream.class);
+
+        eventStore.appendEvents("Order", events);
+        eventStore.readEvents("Portfolio", "portfolio");
+
+        verify(orderStore).appendEvents("Order", events);
+        verify(defaultStore, never()).appendEvents("Order", events);
+        verify(defaultStore).readEvents("Portfolio", "portfolio");
+    }
+
+    @Test
+    public void testPartitionsListedOnceDefaultFirst() throws Exception {
+        assertThat(eventStore.getPartitions(), contains(defaultPartition, orderPartition));
+        assertThat(eventStore.partitionOf("BuyOrder"), sameInstance(orderPartition));
+        assertThat(eventStore.partitionOf("Coin"), sameInstance(defaultPartition));
+    }
+
+    @Test
+    public void testVisitsTheArchivesAndHotEventsOfAllPartitions() throws Exception {
+        final MongoEventStore defaultArchive = mock(MongoEventStore.class);
+        final MongoEventStore orderArchive = mock(MongoEventStore.class);
+        when(defaultPartition.visitableEventStores()).thenReturn(Arrays.asList(defaultArchive, defaultStore));
+        when(orderPartition.visitableEventStores()).thenReturn(Arrays.asList(orderArchive, orderStore));
+        final EventVisitor visitor = mock(EventVisitor.class);
+        final Criteria criteria = mock(Criteria.class);
+
+        eventStore.visitEvents(visitor);
+        eventStore.visitEvents(criteria, visitor);
+
+        verify(merger).visit(eq(Arrays.asList(defaultArchive, defaultStore, orderArchive, orderStore)),
+                (Criteria) isNull(), same(visitor));
+        verify(merger).visit(eq(Arrays.asList(defaultArchive, defaultStore, orderArchive, orderStore)),
+                same(criteria), same(visitor));
+    }
+
+    @Test
+    public void testUpcasterChainSetOnEveryPartition() throws Exception {
+        final UpcasterChain upcasterChain = mock(UpcasterChain.class);
+
+        eventStore.setUpcasterChain(upcasterChain);
+
+        verify(defaultPartition).setUpcasterChain(upcasterChain);
+        //once, though it holds two aggregate types
+        verify(orderPartition).setUpcasterChain(upcasterChain);
+    }
+}
@@ -0,0 +1,197 @@
+package com.icoin.axonsupport.infrastructure.saga;
+
+import org.axonframework.saga.AssociationValue;
+import org.axonframework.saga.Saga;
+import org.axonframework.saga.SagaRepository;
+import org.axonframework.saga.annotation.AssociationValuesImpl;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CoalescingSagaRepositoryTest {
+    private final AssociationValue orderBook = new AssociationValue("orderBookId", "orderBook");
+    private final AssociationValue transaction = new AssociationValue("transactionId", "transaction");
+
+    private SagaRepository delegate;
+    private CoalescingSagaRepository repository;
+    private Saga saga;
+    private Class<? extends Saga> sagaType;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(SagaRepository.class);
+        repository = new CoalescingSagaRepository(delegate, 100, 100);
+
+        saga = saga("saga");
+        sagaType = saga.getClass();
+        when(delegate.find(sagaType, orderBook)).thenReturn(Collections.singleton("saga"));
+        when(delegate.find(sagaType, transaction)).thenReturn(Collections.singleton("saga"));
+        when(delegate.load("saga")).thenReturn(saga);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCommitsWrittenOncePerUnitOfWork() throws Exception {
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        repository.commit(repository.load("saga"));
+        repository.commit(repository.load("saga"));
+        repository.commit(repository.load("saga"));
+        verify(delegate, never()).commit(saga);
+
+        unitOfWork.commit();
+
+        verify(delegate).commit(saga);
+        verify(delegate).load("saga");
+        assertThat(repository.getCommits(), is(3L));
+        assertThat(repository.getWrites(), is(1L));
+    }
+
+    @Test
+    public void testRollbackDropsOnlyTheAssociationsOfTheUnitOfWork() throws Exception {
+        repository.find(sagaType, orderBook);
+        repository.find(sagaType, transaction);
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        final Saga loaded = repository.load("saga");
+        loaded.getAssociationValues().add(orderBook);
+        repository.commit(loaded);
+        unitOfWork.rollback();
+
+        repository.find(sagaType, orderBook);
+        repository.find(sagaType, transaction);
+
+        verify(delegate, times(2)).find(sagaType, orderBook);
+        verify(delegate, times(1)).find(sagaType, transaction);
+        verify(delegate, never()).commit(saga);
+        //the saga changed by the rolled back events is loaded again
+        repository.load("saga");
+        verify(delegate, times(2)).load("saga");
+    }
+
+    @Test
+    public void testStoredSagasNotReadHoldingTheAssociationLock() throws Exception {
+        repository.find(sagaType, orderBook);
+
+        final AssociationValue slow = new AssociationValue("slow", "slow");
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(delegate.find(sagaType, slow)).thenAnswer(new Answer<Set<String>>() {
+            @Override
+            public Set<String> answer(InvocationOnMock invocation) throws Throwable {
+                reading.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return Collections.singleton("other");
+            }
+        });
+
+        executor = Executors.newSingleThreadExecutor();
+        final Future<Set<String>> slowFind = executor.submit(new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws Exception {
+                final Saga other = saga("other");
+                other.getAssociationValues().add(slow);
+                repository.commit(other);
+                return repository.find(sagaType, slow);
+            }
+        });
+        assertThat(reading.await(10, TimeUnit.SECONDS), is(true));
+
+        //served from the cache while the other thread reads the stored sagas
+        assertThat(repository.find(sagaType, orderBook), contains("saga"));
+
+        release.countDown();
+        assertThat(slowFind.get(10, TimeUnit.SECONDS), contains("other"));
+    }
+
+    @Test
+    public void testFailedWriteTriedAgain() throws Exception {
+        doThrow(new IllegalStateException("mongo not reachable")).doNothing().when(delegate).commit(saga);
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        repository.commit(repository.load("saga"));
+        unitOfWork.commit();
+
+        verify(delegate, times(2)).commit(saga);
+        assertThat(repository.getWrites(), is(1L));
+        assertThat(repository.getFailedWrites(), is(1L));
+    }
+
+    @Test
+    public void testFailedWriteThrownAndEvicted() throws Exception {
+        repository.setWriteAttempts(2);
+        repository.find(sagaType, orderBook);
+        doThrow(new IllegalStateException("mongo not reachable")).when(delegate).commit(any(Saga.class));
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        final Saga loaded = repository.load("saga");
+        loaded.getAssociationValues().add(orderBook);
+        repository.commit(loaded);
+        try {
+            unitOfWork.commit();
+            fail("the failed write should be thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("mongo not reachable"));
+        }
+
+        verify(delegate, times(2)).commit(saga);
+        assertThat(repository.getCachedSagas(), is(0));
+        repository.find(sagaType, orderBook);
+        verify(delegate, times(2)).find(eq(sagaType), eq(orderBook));
+    }
+
+    @Test
+    public void testEndedSagaForgotten() throws Exception {
+        repository.find(sagaType, orderBook);
+        final Saga loaded = repository.load("saga");
+        loaded.getAssociationValues().add(orderBook);
+        when(loaded.isActive()).thenReturn(false);
+
+        repository.commit(loaded);
+
+        verify(delegate).commit(loaded);
+        assertThat(repository.getCachedSagas(), is(0));
+        assertThat(repository.find(sagaType, orderBook).isEmpty(), is(true));
+    }
+
+    private static Saga saga(String identifier) {
+        final Saga saga = mock(Saga.class);
+        final AssociationValuesImpl associationValues = new AssociationValuesImpl();
+        when(saga.getSagaIdentifier()).thenReturn(identifier);
+        when(saga.getAssociationValues()).thenReturn(associationValues);
+        when(saga.isActive()).thenReturn(true);
+        return saga;
+    }
+}
@@ -0,0 +1,153 @@
+package com.icoin.axonsupport.infrastructure.snapshot;
+
+import net.sf.jsr107cache.Cache;
+import net.sf.jsr107cache.CacheListener;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveSnapshotterTriggerTest {
+    private static final String TYPE = "OrderBook";
+
+    private Snapshotter snapshotter;
+    private AdaptiveSnapshotterTrigger trigger;
+
+    @Before
+    public void setUp() throws Exception {
+        snapshotter = mock(Snapshotter.class);
+        trigger = new AdaptiveSnapshotterTrigger();
+        trigger.setSnapshotter(snapshotter);
+        trigger.setMinEvents(5);
+        trigger.setMaxEvents(10);
+        trigger.setTargetReloadMillis(60000);
+    }
+
+    @Test
+    public void testThresholds() throws Exception {
+        //nothing measured yet, only the maximal events trigger
+        assertThat(trigger.shouldSnapshot(4), is(false));
+        assertThat(trigger.shouldSnapshot(9), is(false));
+        assertThat(trigger.shouldSnapshot(10), is(true));
+
+        //replaying is measured far below the target reload time
+        consume(trigger.decorateForRead(TYPE, "aggregate", stream("aggregate", 0, 3)));
+        assertThat(trigger.getLoads(), is(1L));
+        assertThat(trigger.getReplayedEvents(), is(3L));
+        assertThat(trigger.shouldSnapshot(9), is(false));
+
+        //a replay taking longer than the target triggers from the minimal events on
+        trigger.setTargetReloadMillis(1);
+        consume(trigger.decorateForRead(TYPE, "slow", new SlowEventStream(stream("slow", 0, 1), 5)));
+        assertThat(trigger.shouldSnapshot(4), is(false));
+        assertThat(trigger.shouldSnapshot(5), is(true));
+    }
+
+    @Test
+    public void testSnapshotScheduledAtMaxEvents() throws Exception {
+        consume(trigger.decorateForRead(TYPE, "aggregate", stream("aggregate", 0, 8)));
+
+        consume(trigger.decorateForAppend(TYPE, aggregate("aggregate"), stream("aggregate", 8, 1)));
+        verify(snapshotter, never()).scheduleSnapshot(anyString(), anyObject());
+
+        consume(trigger.decorateForAppend(TYPE, aggregate("aggregate"), stream("aggregate", 9, 1)));
+        verify(snapshotter).scheduleSnapshot(TYPE, "aggregate");
+
+        //counted from the snapshot on
+        consume(trigger.decorateForAppend(TYPE, aggregate("aggregate"), stream("aggregate", 10, 8)));
+        verify(snapshotter, times(1)).scheduleSnapshot(TYPE, "aggregate");
+    }
+
+    @Test
+    public void testCountersBounded() throws Exception {
+        trigger.setMaxTrackedAggregates(2);
+
+        consume(trigger.decorateForRead(TYPE, "first", stream("first", 0, 1)));
+        consume(trigger.decorateForRead(TYPE, "second", stream("second", 0, 1)));
+        consume(trigger.decorateForAppend(TYPE, aggregate("third"), stream("third", 0, 1)));
+
+        assertThat(trigger.getTrackedAggregates(), is(2));
+    }
+
+    @Test
+    public void testCountersDroppedWithEvictedAggregates() throws Exception {
+        final Cache cache = mock(Cache.class);
+        trigger.setAggregateCache(cache);
+        final ArgumentCaptor<CacheListener> listener = ArgumentCaptor.forClass(CacheListener.class);
+        verify(cache).addListener(listener.capture());
+
+        consume(trigger.decorateForRead(TYPE, "first", stream("first", 0, 1)));
+        consume(trigger.decorateForRead(TYPE, "second", stream("second", 0, 1)));
+
+        listener.getValue().onEvict("first");
+        assertThat(trigger.getTrackedAggregates(), is(1));
+
+        listener.getValue().onClear();
+        assertThat(trigger.getTrackedAggregates(), is(0));
+    }
+
+    private static EventSourcedAggregateRoot aggregate(Object identifier) {
+        final EventSourcedAggregateRoot aggregate = mock(EventSourcedAggregateRoot.class);
+        when(aggregate.getIdentifier()).thenReturn(identifier);
+        return aggregate;
+    }
+
+    private static DomainEventStream stream(Object identifier, long firstSequenceNumber, int events) {
+        final DomainEventMessage[] messages = new DomainEventMessage[events];
+        for (int i = 0; i < events; i++) {
+            messages[i] = new GenericDomainEventMessage<String>(identifier, firstSequenceNumber + i, "event " + i);
+        }
+        return new SimpleDomainEventStream(messages);
+    }
+
+    private static void consume(DomainEventStream stream) {
+        while (stream.hasNext()) {
+            stream.next();
+        }
+    }
+
+    private static class SlowEventStream implements DomainEventStream {
+        private final DomainEventStream delegate;
+        private final long millisPerEvent;
+
+        private SlowEventStream(DomainEventStream delegate, long millisPerEvent) {
+            this.delegate = delegate;
+            this.millisPerEvent = millisPerEvent;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public DomainEventMessage next() {
+            try {
+                Thread.sleep(millisPerEvent);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.next();
+        }
+
+        @Override
+        public DomainEventMessage peek() {
+            return delegate.peek();
+        }
+    }
+}
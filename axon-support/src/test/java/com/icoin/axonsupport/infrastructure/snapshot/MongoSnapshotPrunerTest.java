@@ -0,0 +1,77 @@
+package com.icoin.axonsupport.infrastructure.snapshot;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MongoSnapshotPrunerTest {
+    private DBCollection snapshots;
+    private DBCursor cursor;
+    private MongoSnapshotPruner pruner;
+
+    @Before
+    public void setUp() throws Exception {
+        final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        snapshots = mock(DBCollection.class);
+        cursor = mock(DBCursor.class);
+        when(mongoTemplate.snapshotEventCollection()).thenReturn(snapshots);
+        when(snapshots.find(any(DBObject.class), any(DBObject.class))).thenReturn(cursor);
+        when(cursor.sort(any(DBObject.class))).thenReturn(cursor);
+        when(cursor.skip(anyInt())).thenReturn(cursor);
+        when(cursor.limit(anyInt())).thenReturn(cursor);
+
+        pruner = new MongoSnapshotPruner(mongoTemplate);
+    }
+
+    @Test
+    public void testSupersededSnapshotsRemoved() throws Exception {
+        final WriteResult result = mock(WriteResult.class);
+        when(result.getN()).thenReturn(2);
+        when(cursor.hasNext()).thenReturn(true);
+        when(cursor.next()).thenReturn(new BasicDBObject(MongoSnapshotPruner.SEQUENCE_NUMBER, 40L));
+        when(snapshots.remove(any(DBObject.class))).thenReturn(result);
+
+        pruner.setSnapshotsToKeep(2);
+
+        assertThat(pruner.prune("OrderBook", "aggregate"), is(2));
+
+        //the oldest kept is the second latest
+        verify(cursor).sort(new BasicDBObject(MongoSnapshotPruner.SEQUENCE_NUMBER, -1));
+        verify(cursor).skip(1);
+        verify(cursor).close();
+
+        final ArgumentCaptor<DBObject> removed = ArgumentCaptor.forClass(DBObject.class);
+        verify(snapshots).remove(removed.capture());
+        assertThat(removed.getValue().get(MongoSnapshotPruner.AGGREGATE_IDENTIFIER), equalTo((Object) "aggregate"));
+        assertThat(removed.getValue().get(MongoSnapshotPruner.AGGREGATE_TYPE), equalTo((Object) "OrderBook"));
+        assertThat(removed.getValue().get(MongoSnapshotPruner.SEQUENCE_NUMBER),
+                equalTo((Object) new BasicDBObject("$lt", 40L)));
+    }
+
+    @Test
+    public void testNothingRemovedWithFewerSnapshotsThanKept() throws Exception {
+        when(cursor.hasNext()).thenReturn(false);
+
+        assertThat(pruner.prune("OrderBook", "aggregate"), is(0));
+
+        verify(cursor).skip(0);
+        verify(snapshots, never()).remove(any(DBObject.class));
+        verify(cursor).close();
+    }
+}
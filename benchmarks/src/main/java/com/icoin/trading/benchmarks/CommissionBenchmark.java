@@ -0,0 +1,77 @@
+package com.icoin.trading.benchmarks;
+
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.tradeengine.domain.model.commission.Commission;
+import com.icoin.trading.tradeengine.domain.model.commission.FixedRateCommissionPolicy;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed rate commissions of one fill. Money scaled to its currency takes the long path, money with more
+ * decimals than its currency the BigMoney one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CommissionBenchmark {
+    private final FixedRateCommissionPolicy policy = new FixedRateCommissionPolicy();
+    private Order buyOrder;
+    private Order sellOrder;
+    private BigMoney amount;
+    private BigMoney price;
+    private BigMoney unscaledAmount;
+
+    @Setup
+    public void setUp() {
+        final CurrencyUnit btc = CurrencyUnit.of("BTC");
+        final CurrencyUnit cny = CurrencyUnit.of("CNY");
+        final CurrencyPair currencyPair = new CurrencyPair(btc, cny);
+
+        buyOrder = new Order(OrderType.BUY);
+        buyOrder.setCurrencyPair(currencyPair);
+        sellOrder = new Order(OrderType.SELL);
+        sellOrder.setCurrencyPair(currencyPair);
+
+        amount = BigMoney.of(btc, new BigDecimal("1.23456789"));
+        unscaledAmount = BigMoney.of(btc, new BigDecimal("1.234567891"));
+        price = BigMoney.of(cny, new BigDecimal("3456.789"));
+    }
+
+    @Benchmark
+    public Commission buyCommission() {
+        return policy.calculateBuyCommission(buyOrder, amount, price);
+    }
+
+    @Benchmark
+    public Commission sellCommission() {
+        return policy.calculateSellCommission(sellOrder, amount, price);
+    }
+
+    @Benchmark
+    public Commission buyCommissionUnscaled() {
+        return policy.calculateBuyCommission(buyOrder, unscaledAmount, price);
+    }
+
+    @Benchmark
+    public Commission sellCommissionUnscaled() {
+        return policy.calculateSellCommission(sellOrder, unscaledAmount, price);
+    }
+}
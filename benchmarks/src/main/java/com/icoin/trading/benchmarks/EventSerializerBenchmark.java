@@ -0,0 +1,95 @@
+package com.icoin.trading.benchmarks;
+
+import com.icoin.money.converter.JodaMoneyConverter;
+import com.icoin.trading.api.coin.domain.CoinId;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TradeType;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.api.users.domain.UserId;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer.CompactBinarySerializer;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode of a trade executed event with the XStream serializer the event store used and the
+ * compact binary one, in the string form the mongo event store stores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventSerializerBenchmark {
+    @Param({"xstream", "binary"})
+    public String format;
+
+    private Serializer serializer;
+    private TradeExecutedEvent event;
+    private SerializedObject<String> serialized;
+
+    @Setup
+    public void setUp() {
+        final XStreamSerializer xStreamSerializer = new XStreamSerializer();
+        xStreamSerializer.getXStream().registerConverter(new JodaMoneyConverter());
+        serializer = "binary".equals(format) ? new CompactBinarySerializer(xStreamSerializer) : xStreamSerializer;
+
+        final CurrencyUnit btc = CurrencyUnit.of("BTC");
+        final CurrencyUnit cny = CurrencyUnit.of("CNY");
+        event = new TradeExecutedEvent(
+                new OrderBookId(),
+                new CoinId("BTC"),
+                BigMoney.of(btc, new BigDecimal("1.23456789")),
+                BigMoney.of(cny, new BigDecimal("3456.789")),
+                BigMoney.of(cny, new BigDecimal("4267.640")),
+                new TransactionId().toString(),
+                new TransactionId().toString(),
+                BigMoney.of(cny, new BigDecimal("4.268")),
+                BigMoney.of(btc, new BigDecimal("0.00123457")),
+                new TransactionId(),
+                new TransactionId(),
+                new PortfolioId(),
+                new PortfolioId(),
+                new UserId(),
+                new UserId(),
+                new Date(),
+                TradeType.BUY);
+
+        serialized = serializer.serialize(event, String.class);
+    }
+
+    @Benchmark
+    public SerializedObject<String> encode() {
+        return serializer.serialize(event, String.class);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(serialized);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        return serializer.deserialize(serializer.serialize(event, String.class));
+    }
+}
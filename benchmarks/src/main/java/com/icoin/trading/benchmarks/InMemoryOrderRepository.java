@@ -0,0 +1,81 @@
+package com.icoin.trading.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stand-in for the mongo order repository: saves and finds by id in a map, the pending orders of every order
+ * book are all the pending orders it holds. Other queries find nothing, the resident order book answers them.
+ */
+public class InMemoryOrderRepository implements InvocationHandler {
+    //placing order is the time priority of the resident order book
+    private final Map<String, Order> orders = Maps.newLinkedHashMap();
+    private final OrderRepository repository = (OrderRepository) Proxy.newProxyInstance(
+            OrderRepository.class.getClassLoader(),
+            new Class[]{OrderRepository.class},
+            this);
+
+    public OrderRepository getRepository() {
+        return repository;
+    }
+
+    public void put(Order order) {
+        orders.put(order.getPrimaryKey(), order);
+    }
+
+    public void clear() {
+        orders.clear();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        final String name = method.getName();
+
+        if ("save".equals(name) && args[0] instanceof Order) {
+            put((Order) args[0]);
+            return args[0];
+        }
+        if ("findOne".equals(name) || "findPendingOrder".equals(name)) {
+            return orders.get(String.valueOf(args[0]));
+        }
+        if ("findPendingOrders".equals(name)) {
+            final List<Order> pending = Lists.newArrayList();
+            for (Order order : orders.values()) {
+                if (order.getOrderStatus() == OrderStatus.PENDING) {
+                    pending.add(order);
+                }
+            }
+            return pending;
+        }
+        if ("toString".equals(name)) {
+            return "InMemoryOrderRepository{orders=" + orders.size() + '}';
+        }
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+
+        final Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) {
+            return false;
+        }
+        if (returnType == long.class) {
+            return 0L;
+        }
+        if (returnType == int.class) {
+            return 0;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package com.icoin.trading.benchmarks;
+
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buy and sell executors matching one taker against a synthetic resident order book, sweeping levels
+ * of a book depth levels deep. The book is reset before every match, outside of the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MatchingBenchmark {
+
+    @State(Scope.Thread)
+    public static class BuyTaker {
+        @Param({"100", "1000"})
+        public int depth;
+
+        @Param({"1", "10"})
+        public int levels;
+
+        SyntheticOrderBook orderBook;
+
+        @Setup(Level.Trial)
+        public void create() {
+            orderBook = new SyntheticOrderBook(OrderType.BUY, depth, levels);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            orderBook.reset();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SellTaker {
+        @Param({"100", "1000"})
+        public int depth;
+
+        @Param({"1", "10"})
+        public int levels;
+
+        SyntheticOrderBook orderBook;
+
+        @Setup(Level.Trial)
+        public void create() {
+            orderBook = new SyntheticOrderBook(OrderType.SELL, depth, levels);
+        }
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            orderBook.reset();
+        }
+    }
+
+    @Benchmark
+    public OrderBook executeBuying(BuyTaker taker) {
+        return taker.orderBook.match();
+    }
+
+    @Benchmark
+    public OrderBook executeSelling(SellTaker taker) {
+        return taker.orderBook.match();
+    }
+}
@@ -0,0 +1,82 @@
+package com.icoin.trading.benchmarks;
+
+import com.icoin.money.converter.JodaMoneyConverter;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.converters.MoneyReadConverter;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.converters.MoneyWriteConverter;
+import com.mongodb.DBObject;
+import com.thoughtworks.xstream.XStream;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money conversions every persisted order and event goes through: the mongo read and write converters of
+ * the order documents and the XStream round trip of the event serializer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MoneyConverterBenchmark {
+    private final MoneyWriteConverter writeConverter = new MoneyWriteConverter();
+    private final MoneyReadConverter readConverter = new MoneyReadConverter();
+    private XStream xStream;
+    private BigMoney money;
+    private DBObject document;
+    private String xml;
+
+    @Setup
+    public void setUp() {
+        money = BigMoney.of(CurrencyUnit.of("BTC"), new BigDecimal("12.34567891"));
+
+        xStream = new XStream();
+        xStream.registerConverter(new JodaMoneyConverter());
+
+        document = writeConverter.convert(money);
+        xml = xStream.toXML(money);
+    }
+
+    @Benchmark
+    public DBObject mongoWrite() {
+        return writeConverter.convert(money);
+    }
+
+    @Benchmark
+    public BigMoney mongoRead() {
+        return readConverter.convert(document);
+    }
+
+    @Benchmark
+    public BigMoney mongoRoundTrip() {
+        return readConverter.convert(writeConverter.convert(money));
+    }
+
+    @Benchmark
+    public String xStreamWrite() {
+        return xStream.toXML(money);
+    }
+
+    @Benchmark
+    public Object xStreamRead() {
+        return xStream.fromXML(xml);
+    }
+
+    @Benchmark
+    public Object xStreamRoundTrip() {
+        return xStream.fromXML(xStream.toXML(money));
+    }
+}
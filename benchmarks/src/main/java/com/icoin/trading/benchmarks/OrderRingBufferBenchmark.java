@@ -0,0 +1,66 @@
+package com.icoin.trading.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.tradeengine.application.command.order.dispatch.OrderRingBuffer;
+import com.icoin.trading.tradeengine.application.command.order.dispatch.WaitStrategies;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enqueue and dequeue of the order ring buffer the queued trade executor sequences every order book with:
+ * a batch of orders is published and drained again in one invocation, so the score is per order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OrderRingBufferBenchmark {
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"BUSY_SPIN", "YIELDING", "BLOCKING"})
+    public String waitStrategy;
+
+    private OrderRingBuffer ringBuffer;
+    private final Order[] orders = new Order[BATCH_SIZE];
+    private final List<Order> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+
+    @Setup
+    public void setUp() {
+        ringBuffer = new OrderRingBuffer(new OrderBookId(), 1024, WaitStrategies.valueOf(waitStrategy).create());
+
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = new Order(i % 2 == 0 ? OrderType.BUY : OrderType.SELL);
+            orders[i].setPrimaryKey(new OrderId().toString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int publishAndDrain() throws InterruptedException {
+        for (Order order : orders) {
+            ringBuffer.publish(order);
+        }
+
+        batch.clear();
+        return ringBuffer.drain(batch, BATCH_SIZE);
+    }
+}
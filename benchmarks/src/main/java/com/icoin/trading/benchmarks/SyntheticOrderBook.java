@@ -0,0 +1,191 @@
+package com.icoin.trading.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteBuyOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteSellOrderCommand;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.tradeengine.application.command.order.BuyOrderExecutor;
+import com.icoin.trading.tradeengine.application.command.order.OrderExecutorHelper;
+import com.icoin.trading.tradeengine.application.command.order.SellOrderExecutor;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
+import com.icoin.trading.tradeengine.domain.model.commission.DefaultCommissionPolicyFactory;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.axonframework.repository.Repository;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * One order book with depth resting orders of 1 BTC a price level apart on one side, and a taker on the other
+ * side sweeping the best levels. The executors run against the resident order book with the orders kept in
+ * an {@link InMemoryOrderRepository}, {@link #reset()} puts every order back before the next match.
+ */
+public class SyntheticOrderBook {
+    private static final CurrencyUnit BTC = CurrencyUnit.of("BTC");
+    private static final CurrencyUnit CNY = CurrencyUnit.of("CNY");
+    private static final BigDecimal BEST_PRICE = new BigDecimal("3000.000");
+    private static final BigDecimal TICK = new BigDecimal("0.010");
+
+    private final OrderBookId orderBookId = new OrderBookId();
+    private final CurrencyPair currencyPair = new CurrencyPair(BTC, CNY);
+    private final InMemoryOrderRepository orders = new InMemoryOrderRepository();
+    private final InMemoryOrderBooks orderBooks = new InMemoryOrderBooks(orders.getRepository());
+    private final List<Order> resting = Lists.newArrayList();
+    private final List<BigMoney> restingCommissions = Lists.newArrayList();
+    private final OrderType takerSide;
+    private final Order taker;
+    private final BigMoney takerCommission;
+    private final BuyOrderExecutor buyOrderExecutor = new BuyOrderExecutor();
+    private final SellOrderExecutor sellOrderExecutor = new SellOrderExecutor();
+    private OrderBook orderBook;
+
+    public SyntheticOrderBook(OrderType takerSide, int depth, int sweep) {
+        notNull(takerSide);
+        isTrue(depth > 0, "Depth should be greater than 0!");
+        isTrue(sweep > 0 && sweep <= depth, "Sweep should be between 1 and depth!");
+        this.takerSide = takerSide;
+
+        final OrderType makerSide = takerSide == OrderType.BUY ? OrderType.SELL : OrderType.BUY;
+        final Date placeDate = new Date(System.currentTimeMillis() - 60000L);
+        for (int i = 0; i < depth; i++) {
+            final Order order = createOrder(makerSide, priceOf(makerSide, i), BigMoney.of(BTC, BigDecimal.ONE), placeDate);
+            resting.add(order);
+            restingCommissions.add(order.getLeftCommission());
+        }
+
+        taker = createOrder(takerSide,
+                priceOf(makerSide, sweep - 1),
+                BigMoney.of(BTC, BigDecimal.valueOf(sweep)),
+                new Date(placeDate.getTime() + 1000L));
+        takerCommission = taker.getLeftCommission();
+
+        final OrderExecutorHelper helper = new OrderExecutorHelper();
+        helper.setOrderRepository(orders.getRepository());
+        helper.setCommissionPolicyFactory(new DefaultCommissionPolicyFactory());
+        helper.setInMemoryOrderBooks(orderBooks);
+
+        final Repository<OrderBook> orderBookRepository = new Repository<OrderBook>() {
+            @Override
+            public OrderBook load(Object aggregateIdentifier, Long expectedVersion) {
+                return orderBook;
+            }
+
+            @Override
+            public OrderBook load(Object aggregateIdentifier) {
+                return orderBook;
+            }
+
+            @Override
+            public void add(OrderBook aggregate) {
+                orderBook = aggregate;
+            }
+        };
+
+        buyOrderExecutor.setOrderExecutorHelper(helper);
+        buyOrderExecutor.setOrderBookRepository(orderBookRepository);
+        sellOrderExecutor.setOrderExecutorHelper(helper);
+        sellOrderExecutor.setOrderBookRepository(orderBookRepository);
+
+        reset();
+    }
+
+    //sell levels up from the best price, buy levels down from it
+    private BigMoney priceOf(OrderType side, int level) {
+        final BigDecimal offset = TICK.multiply(BigDecimal.valueOf(level));
+        return BigMoney.of(CNY, side == OrderType.SELL ? BEST_PRICE.add(offset) : BEST_PRICE.subtract(offset));
+    }
+
+    private Order createOrder(OrderType type, BigMoney price, BigMoney amount, Date placeDate) {
+        final Order order = new Order(type);
+        order.setPrimaryKey(new OrderId().toString());
+        order.setOrderBookId(orderBookId);
+        order.setCurrencyPair(currencyPair);
+        order.setTransactionId(new TransactionId());
+        order.setPortfolioId(new PortfolioId());
+        order.setItemPrice(price);
+        order.setTradeAmount(amount);
+        order.setItemRemaining(amount);
+        order.setPlaceDate(placeDate);
+        //more than the commissions of any fill, sell commissions are in BTC and buy commissions in CNY
+        order.setLeftCommission(type == OrderType.SELL
+                ? BigMoney.of(BTC, BigDecimal.TEN)
+                : BigMoney.of(CNY, BigDecimal.valueOf(100000)));
+        return order;
+    }
+
+    /**
+     * Puts every order back to pending and reloads the resident order book, the order book aggregate is
+     * created again so that no events pile up.
+     */
+    public void reset() {
+        orders.clear();
+        for (int i = 0; i < resting.size(); i++) {
+            reset(resting.get(i), restingCommissions.get(i));
+        }
+        reset(taker, takerCommission);
+
+        orderBooks.rebuild(ImmutableList.of(orderBookId));
+        orderBook = new OrderBook(orderBookId, currencyPair);
+    }
+
+    private void reset(Order order, BigMoney leftCommission) {
+        order.setItemRemaining(order.getTradeAmount());
+        order.setLeftCommission(leftCommission);
+        order.setOrderStatus(OrderStatus.PENDING);
+        order.setCompleteDate(null);
+        order.setLastTradedTime(null);
+        orders.put(order);
+    }
+
+    /**
+     * Matches the taker against the resting orders.
+     *
+     * @return the aggregate with the trade executed events of the match
+     */
+    public OrderBook match() {
+        if (takerSide == OrderType.BUY) {
+            buyOrderExecutor.executeBuyOrder(new ExecuteBuyOrderCommand(
+                    new OrderId(taker.getPrimaryKey()),
+                    taker.getPortfolioId(),
+                    orderBookId,
+                    taker.getTransactionId(),
+                    taker.getTradeAmount(),
+                    taker.getItemPrice(),
+                    taker.getPlaceDate()));
+        } else {
+            sellOrderExecutor.executeSellOrder(new ExecuteSellOrderCommand(
+                    new OrderId(taker.getPrimaryKey()),
+                    taker.getPortfolioId(),
+                    orderBookId,
+                    taker.getTransactionId(),
+                    taker.getTradeAmount(),
+                    taker.getItemPrice(),
+                    taker.getPlaceDate()));
+        }
+        return orderBook;
+    }
+
+    public int getTradedOrders() {
+        int traded = 0;
+        for (Order order : resting) {
+            if (order.getOrderStatus() == OrderStatus.DONE) {
+                traded++;
+            }
+        }
+        return traded;
+    }
+}
@@ -0,0 +1,37 @@
+package com.icoin.trading.api.tradeengine.command.order;
+
+import com.homhon.base.command.CommandSupport;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import org.axonframework.commandhandling.annotation.TargetAggregateIdentifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Executes all the queued orders of one order book in one order book load and one unit of work.
+ */
+public class ExecuteOrdersCommand extends CommandSupport<ExecuteOrdersCommand> {
+
+    @TargetAggregateIdentifier
+    private OrderBookId orderBookId;
+
+    private List<ExecuteOrderCommand> orders;
+
+    public ExecuteOrdersCommand(OrderBookId orderBookId, List<? extends ExecuteOrderCommand> orders) {
+        this.orderBookId = orderBookId;
+        this.orders = Collections.unmodifiableList(new ArrayList<ExecuteOrderCommand>(orders));
+    }
+
+    public OrderBookId getOrderBookId() {
+        return orderBookId;
+    }
+
+    public List<ExecuteOrderCommand> getOrders() {
+        return orders;
+    }
+
+    public int size() {
+        return orders.size();
+    }
+}
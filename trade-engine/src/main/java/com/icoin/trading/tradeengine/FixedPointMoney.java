@@ -0,0 +1,141 @@
+package com.icoin.trading.tradeengine;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Fixed point arithmetic for the matching path. An amount is the long of the minor units of its currency, the
+ * same long stored in mongo by {@link MoneyUtils#convertToLong(BigMoney)}. Money with more decimals than its
+ * currency has, or of a currency without decimal places, is not scaled and goes the BigMoney way.
+ */
+public abstract class FixedPointMoney {
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    public static boolean isScaled(BigMoney money) {
+        notNull(money);
+        final int decimalPlaces = money.getCurrencyUnit().getDecimalPlaces();
+        return decimalPlaces >= 0
+                && decimalPlaces < POWERS_OF_TEN.length
+                && money.getScale() <= decimalPlaces;
+    }
+
+    /**
+     * @return the minor units of a scaled money
+     */
+    public static long toScaled(BigMoney money) {
+        isTrue(isScaled(money), "Money should be scaled to its currency!");
+        return money.getAmount().scaleByPowerOfTen(money.getCurrencyUnit().getDecimalPlaces()).longValueExact();
+    }
+
+    public static BigMoney toBigMoney(CurrencyUnit currency, long scaled) {
+        return BigMoney.ofMinor(currency, scaled);
+    }
+
+    public static long getMultiplier(CurrencyUnit currency) {
+        notNull(currency);
+        return powerOfTen(currency.getDecimalPlaces());
+    }
+
+    public static long powerOfTen(int exponent) {
+        if (exponent < 0 || exponent >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Exponent out of range: " + exponent);
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+
+    /**
+     * Same as {@link MoneyUtils#convertTo(BigMoney, BigMoney)}: amount times price in the price currency,
+     * rounded half even.
+     */
+    public static BigMoney multiply(BigMoney amount, BigMoney price) {
+        notNull(price);
+        return multiply(amount, price, isScaled(price) ? toScaled(price) : 0L);
+    }
+
+    /**
+     * Same as {@link #multiply(BigMoney, BigMoney)} with the scaled price taken already, e.g. kept by the order.
+     */
+    public static BigMoney multiply(BigMoney amount, BigMoney price, long scaledPrice) {
+        notNull(amount);
+        notNull(price);
+
+        if (!isScaled(amount) || !isScaled(price)) {
+            return MoneyUtils.convertTo(amount, price).toBigMoney();
+        }
+
+        final long scaledAmount = toScaled(amount);
+        isTrue(scaledAmount > 0, "Amount should be greater than zero");
+        isTrue(scaledPrice > 0, "Rate should be greater than zero");
+
+        return toBigMoney(price.getCurrencyUnit(),
+                multiplyDivide(scaledAmount, scaledPrice, getMultiplier(amount.getCurrencyUnit())));
+    }
+
+    /**
+     * left * right / divisor rounded half even, falls back to BigDecimal when the product overflows.
+     */
+    public static long multiplyDivide(long left, long right, long divisor) {
+        isTrue(divisor > 0, "Divisor should be greater than zero");
+
+        final long product = left * right;
+        if (overflows(left, right, product)) {
+            return BigDecimal.valueOf(left)
+                    .multiply(BigDecimal.valueOf(right))
+                    .divide(BigDecimal.valueOf(divisor), 0, RoundingMode.HALF_EVEN)
+                    .longValueExact();
+        }
+        return divide(product, divisor);
+    }
+
+    /**
+     * first * second * third / divisor rounded half even, rounded once only.
+     */
+    public static long multiplyDivide(long first, long second, long third, long divisor) {
+        isTrue(divisor > 0, "Divisor should be greater than zero");
+
+        final long product = first * second;
+        if (!overflows(first, second, product)) {
+            final long total = product * third;
+            if (!overflows(product, third, total)) {
+                return divide(total, divisor);
+            }
+        }
+
+        return BigDecimal.valueOf(first)
+                .multiply(BigDecimal.valueOf(second))
+                .multiply(BigDecimal.valueOf(third))
+                .divide(BigDecimal.valueOf(divisor), 0, RoundingMode.HALF_EVEN)
+                .longValueExact();
+    }
+
+    private static boolean overflows(long left, long right, long product) {
+        if (((Math.abs(left) | Math.abs(right)) >>> 31) == 0) {
+            return false;
+        }
+        return (right != 0 && product / right != left) || (left == Long.MIN_VALUE && right == -1);
+    }
+
+    private static long divide(long dividend, long divisor) {
+        final long quotient = dividend / divisor;
+        final long remainder = Math.abs(dividend % divisor);
+        final long rest = divisor - remainder;
+
+        if (remainder > rest || (remainder == rest && (quotient & 1) != 0)) {
+            return dividend < 0 ? quotient - 1 : quotient + 1;
+        }
+        return quotient;
+    }
+}
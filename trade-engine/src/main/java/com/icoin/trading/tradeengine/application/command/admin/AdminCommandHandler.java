@@ -1,6 +1,9 @@
 package com.icoin.trading.tradeengine.application.command.admin;
 
 import com.google.common.collect.ImmutableList;
+import com.icoin.axonsupport.infrastructure.eventstore.EventStorePartition;
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import com.icoin.axonsupport.infrastructure.mongo.SagaTemplate;
 import com.icoin.trading.api.tradeengine.command.admin.DisabledTradingCommand;
 import com.icoin.trading.api.tradeengine.command.admin.EnsureCqrsIndexesCommand;
 import com.icoin.trading.api.tradeengine.command.admin.ReinitializeOrderBookTradingExecutorsCommand;
@@ -22,7 +25,6 @@ import com.icoin.trading.users.domain.model.function.UserPasswordReset;
 import com.icoin.trading.users.domain.model.social.SocialConnection;
 import com.icoin.trading.users.query.UserEntry;
 import org.axonframework.commandhandling.annotation.CommandHandler;
-import org.axonframework.eventstore.mongo.MongoEventStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Component;
@@ -54,13 +56,13 @@ public class AdminCommandHandler {
             UserPasswordReset.class,
             SocialConnection.class);
 
-    private MongoEventStore eventStore;
+    private PartitionedEventStore eventStore;
 
     private MongoTemplate mongoTemplate;
     private org.axonframework.saga.repository.mongo.MongoTemplate systemAxonSagaMongo;
-    private org.axonframework.eventstore.mongo.MongoTemplate systemAxonMongo;
     private TradeExecutor tradeExecutor;
     private TradingSystemStatusHolder tradingSystemStatusHolder;
+    private OrderIndexManager orderIndexManager;
 
     @CommandHandler
     public void handleReInstallDataBase(ReinstallDataBaseCommand command) {
@@ -72,7 +74,7 @@ public class AdminCommandHandler {
     }
 
     /**
-     * this is to ensure event store relating collection indexes. In case that the collections
+     * this is to ensure event store relating collection indexes and the order matching indexes. In case that the collections
      * are not created at very first, it should be invoked after some events generated in.
      *
      * @param command
@@ -80,6 +82,11 @@ public class AdminCommandHandler {
     @CommandHandler
     public void handleEnsureCqrsIndexes(EnsureCqrsIndexesCommand command) {
         eventStore.ensureIndexes();
+        if (systemAxonSagaMongo instanceof SagaTemplate) {
+            ((SagaTemplate) systemAxonSagaMongo).ensureIndexes();
+        }
+        orderIndexManager.ensureIndexes();
+        orderIndexManager.explainQueries();
     }
 
     @CommandHandler
@@ -103,13 +110,18 @@ public class AdminCommandHandler {
     }
 
     private void dropCqrsInfraTables() {
-        systemAxonMongo.domainEventCollection().drop();
-        systemAxonMongo.snapshotEventCollection().drop();
+        for (EventStorePartition partition : eventStore.getPartitions()) {
+            partition.getTemplate().domainEventCollection().drop();
+            partition.getTemplate().snapshotEventCollection().drop();
+            for (String archive : partition.archiveCollectionNames()) {
+                partition.archiveCollection(archive).drop();
+            }
+        }
         systemAxonSagaMongo.sagaCollection().drop();
     }
 
     @Autowired
-    public void setEventStore(MongoEventStore eventStore) {
+    public void setEventStore(PartitionedEventStore eventStore) {
         this.eventStore = eventStore;
     }
 
@@ -123,11 +135,6 @@ public class AdminCommandHandler {
         this.systemAxonSagaMongo = systemAxonSagaMongo;
     }
 
-    @Autowired
-    public void setSystemAxonMongo(org.axonframework.eventstore.mongo.MongoTemplate systemAxonMongo) {
-        this.systemAxonMongo = systemAxonMongo;
-    }
-
     @Autowired
     public void setTradeExecutor(TradeExecutor tradeExecutor) {
         this.tradeExecutor = tradeExecutor;
@@ -137,4 +144,9 @@ public class AdminCommandHandler {
     public void setTradingSystemStatusHolder(TradingSystemStatusHolder tradingSystemStatusHolder) {
         this.tradingSystemStatusHolder = tradingSystemStatusHolder;
     }
+
+    @Autowired
+    public void setOrderIndexManager(OrderIndexManager orderIndexManager) {
+        this.orderIndexManager = orderIndexManager;
+    }
 }
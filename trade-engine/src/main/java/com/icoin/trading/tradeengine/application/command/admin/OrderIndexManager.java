@@ -0,0 +1,192 @@
+package com.icoin.trading.tradeengine.application.command.admin;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compound indexes of the order matching queries, equality keys first, then the sort keys which the range
+ * criteria are on as well. The indexes select and sort the orders, they do not cover the queries: whole orders
+ * are read, so the documents are fetched. The plan of every matching query is explained at startup, a query
+ * not using its index is logged as an error.
+ */
+@Component
+public class OrderIndexManager {
+    private static Logger logger = LoggerFactory.getLogger(OrderIndexManager.class);
+
+    private static final String PRICE_TIME_INDEX = "order_book_type_status_price_time_currency_idx";
+    //the price time index before the currency was added, dropped as it is replaced
+    private static final String LEGACY_PRICE_TIME_INDEX = "order_book_type_status_price_time_idx";
+    private static final String TYPE_PLACE_DATE_INDEX = "order_book_type_status_place_date_idx";
+    private static final String STATUS_PLACE_DATE_INDEX = "order_book_status_place_date_idx";
+
+    //pending sell/buy orders by price time, lowest sell and highest buy,
+    //the price currency last so that it is filtered on the index keys before any order is fetched
+    private static final Index priceTimeIndex = new Index()
+            .on("orderBookId", Sort.Direction.ASC)
+            .on("orderType", Sort.Direction.ASC)
+            .on("orderStatus", Sort.Direction.ASC)
+            .on("itemPrice.amount", Sort.Direction.ASC)
+            .on("placeDate", Sort.Direction.ASC)
+            .on("itemRemaining.amount", Sort.Direction.DESC)
+            .on("itemPrice.currency", Sort.Direction.ASC)
+            .named(PRICE_TIME_INDEX);
+
+    //placed pending orders after
+    private static final Index typePlaceDateIndex = new Index()
+            .on("orderBookId", Sort.Direction.ASC)
+            .on("orderType", Sort.Direction.ASC)
+            .on("orderStatus", Sort.Direction.ASC)
+            .on("placeDate", Sort.Direction.ASC)
+            .named(TYPE_PLACE_DATE_INDEX);
+
+    //all pending orders of an order book, loaded into the resident order book
+    private static final Index statusPlaceDateIndex = new Index()
+            .on("orderBookId", Sort.Direction.ASC)
+            .on("orderStatus", Sort.Direction.ASC)
+            .on("placeDate", Sort.Direction.ASC)
+            .named(STATUS_PLACE_DATE_INDEX);
+
+    private static final List<Index> indexes =
+            ImmutableList.of(priceTimeIndex, typePlaceDateIndex, statusPlaceDateIndex);
+
+    private MongoTemplate mongoTemplate;
+    private boolean verifyOnStartup = true;
+
+    @PostConstruct
+    public void verifyOnStartup() {
+        if (!verifyOnStartup) {
+            return;
+        }
+
+        try {
+            ensureIndexes();
+            explainQueries();
+        } catch (RuntimeException e) {
+            //mongo not reachable yet, should not stop the trade engine from starting
+            logger.error("verifying order indexes failed", e);
+        }
+    }
+
+    public void ensureIndexes() {
+        final IndexOperations indexOperations = mongoTemplate.indexOps(Order.class);
+        for (Index index : indexes) {
+            indexOperations.ensureIndex(index);
+        }
+
+        final Set<String> names = Sets.newHashSet();
+        for (IndexInfo indexInfo : indexOperations.getIndexInfo()) {
+            names.add(indexInfo.getName());
+        }
+
+        if (names.remove(LEGACY_PRICE_TIME_INDEX)) {
+            indexOperations.dropIndex(LEGACY_PRICE_TIME_INDEX);
+            logger.info("replaced order index {} by {}", LEGACY_PRICE_TIME_INDEX, PRICE_TIME_INDEX);
+        }
+
+        for (String name : ImmutableList.of(PRICE_TIME_INDEX, TYPE_PLACE_DATE_INDEX, STATUS_PLACE_DATE_INDEX)) {
+            if (!names.contains(name)) {
+                logger.error("order index {} missing after ensuring, indexes are {}", name, names);
+            }
+        }
+        logger.info("order indexes ensured: {}", names);
+    }
+
+    /**
+     * Explains each matching query with the criteria shape of the repository, values do not change the plan.
+     *
+     * @return count of queries not using an index
+     */
+    public int explainQueries() {
+        final DBCollection collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Order.class));
+        int scans = 0;
+
+        scans += explain(collection, "findPendingSellOrdersByPriceTime",
+                pending(OrderType.SELL)
+                        .append("itemPrice.amount", new BasicDBObject("$lte", 0L))
+                        .append("itemPrice.currency", "")
+                        .append("placeDate", new BasicDBObject("$lte", new Date())),
+                new BasicDBObject("itemPrice.amount", 1).append("placeDate", 1).append("itemRemaining.amount", -1),
+                100);
+
+        scans += explain(collection, "findPendingBuyOrdersByPriceTime",
+                pending(OrderType.BUY)
+                        .append("itemPrice.amount", new BasicDBObject("$gte", 0L))
+                        .append("itemPrice.currency", "")
+                        .append("placeDate", new BasicDBObject("$lte", new Date())),
+                new BasicDBObject("itemPrice.amount", 1).append("placeDate", 1).append("itemRemaining.amount", -1),
+                100);
+
+        scans += explain(collection, "findLowestPricePendingSellOrder",
+                pending(OrderType.SELL),
+                new BasicDBObject("itemPrice.amount", 1),
+                1);
+
+        scans += explain(collection, "findHighestPricePendingBuyOrder",
+                pending(OrderType.BUY),
+                new BasicDBObject("itemPrice.amount", -1),
+                1);
+
+        scans += explain(collection, "findPlacedPendingOrdersAfter",
+                pending(OrderType.SELL).append("placeDate", new BasicDBObject("$lte", new Date())),
+                new BasicDBObject("placeDate", 1),
+                100);
+
+        scans += explain(collection, "findPendingOrders",
+                new BasicDBObject("orderBookId", "").append("orderStatus", OrderStatus.PENDING.name()),
+                new BasicDBObject("placeDate", 1),
+                0);
+
+        return scans;
+    }
+
+    private BasicDBObject pending(OrderType orderType) {
+        return new BasicDBObject("orderBookId", "")
+                .append("orderStatus", OrderStatus.PENDING.name())
+                .append("orderType", orderType.name());
+    }
+
+    private int explain(DBCollection collection, String queryName, DBObject query, DBObject sort, int limit) {
+        final DBObject plan = collection.find(query).sort(sort).limit(limit).explain();
+        final String description = String.valueOf(plan);
+
+        //BasicCursor before mongo 3.0, COLLSCAN stage from then on
+        if (description.contains("BasicCursor") || description.contains("COLLSCAN")) {
+            logger.error("order query {} scans the whole collection, plan: {}", queryName, plan);
+            return 1;
+        }
+
+        logger.info("order query {} explained: {}", queryName, plan.get("cursor") != null ? plan.get("cursor") : plan);
+        return 0;
+    }
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Value("${trading.mongo.verifyIndexesOnStartup:true}")
+    public void setVerifyOnStartup(boolean verifyOnStartup) {
+        this.verifyOnStartup = verifyOnStartup;
+    }
+}
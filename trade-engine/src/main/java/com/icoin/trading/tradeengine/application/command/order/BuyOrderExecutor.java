@@ -3,6 +3,8 @@ package com.icoin.trading.tradeengine.application.command.order;
 import com.icoin.trading.api.tradeengine.command.order.ExecuteBuyOrderCommand;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.infrastructure.profiling.TradeLatencyTracer;
 import org.axonframework.commandhandling.annotation.CommandHandler;
 import org.axonframework.repository.Repository;
 import org.joda.money.BigMoney;
@@ -16,7 +18,9 @@ import java.math.RoundingMode;
 import java.util.List;
 
 import static com.homhon.util.Collections.isEmpty;
-import static com.icoin.trading.tradeengine.MoneyUtils.convertTo;
+import static com.icoin.trading.tradeengine.FixedPointMoney.multiply;
+import static com.icoin.trading.tradeengine.MoneyUtils.convertToLong;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.MATCHED;
 import static org.joda.money.MoneyUtils.min;
 
 /**
@@ -30,6 +34,7 @@ import static org.joda.money.MoneyUtils.min;
 public class BuyOrderExecutor {
     private static Logger logger = LoggerFactory.getLogger(BuyOrderExecutor.class);
     private OrderExecutorHelper orderExecutorHelper;
+    private TradeLatencyTracer tradeLatencyTracer;
     private Repository<OrderBook> orderBookRepository;
 
     @SuppressWarnings("unused")
@@ -39,12 +44,19 @@ public class BuyOrderExecutor {
             return;
         }
 
-        executeBuying(command);
+        OrderBook orderBook = orderBookRepository.load(command.getOrderBookId());
+        executeBuying(orderBook, command);
     }
 
-    private void executeBuying(ExecuteBuyOrderCommand buyCommand) {
-        OrderBook orderBook = orderBookRepository.load(buyCommand.getOrderBookId());
+    void executeBuying(OrderBook orderBook, ExecuteBuyOrderCommand buyCommand) {
+        executeBuying0(orderBook, buyCommand);
 
+        if (tradeLatencyTracer != null) {
+            tradeLatencyTracer.record(buyCommand.getTransactionId(), buyCommand.getOrderBookId(), MATCHED);
+        }
+    }
+
+    private void executeBuying0(OrderBook orderBook, ExecuteBuyOrderCommand buyCommand) {
         //buying price >= current buying price
         if (orderBook.getHighestBuyPrice().compareTo(buyCommand.getItemPrice()) >= 0) {
             return;
@@ -56,6 +68,9 @@ public class BuyOrderExecutor {
         //buying price >= than the current highest selling  price
         logger.info("Executing Buying order {}", buyCommand);
 
+        //the price as the orders keep it, compared on longs in the loop
+        final long buyPrice = convertToLong(buyCommand.getItemPrice());
+
         boolean done = true;
         do {
             final List<Order> sellOrders =
@@ -72,17 +87,23 @@ public class BuyOrderExecutor {
 
             for (Order sellOrder : sellOrders) {
                 //should not happen here, coz the repo does not return the right result
-                if (sellOrder.getItemPrice().compareTo(buyCommand.getItemPrice()) > 0) {
+                if (sellOrder.getScaledItemPrice() > buyPrice) {
                     logger.warn("Strange here, why sell orders from repo have price greater than current buy price!");
                     break;
                 }
 
-                final Order buyOrder = orderExecutorHelper.findBuyOrder(buyCommand.getOrderId());
+                final Order buyOrder = orderExecutorHelper.findBuyOrder(buyCommand.getOrderBookId(), buyCommand.getOrderId());
+
+                //already fully traded, e.g. as the counter order of an earlier order in the same batch
+                if (buyOrder == null || buyOrder.getOrderStatus() == OrderStatus.DONE) {
+                    done = true;
+                    break;
+                }
 
                 BigMoney matchedTradePrice = sellOrder.getItemPrice();
                 BigMoney matchedTradeAmount = min(sellOrder.getItemRemaining(), buyOrder.getItemRemaining());
 
-                final BigMoney executedMoney = convertTo(matchedTradeAmount, matchedTradePrice).toBigMoney();
+                final BigMoney executedMoney = multiply(matchedTradeAmount, matchedTradePrice, sellOrder.getScaledItemPrice());
 
                 BigMoney buyCommission = orderExecutorHelper.calcExecutedBuyCommission(buyOrder, matchedTradePrice, matchedTradeAmount);
                 BigMoney sellCommission = orderExecutorHelper.calcExecutedSellCommission(sellOrder, matchedTradePrice, matchedTradeAmount);
@@ -90,21 +111,22 @@ public class BuyOrderExecutor {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Executing orders with amount {}, price {}, buy commission {}, sell commission {}, total money {}: highest buying order {}, lowest selling order {}",
                             matchedTradeAmount, matchedTradePrice, buyCommission, sellCommission, executedMoney, sellOrder, buyOrder);
-                    orderBook.executeBuying(
-                            matchedTradeAmount,
-                            matchedTradePrice,
-                            executedMoney,
-                            buyOrder.getPrimaryKey(),
-                            sellOrder.getPrimaryKey(),
-                            buyCommission,
-                            sellCommission,
-                            buyOrder.getTransactionId(),
-                            sellOrder.getTransactionId(),
-                            buyOrder.getPortfolioId(),
-                            sellOrder.getPortfolioId(),
-                            buyCommand.getPlaceDate());
                 }
 
+                orderBook.executeBuying(
+                        matchedTradeAmount,
+                        matchedTradePrice,
+                        executedMoney,
+                        buyOrder.getPrimaryKey(),
+                        sellOrder.getPrimaryKey(),
+                        buyCommission,
+                        sellCommission,
+                        buyOrder.getTransactionId(),
+                        sellOrder.getTransactionId(),
+                        buyOrder.getPortfolioId(),
+                        sellOrder.getPortfolioId(),
+                        buyCommand.getPlaceDate());
+
                 orderExecutorHelper.recordTraded(
                         buyOrder,
                         sellOrder,
@@ -130,6 +152,11 @@ public class BuyOrderExecutor {
     }
 
 
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
+
     @Resource(name = "orderBookRepository")
     public void setOrderBookRepository(Repository<OrderBook> orderBookRepository) {
         this.orderBookRepository = orderBookRepository;
@@ -0,0 +1,65 @@
+package com.icoin.trading.tradeengine.application.command.order;
+
+import com.icoin.trading.api.tradeengine.command.order.ExecuteBuyOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrdersCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteSellOrderCommand;
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import org.axonframework.commandhandling.annotation.CommandHandler;
+import org.axonframework.repository.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+
+/**
+ * Executes a batch of queued orders of one order book against a single order book load, all trade events
+ * are committed in the unit of work of the batch command. An order failing rolls back the whole batch, the
+ * trade executor then executes the orders of the batch one by one.
+ */
+@Component
+public class OrderBatchExecutor {
+    private static Logger logger = LoggerFactory.getLogger(OrderBatchExecutor.class);
+    private Repository<OrderBook> orderBookRepository;
+    private BuyOrderExecutor buyOrderExecutor;
+    private SellOrderExecutor sellOrderExecutor;
+
+    @SuppressWarnings("unused")
+    @CommandHandler
+    public void executeOrders(ExecuteOrdersCommand command) {
+        if (command == null || command.size() == 0) {
+            return;
+        }
+
+        OrderBook orderBook = orderBookRepository.load(command.getOrderBookId());
+        logger.info("Executing {} orders of order book {} in one batch", command.size(), command.getOrderBookId());
+
+        //an order failing fails the whole batch, its partial trades must not commit with the other orders
+        for (ExecuteOrderCommand order : command.getOrders()) {
+            if (order instanceof ExecuteBuyOrderCommand) {
+                buyOrderExecutor.executeBuying(orderBook, (ExecuteBuyOrderCommand) order);
+            } else if (order instanceof ExecuteSellOrderCommand) {
+                sellOrderExecutor.executeSelling(orderBook, (ExecuteSellOrderCommand) order);
+            } else {
+                logger.warn("order command not supported for executing, command:{}", order);
+            }
+        }
+    }
+
+    @Autowired
+    public void setBuyOrderExecutor(BuyOrderExecutor buyOrderExecutor) {
+        this.buyOrderExecutor = buyOrderExecutor;
+    }
+
+    @Autowired
+    public void setSellOrderExecutor(SellOrderExecutor sellOrderExecutor) {
+        this.sellOrderExecutor = sellOrderExecutor;
+    }
+
+    @Resource(name = "orderBookRepository")
+    public void setOrderBookRepository(Repository<OrderBook> orderBookRepository) {
+        this.orderBookRepository = orderBookRepository;
+    }
+}
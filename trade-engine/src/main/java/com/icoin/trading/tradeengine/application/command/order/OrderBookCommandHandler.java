@@ -22,14 +22,16 @@ import com.icoin.trading.api.tradeengine.command.order.CreateOrderBookCommand;
 import com.icoin.trading.api.tradeengine.command.order.CreateOrderCommand;
 import com.icoin.trading.api.tradeengine.command.order.CreateSellOrderCommand;
 import com.icoin.trading.api.tradeengine.command.order.RefreshOrderBookPriceCommand;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
 import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
 import com.icoin.trading.tradeengine.domain.model.order.OrderType;
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
-import org.apache.commons.lang3.builder.ToStringStyle;
 import org.axonframework.commandhandling.annotation.CommandHandler;
 import org.axonframework.repository.Repository;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +50,7 @@ public class OrderBookCommandHandler {
     private OrderRepository orderRepository;
     private TradeExecutor tradeExecutor;
     private OrderExecutorHelper orderExecutorHelper;
+    private InMemoryOrderBooks inMemoryOrderBooks;
 
     @SuppressWarnings("unused")
     @CommandHandler
@@ -64,7 +67,7 @@ public class OrderBookCommandHandler {
                 command.getTotalCommission(),
                 command.getPortfolioId(),
                 command.getPlaceDate());
-        tradeExecutor.execute(buyOrder);
+        executeAfterCommit(buyOrder);
     }
 
     private Order createBuyOrder(CreateBuyOrderCommand command, CurrencyPair currencyPair) {
@@ -87,7 +90,7 @@ public class OrderBookCommandHandler {
                 command.getPortfolioId(),
                 command.getPlaceDate());
 
-        tradeExecutor.execute(sellOrder);
+        executeAfterCommit(sellOrder);
     }
 
     @SuppressWarnings("unused")
@@ -99,9 +102,35 @@ public class OrderBookCommandHandler {
             logger.warn("Orderbook is null for {}", command.getOrderBookId());
             return;
         }
-        logger.info("Before refresh, order book status is: " + ReflectionToStringBuilder.toString(orderBook, ToStringStyle.SHORT_PREFIX_STYLE));
+        if (logger.isInfoEnabled()) {
+            logger.info("Before refresh, order book status is: {}", orderBook.describe());
+        }
         orderExecutorHelper.refresh(orderBook);
-        logger.info("After refresh, order book status is: " + ReflectionToStringBuilder.toString(orderBook, ToStringStyle.SHORT_PREFIX_STYLE));
+        if (logger.isInfoEnabled()) {
+            logger.info("After refresh, order book status is: {}", orderBook.describe());
+        }
+    }
+
+    //the order joins the resident order book and is executed only once its placement is committed
+    private void executeAfterCommit(final Order order) {
+        if (!CurrentUnitOfWork.isStarted()) {
+            execute(order);
+            return;
+        }
+
+        CurrentUnitOfWork.get().registerListener(new UnitOfWorkListenerAdapter() {
+            @Override
+            public void afterCommit(UnitOfWork unitOfWork) {
+                execute(order);
+            }
+        });
+    }
+
+    private void execute(Order order) {
+        if (inMemoryOrderBooks != null) {
+            inMemoryOrderBooks.add(order);
+        }
+        tradeExecutor.execute(order);
     }
 
     private Order createSellOrder(CreateSellOrderCommand command, CurrencyPair currencyPair) {
@@ -153,4 +182,9 @@ public class OrderBookCommandHandler {
     public void setOrderExecutorHelper(OrderExecutorHelper orderExecutorHelper) {
         this.orderExecutorHelper = orderExecutorHelper;
     }
+
+    @Autowired
+    public void setInMemoryOrderBooks(InMemoryOrderBooks inMemoryOrderBooks) {
+        this.inMemoryOrderBooks = inMemoryOrderBooks;
+    }
 }
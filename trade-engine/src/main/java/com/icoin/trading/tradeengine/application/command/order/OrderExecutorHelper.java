@@ -4,11 +4,15 @@ import com.icoin.trading.api.coin.domain.CurrencyPair;
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.domain.OrderId;
 import com.icoin.trading.tradeengine.Constants;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBook;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
+import com.icoin.trading.tradeengine.application.command.order.book.OrderWriteBehind;
 import com.icoin.trading.tradeengine.domain.model.commission.Commission;
 import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicy;
 import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicyFactory;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.order.OrderFill;
 import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
@@ -36,6 +40,8 @@ public class OrderExecutorHelper {
     private OrderRepository orderRepository;
     //    private BuyOrderRepository buyOrderRepository;
     private CommissionPolicyFactory commissionPolicyFactory;
+    private InMemoryOrderBooks inMemoryOrderBooks;
+    private OrderWriteBehind orderWriteBehind;
 
     private static Logger logger = LoggerFactory.getLogger(OrderExecutorHelper.class);
 
@@ -53,7 +59,10 @@ public class OrderExecutorHelper {
             logger.debug("To find asc sell pending orders with toTime{}, price {}, orderBookId {}, size {} ",
                     toTime, price, orderBookId, size);
         }
-        List<Order> list = orderRepository.findPendingSellOrdersByPriceTime(toTime, price, orderBookId, size);
+        final InMemoryOrderBook orderBook = residentOrderBook(orderBookId);
+        List<Order> list = orderBook != null
+                ? orderBook.findSellOrders(toTime, price, size)
+                : orderRepository.findPendingSellOrdersByPriceTime(toTime, price, orderBookId, size);
 
         if (logger.isDebugEnabled()) {
             logger.debug("Found asc sell pending orders with toTime{}, price {}, orderBookId {}, size {}: ",
@@ -78,7 +87,10 @@ public class OrderExecutorHelper {
                     toTime, price, orderBookId, size);
         }
 
-        List<Order> list = orderRepository.findPendingBuyOrdersByPriceTime(toTime, price, orderBookId, size);
+        final InMemoryOrderBook orderBook = residentOrderBook(orderBookId);
+        List<Order> list = orderBook != null
+                ? orderBook.findBuyOrders(toTime, price, size)
+                : orderRepository.findPendingBuyOrdersByPriceTime(toTime, price, orderBookId, size);
 
         if (logger.isDebugEnabled()) {
             logger.debug("Found desc buy pending orders with toTime{}, price {}, orderBookId {}, size {}: ",
@@ -98,6 +110,25 @@ public class OrderExecutorHelper {
         return sellOrder;
     }
 
+    //a resident order book is ahead of mongo, an order not in it is already done
+    public Order findSellOrder(OrderBookId orderBookId, OrderId orderId) {
+        notNull(orderId);
+        final InMemoryOrderBook orderBook = residentOrderBook(orderBookId);
+
+        return orderBook != null ? orderBook.find(orderId.toString()) : findSellOrder(orderId);
+    }
+
+    public Order findBuyOrder(OrderBookId orderBookId, OrderId orderId) {
+        notNull(orderId);
+        final InMemoryOrderBook orderBook = residentOrderBook(orderBookId);
+
+        return orderBook != null ? orderBook.find(orderId.toString()) : findBuyOrder(orderId);
+    }
+
+    private InMemoryOrderBook residentOrderBook(OrderBookId orderBookId) {
+        return inMemoryOrderBooks == null ? null : inMemoryOrderBooks.get(orderBookId);
+    }
+
     public Order findBuyOrder(OrderId orderId) {
         notNull(orderId);
         final Order buyOrder = orderRepository.findOne(orderId.toString());
@@ -123,8 +154,14 @@ public class OrderExecutorHelper {
         BigMoney highestBuyPrice = BigMoney.zero(CurrencyUnit.of(currencyPair.getCounterCurrency()));
 
 
-        final Order lowestSell = orderRepository.findLowestPricePendingSellOrder(orderBookId);
-        final Order highestBuy = orderRepository.findHighestPricePendingBuyOrder(orderBookId);
+        //the resident order book keeps its top up to date with every fill and placement
+        final InMemoryOrderBook residentOrderBook = residentOrderBook(orderBookId);
+        final Order lowestSell = residentOrderBook != null
+                ? residentOrderBook.lowestSell()
+                : orderRepository.findLowestPricePendingSellOrder(orderBookId);
+        final Order highestBuy = residentOrderBook != null
+                ? residentOrderBook.highestBuy()
+                : orderRepository.findHighestPricePendingBuyOrder(orderBookId);
 
         if (lowestSell != null) {
             lowestSellOrderId = lowestSell.getPrimaryKey();
@@ -157,8 +194,44 @@ public class OrderExecutorHelper {
         logger.info("for this trade, buy order {} and sell order {} have commission {} and {}.",
                 buyOrder, sellOrder, buyCommission, sellCommission);
 
-        orderRepository.save(buyOrder);
-        orderRepository.save(sellOrder);
+        final InMemoryOrderBook orderBook = residentOrderBook(buyOrder.getOrderBookId());
+        if (orderBook == null) {
+            orderRepository.save(buyOrder);
+            orderRepository.save(sellOrder);
+            return;
+        }
+
+        //the next match needs the fill right away, the order book is rebuilt if the unit of work rolls back
+        inMemoryOrderBooks.changing(orderBook.getOrderBookId());
+        if (orderWriteBehind == null) {
+            inMemoryOrderBooks.afterCommit(save(buyOrder));
+            inMemoryOrderBooks.afterCommit(save(sellOrder));
+        } else {
+            //resident orders are the truth, mongo is written behind
+            inMemoryOrderBooks.afterCommit(writeBehind(OrderFill.of(buyOrder)));
+            inMemoryOrderBooks.afterCommit(writeBehind(OrderFill.of(sellOrder)));
+        }
+
+        orderBook.traded(buyOrder);
+        orderBook.traded(sellOrder);
+    }
+
+    private Runnable writeBehind(final OrderFill fill) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                orderWriteBehind.traded(fill);
+            }
+        };
+    }
+
+    private Runnable save(final Order order) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                orderRepository.save(order);
+            }
+        };
     }
 
     public BigMoney calcExecutedSellCommission(Order sellOrder, BigMoney matchedTradePrice, BigMoney matchedTradeAmount) {
@@ -183,4 +256,14 @@ public class OrderExecutorHelper {
     public void setCommissionPolicyFactory(CommissionPolicyFactory commissionPolicyFactory) {
         this.commissionPolicyFactory = commissionPolicyFactory;
     }
+
+    @Autowired
+    public void setInMemoryOrderBooks(InMemoryOrderBooks inMemoryOrderBooks) {
+        this.inMemoryOrderBooks = inMemoryOrderBooks;
+    }
+
+    @Autowired
+    public void setOrderWriteBehind(OrderWriteBehind orderWriteBehind) {
+        this.orderWriteBehind = orderWriteBehind;
+    }
 }
@@ -1,34 +1,46 @@
 package com.icoin.trading.tradeengine.application.command.order;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.icoin.trading.api.tradeengine.command.order.ExecuteBuyOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrdersCommand;
 import com.icoin.trading.api.tradeengine.command.order.ExecuteSellOrderCommand;
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
+import com.icoin.trading.tradeengine.application.command.order.dispatch.OrderRingBuffer;
+import com.icoin.trading.tradeengine.application.command.order.dispatch.WaitStrategies;
 import com.icoin.trading.tradeengine.domain.TradingSystemService;
 import com.icoin.trading.tradeengine.domain.model.admin.TradingSystemStatus;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
+import com.icoin.trading.tradeengine.infrastructure.profiling.TradeLatencyTracer;
 import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import org.axonframework.commandhandling.CommandCallback;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Component;
 
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.homhon.util.Collections.isEmpty;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.DEQUEUED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.ENQUEUED;
 
 /**
  * Created with IntelliJ IDEA.
@@ -38,28 +50,60 @@ import static com.homhon.util.Collections.isEmpty;
  * To change this template use File | Settings | File Templates.
  */
 @Component
+@ManagedResource(objectName = "icoin:type=TradeExecutor,name=queuedTradeExecutor",
+        description = "Order sequencing ring buffers per order book")
 public class QueuedTradeExecutor implements TradeExecutor {
     private static Logger logger = LoggerFactory.getLogger(QueuedTradeExecutor.class);
-    private Map<OrderBookId, BlockingQueue<Order>> orderBookPool;
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    private static final long STOP_TIMEOUT_SECONDS = 30L;
+    private Map<OrderBookId, OrderRingBuffer> orderBookPool;
     private CommandGateway commandGateway;
     private OrderRepository orderRepository;
     private ExecutorService executor;
     private OrderBookQueryRepository orderBookRepository;
     private TradingSystemService tradingSystemService;
+    private InMemoryOrderBooks inMemoryOrderBooks;
+    private TradeLatencyTracer tradeLatencyTracer;
+    private final WaitStrategies waitStrategy;
+    private final int bufferSize;
+    private final int batchSize;
     private AtomicBoolean halted;
     private AtomicBoolean needToExecuteNotExecuted = new AtomicBoolean(false);
 
 
+    public QueuedTradeExecutor(OrderBookQueryRepository orderBookRepository,
+                               CommandGateway commandGateway,
+                               OrderRepository orderRepository,
+                               TradingSystemService tradingSystemService) {
+        this(orderBookRepository,
+                commandGateway,
+                orderRepository,
+                tradingSystemService,
+                null,
+                WaitStrategies.BLOCKING.name(),
+                DEFAULT_BUFFER_SIZE,
+                DEFAULT_BATCH_SIZE);
+    }
+
     @SuppressWarnings("SpringJavaAutowiringInspection")
     @Autowired
     public QueuedTradeExecutor(OrderBookQueryRepository orderBookRepository,
                                CommandGateway commandGateway,
                                OrderRepository orderRepository,
-                               TradingSystemService tradingSystemService) {
+                               TradingSystemService tradingSystemService,
+                               InMemoryOrderBooks inMemoryOrderBooks,
+                               @Value("${trading.executor.waitStrategy:BLOCKING}") String waitStrategy,
+                               @Value("${trading.executor.bufferSize:1024}") int bufferSize,
+                               @Value("${trading.executor.batchSize:64}") int batchSize) {
         this.orderBookRepository = orderBookRepository;
         this.commandGateway = commandGateway;
         this.orderRepository = orderRepository;
         this.tradingSystemService = tradingSystemService;
+        this.inMemoryOrderBooks = inMemoryOrderBooks;
+        this.waitStrategy = WaitStrategies.valueOf(waitStrategy.trim().toUpperCase());
+        this.bufferSize = bufferSize;
+        this.batchSize = batchSize;
         initialize();
         start();
         logger.info("resolving unfinished orders ...");
@@ -72,10 +116,6 @@ public class QueuedTradeExecutor implements TradeExecutor {
         logger.info("Start to reinitialize trade executors.");
         stop();
         logger.info("Stopped thread executor pool first.");
-        if (executor != null) {
-            executor.shutdown();
-            logger.info("Shut down thread executor pool already.");
-        }
 
         initialize();
         start();
@@ -83,13 +123,37 @@ public class QueuedTradeExecutor implements TradeExecutor {
         logger.info("Trading executor reinitialization finished ...");
     }
 
+    //the order books are rebuilt after this, no consumer may still be matching against them
     private void stop() {
         halted.set(true);
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("order book consumers still running after {} seconds, interrupting them", STOP_TIMEOUT_SECONDS);
+                executor.shutdownNow();
+                if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Order book consumers did not stop, cannot reinitialize trade executors");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the order book consumers to stop", e);
+        }
+        logger.info("Shut down thread executor pool already.");
     }
 
     protected void initialize() {
         logger.info("reinitializing orderbook queues.");
         initOrderBookPool(orderBookRepository);
+
+        if (inMemoryOrderBooks != null) {
+            logger.info("rebuilding in memory order books.");
+            inMemoryOrderBooks.rebuild(orderBookPool.keySet());
+        }
     }
 
     //OrderBookListener.handleTradeExecuted, add lastTradedTime
@@ -135,11 +199,12 @@ public class QueuedTradeExecutor implements TradeExecutor {
 
     private void initOrderBookPool(OrderBookQueryRepository orderBookRepository) {
         final Iterable<OrderBookEntry> orderBookEntries = orderBookRepository.findAll();
-        final HashMap<OrderBookId, BlockingQueue<Order>> map = Maps.newHashMap();
+        final HashMap<OrderBookId, OrderRingBuffer> map = Maps.newHashMap();
 
         for (OrderBookEntry orderBook : orderBookEntries) {
-            map.put(new OrderBookId(orderBook.getPrimaryKey()),
-                    new LinkedBlockingDeque<Order>());
+            final OrderBookId orderBookId = new OrderBookId(orderBook.getPrimaryKey());
+            map.put(orderBookId,
+                    new OrderRingBuffer(orderBookId, bufferSize, waitStrategy.create()));
             logger.warn("initialized order book trading pool with {}", orderBook);
         }
         this.orderBookPool = ImmutableMap.copyOf(map);
@@ -173,62 +238,104 @@ public class QueuedTradeExecutor implements TradeExecutor {
             return;
         }
 
-        final BlockingQueue<Order> orderQueue = orderBookPool.get(orderBookId);
+        final OrderRingBuffer ringBuffer = orderBookPool.get(orderBookId);
 
         try {
-            orderQueue.put(order);
+            ringBuffer.publish(order);
+            if (tradeLatencyTracer != null) {
+                tradeLatencyTracer.record(order.getTransactionId(), orderBookId, ENQUEUED);
+            }
         } catch (InterruptedException e) {
             logger.warn("Interrupted Queue for orderbookId {} when En-queuing", orderBookId);
         }
     }
 
     class TradeExecutor implements Runnable {
-        private final BlockingQueue<Order> queue;
+        private final OrderRingBuffer ringBuffer;
         private final OrderBookId orderBookId;
         private final AtomicBoolean stop;
+        private final List<Order> batch;
 
-        TradeExecutor(OrderBookId orderBookId, AtomicBoolean stop, BlockingQueue<Order> q) {
+        TradeExecutor(OrderBookId orderBookId, AtomicBoolean stop, OrderRingBuffer ringBuffer) {
             this.orderBookId = orderBookId;
             this.stop = stop;
-            this.queue = q;
+            this.ringBuffer = ringBuffer;
+            this.batch = Lists.newArrayListWithCapacity(batchSize);
         }
 
         public void run() {
             try {
                 while (!stop.get()) {
-                    final Order take = queue.take();
-                    consume(take);
+                    batch.clear();
+                    if (ringBuffer.drain(batch, batchSize) == 0) {
+                        continue;
+                    }
+
+                    consume(batch);
                 }
             } catch (InterruptedException ex) {
                 logger.warn("Interruppted Queue for orderbookId {} when De-queuing", orderBookId);
             }
         }
 
+        void consume(List<Order> orders) {
+            if (tradeLatencyTracer != null) {
+                for (Order order : orders) {
+                    tradeLatencyTracer.record(order.getTransactionId(), orderBookId, DEQUEUED);
+                }
+            }
+
+            if (orders.size() == 1) {
+                consume(orders.get(0));
+                return;
+            }
+
+            final List<ExecuteOrderCommand> commands = Lists.newArrayListWithCapacity(orders.size());
+            for (Order order : orders) {
+                logger.info("Executing order {}:{} in batch", order.getOrderType(), order);
+                commands.add(toCommand(order));
+            }
+
+            commandGateway.send(new ExecuteOrdersCommand(orderBookId, commands), new CommandCallback<Object>() {
+                @Override
+                public void onSuccess(Object result) {
+                }
+
+                @Override
+                public void onFailure(Throwable cause) {
+                    //the batch is rolled back as a whole, the order failing only fails on its own
+                    logger.error("Executing a batch of " + commands.size() + " orders of order book " + orderBookId
+                            + " failed, executing them one by one", cause);
+                    for (ExecuteOrderCommand command : commands) {
+                        commandGateway.send(command);
+                    }
+                }
+            });
+        }
+
         void consume(Order order) {
             logger.info("Executing order {}:{}", order.getOrderType(), order);
+            commandGateway.send(toCommand(order));
+        }
+
+        ExecuteOrderCommand toCommand(Order order) {
             switch (order.getOrderType()) {
                 case BUY:
-                    final ExecuteBuyOrderCommand executeBuyOrderCommand =
-                            new ExecuteBuyOrderCommand(new OrderId(order.getPrimaryKey()),
-                                    order.getPortfolioId(),
-                                    order.getOrderBookId(),
-                                    order.getTransactionId(),
-                                    order.getItemRemaining(),
-                                    order.getItemPrice(),
-                                    order.getPlaceDate());
-                    commandGateway.send(executeBuyOrderCommand);
-                    break;
+                    return new ExecuteBuyOrderCommand(new OrderId(order.getPrimaryKey()),
+                            order.getPortfolioId(),
+                            order.getOrderBookId(),
+                            order.getTransactionId(),
+                            order.getItemRemaining(),
+                            order.getItemPrice(),
+                            order.getPlaceDate());
                 case SELL:
-                    final ExecuteSellOrderCommand executeSellOrderCommand =
-                            new ExecuteSellOrderCommand(new OrderId(order.getPrimaryKey()),
-                                    order.getPortfolioId(),
-                                    order.getOrderBookId(),
-                                    order.getTransactionId(),
-                                    order.getItemRemaining(),
-                                    order.getItemPrice(),
-                                    order.getPlaceDate());
-                    commandGateway.send(executeSellOrderCommand);
-                    break;
+                    return new ExecuteSellOrderCommand(new OrderId(order.getPrimaryKey()),
+                            order.getPortfolioId(),
+                            order.getOrderBookId(),
+                            order.getTransactionId(),
+                            order.getItemRemaining(),
+                            order.getItemPrice(),
+                            order.getPlaceDate());
                 default:
                     throw new UnsupportedOperationException("order type not supported for executing, type:" + order.getOrderType());
             }
@@ -248,22 +355,74 @@ public class QueuedTradeExecutor implements TradeExecutor {
 
         @Override
         public void run() {
-//             ExecutorService executor = Executors.newFixedThreadPool(orderBookPool.size());
             for (OrderBookId orderBookId : orderBookPool.keySet()) {
-                final BlockingQueue<Order> queue = orderBookPool.get(orderBookId);
+                final OrderRingBuffer ringBuffer = orderBookPool.get(orderBookId);
 
                 executor.execute(
-                        new TradeExecutor(orderBookId, halted, queue)
+                        new TradeExecutor(orderBookId, halted, ringBuffer)
                 );
             }
         }
     }
 
+    @ManagedAttribute(description = "Orders waiting in the ring buffer per order book")
+    public Map<String, Long> getQueueDepths() {
+        final Map<String, Long> depths = Maps.newHashMap();
+        for (OrderRingBuffer ringBuffer : orderBookPool.values()) {
+            depths.put(ringBuffer.getOrderBookId().toString(), ringBuffer.getDepth());
+        }
+        return depths;
+    }
+
+    @ManagedAttribute(description = "Milliseconds the oldest waiting order has been in the ring buffer per order book")
+    public Map<String, Long> getConsumerLags() {
+        final Map<String, Long> lags = Maps.newHashMap();
+        for (OrderRingBuffer ringBuffer : orderBookPool.values()) {
+            lags.put(ringBuffer.getOrderBookId().toString(), ringBuffer.getConsumerLagMillis());
+        }
+        return lags;
+    }
+
+    @ManagedAttribute(description = "Last drained batch size per order book")
+    public Map<String, Integer> getLastBatchSizes() {
+        final Map<String, Integer> sizes = Maps.newHashMap();
+        for (OrderRingBuffer ringBuffer : orderBookPool.values()) {
+            sizes.put(ringBuffer.getOrderBookId().toString(), ringBuffer.getLastBatchSize());
+        }
+        return sizes;
+    }
+
+    @ManagedAttribute(description = "Average drained batch size per order book")
+    public Map<String, Double> getAverageBatchSizes() {
+        final Map<String, Double> sizes = Maps.newHashMap();
+        for (OrderRingBuffer ringBuffer : orderBookPool.values()) {
+            sizes.put(ringBuffer.getOrderBookId().toString(), ringBuffer.getAverageBatchSize());
+        }
+        return sizes;
+    }
+
+    @ManagedAttribute(description = "Wait strategy of the order book consumers")
+    public String getWaitStrategy() {
+        return waitStrategy.name();
+    }
+
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
+
     public void start() {
+        //a second consumer on a ring buffer would break the sequencing of its order book
+        if (executor != null && !executor.isShutdown()) {
+            logger.warn("Trading executor already started");
+            return;
+        }
+
         logger.info("starting executors...");
-        final Runnable setup = new Setup();
+        final Setup setup = new Setup();
         halted = new AtomicBoolean(false);
-        new Thread(setup).start();
+        executor = setup.executor;
+        setup.run();
         logger.info("Trading executor started ...");
     }
 }
@@ -4,6 +4,8 @@ import com.icoin.trading.api.tradeengine.command.order.ExecuteSellOrderCommand;
 import com.icoin.trading.tradeengine.domain.model.order.BuyOrder;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.infrastructure.profiling.TradeLatencyTracer;
 import org.axonframework.commandhandling.annotation.CommandHandler;
 import org.axonframework.repository.Repository;
 import org.joda.money.BigMoney;
@@ -18,7 +20,9 @@ import java.util.List;
 
 import static com.homhon.util.Collections.isEmpty;
 import static com.homhon.util.Objects.nullSafe;
-import static com.icoin.trading.tradeengine.MoneyUtils.convertTo;
+import static com.icoin.trading.tradeengine.FixedPointMoney.multiply;
+import static com.icoin.trading.tradeengine.MoneyUtils.convertToLong;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.MATCHED;
 import static org.joda.money.MoneyUtils.min;
 
 /**
@@ -34,6 +38,7 @@ public class SellOrderExecutor {
     private Repository<OrderBook> orderBookRepository;
 
     private OrderExecutorHelper orderExecutorHelper;
+    private TradeLatencyTracer tradeLatencyTracer;
 
     @SuppressWarnings("unused")
     @CommandHandler
@@ -42,11 +47,19 @@ public class SellOrderExecutor {
             return;
         }
 
-        executeSelling(sellCommand);
+        OrderBook orderBook = orderBookRepository.load(sellCommand.getOrderBookId());
+        executeSelling(orderBook, sellCommand);
     }
 
-    private void executeSelling(ExecuteSellOrderCommand sellCommand) {
-        OrderBook orderBook = orderBookRepository.load(sellCommand.getOrderBookId());
+    void executeSelling(OrderBook orderBook, ExecuteSellOrderCommand sellCommand) {
+        executeSelling0(orderBook, sellCommand);
+
+        if (tradeLatencyTracer != null) {
+            tradeLatencyTracer.record(sellCommand.getTransactionId(), sellCommand.getOrderBookId(), MATCHED);
+        }
+    }
+
+    private void executeSelling0(OrderBook orderBook, ExecuteSellOrderCommand sellCommand) {
         //selling price <= the current selling price
         if (orderBook.getLowestSellPrice().compareTo(sellCommand.getItemPrice()) <= 0) {
             return;
@@ -63,6 +76,9 @@ public class SellOrderExecutor {
         //selling price <= than the current highest buying price
         logger.info("Executing selling order {}", sellCommand);
 
+        //the price as the orders keep it, compared on longs in the loop
+        final long sellPrice = convertToLong(sellCommand.getItemPrice());
+
         boolean done = true;
         do {
             final List<Order> buyOrders =
@@ -82,17 +98,23 @@ public class SellOrderExecutor {
 
             for (Order buyOrder : buyOrders) {
                 //should not happen here, coz the repo does not return the right result
-                if (buyOrder.getItemPrice().isLessThan(sellCommand.getItemPrice())) {
+                if (buyOrder.getScaledItemPrice() < sellPrice) {
                     logger.warn("Strange here, why buy orders from repo have price less than current selling price!");
                     break;
                 }
 
-                final Order sellOrder = orderExecutorHelper.findSellOrder(sellCommand.getOrderId());
+                final Order sellOrder = orderExecutorHelper.findSellOrder(sellCommand.getOrderBookId(), sellCommand.getOrderId());
+
+                //already fully traded, e.g. as the counter order of an earlier order in the same batch
+                if (sellOrder == null || sellOrder.getOrderStatus() == OrderStatus.DONE) {
+                    done = true;
+                    break;
+                }
 
                 BigMoney matchedTradePrice = buyOrder.getItemPrice();
                 BigMoney matchedTradeAmount = min(buyOrder.getItemRemaining(), sellOrder.getItemRemaining());
 
-                final BigMoney executedMoney = convertTo(matchedTradeAmount, matchedTradePrice).toBigMoney();
+                final BigMoney executedMoney = multiply(matchedTradeAmount, matchedTradePrice, buyOrder.getScaledItemPrice());
 
 
                 BigMoney buyCommission = orderExecutorHelper.calcExecutedBuyCommission(buyOrder, matchedTradePrice, matchedTradeAmount);
@@ -101,20 +123,21 @@ public class SellOrderExecutor {
                 if (logger.isDebugEnabled()) {
                     logger.debug("Executing orders with amount {}, price {}, buy commission {}, sell commission {}, total money {}: highest buying order {}, lowest selling order {}",
                             matchedTradeAmount, matchedTradePrice, buyCommission, sellCommission, executedMoney, buyOrder, sellCommand);
-                    orderBook.executeSelling(matchedTradeAmount,
-                            matchedTradePrice,
-                            executedMoney,
-                            buyOrder.getPrimaryKey(),
-                            sellOrder.getPrimaryKey(),
-                            buyCommission,
-                            sellCommission,
-                            buyOrder.getTransactionId(),
-                            sellCommand.getTransactionId(),
-                            buyOrder.getPortfolioId(),
-                            sellOrder.getPortfolioId(),
-                            sellCommand.getPlaceDate());
                 }
 
+                orderBook.executeSelling(matchedTradeAmount,
+                        matchedTradePrice,
+                        executedMoney,
+                        buyOrder.getPrimaryKey(),
+                        sellOrder.getPrimaryKey(),
+                        buyCommission,
+                        sellCommission,
+                        buyOrder.getTransactionId(),
+                        sellCommand.getTransactionId(),
+                        buyOrder.getPortfolioId(),
+                        sellOrder.getPortfolioId(),
+                        sellCommand.getPlaceDate());
+
                 orderExecutorHelper.recordTraded(
                         buyOrder,
                         sellOrder,
@@ -140,6 +163,11 @@ public class SellOrderExecutor {
         this.orderExecutorHelper = orderExecutorHelper;
     }
 
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
+
     @Resource(name = "orderBookRepository")
     public void setOrderBookRepository(Repository<OrderBook> orderBookRepository) {
         this.orderBookRepository = orderBookRepository;
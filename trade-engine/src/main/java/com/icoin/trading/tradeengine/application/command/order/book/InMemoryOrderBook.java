@@ -0,0 +1,191 @@
+package com.icoin.trading.tradeengine.application.command.order.book;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import org.joda.money.BigMoney;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.MoneyUtils.convertToLong;
+
+/**
+ * Resident price-time priority book of one order book: price ladders for both sides, FIFO queue per price.
+ * The executors match against this book, mongo only keeps the durable copy of the orders.
+ */
+public class InMemoryOrderBook {
+    private static Logger logger = LoggerFactory.getLogger(InMemoryOrderBook.class);
+
+    private final OrderBookId orderBookId;
+    //keyed by the scaled price of the orders, lowest price first
+    private final NavigableMap<Long, PriceLevel> sellLevels = new TreeMap<Long, PriceLevel>();
+    //highest price first
+    private final NavigableMap<Long, PriceLevel> buyLevels =
+            new TreeMap<Long, PriceLevel>(Collections.<Long>reverseOrder());
+    private final Map<String, Order> orders = Maps.newHashMap();
+
+    public InMemoryOrderBook(OrderBookId orderBookId) {
+        notNull(orderBookId);
+        this.orderBookId = orderBookId;
+    }
+
+    public OrderBookId getOrderBookId() {
+        return orderBookId;
+    }
+
+    public synchronized boolean add(Order order) {
+        notNull(order);
+        notNull(order.getPrimaryKey());
+        notNull(order.getItemPrice());
+
+        if (order.getOrderStatus() != OrderStatus.PENDING || orders.containsKey(order.getPrimaryKey())) {
+            return false;
+        }
+
+        final NavigableMap<Long, PriceLevel> levels = levelsOf(order);
+        final Long price = order.getScaledItemPrice();
+        PriceLevel level = levels.get(price);
+        if (level == null) {
+            level = new PriceLevel(order.getItemPrice());
+            levels.put(price, level);
+        }
+
+        level.add(order);
+        orders.put(order.getPrimaryKey(), order);
+        return true;
+    }
+
+    public synchronized Order remove(String orderId) {
+        final Order order = orders.remove(orderId);
+
+        if (order == null) {
+            return null;
+        }
+
+        final NavigableMap<Long, PriceLevel> levels = levelsOf(order);
+        final Long price = order.getScaledItemPrice();
+        final PriceLevel level = levels.get(price);
+        if (level != null) {
+            level.remove(order);
+            if (level.isEmpty()) {
+                levels.remove(price);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Drops the order from the book once it is fully traded, to be called after {@link Order#recordTraded}.
+     */
+    public synchronized void traded(Order order) {
+        notNull(order);
+
+        if (order.getOrderStatus() == OrderStatus.DONE || order.getItemRemaining().isNegativeOrZero()) {
+            remove(order.getPrimaryKey());
+        }
+    }
+
+    public synchronized Order find(String orderId) {
+        return orders.get(orderId);
+    }
+
+    /**
+     * Sell orders priced at or below the given price and placed no later than toTime,
+     * in price-time priority.
+     */
+    public List<Order> findSellOrders(Date toTime, BigMoney price, int size) {
+        notNull(price);
+        return findSellOrders(toTime, convertToLong(price), size);
+    }
+
+    /**
+     * Same as {@link #findSellOrders(Date, BigMoney, int)} with the price as the long stored in mongo.
+     */
+    public synchronized List<Order> findSellOrders(Date toTime, long scaledPrice, int size) {
+        return collect(sellLevels.headMap(scaledPrice, true), toTime, size);
+    }
+
+    /**
+     * Buy orders priced at or above the given price and placed no later than toTime,
+     * in price-time priority.
+     */
+    public List<Order> findBuyOrders(Date toTime, BigMoney price, int size) {
+        notNull(price);
+        return findBuyOrders(toTime, convertToLong(price), size);
+    }
+
+    /**
+     * Same as {@link #findBuyOrders(Date, BigMoney, int)} with the price as the long stored in mongo.
+     */
+    public synchronized List<Order> findBuyOrders(Date toTime, long scaledPrice, int size) {
+        return collect(buyLevels.headMap(scaledPrice, true), toTime, size);
+    }
+
+    public synchronized Order lowestSell() {
+        return sellLevels.isEmpty() ? null : sellLevels.firstEntry().getValue().first();
+    }
+
+    public synchronized Order highestBuy() {
+        return buyLevels.isEmpty() ? null : buyLevels.firstEntry().getValue().first();
+    }
+
+    public synchronized int size() {
+        return orders.size();
+    }
+
+    private List<Order> collect(NavigableMap<Long, PriceLevel> levels, Date toTime, int size) {
+        notNull(toTime);
+        isTrue(size > 0, "Size should be greater than 0!");
+
+        final List<Order> found = Lists.newArrayListWithCapacity(Math.min(size, orders.size()));
+        for (PriceLevel level : levels.values()) {
+            for (Order order : level) {
+                if (order.getPlaceDate() != null && order.getPlaceDate().after(toTime)) {
+                    continue;
+                }
+
+                found.add(order);
+                if (found.size() >= size) {
+                    return found;
+                }
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Found {} orders from in memory order book {} with toTime {}", found.size(), orderBookId, toTime);
+        }
+        return found;
+    }
+
+    private NavigableMap<Long, PriceLevel> levelsOf(Order order) {
+        switch (order.getOrderType()) {
+            case BUY:
+                return buyLevels;
+            case SELL:
+                return sellLevels;
+            default:
+                throw new UnsupportedOperationException("order type not supported in order book, type:" + order.getOrderType());
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "InMemoryOrderBook{" +
+                "orderBookId=" + orderBookId +
+                ", sellLevels=" + sellLevels.size() +
+                ", buyLevels=" + buyLevels.size() +
+                ", orders=" + orders.size() +
+                '}';
+    }
+}
@@ -0,0 +1,200 @@
+package com.icoin.trading.tradeengine.application.command.order.book;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.homhon.util.Asserts.notNull;
+import static com.homhon.util.Collections.isEmpty;
+
+/**
+ * Holder of the resident order books, rebuilt from the order repository when the trade executor initializes.
+ * Order books not rebuilt here are matched against mongo as before.
+ * <p/>
+ * The resident orders follow the unit of work that changes them: placed orders join their order book once the
+ * placement is committed, an order book changed by matching in a unit of work that rolls back is rebuilt from mongo.
+ */
+@Component
+public class InMemoryOrderBooks {
+    private static Logger logger = LoggerFactory.getLogger(InMemoryOrderBooks.class);
+    private final OrderRepository orderRepository;
+    private OrderWriteBehind orderWriteBehind;
+    private volatile Map<OrderBookId, InMemoryOrderBook> orderBooks = ImmutableMap.of();
+    private final Map<UnitOfWork, UnitOfWorkChanges> unitsOfWork =
+            Collections.synchronizedMap(new IdentityHashMap<UnitOfWork, UnitOfWorkChanges>());
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public InMemoryOrderBooks(OrderRepository orderRepository) {
+        notNull(orderRepository);
+        this.orderRepository = orderRepository;
+    }
+
+    public synchronized void rebuild(Iterable<OrderBookId> orderBookIds) {
+        notNull(orderBookIds);
+        final HashMap<OrderBookId, InMemoryOrderBook> map = Maps.newHashMap();
+
+        //the resident orders are reloaded from mongo, write what is still behind first
+        if (orderWriteBehind != null) {
+            orderWriteBehind.flush();
+        }
+
+        for (OrderBookId orderBookId : orderBookIds) {
+            map.put(orderBookId, load(orderBookId));
+        }
+
+        this.orderBooks = ImmutableMap.copyOf(map);
+
+        if (orderWriteBehind != null) {
+            orderWriteBehind.recovered();
+        }
+    }
+
+    /**
+     * Rebuilds one resident order book from mongo, dropping it from the resident books if it cannot be loaded:
+     * the order book is then matched against mongo.
+     */
+    public synchronized void rebuild(OrderBookId orderBookId) {
+        notNull(orderBookId);
+        if (!orderBooks.containsKey(orderBookId)) {
+            return;
+        }
+
+        final Map<OrderBookId, InMemoryOrderBook> map = Maps.newHashMap(orderBooks);
+        try {
+            if (orderWriteBehind != null) {
+                orderWriteBehind.flush();
+            }
+            map.put(orderBookId, load(orderBookId));
+        } catch (RuntimeException e) {
+            logger.error("rebuilding in memory order book " + orderBookId + " failed, matching it against mongo", e);
+            map.remove(orderBookId);
+        }
+        this.orderBooks = ImmutableMap.copyOf(map);
+    }
+
+    /**
+     * Adds a placed order to its order book if the order book is resident.
+     */
+    public synchronized boolean add(Order order) {
+        notNull(order);
+        final InMemoryOrderBook orderBook = get(order.getOrderBookId());
+        return orderBook != null && orderBook.add(order);
+    }
+
+    /**
+     * The resident orders of the order book are about to change in the current unit of work,
+     * the order book is rebuilt if the unit of work rolls back.
+     */
+    public void changing(OrderBookId orderBookId) {
+        if (!CurrentUnitOfWork.isStarted() || !contains(orderBookId)) {
+            return;
+        }
+        changes(CurrentUnitOfWork.get()).orderBookIds.add(orderBookId);
+    }
+
+    /**
+     * Runs the task once the current unit of work is committed, right away without a unit of work.
+     */
+    public void afterCommit(Runnable task) {
+        notNull(task);
+        if (!CurrentUnitOfWork.isStarted()) {
+            task.run();
+            return;
+        }
+        changes(CurrentUnitOfWork.get()).tasks.add(task);
+    }
+
+    private UnitOfWorkChanges changes(UnitOfWork unitOfWork) {
+        synchronized (unitsOfWork) {
+            UnitOfWorkChanges changes = unitsOfWork.get(unitOfWork);
+            if (changes == null) {
+                changes = new UnitOfWorkChanges();
+                unitsOfWork.put(unitOfWork, changes);
+                unitOfWork.registerListener(changes);
+            }
+            return changes;
+        }
+    }
+
+    private InMemoryOrderBook load(OrderBookId orderBookId) {
+        final InMemoryOrderBook orderBook = new InMemoryOrderBook(orderBookId);
+        List<Order> orders = orderRepository.findPendingOrders(orderBookId);
+
+        if (orderWriteBehind != null) {
+            orders = orderWriteBehind.recover(orderBookId, orders);
+        }
+
+        if (!isEmpty(orders)) {
+            for (Order order : orders) {
+                orderBook.add(order);
+            }
+        }
+
+        logger.info("rebuilt in memory order book {}", orderBook);
+        return orderBook;
+    }
+
+    public InMemoryOrderBook get(OrderBookId orderBookId) {
+        if (orderBookId == null) {
+            return null;
+        }
+        return orderBooks.get(orderBookId);
+    }
+
+    public boolean contains(OrderBookId orderBookId) {
+        return get(orderBookId) != null;
+    }
+
+    @Autowired
+    public void setOrderWriteBehind(OrderWriteBehind orderWriteBehind) {
+        this.orderWriteBehind = orderWriteBehind;
+    }
+
+    private class UnitOfWorkChanges extends UnitOfWorkListenerAdapter {
+        private final List<Runnable> tasks = Lists.newArrayList();
+        private final Set<OrderBookId> orderBookIds = Sets.newLinkedHashSet();
+
+        @Override
+        public void afterCommit(UnitOfWork unitOfWork) {
+            for (Runnable task : tasks) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("resident order book work after commit failed", e);
+                }
+            }
+        }
+
+        @Override
+        public void onRollback(UnitOfWork unitOfWork, Throwable failureCause) {
+            for (OrderBookId orderBookId : orderBookIds) {
+                logger.warn("unit of work rolled back, rebuilding in memory order book {}", orderBookId);
+                rebuild(orderBookId);
+            }
+        }
+
+        @Override
+        public void onCleanup(UnitOfWork unitOfWork) {
+            unitsOfWork.remove(unitOfWork);
+        }
+    }
+}
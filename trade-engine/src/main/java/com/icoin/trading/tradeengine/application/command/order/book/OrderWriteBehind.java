@@ -0,0 +1,376 @@
+package com.icoin.trading.tradeengine.application.command.order.book;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.events.order.AbstractOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderFill;
+import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.EventStoreManagement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.homhon.util.Collections.isEmpty;
+
+/**
+ * Write-behind of the fills of resident orders. The matching thread only queues the committed fills, a flusher
+ * thread coalesces the fills per order and writes one partial update per order when enough orders are pending or
+ * the flush interval elapsed. A full buffer makes the matching thread wait for the flusher. A write failing is
+ * retried with the next flush, the update is guarded by the fill sequence of the order so a write that reached
+ * mongo before failing is not applied twice.
+ * <p/>
+ * A process stopped without flushing leaves its pending orders behind the event store, they are
+ * recalculated from the placed and trade executed events of their order book when the books are rebuilt.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=OrderWriteBehind,name=orderWriteBehind")
+public class OrderWriteBehind {
+    private static Logger logger = LoggerFactory.getLogger(OrderWriteBehind.class);
+    private static final String CHECKPOINT_COLLECTION = "orderWriteBehind";
+    private static final String CHECKPOINT_ID = "orderWriteBehind";
+
+    private final OrderRepository orderRepository;
+    private final BlockingQueue<OrderFill> buffer;
+    private final int flushSize;
+    private final long flushIntervalMillis;
+
+    //pending fills are only touched with the flush lock held
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Map<String, OrderFill> pending = new LinkedHashMap<String, OrderFill>();
+
+    private EventStoreManagement eventStore;
+    private MongoTemplate mongoTemplate;
+    private volatile boolean running;
+    private volatile boolean recoveryNeeded;
+    private Thread flusher;
+
+    private final AtomicLong queuedFills = new AtomicLong();
+    private final AtomicLong writtenFills = new AtomicLong();
+    private final AtomicLong writtenUpdates = new AtomicLong();
+    private final AtomicLong failedUpdates = new AtomicLong();
+    private volatile int pendingOrders;
+    private volatile long lastFlushMillis;
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public OrderWriteBehind(OrderRepository orderRepository,
+                            @Value("${trading.orders.writeBehind.bufferSize:4096}") int bufferSize,
+                            @Value("${trading.orders.writeBehind.flushSize:256}") int flushSize,
+                            @Value("${trading.orders.writeBehind.flushIntervalMillis:50}") long flushIntervalMillis) {
+        notNull(orderRepository);
+        isTrue(bufferSize > 0, "Buffer size should be greater than 0!");
+        isTrue(flushSize > 0, "Flush size should be greater than 0!");
+        isTrue(flushIntervalMillis > 0, "Flush interval should be greater than 0!");
+
+        this.orderRepository = orderRepository;
+        this.buffer = new ArrayBlockingQueue<OrderFill>(bufferSize);
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        recoveryNeeded = !isCheckpointClean();
+        markCheckpoint(false);
+
+        running = true;
+        flusher = new Thread(new Flusher(), "order-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("order write-behind started, recovery needed: {}", recoveryNeeded);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        if (flush()) {
+            markCheckpoint(true);
+        } else {
+            logger.error("order write-behind stopped with {} orders not written, they are recovered at restart", pendingOrders);
+        }
+    }
+
+    /**
+     * Queues the fill of a resident order, once the unit of work recording it is committed.
+     */
+    public void traded(OrderFill fill) {
+        notNull(fill);
+        queuedFills.incrementAndGet();
+
+        try {
+            buffer.put(fill);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            flushLock.lock();
+            try {
+                coalesce(fill);
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes all the queued fills on the calling thread.
+     *
+     * @return true if nothing is left pending
+     */
+    @ManagedOperation
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            drain(Integer.MAX_VALUE);
+            return write();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Recalculates the pending orders of the order book from the event store if the last process did not
+     * flush at shutdown.
+     *
+     * @return the orders still pending after recalculation
+     */
+    public List<Order> recover(OrderBookId orderBookId, List<Order> orders) {
+        notNull(orderBookId);
+        if (!recoveryNeeded || eventStore == null || isEmpty(orders)) {
+            return orders;
+        }
+
+        final Map<String, Order> byId = Maps.newHashMap();
+        for (Order order : orders) {
+            byId.put(order.getPrimaryKey(), order);
+        }
+
+        final Map<String, Order> replayed = Maps.newHashMap();
+        eventStore.visitEvents(
+                eventStore.newCriteriaBuilder().property("aggregateIdentifier").is(orderBookId.toString()),
+                new EventVisitor() {
+                    @Override
+                    public void doWithEvent(DomainEventMessage domainEvent) {
+                        replay(domainEvent.getPayload(), byId, replayed);
+                    }
+                });
+
+        final List<Order> stillPending = Lists.newArrayListWithCapacity(orders.size());
+        for (Order order : orders) {
+            if (replayed.containsKey(order.getPrimaryKey())) {
+                orderRepository.save(order);
+            }
+            if (order.getOrderStatus() == OrderStatus.PENDING) {
+                stillPending.add(order);
+            }
+        }
+
+        logger.info("recovered {} of {} pending orders of order book {} from event store",
+                replayed.size(), orders.size(), orderBookId);
+        return stillPending;
+    }
+
+    /**
+     * All the order books are rebuilt, the orders written from now on are all flushed by this process.
+     */
+    public void recovered() {
+        recoveryNeeded = false;
+    }
+
+    private void replay(Object payload, Map<String, Order> orders, Map<String, Order> replayed) {
+        if (payload instanceof AbstractOrderPlacedEvent) {
+            final AbstractOrderPlacedEvent event = (AbstractOrderPlacedEvent) payload;
+            final Order order = orders.get(event.getOrderId().toString());
+            if (order != null) {
+                order.setItemRemaining(event.getTradeAmount());
+                order.setLeftCommission(event.getTotalCommission());
+                order.setLastTradedTime(null);
+                order.setFillSequence(0L);
+                replayed.put(order.getPrimaryKey(), order);
+            }
+        } else if (payload instanceof TradeExecutedEvent) {
+            final TradeExecutedEvent event = (TradeExecutedEvent) payload;
+            final Order buyOrder = replayed.get(event.getBuyOrderId());
+            if (buyOrder != null) {
+                buyOrder.recordTraded(event.getTradeAmount(), event.getBuyCommission(), event.getTradeTime());
+            }
+            final Order sellOrder = replayed.get(event.getSellOrderId());
+            if (sellOrder != null) {
+                sellOrder.recordTraded(event.getTradeAmount(), event.getSellCommission(), event.getTradeTime());
+            }
+        }
+    }
+
+    private void drain(int maxFills) {
+        final List<OrderFill> fills = Lists.newArrayList();
+        buffer.drainTo(fills, maxFills);
+        for (OrderFill fill : fills) {
+            coalesce(fill);
+        }
+    }
+
+    private void coalesce(OrderFill fill) {
+        final OrderFill existing = pending.get(fill.getOrderId());
+        if (existing == null) {
+            pending.put(fill.getOrderId(), fill);
+        } else {
+            existing.merge(fill);
+        }
+        pendingOrders = pending.size();
+    }
+
+    private boolean write() {
+        final long start = System.currentTimeMillis();
+        final Iterator<OrderFill> iterator = pending.values().iterator();
+
+        try {
+            while (iterator.hasNext()) {
+                final OrderFill fill = iterator.next();
+                orderRepository.updateTraded(fill);
+                iterator.remove();
+                writtenUpdates.incrementAndGet();
+                writtenFills.addAndGet(fill.getFills());
+            }
+        } catch (RuntimeException e) {
+            //keep the rest in order, they are retried with the next flush
+            failedUpdates.incrementAndGet();
+            logger.error("writing order fills failed, " + pending.size() + " orders left pending", e);
+        } finally {
+            pendingOrders = pending.size();
+            lastFlushMillis = System.currentTimeMillis() - start;
+        }
+        return pending.isEmpty();
+    }
+
+    private boolean isCheckpointClean() {
+        if (mongoTemplate == null) {
+            return true;
+        }
+
+        final DBObject checkpoint = mongoTemplate.getCollection(CHECKPOINT_COLLECTION)
+                .findOne(new BasicDBObject("_id", CHECKPOINT_ID));
+        //never ran with write-behind, all the orders were saved synchronously
+        return checkpoint == null || Boolean.TRUE.equals(checkpoint.get("clean"));
+    }
+
+    private void markCheckpoint(boolean clean) {
+        if (mongoTemplate == null) {
+            return;
+        }
+
+        mongoTemplate.getCollection(CHECKPOINT_COLLECTION)
+                .save(new BasicDBObject("_id", CHECKPOINT_ID).append("clean", clean));
+    }
+
+    @ManagedAttribute
+    public int getBufferedFills() {
+        return buffer.size();
+    }
+
+    @ManagedAttribute
+    public int getPendingOrders() {
+        return pendingOrders;
+    }
+
+    @ManagedAttribute
+    public long getQueuedFills() {
+        return queuedFills.get();
+    }
+
+    @ManagedAttribute
+    public long getWrittenFills() {
+        return writtenFills.get();
+    }
+
+    @ManagedAttribute
+    public long getWrittenUpdates() {
+        return writtenUpdates.get();
+    }
+
+    @ManagedAttribute
+    public long getFailedUpdates() {
+        return failedUpdates.get();
+    }
+
+    @ManagedAttribute
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    @Resource(name = "eventStore")
+    public void setEventStore(EventStoreManagement eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    private class Flusher implements Runnable {
+        @Override
+        public void run() {
+            long lastFlush = System.currentTimeMillis();
+
+            while (running) {
+                final OrderFill fill;
+                try {
+                    fill = buffer.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                flushLock.lock();
+                try {
+                    if (fill != null) {
+                        coalesce(fill);
+                        drain(flushSize);
+                    }
+
+                    final long now = System.currentTimeMillis();
+                    if (pending.isEmpty()) {
+                        lastFlush = now;
+                    } else if (pending.size() >= flushSize || now - lastFlush >= flushIntervalMillis) {
+                        write();
+                        lastFlush = now;
+                    }
+                } finally {
+                    flushLock.unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.icoin.trading.tradeengine.application.command.order.book;
+
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import org.joda.money.BigMoney;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * All pending orders of one side at the same price, kept in arrival (time priority) order.
+ */
+public class PriceLevel implements Iterable<Order> {
+    private final BigMoney price;
+    private final Deque<Order> orders = new ArrayDeque<Order>();
+
+    public PriceLevel(BigMoney price) {
+        notNull(price);
+        this.price = price;
+    }
+
+    public BigMoney getPrice() {
+        return price;
+    }
+
+    void add(Order order) {
+        orders.addLast(order);
+    }
+
+    boolean remove(Order order) {
+        return orders.remove(order);
+    }
+
+    public Order first() {
+        return orders.peekFirst();
+    }
+
+    public int size() {
+        return orders.size();
+    }
+
+    public boolean isEmpty() {
+        return orders.isEmpty();
+    }
+
+    @Override
+    public Iterator<Order> iterator() {
+        return orders.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return "PriceLevel{" +
+                "price=" + price +
+                ", orders=" + orders.size() +
+                '}';
+    }
+}
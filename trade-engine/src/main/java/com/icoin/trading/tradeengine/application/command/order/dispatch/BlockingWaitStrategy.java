@@ -0,0 +1,42 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Parks the consumer on a condition until a producer publishes, no cpu used while the book is idle.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+    private static final long TIMEOUT_MILLIS = 100L;
+    private final Lock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+
+    @Override
+    public boolean waitFor(long sequence, OrderRingBuffer ringBuffer) throws InterruptedException {
+        if (ringBuffer.isPublished(sequence)) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            if (!ringBuffer.isPublished(sequence)) {
+                published.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return ringBuffer.isPublished(sequence);
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        lock.lock();
+        try {
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
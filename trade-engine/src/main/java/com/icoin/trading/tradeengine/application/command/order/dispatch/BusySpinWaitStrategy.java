@@ -0,0 +1,26 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+/**
+ * Spins on the cursor, lowest latency but burns one core per order book.
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 1 << 20;
+
+    @Override
+    public boolean waitFor(long sequence, OrderRingBuffer ringBuffer) throws InterruptedException {
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            if (ringBuffer.isPublished(sequence)) {
+                return true;
+            }
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return ringBuffer.isPublished(sequence);
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+}
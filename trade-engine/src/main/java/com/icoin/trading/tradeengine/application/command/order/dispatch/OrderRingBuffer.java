@@ -0,0 +1,178 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Pre-allocated ring buffer sequencing the orders of one order book, many producers and a single consumer.
+ * Producers claim a sequence, fill the slot and publish it, the consumer drains all published slots in
+ * one batch. A full buffer makes producers wait for the consumer instead of growing.
+ */
+public class OrderRingBuffer {
+    private final OrderBookId orderBookId;
+    private final int bufferSize;
+    private final int mask;
+    private final Order[] entries;
+    private final long[] publishedNanos;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1L);
+    private final AtomicLong consumed = new AtomicLong(-1L);
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private volatile int lastBatchSize;
+    private volatile int maxBatchSize;
+
+    public OrderRingBuffer(OrderBookId orderBookId, int bufferSize, WaitStrategy waitStrategy) {
+        notNull(orderBookId);
+        notNull(waitStrategy);
+        isTrue(bufferSize > 0, "Buffer size should be greater than 0!");
+
+        this.orderBookId = orderBookId;
+        this.bufferSize = ceilingPowerOfTwo(bufferSize);
+        this.mask = this.bufferSize - 1;
+        this.entries = new Order[this.bufferSize];
+        this.publishedNanos = new long[this.bufferSize];
+        this.published = new AtomicLongArray(this.bufferSize);
+        this.waitStrategy = waitStrategy;
+
+        for (int i = 0; i < this.bufferSize; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    public void publish(Order order) throws InterruptedException {
+        notNull(order);
+
+        long sequence;
+        for (; ; ) {
+            final long current = claimed.get();
+            sequence = current + 1;
+
+            //wrapped over the consumer, wait for it to free slots
+            if (sequence - bufferSize > consumed.get()) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(1));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                continue;
+            }
+
+            if (claimed.compareAndSet(current, sequence)) {
+                break;
+            }
+        }
+
+        final int index = (int) (sequence & mask);
+        entries[index] = order;
+        publishedNanos[index] = System.nanoTime();
+        published.set(index, sequence);
+
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public boolean isPublished(long sequence) {
+        return published.get((int) (sequence & mask)) == sequence;
+    }
+
+    /**
+     * Drains up to maxBatchSize published orders into the batch, waiting with the wait strategy if none is there.
+     *
+     * @return the count of orders drained, 0 if nothing was published while waiting
+     */
+    public int drain(List<Order> batch, int maxBatchSize) throws InterruptedException {
+        notNull(batch);
+        isTrue(maxBatchSize > 0, "Batch size should be greater than 0!");
+
+        final long next = consumed.get() + 1;
+        if (!waitStrategy.waitFor(next, this)) {
+            return 0;
+        }
+
+        long sequence = next;
+        int count = 0;
+        while (count < maxBatchSize && isPublished(sequence)) {
+            final int index = (int) (sequence & mask);
+            batch.add(entries[index]);
+            entries[index] = null;
+            sequence++;
+            count++;
+        }
+
+        consumed.set(sequence - 1);
+
+        batches.incrementAndGet();
+        drained.addAndGet(count);
+        lastBatchSize = count;
+        if (count > this.maxBatchSize) {
+            this.maxBatchSize = count;
+        }
+        return count;
+    }
+
+    public OrderBookId getOrderBookId() {
+        return orderBookId;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Orders claimed by producers but not yet taken by the consumer.
+     */
+    public long getDepth() {
+        return claimed.get() - consumed.get();
+    }
+
+    /**
+     * How long the oldest order not taken by the consumer has been waiting, 0 if the buffer is drained.
+     */
+    public long getConsumerLagMillis() {
+        final long next = consumed.get() + 1;
+        if (!isPublished(next)) {
+            return 0L;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishedNanos[(int) (next & mask)]);
+    }
+
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public double getAverageBatchSize() {
+        final long count = batches.get();
+        return count == 0 ? 0D : (double) drained.get() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderRingBuffer{" +
+                "orderBookId=" + orderBookId +
+                ", bufferSize=" + bufferSize +
+                ", depth=" + getDepth() +
+                '}';
+    }
+}
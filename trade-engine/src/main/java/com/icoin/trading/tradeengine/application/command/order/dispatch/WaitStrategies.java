@@ -0,0 +1,27 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+/**
+ * Wait strategies selectable by configuration.
+ */
+public enum WaitStrategies {
+    BUSY_SPIN {
+        @Override
+        public WaitStrategy create() {
+            return new BusySpinWaitStrategy();
+        }
+    },
+    YIELDING {
+        @Override
+        public WaitStrategy create() {
+            return new YieldingWaitStrategy();
+        }
+    },
+    BLOCKING {
+        @Override
+        public WaitStrategy create() {
+            return new BlockingWaitStrategy();
+        }
+    };
+
+    public abstract WaitStrategy create();
+}
@@ -0,0 +1,16 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+/**
+ * How the consumer of an {@link OrderRingBuffer} waits for the next order to be published.
+ */
+public interface WaitStrategy {
+    /**
+     * Waits for the sequence to be published, gives up after a short while so that the consumer can check
+     * whether it has been halted.
+     *
+     * @return true if the sequence is published
+     */
+    boolean waitFor(long sequence, OrderRingBuffer ringBuffer) throws InterruptedException;
+
+    void signalAllWhenBlocking();
+}
@@ -0,0 +1,31 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+/**
+ * Spins a little, then yields the thread between checks.
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 10000;
+
+    @Override
+    public boolean waitFor(long sequence, OrderRingBuffer ringBuffer) throws InterruptedException {
+        for (int i = 0; i < SPIN_TRIES + YIELD_TRIES; i++) {
+            if (ringBuffer.isPublished(sequence)) {
+                return true;
+            }
+
+            if (i >= SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return ringBuffer.isPublished(sequence);
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+}
@@ -19,26 +19,43 @@ import com.icoin.trading.api.coin.domain.CurrencyPair;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderType;
 import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
 
 import java.math.BigDecimal;
 
 import static com.homhon.util.Asserts.isTrue;
 import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.FixedPointMoney.isScaled;
+import static com.icoin.trading.tradeengine.FixedPointMoney.multiplyDivide;
+import static com.icoin.trading.tradeengine.FixedPointMoney.powerOfTen;
+import static com.icoin.trading.tradeengine.FixedPointMoney.toScaled;
 
 /**
  * Sample Policy impl<br>
+ * Commissions of scaled money are calculated on the minor unit longs, the rate as its unscaled long over
+ * a power of ten, and rounded once the same way as {@link Commission} does.
  *
  * @author Slawek
  */
 public class FixedRateCommissionPolicy implements CommissionPolicy {
     private final BigDecimal fixedRate;
+    private final String description;
+    private final long scaledRate;
+    private final int rateScale;
 
     public FixedRateCommissionPolicy() {
         this(BigDecimal.valueOf(0.005));
     }
 
     public FixedRateCommissionPolicy(BigDecimal fixedRate) {
+        notNull(fixedRate);
         this.fixedRate = fixedRate;
+        this.description = "Commission Rate is " + fixedRate.toString();
+
+        final BigDecimal rate = fixedRate.scale() < 0 ? fixedRate.setScale(0) : fixedRate;
+        this.rateScale = rate.scale();
+        this.scaledRate = rate.unscaledValue().bitLength() < 63 ? rate.unscaledValue().longValue() : -1L;
     }
 
     @Override
@@ -50,11 +67,35 @@ public class FixedRateCommissionPolicy implements CommissionPolicy {
     }
 
     private Commission calcCommission(BigMoney tradeAmount) {
-        String desc = "Commission Rate is " + fixedRate.toString();
+        if (isFixedPoint() && isScaled(tradeAmount)) {
+            final long commission = multiplyDivide(toScaled(tradeAmount), scaledRate, powerOfTen(rateScale));
+            return new Commission(Money.ofMinor(tradeAmount.getCurrencyUnit(), commission), description);
+        }
 
         BigMoney money = tradeAmount.multipliedBy(fixedRate);
 
-        return new Commission(money, desc);
+        return new Commission(money, description);
+    }
+
+    private Commission calcCommission(BigMoney tradeAmount, BigMoney price, CurrencyPair currencyPair) {
+        final CurrencyUnit counterCurrency = currencyPair.getCounterCurrencyUnit();
+        final int scale = tradeAmount.getCurrencyUnit().getDecimalPlaces() + rateScale;
+
+        if (isFixedPoint()
+                && isScaled(tradeAmount)
+                && isScaled(price)
+                && price.getCurrencyUnit().equals(counterCurrency)
+                && scale < 19) {
+            final long commission =
+                    multiplyDivide(toScaled(tradeAmount), toScaled(price), scaledRate, powerOfTen(scale));
+            return new Commission(Money.ofMinor(counterCurrency, commission), description);
+        }
+
+        return calcCommission(calcMoneyAmount(tradeAmount, price, currencyPair));
+    }
+
+    private boolean isFixedPoint() {
+        return scaledRate >= 0 && rateScale < 19;
     }
 
     @Override
@@ -74,12 +115,7 @@ public class FixedRateCommissionPolicy implements CommissionPolicy {
         notNull(order.getItemPrice());
         notNull(order.getCurrencyPair());
 
-        BigMoney tradeAmount =
-                order.getItemRemaining()
-                        .convertedTo(order.getCounterCurrency(),
-                                order.getItemPrice().getAmount());
-
-        return calcCommission(tradeAmount);
+        return calcCommission(order.getItemRemaining(), order.getItemPrice(), order.getCurrencyPair());
     }
 
     @Override
@@ -89,8 +125,7 @@ public class FixedRateCommissionPolicy implements CommissionPolicy {
         notNull(order.getCurrencyPair());
         notNull(tradedAmount);
         notNull(tradedPrice);
-        final BigMoney money = calcMoneyAmount(tradedAmount, tradedPrice, order.getCurrencyPair());
-        return calcCommission(money);
+        return calcCommission(tradedAmount, tradedPrice, order.getCurrencyPair());
     }
 
     @Override
@@ -109,8 +144,7 @@ public class FixedRateCommissionPolicy implements CommissionPolicy {
         notNull(order.getItemPrice());
         notNull(order.getCurrencyPair());
 
-        BigMoney tradeAmount = calcMoneyAmount(order.getTradeAmount(), order.getItemPrice(), order.getCurrencyPair());
-        return calcCommission(tradeAmount);
+        return calcCommission(order.getTradeAmount(), order.getItemPrice(), order.getCurrencyPair());
     }
 
     private BigMoney calcMoneyAmount(BigMoney tradeAmount, BigMoney price, CurrencyPair currencyPair) {
@@ -5,6 +5,7 @@ import com.icoin.trading.api.coin.domain.CurrencyPair;
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.domain.PortfolioId;
 import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.tradeengine.MoneyUtils;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 
@@ -12,6 +13,7 @@ import java.util.Date;
 
 import static com.homhon.util.Asserts.notNull;
 import static com.homhon.util.TimeUtils.currentTime;
+import static com.icoin.trading.tradeengine.MoneyUtils.convertToLong;
 
 /**
  * Created with IntelliJ IDEA.
@@ -29,6 +31,8 @@ import static com.homhon.util.TimeUtils.currentTime;
  * To change this template use File | Settings | File Templates.
  */
 public class Order<T extends Order> extends VersionedEntitySupport<T, String, Long> {
+    private static final long NOT_SCALED = Long.MIN_VALUE;
+
     private TransactionId transactionId;
     private BigMoney itemPrice;
     private BigMoney tradeAmount;
@@ -42,6 +46,10 @@ public class Order<T extends Order> extends VersionedEntitySupport<T, String, Lo
     private Date completeDate;
     private Date lastTradedTime;
     private OrderStatus orderStatus = OrderStatus.PENDING;
+    //count of the fills recorded, the written behind fills are only applied to a stored order behind it
+    private long fillSequence;
+    //the price in the minor units of its currency as stored in mongo, taken once for the matching path
+    private transient volatile long scaledItemPrice = NOT_SCALED;
 
 
     public OrderBookId getOrderBookId() {
@@ -75,6 +83,19 @@ public class Order<T extends Order> extends VersionedEntitySupport<T, String, Lo
 
     public void setItemPrice(BigMoney itemPrice) {
         this.itemPrice = itemPrice;
+        this.scaledItemPrice = NOT_SCALED;
+    }
+
+    /**
+     * @return the price as the long stored in mongo, see {@link MoneyUtils#convertToLong(BigMoney)}
+     */
+    public long getScaledItemPrice() {
+        long scaled = scaledItemPrice;
+        if (scaled == NOT_SCALED) {
+            scaled = convertToLong(itemPrice);
+            scaledItemPrice = scaled;
+        }
+        return scaled;
     }
 
     public BigMoney getTradeAmount() {
@@ -160,6 +181,14 @@ public class Order<T extends Order> extends VersionedEntitySupport<T, String, Lo
         this.completeDate = completeDate;
     }
 
+    public long getFillSequence() {
+        return fillSequence;
+    }
+
+    public void setFillSequence(long fillSequence) {
+        this.fillSequence = fillSequence;
+    }
+
     private void completeOrder(Date completeDate) {
         this.completeDate = completeDate == null ? currentTime() : completeDate;
         this.orderStatus = OrderStatus.DONE;
@@ -171,6 +200,7 @@ public class Order<T extends Order> extends VersionedEntitySupport<T, String, Lo
         leftCommission = leftCommission.minus(commission);
 
         this.lastTradedTime = lastTradedTime;
+        fillSequence++;
 
         if (itemRemaining.isNegativeOrZero()) {
             completeOrder(lastTradedTime);
@@ -16,6 +16,7 @@
 
 package com.icoin.trading.tradeengine.domain.model.order;
 
+import com.google.common.base.Objects;
 import com.homhon.base.domain.Identity;
 import com.icoin.axonsupport.domain.AxonAnnotatedAggregateRoot;
 import com.icoin.trading.api.coin.domain.CoinId;
@@ -34,6 +35,7 @@ import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
 import com.icoin.trading.tradeengine.Constants;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.axonframework.eventsourcing.annotation.AggregateIdentifier;
+import org.axonframework.serializer.Revision;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 
@@ -42,6 +44,8 @@ import java.util.Date;
 /**
  * @author Allard Buijze
  */
+//revision 1 keeps the order ids of the top of the book, see OrderBookSnapshotUpcaster
+@Revision("1")
 public class OrderBook extends AxonAnnotatedAggregateRoot<OrderBook, OrderBookId> {
     private static final long serialVersionUID = 835246298595961746L;
 
@@ -52,6 +56,8 @@ public class OrderBook extends AxonAnnotatedAggregateRoot<OrderBook, OrderBookId
 
     private BigMoney highestBuyPrice;
     private BigMoney lowestSellPrice;
+    private String highestBuyOrderId;
+    private String lowestSellOrderId;
     private BigMoney tradedPrice;
 
     @SuppressWarnings("UnusedDeclaration")
@@ -136,13 +142,28 @@ public class OrderBook extends AxonAnnotatedAggregateRoot<OrderBook, OrderBookId
     }*/
 
     public void resetHighestBuyPrice(String buyOrderId, BigMoney highestBuyPrice) {
+        //top of the book did not move, nothing to record
+        if (isSameTop(this.highestBuyOrderId, this.highestBuyPrice, buyOrderId, highestBuyPrice)) {
+            return;
+        }
         apply(new RefreshedHighestBuyPriceEvent(orderBookId, buyOrderId, highestBuyPrice));
     }
 
     public void resetLowestSellPrice(String sellOrderId, BigMoney lowestSellPrice) {
+        if (isSameTop(this.lowestSellOrderId, this.lowestSellPrice, sellOrderId, lowestSellPrice)) {
+            return;
+        }
         apply(new RefreshedLowestSellPriceEvent(orderBookId, sellOrderId, lowestSellPrice));
     }
 
+    private static boolean isSameTop(String orderId, BigMoney price, String newOrderId, BigMoney newPrice) {
+        return Objects.equal(orderId, newOrderId)
+                && price != null
+                && newPrice != null
+                && price.isSameCurrency(newPrice)
+                && price.isEqual(newPrice);
+    }
+
     //transaction: to add sell orders / buyer orders
     public void executeSelling(BigMoney matchedTradeAmount,
                                BigMoney matchedTradePrice,
@@ -224,12 +245,14 @@ public class OrderBook extends AxonAnnotatedAggregateRoot<OrderBook, OrderBookId
     @EventHandler
     protected void onRefreshedLowestSellPrice(RefreshedLowestSellPriceEvent event) {
         this.lowestSellPrice = event.getPrice();
+        this.lowestSellOrderId = event.getLowestSellOrderId();
     }
 
     @SuppressWarnings("unused")
     @EventHandler
     protected void onRefreshedHighestBuyPrice(RefreshedHighestBuyPriceEvent event) {
         this.highestBuyPrice = event.getPrice();
+        this.highestBuyOrderId = event.getHighestBuyOrderId();
     }
 
     public BigMoney getHighestBuyPrice() {
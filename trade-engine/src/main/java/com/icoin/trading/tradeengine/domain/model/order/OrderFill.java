@@ -0,0 +1,124 @@
+package com.icoin.trading.tradeengine.domain.model.order;
+
+import org.joda.money.BigMoney;
+
+import java.util.Date;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Fills of one order not yet written to mongo, applied as a conditional partial update: the remaining amount,
+ * the left commission, the status and the dates after the latest fill are set on the stored order if its fill
+ * sequence is behind the one of the fill. Writing the same fill again leaves the order as it is.
+ */
+public class OrderFill {
+    private final String orderId;
+    private BigMoney itemRemaining;
+    private BigMoney leftCommission;
+    private Date lastTradedTime;
+    private OrderStatus orderStatus;
+    private Date completeDate;
+    private long fillSequence;
+    private int fills = 1;
+
+    public OrderFill(String orderId,
+                     BigMoney itemRemaining,
+                     BigMoney leftCommission,
+                     Date lastTradedTime,
+                     OrderStatus orderStatus,
+                     Date completeDate,
+                     long fillSequence) {
+        hasLength(orderId);
+        notNull(itemRemaining);
+        notNull(leftCommission);
+        notNull(orderStatus);
+
+        this.orderId = orderId;
+        this.itemRemaining = itemRemaining;
+        this.leftCommission = leftCommission;
+        this.lastTradedTime = lastTradedTime;
+        this.orderStatus = orderStatus;
+        this.completeDate = completeDate;
+        this.fillSequence = fillSequence;
+    }
+
+    /**
+     * Captures the order right after the fill recorded on it, the order keeps changing on the matching thread.
+     */
+    public static OrderFill of(Order order) {
+        notNull(order);
+        return new OrderFill(order.getPrimaryKey(),
+                order.getItemRemaining(),
+                order.getLeftCommission(),
+                order.getLastTradedTime(),
+                order.getOrderStatus(),
+                order.getCompleteDate(),
+                order.getFillSequence());
+    }
+
+    /**
+     * Coalesces another fill of the same order into this one, the state of the latest fill wins.
+     */
+    public OrderFill merge(OrderFill other) {
+        notNull(other);
+        if (!orderId.equals(other.orderId)) {
+            throw new IllegalArgumentException("Cannot merge fill of order " + other.orderId + " into " + orderId);
+        }
+
+        if (other.fillSequence > fillSequence) {
+            itemRemaining = other.itemRemaining;
+            leftCommission = other.leftCommission;
+            lastTradedTime = other.lastTradedTime;
+            orderStatus = other.orderStatus;
+            completeDate = other.completeDate;
+            fillSequence = other.fillSequence;
+        }
+        fills += other.fills;
+        return this;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public BigMoney getItemRemaining() {
+        return itemRemaining;
+    }
+
+    public BigMoney getLeftCommission() {
+        return leftCommission;
+    }
+
+    public Date getLastTradedTime() {
+        return lastTradedTime;
+    }
+
+    public OrderStatus getOrderStatus() {
+        return orderStatus;
+    }
+
+    public Date getCompleteDate() {
+        return completeDate;
+    }
+
+    public long getFillSequence() {
+        return fillSequence;
+    }
+
+    public int getFills() {
+        return fills;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderFill{" +
+                "orderId='" + orderId + '\'' +
+                ", itemRemaining=" + itemRemaining +
+                ", leftCommission=" + leftCommission +
+                ", orderStatus=" + orderStatus +
+                ", fillSequence=" + fillSequence +
+                ", fills=" + fills +
+                '}';
+    }
+}
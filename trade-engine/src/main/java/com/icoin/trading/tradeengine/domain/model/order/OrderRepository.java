@@ -26,6 +26,8 @@ public interface OrderRepository extends GenericCrudRepository<Order, String> {
 
     Order findPendingOrder(String id);
 
+    List<Order> findPendingOrders(OrderBookId orderBookId);
+
     Order findLowestPricePendingSellOrder(OrderBookId orderBookId);
 
 
@@ -35,4 +37,7 @@ public interface OrderRepository extends GenericCrudRepository<Order, String> {
                                                 int size);
 
     Order findHighestPricePendingBuyOrder(OrderBookId orderBookId);
+
+    //partial update of the remaining amount, commission, status and dates of an order behind the fill, idempotent
+    void updateTraded(OrderFill fill);
 } 
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.icoin.trading.tradeengine.infrastructure.cache;
+
+import com.google.common.collect.Maps;
+import com.icoin.axonsupport.infrastructure.snapshot.AdaptiveSnapshotterTrigger;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Statistics of the aggregate cache regions: hits, misses and evictions from ehcache, and how long the
+ * repositories took to load the aggregates missing from their region.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=Cache,name=aggregateCaches",
+        description = "Aggregate cache regions")
+public class AggregateCaches {
+    private CacheManager cacheManager;
+    private final Map<String, AdaptiveSnapshotterTrigger> loads = new ConcurrentHashMap<String, AdaptiveSnapshotterTrigger>();
+
+    /**
+     * Reports the loads timed by the snapshotter trigger of a repository as the loads of its region.
+     */
+    public void registerLoads(String cacheName, AdaptiveSnapshotterTrigger trigger) {
+        notNull(cacheName);
+        notNull(trigger);
+        loads.put(cacheName, trigger);
+    }
+
+    @ManagedAttribute(description = "Hits per region")
+    public Map<String, Long> getHits() {
+        final SortedMap<String, Long> hits = Maps.newTreeMap();
+        for (Ehcache cache : caches()) {
+            hits.put(cache.getName(), cache.getStatistics().getCacheHits());
+        }
+        return hits;
+    }
+
+    @ManagedAttribute(description = "Misses per region")
+    public Map<String, Long> getMisses() {
+        final SortedMap<String, Long> misses = Maps.newTreeMap();
+        for (Ehcache cache : caches()) {
+            misses.put(cache.getName(), cache.getStatistics().getCacheMisses());
+        }
+        return misses;
+    }
+
+    @ManagedAttribute(description = "Hit rate per region in percent")
+    public Map<String, Long> getHitRates() {
+        final SortedMap<String, Long> rates = Maps.newTreeMap();
+        for (Ehcache cache : caches()) {
+            final Statistics statistics = cache.getStatistics();
+            final long total = statistics.getCacheHits() + statistics.getCacheMisses();
+            rates.put(cache.getName(), total == 0 ? 0L : statistics.getCacheHits() * 100 / total);
+        }
+        return rates;
+    }
+
+    @ManagedAttribute(description = "Aggregates per region")
+    public Map<String, Long> getSizes() {
+        final SortedMap<String, Long> sizes = Maps.newTreeMap();
+        for (Ehcache cache : caches()) {
+            sizes.put(cache.getName(), cache.getStatistics().getObjectCount());
+        }
+        return sizes;
+    }
+
+    @ManagedAttribute(description = "Evictions per region")
+    public Map<String, Long> getEvictions() {
+        final SortedMap<String, Long> evictions = Maps.newTreeMap();
+        for (Ehcache cache : caches()) {
+            evictions.put(cache.getName(), cache.getStatistics().getEvictionCount());
+        }
+        return evictions;
+    }
+
+    @ManagedAttribute(description = "Aggregates loaded from the event store per region")
+    public Map<String, Long> getLoads() {
+        final SortedMap<String, Long> counts = Maps.newTreeMap();
+        for (Map.Entry<String, AdaptiveSnapshotterTrigger> entry : loads.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getLoads());
+        }
+        return counts;
+    }
+
+    @ManagedAttribute(description = "Average load time of an aggregate per region in microseconds")
+    public Map<String, Long> getAverageLoadMicros() {
+        final SortedMap<String, Long> micros = Maps.newTreeMap();
+        for (Map.Entry<String, AdaptiveSnapshotterTrigger> entry : loads.entrySet()) {
+            micros.put(entry.getKey(), entry.getValue().getAverageLoadMicros());
+        }
+        return micros;
+    }
+
+    @ManagedOperation(description = "Clears the statistics of every region")
+    public void clearStatistics() {
+        for (Ehcache cache : caches()) {
+            cache.clearStatistics();
+        }
+    }
+
+    private Ehcache[] caches() {
+        final String[] names = cacheManager.getCacheNames();
+        final Ehcache[] caches = new Ehcache[names.length];
+        for (int i = 0; i < names.length; i++) {
+            caches[i] = cacheManager.getEhcache(names[i]);
+        }
+        return caches;
+    }
+
+    @Autowired
+    public void setCacheManager(@Qualifier("ehcacheManager") CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+}
@@ -0,0 +1,251 @@
+package com.icoin.trading.tradeengine.infrastructure.commandhandling;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.icoin.axonsupport.infrastructure.snapshot.AdaptiveSnapshotterTrigger;
+import com.icoin.trading.api.tradeengine.command.order.CreateBuyOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.CreateOrderBookCommand;
+import com.icoin.trading.api.tradeengine.command.order.CreateSellOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteBuyOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrdersCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteSellOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.RefreshOrderBookPriceCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.CreatePortfolioCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.cash.CancelCashReservationCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.cash.ClearReservedCashCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.cash.ConfirmCashReservationCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.cash.DepositCashCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.cash.ReserveCashCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.cash.WithdrawCashCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.coin.AddAmountToPortfolioCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.coin.CancelAmountReservationForPortfolioCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.coin.ConfirmAmountReservationForPortfolioCommand;
+import com.icoin.trading.api.tradeengine.command.portfolio.coin.ReserveAmountCommand;
+import com.icoin.trading.api.tradeengine.command.transaction.CancelTransactionCommand;
+import com.icoin.trading.api.tradeengine.command.transaction.ConfirmTransactionCommand;
+import com.icoin.trading.api.tradeengine.command.transaction.ExecutedTransactionCommand;
+import com.icoin.trading.api.tradeengine.command.transaction.StartBuyTransactionCommand;
+import com.icoin.trading.api.tradeengine.command.transaction.StartSellTransactionCommand;
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.portfolio.Portfolio;
+import com.icoin.trading.tradeengine.domain.model.transaction.Transaction;
+import com.icoin.trading.tradeengine.infrastructure.cache.AggregateCaches;
+import net.sf.jsr107cache.Cache;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandDispatchInterceptor;
+import org.axonframework.commandhandling.SimpleCommandBus;
+import org.axonframework.commandhandling.disruptor.DisruptorCommandBus;
+import org.axonframework.commandhandling.disruptor.DisruptorConfiguration;
+import org.axonframework.commandhandling.interceptors.BeanValidationInterceptor;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventsourcing.CachingEventSourcingRepository;
+import org.axonframework.eventsourcing.EventSourcedAggregateRoot;
+import org.axonframework.eventsourcing.GenericAggregateFactory;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.eventstore.EventStore;
+import org.axonframework.repository.OptimisticLockManager;
+import org.axonframework.repository.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Command bus and the repositories of the order book, portfolio and transaction aggregates. Each repository is
+ * either a cached event sourcing repository behind the synchronous command bus, or kept on the disruptor: its
+ * aggregates stay in memory, its commands are sequenced per aggregate on the ring buffer and its events are
+ * stored and published after the command, with no locking and no loading from the cache or the event store.
+ */
+@SuppressWarnings("unused")
+@Configuration
+public class CommandBusConfiguration {
+    private static Logger logger = LoggerFactory.getLogger(CommandBusConfiguration.class);
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    private EventStore eventStore;
+    @Autowired
+    private EventBus eventBus;
+    @Autowired
+    private Snapshotter snapshotter;
+    @Autowired
+    @Qualifier("orderBookCache")
+    private Cache orderBookCache;
+    @Autowired
+    @Qualifier("portfolioCache")
+    private Cache portfolioCache;
+    @Autowired
+    @Qualifier("transactionCache")
+    private Cache transactionCache;
+    @Autowired
+    private AggregateCaches aggregateCaches;
+
+    @Value("${trading.commandBus.disruptor.orderBook:false}")
+    private boolean orderBookOnDisruptor;
+    @Value("${trading.commandBus.disruptor.portfolio:false}")
+    private boolean portfolioOnDisruptor;
+    @Value("${trading.commandBus.disruptor.transaction:false}")
+    private boolean transactionOnDisruptor;
+    @Value("${trading.commandBus.disruptor.bufferSize:4096}")
+    private int bufferSize;
+    @Value("${trading.commandBus.disruptor.invokerThreads:1}")
+    private int invokerThreads;
+    @Value("${trading.commandBus.disruptor.publisherThreads:1}")
+    private int publisherThreads;
+    @Value("${trading.snapshot.minEvents:20}")
+    private int snapshotMinEvents;
+    @Value("${trading.snapshot.targetReloadMillis:20}")
+    private long snapshotTargetReloadMillis;
+    @Value("${trading.snapshot.maxTrackedAggregates:100000}")
+    private int snapshotMaxTrackedAggregates;
+    @Value("${trading.snapshot.orderBook.maxEvents:500}")
+    private int orderBookSnapshotMaxEvents;
+    @Value("${trading.snapshot.portfolio.maxEvents:200}")
+    private int portfolioSnapshotMaxEvents;
+    @Value("${trading.snapshot.transaction.maxEvents:200}")
+    private int transactionSnapshotMaxEvents;
+
+    private DisruptorCommandBus disruptorCommandBus;
+
+    @Bean(name = "commandBus")
+    public CommandBus commandBus() {
+        final SimpleCommandBus commandBus = new SimpleCommandBus();
+        commandBus.setDispatchInterceptors(dispatchInterceptors());
+
+        final Set<String> disruptorCommands = Sets.newHashSet();
+        if (orderBookOnDisruptor) {
+            disruptorCommands.addAll(namesOf(
+                    CreateOrderBookCommand.class,
+                    CreateBuyOrderCommand.class,
+                    CreateSellOrderCommand.class,
+                    RefreshOrderBookPriceCommand.class,
+                    ExecuteBuyOrderCommand.class,
+                    ExecuteSellOrderCommand.class,
+                    ExecuteOrdersCommand.class));
+        }
+        if (portfolioOnDisruptor) {
+            disruptorCommands.addAll(namesOf(
+                    CreatePortfolioCommand.class,
+                    ReserveAmountCommand.class,
+                    AddAmountToPortfolioCommand.class,
+                    ConfirmAmountReservationForPortfolioCommand.class,
+                    CancelAmountReservationForPortfolioCommand.class,
+                    DepositCashCommand.class,
+                    WithdrawCashCommand.class,
+                    ReserveCashCommand.class,
+                    CancelCashReservationCommand.class,
+                    ConfirmCashReservationCommand.class,
+                    ClearReservedCashCommand.class));
+        }
+        if (transactionOnDisruptor) {
+            disruptorCommands.addAll(namesOf(
+                    StartBuyTransactionCommand.class,
+                    StartSellTransactionCommand.class,
+                    ConfirmTransactionCommand.class,
+                    CancelTransactionCommand.class,
+                    ExecutedTransactionCommand.class));
+        }
+
+        if (disruptorCommands.isEmpty()) {
+            return commandBus;
+        }
+        return new RoutingCommandBus(commandBus, disruptorCommandBus(), disruptorCommands);
+    }
+
+    @Bean(name = "orderBookRepository")
+    public Repository<OrderBook> orderBookRepository() {
+        return repository(OrderBook.class, orderBookOnDisruptor, false, orderBookSnapshotMaxEvents,
+                "orderBookCache", orderBookCache);
+    }
+
+    @Bean(name = "portfolioRepository")
+    public Repository<Portfolio> portfolioRepository() {
+        return repository(Portfolio.class, portfolioOnDisruptor, true, portfolioSnapshotMaxEvents,
+                "portfolioCache", portfolioCache);
+    }
+
+    @Bean(name = "transactionRepository")
+    public Repository<Transaction> transactionRepository() {
+        return repository(Transaction.class, transactionOnDisruptor, true, transactionSnapshotMaxEvents,
+                "transactionCache", transactionCache);
+    }
+
+    private <T extends EventSourcedAggregateRoot> Repository<T> repository(Class<T> aggregateType,
+                                                                        boolean onDisruptor,
+                                                                        boolean optimisticLocking,
+                                                                        int snapshotMaxEvents,
+                                                                        String cacheName,
+                                                                        Cache cache) {
+        final GenericAggregateFactory<T> aggregateFactory = new GenericAggregateFactory<T>(aggregateType);
+
+        if (onDisruptor) {
+            logger.info("{} aggregates are kept on the disruptor", aggregateType.getSimpleName());
+            final AdaptiveSnapshotterTrigger trigger = snapshotterTrigger(snapshotMaxEvents, null);
+            aggregateCaches.registerLoads(cacheName, trigger);
+            return disruptorCommandBus().createRepository(aggregateFactory, trigger);
+        }
+
+        final CachingEventSourcingRepository<T> repository = optimisticLocking
+                ? new CachingEventSourcingRepository<T>(aggregateFactory, eventStore, new OptimisticLockManager())
+                : new CachingEventSourcingRepository<T>(aggregateFactory, eventStore);
+        repository.setEventBus(eventBus);
+        repository.setCache(cache);
+        final AdaptiveSnapshotterTrigger trigger = snapshotterTrigger(snapshotMaxEvents, cache);
+        aggregateCaches.registerLoads(cacheName, trigger);
+        repository.setSnapshotterTrigger(trigger);
+        return repository;
+    }
+
+    //snapshots by the measured replay cost, bounded by the maximal events between two snapshots
+    private AdaptiveSnapshotterTrigger snapshotterTrigger(int maxEvents, Cache cache) {
+        final AdaptiveSnapshotterTrigger trigger = new AdaptiveSnapshotterTrigger();
+        trigger.setSnapshotter(snapshotter);
+        trigger.setMinEvents(Math.min(snapshotMinEvents, maxEvents));
+        trigger.setMaxEvents(maxEvents);
+        trigger.setTargetReloadMillis(snapshotTargetReloadMillis);
+        trigger.setMaxTrackedAggregates(snapshotMaxTrackedAggregates);
+        if (cache != null) {
+            trigger.setAggregateCache(cache);
+        }
+        return trigger;
+    }
+
+    //created only when a repository is kept on the disruptor, it starts its threads right away
+    private synchronized DisruptorCommandBus disruptorCommandBus() {
+        if (disruptorCommandBus == null) {
+            final DisruptorConfiguration configuration = new DisruptorConfiguration();
+            configuration.setBufferSize(bufferSize);
+            configuration.setInvokerThreadCount(invokerThreads);
+            configuration.setPublisherThreadCount(publisherThreads);
+            configuration.setDispatchInterceptors(dispatchInterceptors());
+            configuration.setCommandTargetResolver(new IdentifierCommandTargetResolver(ImmutableList.of(
+                    "getOrderBookIdentifier",
+                    "getPortfolioIdentifier",
+                    "getPortfolioId",
+                    "getTransactionIdentifier")));
+
+            disruptorCommandBus = new DisruptorCommandBus(eventStore, eventBus, configuration);
+        }
+        return disruptorCommandBus;
+    }
+
+    private static List<CommandDispatchInterceptor> dispatchInterceptors() {
+        return Collections.<CommandDispatchInterceptor>singletonList(new BeanValidationInterceptor());
+    }
+
+    private static List<String> namesOf(Class<?>... commandTypes) {
+        final List<String> names = Lists.newArrayListWithCapacity(commandTypes.length);
+        for (Class<?> commandType : commandTypes) {
+            names.add(commandType.getName());
+        }
+        return names;
+    }
+}
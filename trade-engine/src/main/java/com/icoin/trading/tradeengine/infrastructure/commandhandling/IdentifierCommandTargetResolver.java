@@ -0,0 +1,95 @@
+package com.icoin.trading.tradeengine.infrastructure.commandhandling;
+
+import com.google.common.collect.ImmutableList;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.CommandTargetResolver;
+import org.axonframework.commandhandling.VersionedAggregateIdentifier;
+import org.axonframework.commandhandling.annotation.AnnotationCommandTargetResolver;
+import org.axonframework.commandhandling.annotation.TargetAggregateIdentifier;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Resolves the aggregate a command targets from its {@code @TargetAggregateIdentifier}, or else from the first
+ * of the identifier getters the command has, as most portfolio and transaction commands are not annotated.
+ */
+public class IdentifierCommandTargetResolver implements CommandTargetResolver {
+    private static final Method NONE = noneMethod();
+    private final AnnotationCommandTargetResolver annotationResolver = new AnnotationCommandTargetResolver();
+    private final List<String> getters;
+    private final ConcurrentMap<Class<?>, Method> methods = new ConcurrentHashMap<Class<?>, Method>();
+
+    public IdentifierCommandTargetResolver(List<String> getters) {
+        notNull(getters);
+        this.getters = ImmutableList.copyOf(getters);
+    }
+
+    @Override
+    public VersionedAggregateIdentifier resolveTarget(CommandMessage<?> command) {
+        final Object payload = command.getPayload();
+        final Method getter = getterOf(payload.getClass());
+        if (getter == NONE) {
+            return annotationResolver.resolveTarget(command);
+        }
+
+        try {
+            final Object identifier = getter.invoke(payload);
+            if (identifier == null) {
+                throw new IllegalArgumentException("Command " + command.getCommandName() + " has no target identifier");
+            }
+            return new VersionedAggregateIdentifier(identifier, null);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot read the target identifier of " + command.getCommandName(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Cannot read the target identifier of " + command.getCommandName(), e.getCause());
+        }
+    }
+
+    private Method getterOf(Class<?> type) {
+        Method method = methods.get(type);
+        if (method != null) {
+            return method;
+        }
+
+        method = NONE;
+        if (!hasAnnotatedTarget(type)) {
+            for (String getter : getters) {
+                try {
+                    method = type.getMethod(getter);
+                    method.setAccessible(true);
+                    break;
+                } catch (NoSuchMethodException e) {
+                    //try the next one
+                }
+            }
+        }
+        methods.putIfAbsent(type, method);
+        return method;
+    }
+
+    private static boolean hasAnnotatedTarget(Class<?> type) {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(TargetAggregateIdentifier.class)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Method noneMethod() {
+        try {
+            return Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.icoin.trading.tradeengine.infrastructure.commandhandling;
+
+import com.google.common.collect.ImmutableSet;
+import org.axonframework.commandhandling.CommandBus;
+import org.axonframework.commandhandling.CommandCallback;
+import org.axonframework.commandhandling.CommandHandler;
+import org.axonframework.commandhandling.CommandMessage;
+import org.axonframework.commandhandling.disruptor.DisruptorCommandBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Set;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Command bus sending the commands of the aggregates kept on the disruptor to the {@link DisruptorCommandBus}
+ * and every other command to the default bus. Handlers subscribe through this bus and end up on the bus their
+ * command is dispatched to.
+ */
+public class RoutingCommandBus implements CommandBus, DisposableBean {
+    private static Logger logger = LoggerFactory.getLogger(RoutingCommandBus.class);
+    private final CommandBus defaultBus;
+    private final DisruptorCommandBus disruptorBus;
+    private final Set<String> disruptorCommands;
+
+    public RoutingCommandBus(CommandBus defaultBus, DisruptorCommandBus disruptorBus, Set<String> disruptorCommands) {
+        notNull(defaultBus);
+        notNull(disruptorBus);
+        notNull(disruptorCommands);
+        this.defaultBus = defaultBus;
+        this.disruptorBus = disruptorBus;
+        this.disruptorCommands = ImmutableSet.copyOf(disruptorCommands);
+    }
+
+    private CommandBus busOf(String commandName) {
+        return disruptorCommands.contains(commandName) ? disruptorBus : defaultBus;
+    }
+
+    @Override
+    public void dispatch(CommandMessage<?> command) {
+        busOf(command.getCommandName()).dispatch(command);
+    }
+
+    @Override
+    public <R> void dispatch(CommandMessage<?> command, CommandCallback<R> callback) {
+        busOf(command.getCommandName()).dispatch(command, callback);
+    }
+
+    @Override
+    public <C> void subscribe(String commandName, CommandHandler<? super C> handler) {
+        if (disruptorCommands.contains(commandName)) {
+            logger.info("{} is handled on the disruptor", commandName);
+        }
+        busOf(commandName).subscribe(commandName, handler);
+    }
+
+    @Override
+    public <C> boolean unsubscribe(String commandName, CommandHandler<? super C> handler) {
+        return busOf(commandName).unsubscribe(commandName, handler);
+    }
+
+    public boolean isOnDisruptor(String commandName) {
+        return disruptorCommands.contains(commandName);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        disruptorBus.stop();
+    }
+}
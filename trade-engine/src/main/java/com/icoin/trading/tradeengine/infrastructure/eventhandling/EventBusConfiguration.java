@@ -0,0 +1,55 @@
+package com.icoin.trading.tradeengine.infrastructure.eventhandling;
+
+import org.axonframework.eventhandling.ClusteringEventBus;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventhandling.async.FullConcurrencyPolicy;
+import org.axonframework.eventhandling.async.SequentialPerAggregatePolicy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Clustered event bus, so the query models, notifications and fees can be updated off the command thread and
+ * matching no longer waits for them. Events of one aggregate are still handled in order within a cluster.
+ * Synchronous unless trading.eventBus.async is set, the query models lag the commands once it is.
+ */
+@SuppressWarnings("unused")
+@Configuration
+public class EventBusConfiguration {
+    @Value("${trading.eventBus.async:false}")
+    private boolean async;
+    @Value("${trading.eventBus.query.threads:4}")
+    private int queryThreads;
+    @Value("${trading.eventBus.query.queueSize:8192}")
+    private int queryQueueSize;
+    @Value("${trading.eventBus.external.threads:2}")
+    private int externalThreads;
+    @Value("${trading.eventBus.external.queueSize:2048}")
+    private int externalQueueSize;
+    @Value("${trading.eventBus.fee.threads:2}")
+    private int feeThreads;
+    @Value("${trading.eventBus.fee.queueSize:4096}")
+    private int feeQueueSize;
+
+    @Bean(name = "eventClusters")
+    public EventClusters eventClusters() {
+        return new EventClusters(async)
+                .addCluster("query", "com.icoin.trading.tradeengine.query", queryThreads, queryQueueSize,
+                        new SequentialPerAggregatePolicy(), projectionFence())
+                //mails and external notifications, no ordering needed
+                .addCluster("external", "com.icoin.trading.tradeengine.infrastructure.listener", externalThreads, externalQueueSize,
+                        new FullConcurrencyPolicy())
+                .addCluster("fee", "com.icoin.trading.fee", feeThreads, feeQueueSize,
+                        new SequentialPerAggregatePolicy());
+    }
+
+    @Bean(name = "projectionFence")
+    public ProjectionFence projectionFence() {
+        return new ProjectionFence();
+    }
+
+    @Bean(name = "eventBus")
+    public EventBus eventBus() {
+        return new ClusteringEventBus(eventClusters().getClusterSelector());
+    }
+}
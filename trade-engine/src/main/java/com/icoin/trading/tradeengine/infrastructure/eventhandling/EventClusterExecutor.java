@@ -0,0 +1,71 @@
+package com.icoin.trading.tradeengine.infrastructure.eventhandling;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size executor of one event cluster with a bounded queue. When the queue is full the publishing
+ * thread processes the events itself, which slows the publisher down to the pace of the listeners instead
+ * of queueing without bound; how often that happens is counted as back pressure.
+ */
+public class EventClusterExecutor extends ThreadPoolExecutor {
+    private static Logger logger = LoggerFactory.getLogger(EventClusterExecutor.class);
+    private final String name;
+    private final int queueCapacity;
+    private final AtomicLong callerRuns = new AtomicLong();
+
+    public EventClusterExecutor(final String name, int threads, int queueCapacity) {
+        super(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity));
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+
+        setThreadFactory(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-events-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        setRejectedExecutionHandler(new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    logger.warn("event cluster {} is shut down, dropping {}", EventClusterExecutor.this.name, runnable);
+                    return;
+                }
+                callerRuns.incrementAndGet();
+                runnable.run();
+            }
+        });
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return times the queue was full and the publisher processed the events itself
+     */
+    public long getCallerRuns() {
+        return callerRuns.get();
+    }
+}
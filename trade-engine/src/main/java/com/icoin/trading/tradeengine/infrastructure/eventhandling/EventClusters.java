@@ -0,0 +1,183 @@
+package com.icoin.trading.tradeengine.infrastructure.eventhandling;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.eventhandling.ClassNamePrefixClusterSelector;
+import org.axonframework.eventhandling.Cluster;
+import org.axonframework.eventhandling.ClusterSelector;
+import org.axonframework.eventhandling.CompositeClusterSelector;
+import org.axonframework.eventhandling.DefaultClusterSelector;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.SimpleCluster;
+import org.axonframework.eventhandling.async.AsynchronousCluster;
+import org.axonframework.eventhandling.async.SequencingPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Event listener clusters of the event bus. Listeners are assigned by the package of their class to a named
+ * asynchronous cluster with its own executor, the rest, the sagas and the listeners sending commands, stay
+ * in the default cluster on the publishing thread. The listeners of a fenced cluster handle their events inside
+ * the projection fence.
+ */
+@ManagedResource(objectName = "icoin:type=EventBus,name=eventClusters",
+        description = "Asynchronous event listener clusters")
+public class EventClusters implements DisposableBean {
+    private static Logger logger = LoggerFactory.getLogger(EventClusters.class);
+    private final boolean async;
+    private final Cluster defaultCluster = new SimpleCluster("default");
+    private final List<ClusterSelector> selectors = Lists.newArrayList();
+    private final List<EventClusterExecutor> executors = Lists.newArrayList();
+
+    public EventClusters(boolean async) {
+        this.async = async;
+    }
+
+    /**
+     * Sends the events of listeners in the package to a cluster of its own.
+     *
+     * @param sequencingPolicy events of the same sequence are handled one at a time in order
+     */
+    public EventClusters addCluster(String name,
+                                    String packagePrefix,
+                                    int threads,
+                                    int queueCapacity,
+                                    SequencingPolicy<? super EventMessage<?>> sequencingPolicy) {
+        return addCluster(name, packagePrefix, threads, queueCapacity, sequencingPolicy, null);
+    }
+
+    /**
+     * Sends the events of listeners in the package to a cluster of its own, its listeners held back by the fence.
+     *
+     * @param fence the fence of the listeners, null for none
+     */
+    public EventClusters addCluster(String name,
+                                    String packagePrefix,
+                                    int threads,
+                                    int queueCapacity,
+                                    SequencingPolicy<? super EventMessage<?>> sequencingPolicy,
+                                    final ProjectionFence fence) {
+        notNull(name);
+        notNull(packagePrefix);
+        notNull(sequencingPolicy);
+        isTrue(threads > 0, "event cluster threads should be greater than 0");
+        isTrue(queueCapacity > 0, "event cluster queue capacity should be greater than 0");
+
+        final Cluster cluster;
+        if (async) {
+            final EventClusterExecutor executor = new EventClusterExecutor(name, threads, queueCapacity);
+            executors.add(executor);
+            cluster = fence == null
+                    ? new AsynchronousCluster(name, executor, sequencingPolicy)
+                    : new AsynchronousCluster(name, executor, sequencingPolicy) {
+                @Override
+                public void subscribe(EventListener eventListener) {
+                    super.subscribe(fence.fenced(eventListener));
+                }
+
+                @Override
+                public void unsubscribe(EventListener eventListener) {
+                    super.unsubscribe(fence.fenced(eventListener));
+                }
+            };
+            logger.info("event listeners in {} are handled by cluster {} with {} threads", packagePrefix, name, threads);
+        } else {
+            cluster = fence == null
+                    ? new SimpleCluster(name)
+                    : new SimpleCluster(name) {
+                @Override
+                public void subscribe(EventListener eventListener) {
+                    super.subscribe(fence.fenced(eventListener));
+                }
+
+                @Override
+                public void unsubscribe(EventListener eventListener) {
+                    super.unsubscribe(fence.fenced(eventListener));
+                }
+            };
+        }
+
+        selectors.add(new ClassNamePrefixClusterSelector(packagePrefix, cluster));
+        return this;
+    }
+
+    public ClusterSelector getClusterSelector() {
+        final List<ClusterSelector> all = Lists.newArrayList(selectors);
+        all.add(new DefaultClusterSelector(defaultCluster));
+        return new CompositeClusterSelector(ImmutableList.copyOf(all));
+    }
+
+    @ManagedAttribute(description = "Whether the clusters are asynchronous")
+    public boolean isAsync() {
+        return async;
+    }
+
+    @ManagedAttribute(description = "Events waiting per cluster")
+    public Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> depths = Maps.newHashMap();
+        for (EventClusterExecutor executor : executors) {
+            depths.put(executor.getName(), executor.getQueueDepth());
+        }
+        return depths;
+    }
+
+    @ManagedAttribute(description = "Queue capacity per cluster")
+    public Map<String, Integer> getQueueCapacities() {
+        final Map<String, Integer> capacities = Maps.newHashMap();
+        for (EventClusterExecutor executor : executors) {
+            capacities.put(executor.getName(), executor.getQueueCapacity());
+        }
+        return capacities;
+    }
+
+    @ManagedAttribute(description = "Threads busy per cluster")
+    public Map<String, Integer> getActiveThreads() {
+        final Map<String, Integer> active = Maps.newHashMap();
+        for (EventClusterExecutor executor : executors) {
+            active.put(executor.getName(), executor.getActiveCount());
+        }
+        return active;
+    }
+
+    @ManagedAttribute(description = "Times the queue was full and the publisher handled the events itself, per cluster")
+    public Map<String, Long> getCallerRuns() {
+        final Map<String, Long> callerRuns = Maps.newHashMap();
+        for (EventClusterExecutor executor : executors) {
+            callerRuns.put(executor.getName(), executor.getCallerRuns());
+        }
+        return callerRuns;
+    }
+
+    @ManagedAttribute(description = "Event batches handled per cluster")
+    public Map<String, Long> getCompletedTasks() {
+        final Map<String, Long> completed = Maps.newHashMap();
+        for (EventClusterExecutor executor : executors) {
+            completed.put(executor.getName(), executor.getCompletedTaskCount());
+        }
+        return completed;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (EventClusterExecutor executor : executors) {
+            executor.shutdown();
+        }
+        for (EventClusterExecutor executor : executors) {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("event cluster {} did not finish its {} waiting events", executor.getName(), executor.getQueueDepth());
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.icoin.trading.tradeengine.infrastructure.eventhandling;
+
+import com.google.common.collect.ImmutableSet;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.EventListenerProxy;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Holds the live projection listeners back while the projection replayer catches up with the last events and
+ * swaps in the collections it rebuilt, the updates they would make meanwhile are not lost with the old
+ * collections. Once opened, the listeners of the replayed projections skip the events the replay handled, held
+ * back or still queued, those are in the collections swapped in already. An event is told replayed by the last
+ * sequence number the replay handled for its aggregate, so an event stored late is handled whatever its time stamp.
+ */
+public class ProjectionFence {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private volatile Replayed replayed = Replayed.NONE;
+    private final AtomicLong skippedEvents = new AtomicLong();
+
+    /**
+     * @return the listener handling its events inside the fence
+     */
+    public EventListener fenced(EventListener listener) {
+        notNull(listener);
+        return listener instanceof FencedEventListener ? listener : new FencedEventListener(listener);
+    }
+
+    /**
+     * Waits for the listeners handling an event and holds back the next ones until opened.
+     */
+    public void close() {
+        lock.writeLock().lock();
+        replayed = Replayed.NONE;
+    }
+
+    /**
+     * Lets the held back listeners go, nothing was swapped.
+     */
+    public void open() {
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * Lets the held back listeners go, those of the listener types skip the events replayed.
+     *
+     * @param sequenceNumbers the last sequence number replayed per aggregate identifier, not changed afterwards
+     */
+    public void open(Collection<Class<?>> listenerTypes, Map<String, Long> sequenceNumbers) {
+        notNull(listenerTypes);
+        notNull(sequenceNumbers);
+        replayed = new Replayed(ImmutableSet.copyOf(listenerTypes), Collections.unmodifiableMap(sequenceNumbers));
+        lock.writeLock().unlock();
+    }
+
+    boolean isHoldingBack() {
+        return lock.hasQueuedThreads();
+    }
+
+    public long getSkippedEvents() {
+        return skippedEvents.get();
+    }
+
+    private void handle(EventListener listener, Class<?> listenerType, EventMessage event) {
+        final Lock read = lock.readLock();
+        read.lock();
+        try {
+            if (replayed.covers(listenerType, event)) {
+                skippedEvents.incrementAndGet();
+                return;
+            }
+            listener.handle(event);
+        } finally {
+            read.unlock();
+        }
+    }
+
+    private class FencedEventListener implements EventListenerProxy {
+        private final EventListener delegate;
+
+        private FencedEventListener(EventListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handle(EventMessage event) {
+            ProjectionFence.this.handle(delegate, getTargetType(), event);
+        }
+
+        @Override
+        public Class<?> getTargetType() {
+            return delegate instanceof EventListenerProxy
+                    ? ((EventListenerProxy) delegate).getTargetType()
+                    : delegate.getClass();
+        }
+
+        //the cluster unsubscribes the listener it was given
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof FencedEventListener && delegate.equals(((FencedEventListener) o).delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+    }
+
+    /**
+     * Position per aggregate of the replay swapped in last and the listeners it rebuilt.
+     */
+    private static class Replayed {
+        private static final Replayed NONE =
+                new Replayed(Collections.<Class<?>>emptySet(), Collections.<String, Long>emptyMap());
+
+        private final Set<Class<?>> listenerTypes;
+        private final Map<String, Long> sequenceNumbers;
+
+        private Replayed(Set<Class<?>> listenerTypes, Map<String, Long> sequenceNumbers) {
+            this.listenerTypes = listenerTypes;
+            this.sequenceNumbers = sequenceNumbers;
+        }
+
+        private boolean covers(Class<?> listenerType, EventMessage event) {
+            if (sequenceNumbers.isEmpty() || !(event instanceof DomainEventMessage) || !rebuilt(listenerType)) {
+                return false;
+            }
+            final DomainEventMessage domainEvent = (DomainEventMessage) event;
+            final Long replayed = sequenceNumbers.get(domainEvent.getAggregateIdentifier().toString());
+            return replayed != null && domainEvent.getSequenceNumber() <= replayed;
+        }
+
+        //the listener bean may be a subclass proxy
+        private boolean rebuilt(Class<?> listenerType) {
+            for (Class<?> type : listenerTypes) {
+                if (type.isAssignableFrom(listenerType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
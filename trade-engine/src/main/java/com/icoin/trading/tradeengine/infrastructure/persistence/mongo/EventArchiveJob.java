@@ -0,0 +1,141 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.icoin.axonsupport.infrastructure.eventstore.EventArchiver;
+import com.icoin.axonsupport.infrastructure.eventstore.EventRevisionRewriter;
+import com.icoin.axonsupport.infrastructure.eventstore.EventStorePartition;
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Archives the snapshotted events of every partition of the event store, every interval when one is configured
+ * and on demand. Restoring, moving a type to its own partition and rewriting the hot events to their latest
+ * revision are on demand only.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=EventStore,name=eventArchiveJob")
+public class EventArchiveJob {
+    private static Logger logger = LoggerFactory.getLogger(EventArchiveJob.class);
+
+    private final PartitionedEventStore eventStore;
+    private final EventArchiver eventArchiver;
+    private final EventRevisionRewriter eventRevisionRewriter;
+    private final long intervalMinutes;
+    private ScheduledExecutorService scheduler;
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public EventArchiveJob(PartitionedEventStore eventStore,
+                           EventArchiver eventArchiver,
+                           EventRevisionRewriter eventRevisionRewriter,
+                           @Value("${trading.eventStore.archive.intervalMinutes:0}") long intervalMinutes) {
+        notNull(eventStore);
+        notNull(eventArchiver);
+        notNull(eventRevisionRewriter);
+        isTrue(intervalMinutes >= 0L, "Archive interval should not be negative!");
+
+        this.eventStore = eventStore;
+        this.eventArchiver = eventArchiver;
+        this.eventRevisionRewriter = eventRevisionRewriter;
+        this.intervalMinutes = intervalMinutes;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalMinutes == 0L) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    archive();
+                } catch (RuntimeException e) {
+                    logger.error("archiving events failed, retried in " + intervalMinutes + " minutes", e);
+                }
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        logger.info("events archived every {} minutes", intervalMinutes);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the number of events archived from all the partitions
+     */
+    @ManagedOperation
+    public synchronized long archive() {
+        long archived = 0L;
+        for (EventStorePartition partition : eventStore.getPartitions()) {
+            archived += eventArchiver.archive(partition);
+        }
+        return archived;
+    }
+
+    @ManagedOperation
+    public synchronized long restore(String aggregateType, String aggregateIdentifier) {
+        return eventArchiver.restore(eventStore.partitionOf(aggregateType), aggregateType, aggregateIdentifier);
+    }
+
+    /**
+     * Moves the events kept in the default partition so far to the partition of the aggregate type, to be run
+     * while no command is handled.
+     */
+    @ManagedOperation
+    public synchronized long migrate(String aggregateType) {
+        return eventArchiver.migrate(
+                eventStore.getDefaultPartition(), eventStore.partitionOf(aggregateType), aggregateType);
+    }
+
+    /**
+     * Rewrites the hot events of every partition stored with an older revision, to be run while no command is
+     * handled.
+     *
+     * @return the number of events rewritten
+     */
+    @ManagedOperation
+    public synchronized long rewriteRevisions() {
+        long rewritten = 0L;
+        for (EventStorePartition partition : eventStore.getPartitions()) {
+            rewritten += eventRevisionRewriter.rewrite(partition);
+        }
+        return rewritten;
+    }
+
+    @ManagedAttribute
+    public long getArchivedEvents() {
+        return eventArchiver.getArchivedEvents();
+    }
+
+    @ManagedAttribute
+    public long getRestoredEvents() {
+        return eventArchiver.getRestoredEvents();
+    }
+
+    @ManagedAttribute
+    public long getLastArchiveMillis() {
+        return eventArchiver.getLastArchiveMillis();
+    }
+}
@@ -0,0 +1,191 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.ID;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * The position of the last document of a page, its sort value and its identifier, from which the next page is
+ * sought on the index instead of skipping the documents of the pages before. Queries are sorted by the field then
+ * the identifier in the same direction, so documents with the same sort value keep an order. The position bounds the
+ * field too, next to the $or, for the index to be scanned from the position on rather than from its start.
+ * <p/>
+ * Clients get the position as an opaque continuation token.
+ */
+public final class Keyset {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char DATE = 'D';
+    private static final char LONG = 'L';
+    private static final char SEPARATOR = '|';
+
+    private final Object value;
+    private final String identifier;
+
+    private Keyset(Object value, String identifier) {
+        notNull(value);
+        hasLength(identifier);
+        isTrue(value instanceof Date || value instanceof Long, "Sort value should be a date or a long!");
+        this.value = value;
+        this.identifier = identifier;
+    }
+
+    public static Keyset of(Date value, String identifier) {
+        return new Keyset(value, identifier);
+    }
+
+    public static Keyset of(long value, String identifier) {
+        return new Keyset(value, identifier);
+    }
+
+    /**
+     * @return the position of the token, null for the first page when there is no token
+     * @throws IllegalArgumentException when the token was not made by {@link #toToken()}
+     */
+    public static Keyset parse(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+
+        final String text;
+        try {
+            text = new String(DatatypeConverter.parseBase64Binary(token.trim().replace('-', '+').replace('_', '/')), UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token " + token, e);
+        }
+
+        final int separator = text.indexOf(SEPARATOR, 2);
+        if (text.length() < 4 || text.charAt(1) != SEPARATOR || separator < 0 || separator == text.length() - 1) {
+            throw new IllegalArgumentException("Invalid continuation token " + token);
+        }
+
+        final long value;
+        try {
+            value = Long.parseLong(text.substring(2, separator));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid continuation token " + token, e);
+        }
+
+        final String identifier = text.substring(separator + 1);
+        switch (text.charAt(0)) {
+            case DATE:
+                return of(new Date(value), identifier);
+            case LONG:
+                return of(value, identifier);
+            default:
+                throw new IllegalArgumentException("Invalid continuation token " + token);
+        }
+    }
+
+    public String toToken() {
+        final String text = value instanceof Date
+                ? DATE + "" + SEPARATOR + ((Date) value).getTime() + SEPARATOR + identifier
+                : LONG + "" + SEPARATOR + value + SEPARATOR + identifier;
+        //url safe
+        return DatatypeConverter.printBase64Binary(text.getBytes(UTF_8)).replace('+', '-').replace('/', '_');
+    }
+
+    /**
+     * @return the criteria of the documents after this position in the order of the field then the identifier
+     */
+    public Criteria after(String field, Sort.Direction direction) {
+        hasLength(field);
+        return after(where(field), direction);
+    }
+
+    /**
+     * Narrows the range of the field to the documents after this position. The position replaces the bound of the
+     * range on its side, which is never past it for a position of a document the range found.
+     *
+     * @return the range
+     */
+    public Criteria after(Criteria range, Sort.Direction direction) {
+        notNull(range);
+        hasLength(range.getKey());
+        notNull(direction);
+        final String field = range.getKey();
+        return direction == Sort.Direction.ASC
+                ? range.gte(value).orOperator(where(field).gt(value), where(field).is(value).and(ID).gt(identifier))
+                : range.lte(value).orOperator(where(field).lt(value), where(field).is(value).and(ID).lt(identifier));
+    }
+
+    /**
+     * Sorts the query by the field then the identifier and limits it to one document more than the page, which
+     * tells whether there is a next page. Picks up after the position of the token when there is one.
+     *
+     * @return the query
+     */
+    public static Query seek(Query query, String field, Sort.Direction direction, String continuationToken, int limit) {
+        notNull(query);
+        isTrue(limit > 0);
+
+        final Keyset position = parse(continuationToken);
+        if (position != null) {
+            query.addCriteria(position.after(field, direction));
+        }
+        return query.with(new Sort(direction, field, ID)).limit(limit + 1);
+    }
+
+    /**
+     * Seeks as {@link #seek(Query, String, Sort.Direction, String, int)} on the field of the range, within the range.
+     *
+     * @return the query
+     */
+    public static Query seek(Query query, Criteria range, Sort.Direction direction, String continuationToken, int limit) {
+        notNull(query);
+        notNull(range);
+        isTrue(limit > 0);
+
+        final Keyset position = parse(continuationToken);
+        query.addCriteria(position == null ? range : position.after(range, direction));
+        return query.with(new Sort(direction, range.getKey(), ID)).limit(limit + 1);
+    }
+
+    /**
+     * @param found the documents found by a query of {@link #seek}
+     * @return the page, the last document's position as the continuation token when there are more
+     */
+    public static <T> KeysetPage<T> page(List<T> found, int limit, Position<T> position) {
+        notNull(found);
+        notNull(position);
+        if (found.size() <= limit) {
+            return new KeysetPage<T>(found, null);
+        }
+
+        final List<T> content = found.subList(0, limit);
+        return new KeysetPage<T>(content, position.of(content.get(limit - 1)).toToken());
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public String toString() {
+        return "Keyset{" +
+                "value=" + value +
+                ", identifier='" + identifier + '\'' +
+                '}';
+    }
+
+    /**
+     * The position of a document in the sort order of a query.
+     */
+    public interface Position<T> {
+        Keyset of(T document);
+    }
+}
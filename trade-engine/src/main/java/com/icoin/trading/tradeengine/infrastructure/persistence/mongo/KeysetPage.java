@@ -0,0 +1,45 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * A page of a keyset query with the continuation token of the next page, null on the last page.
+ */
+public class KeysetPage<T> {
+    private final List<T> content;
+    private final String nextToken;
+
+    public KeysetPage(List<T> content, String nextToken) {
+        notNull(content);
+        this.content = Collections.unmodifiableList(new ArrayList<T>(content));
+        this.nextToken = nextToken;
+    }
+
+    public static <T> KeysetPage<T> empty() {
+        return new KeysetPage<T>(Collections.<T>emptyList(), null);
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetPage{" +
+                "content=" + content +
+                ", nextToken='" + nextToken + '\'' +
+                '}';
+    }
+}
@@ -1,13 +1,31 @@
 package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
 
+import com.icoin.axonsupport.domain.AxonAnnotatedAggregateRoot;
+import com.icoin.axonsupport.infrastructure.eventstore.EventArchiver;
+import com.icoin.axonsupport.infrastructure.eventstore.EventRevisionRewriter;
+import com.icoin.axonsupport.infrastructure.eventstore.EventStorePartition;
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import com.icoin.axonsupport.infrastructure.mongo.EventStoreTemplete;
 import com.icoin.money.converter.JodaMoneyConverter;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer.CompactBinarySerializer;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer.XmlUpcasterChain;
 import com.thoughtworks.xstream.XStream;
-import org.axonframework.eventstore.mongo.MongoEventStore;
-import org.axonframework.eventstore.mongo.MongoTemplate;
+import org.axonframework.serializer.Serializer;
 import org.axonframework.serializer.xml.XStreamSerializer;
+import org.axonframework.upcasting.LazyUpcasterChain;
+import org.axonframework.upcasting.Upcaster;
+import org.axonframework.upcasting.UpcasterChain;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDbFactory;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,18 +37,115 @@ import org.springframework.context.annotation.Configuration;
 @SuppressWarnings("unused")
 @Configuration
 public class MongoEventStoreBean {
+    private static Logger logger = LoggerFactory.getLogger(MongoEventStoreBean.class);
+
     @SuppressWarnings("SpringJavaAutowiringInspection")
     @Autowired
-    private MongoTemplate mongoTemplate;
+    private EventStoreTemplete mongoTemplate;
 
-    @Bean(name = "eventStore")
-    public MongoEventStore eventStore() {
+    @Resource(name = "trade.mongoDbFactory")
+    private MongoDbFactory mongoDbFactory;
+
+    //aggregate types whose events and snapshots are kept in collections of their own, the rest stay in domainevents
+    @Value("${trading.eventStore.partitions:}")
+    private String partitions;
+
+    @Value("${trading.eventStore.archive.batchSize:500}")
+    private int archiveBatchSize;
+
+    @Value("${trading.eventStore.archive.eventsToKeep:0}")
+    private long eventsToKeep;
+
+    //an event class changed gets a new @Revision and an upcaster bean from its previous revision, upcasters of
+    //xml documents only apply to the events written with xstream, the binary form is read by field name
+    @Autowired(required = false)
+    private List<Upcaster> upcasters = Collections.emptyList();
+
+    //binary writes the compact binary form and still reads the xml, xstream writes and reads xml only
+    @Value("${trading.eventStore.serializer:xstream}")
+    private String serializer;
+
+    //stores opted in to the compact binary form when the serializer is xstream: default for domainevents, or the
+    //aggregate types kept in partitions
+    @Value("${trading.eventStore.binaryStores:}")
+    private String binaryStores;
+
+    @Bean(name = "eventSerializer")
+    public Serializer eventSerializer() {
+        if ("binary".equalsIgnoreCase(serializer.trim())) {
+            logger.info("event store writes the compact binary form");
+            return binaryEventSerializer();
+        }
+
+        return xmlEventSerializer();
+    }
+
+    @Bean
+    public XStreamSerializer xmlEventSerializer() {
         XStreamSerializer eventSerializer = new XStreamSerializer();
         XStream xStream = eventSerializer.getXStream();
 
         xStream.registerConverter(new JodaMoneyConverter());
+        //aggregates kept their identity field in a field of their own before, ignored in the older snapshots
+        xStream.omitField(AxonAnnotatedAggregateRoot.class, "identityField");
+        return eventSerializer;
+    }
 
-        MongoEventStore eventStore = new MongoEventStore(eventSerializer, mongoTemplate);
+    @Bean
+    public CompactBinarySerializer binaryEventSerializer() {
+        return new CompactBinarySerializer(xmlEventSerializer());
+    }
+
+    @Bean(name = "eventStore")
+    public PartitionedEventStore eventStore() {
+        PartitionedEventStore eventStore =
+                new PartitionedEventStore(new EventStorePartition("default", mongoTemplate, serializerOf("default")));
+
+        for (String type : partitions.split(",")) {
+            if (type.trim().length() == 0) {
+                continue;
+            }
+
+            final String suffix = type.trim().toLowerCase();
+            final EventStoreTemplete template = new EventStoreTemplete(
+                    mongoTemplate.getDomainEventsCollectionName() + "_" + suffix,
+                    mongoTemplate.getSnapshotEventsCollectionName() + "_" + suffix,
+                    mongoDbFactory);
+            eventStore.addPartition(type.trim(), new EventStorePartition(suffix, template, serializerOf(suffix)));
+            logger.info("events of {} are kept in {}", type.trim(), template.getDomainEventsCollectionName());
+        }
+        eventStore.setUpcasterChain(upcasterChain());
         return eventStore;
     }
+
+    private Serializer serializerOf(String store) {
+        for (String binaryStore : binaryStores.split(",")) {
+            if (binaryStore.trim().equalsIgnoreCase(store)) {
+                logger.info("event store {} writes the compact binary form", store);
+                return binaryEventSerializer();
+            }
+        }
+        return eventSerializer();
+    }
+
+    //lazy, an event is only upcast when its payload is read, and only when it is xml
+    @Bean
+    public UpcasterChain upcasterChain() {
+        logger.info("{} event upcasters", upcasters.size());
+        return new XmlUpcasterChain(new LazyUpcasterChain(eventSerializer().getConverterFactory(), upcasters));
+    }
+
+    @Bean
+    public EventArchiver eventArchiver() {
+        EventArchiver eventArchiver = new EventArchiver(archiveBatchSize);
+        eventArchiver.setEventsToKeep(eventsToKeep);
+        return eventArchiver;
+    }
+
+    @Bean
+    public EventRevisionRewriter eventRevisionRewriter() {
+        EventRevisionRewriter eventRevisionRewriter = new EventRevisionRewriter(eventSerializer(), archiveBatchSize);
+        eventRevisionRewriter.setUpcasterChain(upcasterChain());
+        return eventRevisionRewriter;
+    }
 }
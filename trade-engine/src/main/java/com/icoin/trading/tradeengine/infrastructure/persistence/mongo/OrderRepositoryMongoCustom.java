@@ -2,6 +2,7 @@ package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
 
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderFill;
 import org.joda.money.BigMoney;
 
 import java.util.Date;
@@ -27,6 +28,8 @@ public interface OrderRepositoryMongoCustom {
 
     Order findPendingOrder(String id);
 
+    List<Order> findPendingOrders(OrderBookId orderBookId);
+
     Order findLowestPricePendingSellOrder(OrderBookId orderBookId);
 
 
@@ -36,4 +39,7 @@ public interface OrderRepositoryMongoCustom {
                                                 int size);
 
     Order findHighestPricePendingBuyOrder(OrderBookId orderBookId);
+
+    //partial update of the remaining amount, commission, status and dates of an order behind the fill, idempotent
+    void updateTraded(OrderFill fill);
 } 
\ No newline at end of file
@@ -2,8 +2,10 @@ package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
 
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderFill;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
 import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import com.mongodb.WriteResult;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.slf4j.Logger;
@@ -12,6 +14,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import javax.annotation.Resource;
 import java.math.BigDecimal;
@@ -22,6 +25,7 @@ import java.util.List;
 import static com.homhon.util.Asserts.hasLength;
 import static com.homhon.util.Asserts.isTrue;
 import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.MoneyUtils.convertToLong;
 
 /**
  * Created with IntelliJ IDEA.
@@ -134,6 +138,28 @@ public class OrderRepositoryMongoImpl implements OrderRepositoryMongoCustom {
         return order;
     }
 
+    @Override
+    public List<Order> findPendingOrders(OrderBookId orderBookId) {
+        notNull(orderBookId);
+        hasLength(orderBookId.toString());
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Querying all pending orders of order book id:{}", orderBookId);
+        }
+
+        final Query query = new Query()
+                .addCriteria(Criteria.where("orderBookId").is(orderBookId))
+                .addCriteria(Criteria.where("orderStatus").is(OrderStatus.PENDING))
+                .with(new Sort(Sort.Direction.ASC, "placeDate"));
+
+        final List<Order> orders = mongoTemplate.find(query, Order.class);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Pending orders queried with {} : {}", query, orders.size());
+        }
+        return orders;
+    }
+
     @Override
     public Order findLowestPricePendingSellOrder(OrderBookId orderBookId) {
         notNull(orderBookId);
@@ -224,4 +250,35 @@ public class OrderRepositoryMongoImpl implements OrderRepositoryMongoCustom {
         }
         return order;
     }
-} 
+
+    @Override
+    public void updateTraded(OrderFill fill) {
+        notNull(fill);
+
+        //money is stored as long amount, the state after the fill is set so that a retried write changes nothing
+        final Update update = new Update()
+                .set("itemRemaining.amount", convertToLong(fill.getItemRemaining()))
+                .set("leftCommission.amount", convertToLong(fill.getLeftCommission()))
+                .set("lastTradedTime", fill.getLastTradedTime())
+                .set("orderStatus", fill.getOrderStatus())
+                .set("fillSequence", fill.getFillSequence());
+
+        if (fill.getCompleteDate() != null) {
+            update.set("completeDate", fill.getCompleteDate());
+        }
+
+        //orders stored before the fill sequence was kept have none
+        final Query query = new Query()
+                .addCriteria(Criteria.where("primaryKey").is(fill.getOrderId())
+                        .orOperator(Criteria.where("fillSequence").lt(fill.getFillSequence()),
+                                Criteria.where("fillSequence").exists(false)));
+
+        final WriteResult result = mongoTemplate.updateFirst(query, update, Order.class);
+
+        if (result.getN() == 0) {
+            logger.warn("No order updated with {}, not found or already written : {}", query, fill);
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Order updated with {} : {}", query, update);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.icoin.trading.tradeengine.MoneyUtils;
+import org.joda.money.BigMoney;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Single atomic updates projections are kept with, instead of loading, changing and saving back a whole document.
+ * Money is stored as a scaled long amount and a currency, so a change of money is an $inc of the amount, with the
+ * currency set along for the money the update creates.
+ * <p/>
+ * An update driven by a domain event only applies to a document that has not seen the event yet: the document keeps
+ * the sequence number of the last event of its aggregate applied, a redelivered event matches nothing.
+ */
+public final class ProjectionUpdates {
+    public static final String ID = "_id";
+    public static final String LAST_SEQUENCE_NUMBER = "lastSequenceNumber";
+    private static final String AMOUNT = ".amount";
+    private static final String CURRENCY = ".currency";
+
+    private ProjectionUpdates() {
+    }
+
+    public static Query byIdentifier(String identifier) {
+        hasLength(identifier);
+        return query(where(ID).is(identifier));
+    }
+
+    /**
+     * @return the document of the identifier when the event of the sequence number is not applied to it yet
+     */
+    public static Query notApplied(String identifier, long sequenceNumber) {
+        hasLength(identifier);
+        return query(where(ID).is(identifier).and(LAST_SEQUENCE_NUMBER).not().gte(sequenceNumber));
+    }
+
+    /**
+     * @return an update recording the event of the sequence number as applied
+     */
+    public static Update applied(long sequenceNumber) {
+        return new Update().set(LAST_SEQUENCE_NUMBER, sequenceNumber);
+    }
+
+    /**
+     * Adds the money, negative to subtract it, to the money at the path.
+     */
+    public static Update inc(Update update, String path, BigMoney money) {
+        notNull(update);
+        notNull(money);
+        return update.inc(path + AMOUNT, MoneyUtils.convertToLong(money))
+                .set(path + CURRENCY, money.getCurrencyUnit().getCurrencyCode());
+    }
+
+    public static String amountOf(String path) {
+        return path + AMOUNT;
+    }
+
+    /**
+     * Increments the version of a versioned type as saving it does, so a document loaded before the update can no
+     * longer be saved over it.
+     */
+    public static Update versioned(Update update, Class<?> type, MongoTemplate mongoTemplate) {
+        final MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getPersistentEntity(type);
+        if (entity != null && entity.hasVersionProperty()) {
+            update.inc(entity.getVersionProperty().getFieldName(), 1);
+        }
+        return update;
+    }
+}
@@ -0,0 +1,555 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.axonframework.unitofwork.CurrentUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.axonframework.unitofwork.UnitOfWorkListenerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.LAST_SEQUENCE_NUMBER;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.notApplied;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.versioned;
+
+/**
+ * Buffers the event driven updates of the projections per document and writes each document once per batch, with
+ * the updates merged: the last $set of a field wins and the $inc of a field are summed. A batch is the window when
+ * one is configured, flushed every window and once it holds the max batch size of documents, otherwise the unit of
+ * work the updates are made in, flushed after it commits. Updates made outside both are written right away.
+ * <p/>
+ * A merged update only applies to a document that has seen none of its events yet. When it matches nothing, as
+ * some of the events were applied already, the updates are written one by one with their own sequence numbers.
+ * The follow up updates of a document, conditional ones run after its update, are run once per batch.
+ * <p/>
+ * The driver has no bulk update, the documents of a batch are written collection by collection. A document failing
+ * to be written is requeued with its updates ahead of the newer ones in the window, to be written again with the
+ * next one up to max retries times, as the sequence guard skips what was applied already. Without a window the
+ * rest of the batch is written and the batch then fails.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=Projection,name=projectionWriter")
+public class ProjectionWriter {
+    private static Logger logger = LoggerFactory.getLogger(ProjectionWriter.class);
+    private static final String SET = "$set";
+    private static final String INC = "$inc";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${trading.projection.windowMillis:0}")
+    private long windowMillis;
+    @Value("${trading.projection.maxBatchSize:500}")
+    private int maxBatchSize = 500;
+    @Value("${trading.projection.maxRetries:5}")
+    private int maxRetries = 5;
+    @Value("${trading.projection.flushOnRead:true}")
+    private volatile boolean flushOnRead = true;
+
+    private final Object flushLock = new Object();
+    private Batch window = new Batch();
+    private final ThreadLocal<Map<UnitOfWork, UnitOfWorkBatch>> unitsOfWork = new ThreadLocal<Map<UnitOfWork, UnitOfWorkBatch>>() {
+        @Override
+        protected Map<UnitOfWork, UnitOfWorkBatch> initialValue() {
+            return new IdentityHashMap<UnitOfWork, UnitOfWorkBatch>();
+        }
+    };
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicInteger pendingDocuments = new AtomicInteger();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong documentsWritten = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong droppedDocuments = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+    private volatile int lastBatchSize;
+
+    @Autowired
+    public ProjectionWriter(@Qualifier("trade.mongoTemplate") MongoTemplate mongoTemplate) {
+        notNull(mongoTemplate);
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        isTrue(windowMillis >= 0L, "Projection window should not be negative!");
+        isTrue(maxBatchSize > 0, "Max batch size should be greater than 0!");
+        isTrue(maxRetries >= 0, "Max retries should not be negative!");
+        if (windowMillis == 0L) {
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    logger.error("flushing the projection window failed", e);
+                }
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        logger.info("projection updates written every {} ms", windowMillis);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Writes the update of the document by the event of the sequence number, with the next batch.
+     */
+    public void write(Class<?> type, String identifier, long sequenceNumber, Update update) {
+        write(type, identifier, sequenceNumber, update, null, null);
+    }
+
+    /**
+     * Writes the update of the document by the event of the sequence number, with the next batch, followed by the
+     * follow up update when the update applied. The last follow up of the same query in a batch wins.
+     */
+    public void write(Class<?> type, String identifier, long sequenceNumber, Update update,
+                      Query followUpQuery, Update followUp) {
+        notNull(type);
+        hasLength(identifier);
+        notNull(update);
+        isTrue((followUpQuery == null) == (followUp == null), "Follow up query and update go together!");
+        updates.incrementAndGet();
+
+        if (windowMillis > 0L) {
+            final boolean full;
+            synchronized (this) {
+                window.add(type, identifier, sequenceNumber, update, followUpQuery, followUp);
+                full = window.size() >= maxBatchSize;
+            }
+            if (full) {
+                flush();
+            }
+            return;
+        }
+
+        if (CurrentUnitOfWork.isStarted()) {
+            unitOfWorkBatch(CurrentUnitOfWork.get()).batch.add(type, identifier, sequenceNumber, update, followUpQuery, followUp);
+            return;
+        }
+
+        final Batch single = new Batch();
+        single.add(type, identifier, sequenceNumber, update, followUpQuery, followUp);
+        write(single);
+    }
+
+    private UnitOfWorkBatch unitOfWorkBatch(UnitOfWork unitOfWork) {
+        final Map<UnitOfWork, UnitOfWorkBatch> batchesOfThread = unitsOfWork.get();
+        UnitOfWorkBatch batch = batchesOfThread.get(unitOfWork);
+        if (batch == null) {
+            batch = new UnitOfWorkBatch();
+            batchesOfThread.put(unitOfWork, batch);
+            unitOfWork.registerListener(batch);
+        }
+        return batch;
+    }
+
+    /**
+     * Writes the documents of the window now.
+     */
+    @ManagedOperation
+    public void flush() {
+        synchronized (flushLock) {
+            final Batch batch;
+            synchronized (this) {
+                if (window.size() == 0) {
+                    return;
+                }
+                batch = window;
+                window = new Batch();
+            }
+            write(batch);
+        }
+    }
+
+    /**
+     * Writes the documents of the window before a read expecting to see them, when flushing on read is enabled.
+     * Updates of events not handled yet are not waited for.
+     */
+    public void flushBeforeRead() {
+        if (flushOnRead && windowMillis > 0L) {
+            flush();
+        }
+    }
+
+    private void write(Batch batch) {
+        final long start = System.currentTimeMillis();
+        final List<PendingDocument> failed = new ArrayList<PendingDocument>();
+        RuntimeException failure = null;
+        for (List<PendingDocument> documents : batch.perCollection().values()) {
+            for (PendingDocument document : documents) {
+                try {
+                    write(document);
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    logger.error("Writing " + document.type.getSimpleName() + " " + document.identifier + " failed", e);
+                    failed.add(document);
+                    failure = e;
+                }
+            }
+        }
+
+        final long millis = System.currentTimeMillis() - start;
+        pendingDocuments.addAndGet(-batch.size());
+        documentsWritten.addAndGet(batch.size());
+        flushes.incrementAndGet();
+        lastBatchSize = batch.size();
+        lastFlushMillis = millis;
+        if (millis > maxFlushMillis) {
+            maxFlushMillis = millis;
+        }
+
+        if (failure == null) {
+            return;
+        }
+        if (windowMillis == 0L) {
+            throw new IllegalStateException(failed.size() + " of " + batch.size() + " projection documents failed to be written", failure);
+        }
+        requeue(failed);
+    }
+
+    private void requeue(List<PendingDocument> failed) {
+        synchronized (this) {
+            for (PendingDocument document : failed) {
+                if (document.retries < maxRetries) {
+                    window.requeue(document);
+                } else {
+                    droppedDocuments.incrementAndGet();
+                    logger.error("Dropped the events {} to {} of {} {} after {} retries", document.firstSequenceNumber,
+                            document.lastSequenceNumber, document.type.getSimpleName(), document.identifier, maxRetries);
+                }
+            }
+        }
+    }
+
+    private void write(PendingDocument document) {
+        boolean applied = updateFirst(document.type,
+                notApplied(document.identifier, document.firstSequenceNumber), document.merged());
+
+        if (!applied && document.writes.size() > 1) {
+            //some of the events were applied already, the others are applied by themselves
+            for (Write write : document.writes) {
+                applied |= updateFirst(document.type,
+                        notApplied(document.identifier, write.sequenceNumber), write.update);
+            }
+        }
+
+        if (!applied) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} {} is missing or has events {} to {} applied already", document.type.getSimpleName(),
+                        document.identifier, document.firstSequenceNumber, document.lastSequenceNumber);
+            }
+            return;
+        }
+
+        for (FollowUp followUp : document.followUps.values()) {
+            updateFirst(document.type, followUp.query, followUp.update);
+        }
+    }
+
+    private boolean updateFirst(Class<?> type, Query query, Update update) {
+        return mongoTemplate.updateFirst(query, versioned(update, type, mongoTemplate), type).getN() > 0;
+    }
+
+    @ManagedAttribute
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @ManagedAttribute
+    public boolean isFlushOnRead() {
+        return flushOnRead;
+    }
+
+    @ManagedAttribute
+    public void setFlushOnRead(boolean flushOnRead) {
+        this.flushOnRead = flushOnRead;
+    }
+
+    /**
+     * @return the documents waiting for their batch to be written
+     */
+    @ManagedAttribute
+    public int getPendingDocuments() {
+        return pendingDocuments.get();
+    }
+
+    /**
+     * @return the updates made, every update after the first of a document in a batch saved a write
+     */
+    @ManagedAttribute
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    @ManagedAttribute
+    public long getDocumentsWritten() {
+        return documentsWritten.get();
+    }
+
+    @ManagedAttribute
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the documents given up on after max retries, their projections miss some events until rebuilt
+     */
+    @ManagedAttribute
+    public long getDroppedDocuments() {
+        return droppedDocuments.get();
+    }
+
+    @ManagedAttribute
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    @ManagedAttribute
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    @ManagedAttribute
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    /**
+     * The documents of a batch in the order they were first updated.
+     */
+    private class Batch {
+        private final Map<String, PendingDocument> documents = new LinkedHashMap<String, PendingDocument>();
+
+        void add(Class<?> type, String identifier, long sequenceNumber, Update update, Query followUpQuery, Update followUp) {
+            final String key = key(type, identifier);
+            PendingDocument document = documents.get(key);
+            if (document == null) {
+                document = new PendingDocument(type, identifier);
+                documents.put(key, document);
+                pendingDocuments.incrementAndGet();
+            }
+            document.add(sequenceNumber, update);
+            if (followUpQuery != null) {
+                document.followUps.put(followUpQuery.getQueryObject().toString(), new FollowUp(followUpQuery, followUp));
+            }
+        }
+
+        //the updates of the failed document go before the newer ones of the same document, for the last $set to win
+        void requeue(PendingDocument failed) {
+            final String key = key(failed.type, failed.identifier);
+            final PendingDocument document = new PendingDocument(failed.type, failed.identifier);
+            document.retries = failed.retries + 1;
+            document.addAll(failed);
+            final PendingDocument newer = documents.remove(key);
+            if (newer == null) {
+                pendingDocuments.incrementAndGet();
+            } else {
+                document.addAll(newer);
+            }
+            documents.put(key, document);
+        }
+
+        private String key(Class<?> type, String identifier) {
+            return type.getName() + '\u0000' + identifier;
+        }
+
+        int size() {
+            return documents.size();
+        }
+
+        Map<String, List<PendingDocument>> perCollection() {
+            final Map<String, List<PendingDocument>> collections = new LinkedHashMap<String, List<PendingDocument>>();
+            for (PendingDocument document : documents.values()) {
+                final String collection = mongoTemplate.getCollectionName(document.type);
+                List<PendingDocument> ofCollection = collections.get(collection);
+                if (ofCollection == null) {
+                    ofCollection = new ArrayList<PendingDocument>();
+                    collections.put(collection, ofCollection);
+                }
+                ofCollection.add(document);
+            }
+            return collections;
+        }
+    }
+
+    private static class PendingDocument {
+        private final Class<?> type;
+        private final String identifier;
+        private final List<Write> writes = new ArrayList<Write>();
+        private final Map<String, Object> sets = new LinkedHashMap<String, Object>();
+        private final Map<String, Number> incs = new LinkedHashMap<String, Number>();
+        private final Map<String, FollowUp> followUps = new LinkedHashMap<String, FollowUp>();
+        private long firstSequenceNumber = Long.MAX_VALUE;
+        private long lastSequenceNumber = Long.MIN_VALUE;
+        private int retries;
+
+        private PendingDocument(Class<?> type, String identifier) {
+            this.type = type;
+            this.identifier = identifier;
+        }
+
+        void add(long sequenceNumber, Update update) {
+            writes.add(new Write(sequenceNumber, update));
+            firstSequenceNumber = Math.min(firstSequenceNumber, sequenceNumber);
+            lastSequenceNumber = Math.max(lastSequenceNumber, sequenceNumber);
+
+            final DBObject updateObject = update.getUpdateObject();
+            for (String operator : updateObject.keySet()) {
+                final DBObject fields = (DBObject) updateObject.get(operator);
+                if (SET.equals(operator)) {
+                    for (String field : fields.keySet()) {
+                        incs.remove(field);
+                        sets.put(field, fields.get(field));
+                    }
+                } else if (INC.equals(operator)) {
+                    for (String field : fields.keySet()) {
+                        inc(field, (Number) fields.get(field));
+                    }
+                } else {
+                    throw new IllegalArgumentException("Only $set and $inc can be merged, not " + operator);
+                }
+            }
+        }
+
+        void addAll(PendingDocument other) {
+            for (Write write : other.writes) {
+                add(write.sequenceNumber, write.update);
+            }
+            followUps.putAll(other.followUps);
+        }
+
+        //an increment of a field set in the batch already changes the value set
+        private void inc(String field, Number value) {
+            if (sets.containsKey(field) && sets.get(field) instanceof Number) {
+                sets.put(field, sum((Number) sets.get(field), value));
+            } else if (incs.containsKey(field)) {
+                incs.put(field, sum(incs.get(field), value));
+            } else {
+                incs.put(field, value);
+            }
+        }
+
+        private static Number sum(Number one, Number other) {
+            if (isIntegral(one) && isIntegral(other)) {
+                return one.longValue() + other.longValue();
+            }
+            return one.doubleValue() + other.doubleValue();
+        }
+
+        private static boolean isIntegral(Number number) {
+            return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+        }
+
+        Update merged() {
+            final Update update = new Update();
+            for (Map.Entry<String, Object> set : sets.entrySet()) {
+                update.set(set.getKey(), set.getValue());
+            }
+            for (Map.Entry<String, Number> inc : incs.entrySet()) {
+                update.inc(inc.getKey(), inc.getValue());
+            }
+            return update.set(LAST_SEQUENCE_NUMBER, lastSequenceNumber);
+        }
+    }
+
+    private static class Write {
+        private final long sequenceNumber;
+        private final Update update;
+
+        private Write(long sequenceNumber, Update update) {
+            this.sequenceNumber = sequenceNumber;
+            this.update = update;
+        }
+    }
+
+    private static class FollowUp {
+        private final Query query;
+        private final Update update;
+
+        private FollowUp(Query query, Update update) {
+            this.query = query;
+            this.update = update;
+        }
+    }
+
+    /**
+     * The batch of a unit of work, written once after it commits and dropped when it rolls back.
+     */
+    private class UnitOfWorkBatch extends UnitOfWorkListenerAdapter {
+        private final Batch batch = new Batch();
+        private boolean done;
+
+        @Override
+        public void afterCommit(UnitOfWork unitOfWork) {
+            flush();
+        }
+
+        @Override
+        public void onRollback(UnitOfWork unitOfWork, Throwable failureCause) {
+            //a batch failing after the commit is written already
+            if (done) {
+                return;
+            }
+            done = true;
+            pendingDocuments.addAndGet(-batch.size());
+        }
+
+        @Override
+        public void onCleanup(UnitOfWork unitOfWork) {
+            flush();
+            unitsOfWork.get().remove(unitOfWork);
+        }
+
+        private void flush() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (batch.size() > 0) {
+                write(batch);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+
+/**
+ * Big money as its currency code symbol, scale and unscaled amount, the scale is kept so equals still holds.
+ */
+public class BigMoneyCodec implements ValueCodec<BigMoney> {
+    @Override
+    public Class<BigMoney> getType() {
+        return BigMoney.class;
+    }
+
+    @Override
+    public void write(BigMoney value, BinaryEncoder encoder) {
+        encoder.writeSymbol(value.getCurrencyUnit().getCurrencyCode());
+        encoder.writeBigDecimal(value.getAmount());
+    }
+
+    @Override
+    public BigMoney read(BinaryDecoder decoder) {
+        final CurrencyUnit currency = CurrencyUnit.of(decoder.readSymbol());
+        return BigMoney.of(currency, decoder.readBigDecimal());
+    }
+}
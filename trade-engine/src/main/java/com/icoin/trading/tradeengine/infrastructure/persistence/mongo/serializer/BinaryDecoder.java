@@ -0,0 +1,324 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import org.axonframework.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer.BinaryFormat.*;
+
+/**
+ * Reads one payload written by the {@link BinaryEncoder}. Fields are matched by the names stored in the payload,
+ * so fields added to a class since keep their default and fields removed since are skipped.
+ * Not thread safe, one decoder per payload.
+ */
+public class BinaryDecoder {
+    private final BinaryFormat format;
+    private final byte[] buffer;
+    private int position;
+    private final List<Class<?>> classes = Lists.newArrayList();
+    private final List<Field[]> schemas = Lists.newArrayList();
+    private final List<String> symbols = Lists.newArrayList();
+    private final List<Object> handles = Lists.newArrayList();
+
+    BinaryDecoder(BinaryFormat format, byte[] buffer, int offset, Class<?> rootType) {
+        this.format = format;
+        this.buffer = buffer;
+        this.position = offset;
+        classes.add(rootType);
+        schemas.add(null);
+    }
+
+    public int readByte() {
+        if (position >= buffer.length) {
+            throw new SerializationException("Unexpected end of the binary payload at " + position);
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed variable length int at " + position);
+    }
+
+    public long readVarLong() {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed variable length long at " + position);
+    }
+
+    public int readSignedVarInt() {
+        final int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readSignedVarLong() {
+        final long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    public byte[] readBytes() {
+        final int length = readVarInt();
+        checkAvailable(length);
+        final byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    /**
+     * Reads a string written by {@link BinaryEncoder#writeString(String)}, pure ascii strings are written
+     * as bytes and utf-8 strings as bytes as well, so both decode as utf-8.
+     */
+    public String readString() {
+        final int length = readVarInt();
+        checkAvailable(length);
+        final String value = new String(buffer, position, length, Charsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public String readSymbol() {
+        final int index = readVarInt();
+        if (index > 0) {
+            return symbols.get(index - 1);
+        }
+
+        final String symbol = readString();
+        symbols.add(symbol);
+        return symbol;
+    }
+
+    public BigInteger readBigInteger() {
+        return readByte() == 0 ? BigInteger.valueOf(readSignedVarLong()) : new BigInteger(readBytes());
+    }
+
+    public BigDecimal readBigDecimal() {
+        final int scale = readSignedVarInt();
+        return new BigDecimal(readBigInteger(), scale);
+    }
+
+    public Object readValue() {
+        final int tag = readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case INT:
+                return readSignedVarInt();
+            case LONG:
+                return readSignedVarLong();
+            case STRING:
+                return readString();
+            case DOUBLE:
+                return Double.longBitsToDouble(readFixedLong());
+            case FLOAT:
+                return Float.intBitsToFloat(readVarInt());
+            case SHORT:
+                return (short) readSignedVarInt();
+            case BYTE:
+                return (byte) readByte();
+            case CHAR:
+                return (char) readVarInt();
+            case BIG_DECIMAL:
+                return readBigDecimal();
+            case BIG_INTEGER:
+                return readBigInteger();
+            case BYTES:
+                return readBytes();
+            case ENUM:
+                return readEnum();
+            case REFERENCE:
+                return handles.get(readVarInt());
+            case ARRAY:
+                return readArray();
+            case COLLECTION:
+                return readCollection();
+            case MAP:
+                return readMap();
+            case SERIALIZABLE:
+                return readSerializable();
+            case OBJECT:
+                return readObject();
+            default:
+                if (tag >= CODEC) {
+                    return format.codecOf(tag - CODEC).read(this);
+                }
+                throw new SerializationException("Unknown tag " + tag + " at " + (position - 1));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readEnum() {
+        final Class enumType = readClass();
+        final String name = readString();
+        try {
+            return Enum.valueOf(enumType, name);
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException("Enum " + enumType.getName() + " has no constant " + name, e);
+        }
+    }
+
+    private Object readArray() {
+        final Class<?> type = readClass();
+        final int length = readVarInt();
+        final Object array = Array.newInstance(type.getComponentType(), length);
+        handles.add(array);
+        for (int i = 0; i < length; i++) {
+            Array.set(array, i, readValue());
+        }
+        return array;
+    }
+
+    private Object readCollection() {
+        final Collection<Object> collection = newCollection(readClass());
+        handles.add(collection);
+        final int size = readVarInt();
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue());
+        }
+        return collection;
+    }
+
+    private Object readMap() {
+        final Map<Object, Object> map = newMap(readClass());
+        handles.add(map);
+        final int size = readVarInt();
+        for (int i = 0; i < size; i++) {
+            final Object key = readValue();
+            map.put(key, readValue());
+        }
+        return map;
+    }
+
+    private Object readSerializable() {
+        final int handle = handles.size();
+        handles.add(null);
+        final Object value = deserialize(readBytes());
+        handles.set(handle, value);
+        return value;
+    }
+
+    private Object readObject() {
+        final int index = readClassIndex();
+        final Class<?> type = classes.get(index);
+        Field[] fields = schemas.get(index);
+        if (fields == null) {
+            fields = readSchema(type);
+            schemas.set(index, fields);
+        }
+
+        final Object value = format.newInstance(type);
+        handles.add(value);
+
+        for (Field field : fields) {
+            final Object fieldValue = readValue();
+            if (field == null) {
+                continue;
+            }
+            try {
+                field.set(value, fieldValue);
+            } catch (IllegalAccessException e) {
+                throw new SerializationException("Cannot set " + field + " of " + type.getName(), e);
+            } catch (IllegalArgumentException e) {
+                throw new SerializationException("Cannot set " + field + " of " + type.getName()
+                        + " to a " + (fieldValue == null ? null : fieldValue.getClass().getName()), e);
+            }
+        }
+        return value;
+    }
+
+    private Field[] readSchema(Class<?> type) {
+        final ClassSchema schema = format.schemaOf(type);
+        final Field[] fields = new Field[readVarInt()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = schema.getField(readString());
+        }
+        return fields;
+    }
+
+    private Class<?> readClass() {
+        return classes.get(readClassIndex());
+    }
+
+    private int readClassIndex() {
+        final int index = readVarInt();
+        if (index > 0) {
+            return index - 1;
+        }
+
+        final String name = readString();
+        try {
+            classes.add(format.classForName(name));
+            schemas.add(null);
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Cannot find class " + name + " of the binary payload", e);
+        }
+        return classes.size() - 1;
+    }
+
+    public long readFixedLong() {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private Object deserialize(byte[] bytes) {
+        try {
+            final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+                    try {
+                        return format.classForName(descriptor.getName());
+                    } catch (ClassNotFoundException e) {
+                        return super.resolveClass(descriptor);
+                    }
+                }
+            };
+            try {
+                return in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Cannot deserialize a java serialized value", e);
+        } catch (ClassNotFoundException e) {
+            throw new SerializationException("Cannot deserialize a java serialized value", e);
+        }
+    }
+
+    private void checkAvailable(int length) {
+        if (length < 0 || position + length > buffer.length) {
+            throw new SerializationException("Unexpected end of the binary payload at " + position);
+        }
+    }
+}
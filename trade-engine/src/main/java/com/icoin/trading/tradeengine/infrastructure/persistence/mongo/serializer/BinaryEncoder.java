@@ -0,0 +1,302 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import org.axonframework.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer.BinaryFormat.*;
+
+/**
+ * Writes one payload of the compact binary format. Every value is tagged with its kind; class names,
+ * field names and symbols are written once per payload and referred to by index afterwards, and an object
+ * met twice is written as a reference to the first one, so shared and cyclic graphs survive.
+ * Not thread safe, one encoder per payload.
+ */
+public class BinaryEncoder {
+    private final BinaryFormat format;
+    private byte[] buffer = new byte[256];
+    private int position;
+    private final Map<Class<?>, Integer> classes = Maps.newHashMap();
+    private final Map<Class<?>, Boolean> schemas = Maps.newHashMap();
+    private final Map<String, Integer> symbols = Maps.newHashMap();
+    private final IdentityHashMap<Object, Integer> handles = new IdentityHashMap<Object, Integer>();
+
+    BinaryEncoder(BinaryFormat format, Class<?> rootType) {
+        this.format = format;
+        classes.put(rootType, 0);
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0L) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    public void writeString(String value) {
+        final int length = value.length();
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = value.charAt(i) < 0x80;
+        }
+
+        if (!ascii) {
+            writeBytes(value.getBytes(Charsets.UTF_8));
+            return;
+        }
+
+        writeVarInt(length);
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Writes a string expected to repeat in the payload, such as a currency code, once.
+     */
+    public void writeSymbol(String symbol) {
+        final Integer index = symbols.get(symbol);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+
+        writeVarInt(0);
+        writeString(symbol);
+        symbols.put(symbol, symbols.size());
+    }
+
+    public void writeBigInteger(BigInteger value) {
+        if (value.bitLength() < 64) {
+            writeByte(0);
+            writeSignedVarLong(value.longValue());
+        } else {
+            writeByte(1);
+            writeBytes(value.toByteArray());
+        }
+    }
+
+    public void writeBigDecimal(BigDecimal value) {
+        writeSignedVarInt(value.scale());
+        writeBigInteger(value.unscaledValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeValue(Object value) {
+        if (value == null) {
+            writeByte(NULL);
+            return;
+        }
+
+        final Class<?> type = value.getClass();
+        if (type == String.class) {
+            writeByte(STRING);
+            writeString((String) value);
+        } else if (type == Integer.class) {
+            writeByte(INT);
+            writeSignedVarInt((Integer) value);
+        } else if (type == Long.class) {
+            writeByte(LONG);
+            writeSignedVarLong((Long) value);
+        } else if (type == Boolean.class) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (type == Double.class) {
+            writeByte(DOUBLE);
+            writeFixedLong(Double.doubleToLongBits((Double) value));
+        } else if (type == Float.class) {
+            writeByte(FLOAT);
+            writeVarInt(Float.floatToIntBits((Float) value));
+        } else if (type == Short.class) {
+            writeByte(SHORT);
+            writeSignedVarInt((Short) value);
+        } else if (type == Byte.class) {
+            writeByte(BYTE);
+            writeByte((Byte) value);
+        } else if (type == Character.class) {
+            writeByte(CHAR);
+            writeVarInt((Character) value);
+        } else if (type == BigDecimal.class) {
+            writeByte(BIG_DECIMAL);
+            writeBigDecimal((BigDecimal) value);
+        } else if (type == BigInteger.class) {
+            writeByte(BIG_INTEGER);
+            writeBigInteger((BigInteger) value);
+        } else if (type == byte[].class) {
+            writeByte(BYTES);
+            writeBytes((byte[]) value);
+        } else if (value instanceof Enum) {
+            writeByte(ENUM);
+            writeClass(((Enum) value).getDeclaringClass());
+            writeString(((Enum) value).name());
+        } else {
+            final int codecId = format.codecIdOf(type);
+            if (codecId >= 0) {
+                writeByte(CODEC + codecId);
+                ((ValueCodec<Object>) format.codecOf(codecId)).write(value, this);
+            } else {
+                writeGraph(value, type);
+            }
+        }
+    }
+
+    private void writeGraph(Object value, Class<?> type) {
+        final Integer handle = handles.get(value);
+        if (handle != null) {
+            writeByte(REFERENCE);
+            writeVarInt(handle);
+            return;
+        }
+
+        if (type.isArray()) {
+            writeByte(ARRAY);
+            writeClass(type);
+            register(value);
+            final int length = Array.getLength(value);
+            writeVarInt(length);
+            for (int i = 0; i < length; i++) {
+                writeValue(Array.get(value, i));
+            }
+        } else if (isCollection(value)) {
+            writeByte(COLLECTION);
+            writeClass(type);
+            register(value);
+            final Collection<?> collection = (Collection<?>) value;
+            writeVarInt(collection.size());
+            for (Object element : collection) {
+                writeValue(element);
+            }
+        } else if (isMap(value)) {
+            writeByte(MAP);
+            writeClass(type);
+            register(value);
+            final Map<?, ?> map = (Map<?, ?>) value;
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        } else if (isJdkType(type)) {
+            if (!(value instanceof Serializable)) {
+                throw new SerializationException("Cannot write " + type.getName() + ", it is neither supported nor serializable");
+            }
+            writeByte(SERIALIZABLE);
+            register(value);
+            writeBytes(serialize(value));
+        } else {
+            writeObject(value, type);
+        }
+    }
+
+    private void writeObject(Object value, Class<?> type) {
+        final ClassSchema schema = format.schemaOf(type);
+
+        writeByte(OBJECT);
+        writeClass(type);
+        if (schemas.put(type, Boolean.TRUE) == null) {
+            final String[] names = schema.getNames();
+            writeVarInt(names.length);
+            for (String name : names) {
+                writeString(name);
+            }
+        }
+        register(value);
+
+        try {
+            for (Field field : schema.getFields()) {
+                writeValue(field.get(value));
+            }
+        } catch (IllegalAccessException e) {
+            throw new SerializationException("Cannot read the fields of " + type.getName(), e);
+        }
+    }
+
+    private void writeClass(Class<?> type) {
+        final Integer index = classes.get(type);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+
+        writeVarInt(0);
+        writeString(type.getName());
+        classes.put(type, classes.size());
+    }
+
+    private void register(Object value) {
+        handles.put(value, handles.size());
+    }
+
+    public void writeFixedLong(long value) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    private static byte[] serialize(Object value) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot serialize " + value.getClass().getName(), e);
+        }
+    }
+
+    private void ensure(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+}
@@ -0,0 +1,170 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import org.axonframework.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Tags, codecs and per class caches of the compact binary format, shared by every encoder and decoder.
+ */
+class BinaryFormat {
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int STRING = 5;
+    static final int DOUBLE = 6;
+    static final int FLOAT = 7;
+    static final int SHORT = 8;
+    static final int BYTE = 9;
+    static final int CHAR = 10;
+    static final int BIG_DECIMAL = 11;
+    static final int BIG_INTEGER = 12;
+    static final int ENUM = 13;
+    static final int OBJECT = 14;
+    static final int REFERENCE = 15;
+    static final int COLLECTION = 16;
+    static final int MAP = 17;
+    static final int ARRAY = 18;
+    static final int BYTES = 19;
+    static final int SERIALIZABLE = 20;
+    static final int CODEC = 64;
+    static final int MAX_CODEC_ID = 255 - CODEC;
+
+    //collections rebuilt from their elements through the no argument constructor, the rest go field by field
+    private static final Set<Class<?>> COLLECTIONS = ImmutableSet.<Class<?>>of(
+            ArrayList.class, LinkedList.class, CopyOnWriteArrayList.class,
+            HashSet.class, LinkedHashSet.class, TreeSet.class);
+    private static final Set<Class<?>> MAPS = ImmutableSet.<Class<?>>of(
+            HashMap.class, LinkedHashMap.class, TreeMap.class, Hashtable.class, ConcurrentHashMap.class);
+
+    private final ReflectionProvider reflectionProvider;
+    private final ClassLoader classLoader;
+    private final Map<Class<?>, Integer> codecIds = Maps.newHashMap();
+    private final ValueCodec<?>[] codecs = new ValueCodec<?>[MAX_CODEC_ID + 1];
+    private final ConcurrentMap<Class<?>, ClassSchema> schemas = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, Class<?>> classes = Maps.newConcurrentMap();
+
+    BinaryFormat(ReflectionProvider reflectionProvider, ClassLoader classLoader) {
+        notNull(reflectionProvider);
+        this.reflectionProvider = reflectionProvider;
+        this.classLoader = classLoader == null ? getClass().getClassLoader() : classLoader;
+    }
+
+    void register(int id, ValueCodec<?> codec) {
+        notNull(codec);
+        isTrue(id >= 0 && id <= MAX_CODEC_ID, "codec id must be between 0 and " + MAX_CODEC_ID);
+        isTrue(codecs[id] == null, "codec id " + id + " is already taken by " + codecs[id]);
+        isTrue(!codecIds.containsKey(codec.getType()), "codec for " + codec.getType() + " is already registered");
+
+        codecs[id] = codec;
+        codecIds.put(codec.getType(), id);
+    }
+
+    /**
+     * @return the codec id of the exact type, -1 if it has no codec
+     */
+    int codecIdOf(Class<?> type) {
+        final Integer id = codecIds.get(type);
+        return id == null ? -1 : id;
+    }
+
+    ValueCodec<?> codecOf(int id) {
+        final ValueCodec<?> codec = id <= MAX_CODEC_ID ? codecs[id] : null;
+        if (codec == null) {
+            throw new SerializationException("No codec registered with id " + id);
+        }
+        return codec;
+    }
+
+    ClassSchema schemaOf(Class<?> type) {
+        ClassSchema schema = schemas.get(type);
+        if (schema == null) {
+            schema = new ClassSchema(type);
+            final ClassSchema existing = schemas.putIfAbsent(type, schema);
+            if (existing != null) {
+                schema = existing;
+            }
+        }
+        return schema;
+    }
+
+    Class<?> classForName(String name) throws ClassNotFoundException {
+        Class<?> type = classes.get(name);
+        if (type == null) {
+            type = Class.forName(name, false, classLoader);
+            classes.put(name, type);
+        }
+        return type;
+    }
+
+    Object newInstance(Class<?> type) {
+        return reflectionProvider.newInstance(type);
+    }
+
+    static boolean isCollection(Object value) {
+        final Class<?> type = value.getClass();
+        if (!COLLECTIONS.contains(type)) {
+            return false;
+        }
+        return !(value instanceof SortedSet) || ((SortedSet) value).comparator() == null;
+    }
+
+    static boolean isMap(Object value) {
+        final Class<?> type = value.getClass();
+        if (!MAPS.contains(type)) {
+            return false;
+        }
+        return !(value instanceof SortedMap) || ((SortedMap) value).comparator() == null;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Collection<Object> newCollection(Class<?> type) {
+        try {
+            return (Collection<Object>) type.newInstance();
+        } catch (Exception e) {
+            throw new SerializationException("Cannot create collection " + type.getName(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<Object, Object> newMap(Class<?> type) {
+        try {
+            return (Map<Object, Object>) type.newInstance();
+        } catch (Exception e) {
+            throw new SerializationException("Cannot create map " + type.getName(), e);
+        }
+    }
+
+    /**
+     * JDK types not rebuilt by the format are left to java serialization, reflecting on their internals
+     * would tie the stored events to one JDK.
+     */
+    static boolean isJdkType(Class<?> type) {
+        final String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.");
+    }
+}
@@ -0,0 +1,68 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent fields of a class, the same ones XStream writes: every non static, non transient field up the
+ * hierarchy. A field hidden by a subclass field of the same name is named after its declaring class.
+ */
+class ClassSchema {
+    private final Class<?> type;
+    private final Field[] fields;
+    private final String[] names;
+    private final Map<String, Field> byName;
+
+    ClassSchema(Class<?> type) {
+        this.type = type;
+
+        final List<Field> persistent = Lists.newArrayList();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                persistent.add(field);
+            }
+        }
+
+        this.fields = persistent.toArray(new Field[persistent.size()]);
+        this.names = new String[fields.length];
+        this.byName = Maps.newHashMapWithExpectedSize(fields.length);
+
+        final Set<String> seen = Sets.newHashSet();
+        for (int i = 0; i < fields.length; i++) {
+            final String name = fields[i].getName();
+            names[i] = seen.add(name) ? name : fields[i].getDeclaringClass().getSimpleName() + "." + name;
+            byName.put(names[i], fields[i]);
+        }
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    Field[] getFields() {
+        return fields;
+    }
+
+    String[] getNames() {
+        return names;
+    }
+
+    /**
+     * @return the field of the name, null if the class has no such field any more
+     */
+    Field getField(String name) {
+        return byName.get(name);
+    }
+}
@@ -0,0 +1,207 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.collect.Sets;
+import com.icoin.money.converter.JodaMoneyConverter;
+import com.icoin.trading.api.coin.domain.CoinId;
+import com.icoin.trading.api.fee.domain.FeeTransactionId;
+import com.icoin.trading.api.fee.domain.fee.FeeId;
+import com.icoin.trading.api.fee.domain.offset.OffsetId;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.users.domain.UserId;
+import org.axonframework.serializer.ConverterFactory;
+import org.axonframework.serializer.Revision;
+import org.axonframework.serializer.SerializationException;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SerializedType;
+import org.axonframework.serializer.Serializer;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.axonframework.serializer.SimpleSerializedType;
+import org.axonframework.serializer.UnknownSerializedTypeException;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Event and snapshot serializer writing a compact, schema tagged binary form instead of XStream's xml.
+ * Value types have explicit codecs, everything else is written field by field with the field names once
+ * per payload. Payloads are prefixed with a magic and a version; anything else, such as the xml written
+ * before, is handed to the legacy XStream serializer, so existing event streams keep loading.
+ * <p/>
+ * When asked for a string, as the mongo event store does, the binary payload is base64 encoded behind a
+ * text prefix xml never starts with. A type that cannot be written compactly is written with the legacy
+ * serializer from then on.
+ */
+public class CompactBinarySerializer implements Serializer {
+    private static Logger logger = LoggerFactory.getLogger(CompactBinarySerializer.class);
+    static final int MAGIC = 0xC1;
+    static final int VERSION = 1;
+    static final String TEXT_PREFIX = "#cb1:";
+
+    private final Serializer legacy;
+    private final BinaryFormat format;
+    private final Set<Class<?>> legacyTypes = Sets.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+    public CompactBinarySerializer() {
+        this(createXStreamSerializer());
+    }
+
+    public CompactBinarySerializer(XStreamSerializer legacy) {
+        notNull(legacy);
+        this.legacy = legacy;
+        this.format = new BinaryFormat(legacy.getXStream().getReflectionProvider(), legacy.getXStream().getClassLoader());
+        registerDefaultCodecs();
+    }
+
+    private static XStreamSerializer createXStreamSerializer() {
+        final XStreamSerializer serializer = new XStreamSerializer();
+        serializer.getXStream().registerConverter(new JodaMoneyConverter());
+        return serializer;
+    }
+
+    //ids are stored in the payloads, append new codecs with new ids only
+    private void registerDefaultCodecs() {
+        registerCodec(0, new MetaDataCodec());
+        registerCodec(1, new BigMoneyCodec());
+        registerCodec(2, new MoneyCodec());
+        registerCodec(3, new CurrencyUnitCodec());
+        registerCodec(4, new DateCodec());
+        registerCodec(10, new IdentifierCodec<CoinId>(CoinId.class));
+        registerCodec(11, new IdentifierCodec<OrderBookId>(OrderBookId.class));
+        registerCodec(12, new IdentifierCodec<OrderId>(OrderId.class));
+        registerCodec(13, new IdentifierCodec<PortfolioId>(PortfolioId.class));
+        registerCodec(14, new IdentifierCodec<TransactionId>(TransactionId.class));
+        registerCodec(15, new IdentifierCodec<UserId>(UserId.class));
+        registerCodec(16, new IdentifierCodec<FeeId>(FeeId.class));
+        registerCodec(17, new IdentifierCodec<FeeTransactionId>(FeeTransactionId.class));
+        registerCodec(18, new IdentifierCodec<OffsetId>(OffsetId.class));
+    }
+
+    /**
+     * Registers the codec of an exact type under an id no other codec ever had.
+     */
+    public void registerCodec(int id, ValueCodec<?> codec) {
+        format.register(id, codec);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> SerializedObject<T> serialize(Object object, Class<T> expectedRepresentation) {
+        final Class<?> type = object.getClass();
+        if (legacyTypes.contains(type)) {
+            return legacy.serialize(object, expectedRepresentation);
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = encode(object);
+        } catch (RuntimeException e) {
+            logger.warn("cannot write {} compactly, writing it with XStream from now on", type.getName(), e);
+            legacyTypes.add(type);
+            return legacy.serialize(object, expectedRepresentation);
+        }
+
+        final SerializedType serializedType = typeForClass(type);
+        if (byte[].class.equals(expectedRepresentation)) {
+            return new SimpleSerializedObject<T>((T) bytes, expectedRepresentation, serializedType);
+        }
+        if (String.class.equals(expectedRepresentation)) {
+            final String text = TEXT_PREFIX + DatatypeConverter.printBase64Binary(bytes);
+            return new SimpleSerializedObject<T>((T) text, expectedRepresentation, serializedType);
+        }
+
+        return getConverterFactory().getConverter(byte[].class, expectedRepresentation)
+                .convert(new SimpleSerializedObject<byte[]>(bytes, byte[].class, serializedType));
+    }
+
+    byte[] encode(Object object) {
+        final BinaryEncoder encoder = new BinaryEncoder(format, object.getClass());
+        encoder.writeByte(MAGIC);
+        encoder.writeByte(VERSION);
+        encoder.writeValue(object);
+        return encoder.toByteArray();
+    }
+
+    @Override
+    public <T> boolean canSerializeTo(Class<T> expectedRepresentation) {
+        return byte[].class.equals(expectedRepresentation)
+                || String.class.equals(expectedRepresentation)
+                || getConverterFactory().hasConverter(byte[].class, expectedRepresentation);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <S, T> T deserialize(SerializedObject<S> serializedObject) {
+        final byte[] bytes = binaryOf(serializedObject.getData());
+        if (bytes == null) {
+            return (T) legacy.deserialize(serializedObject);
+        }
+
+        final BinaryDecoder decoder = new BinaryDecoder(format, bytes, 2, classForType(serializedObject.getType()));
+        return (T) decoder.readValue();
+    }
+
+    /**
+     * @return whether the data was written by this serializer, the upcasters of xml documents do not apply to it
+     */
+    public static boolean isBinary(Object data) {
+        try {
+            return binaryOf(data) != null;
+        } catch (SerializationException e) {
+            //binary, of a version not read here
+            return true;
+        }
+    }
+
+    /**
+     * @return the binary payload of the data, null if the data was not written by this serializer
+     */
+    static byte[] binaryOf(Object data) {
+        byte[] bytes = null;
+        if (data instanceof byte[]) {
+            bytes = (byte[]) data;
+        } else if (data instanceof String && ((String) data).startsWith(TEXT_PREFIX)) {
+            bytes = DatatypeConverter.parseBase64Binary(((String) data).substring(TEXT_PREFIX.length()));
+        }
+
+        if (bytes == null || bytes.length < 2 || (bytes[0] & 0xFF) != MAGIC) {
+            return null;
+        }
+        if (bytes[1] != VERSION) {
+            throw new SerializationException("Unsupported binary payload version " + bytes[1]);
+        }
+        return bytes;
+    }
+
+    @Override
+    public Class classForType(SerializedType type) {
+        try {
+            return format.classForName(type.getName());
+        } catch (ClassNotFoundException e) {
+            throw new UnknownSerializedTypeException(type, e);
+        }
+    }
+
+    @Override
+    public SerializedType typeForClass(Class type) {
+        final Revision revision = (Revision) type.getAnnotation(Revision.class);
+        return new SimpleSerializedType(type.getName(), revision == null ? null : revision.value());
+    }
+
+    @Override
+    public ConverterFactory getConverterFactory() {
+        return legacy.getConverterFactory();
+    }
+
+    public Serializer getLegacySerializer() {
+        return legacy;
+    }
+}
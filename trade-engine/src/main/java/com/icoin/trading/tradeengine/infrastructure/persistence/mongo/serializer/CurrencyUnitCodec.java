@@ -0,0 +1,23 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import org.joda.money.CurrencyUnit;
+
+/**
+ * Currency unit as its currency code symbol.
+ */
+public class CurrencyUnitCodec implements ValueCodec<CurrencyUnit> {
+    @Override
+    public Class<CurrencyUnit> getType() {
+        return CurrencyUnit.class;
+    }
+
+    @Override
+    public void write(CurrencyUnit value, BinaryEncoder encoder) {
+        encoder.writeSymbol(value.getCurrencyCode());
+    }
+
+    @Override
+    public CurrencyUnit read(BinaryDecoder decoder) {
+        return CurrencyUnit.of(decoder.readSymbol());
+    }
+}
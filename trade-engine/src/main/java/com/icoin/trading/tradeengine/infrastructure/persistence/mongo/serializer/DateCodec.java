@@ -0,0 +1,23 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import java.util.Date;
+
+/**
+ * Date as its milliseconds since the epoch.
+ */
+public class DateCodec implements ValueCodec<Date> {
+    @Override
+    public Class<Date> getType() {
+        return Date.class;
+    }
+
+    @Override
+    public void write(Date value, BinaryEncoder encoder) {
+        encoder.writeSignedVarLong(value.getTime());
+    }
+
+    @Override
+    public Date read(BinaryDecoder decoder) {
+        return new Date(decoder.readSignedVarLong());
+    }
+}
@@ -0,0 +1,78 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import org.axonframework.serializer.SerializationException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.UUID;
+
+/**
+ * Identifier types of the core api, written as the identifier string their toString gives back and
+ * read with their string constructor. Generated identifiers are uuids and take 16 bytes instead of 36.
+ */
+public class IdentifierCodec<T> implements ValueCodec<T> {
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+
+    public IdentifierCodec(Class<T> type) {
+        this.type = type;
+        try {
+            this.constructor = type.getConstructor(String.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no string constructor", e);
+        }
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public void write(T value, BinaryEncoder encoder) {
+        final String identifier = value.toString();
+        final UUID uuid = uuidOf(identifier);
+        if (uuid == null) {
+            encoder.writeByte(0);
+            encoder.writeString(identifier);
+        } else {
+            encoder.writeByte(1);
+            encoder.writeFixedLong(uuid.getMostSignificantBits());
+            encoder.writeFixedLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    //the uuid only if it gives back exactly the same string
+    private static UUID uuidOf(String identifier) {
+        if (identifier.length() != 36 || identifier.charAt(8) != '-') {
+            return null;
+        }
+        try {
+            final UUID uuid = UUID.fromString(identifier);
+            return uuid.toString().equals(identifier) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public T read(BinaryDecoder decoder) {
+        final String identifier = decoder.readByte() == 0
+                ? decoder.readString()
+                : new UUID(decoder.readFixedLong(), decoder.readFixedLong()).toString();
+        try {
+            return constructor.newInstance(identifier);
+        } catch (InstantiationException e) {
+            throw new SerializationException("Cannot create " + type.getName() + " of " + identifier, e);
+        } catch (IllegalAccessException e) {
+            throw new SerializationException("Cannot create " + type.getName() + " of " + identifier, e);
+        } catch (InvocationTargetException e) {
+            throw new SerializationException("Cannot create " + type.getName() + " of " + identifier, e.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IdentifierCodec{" + type.getName() + "}";
+    }
+}
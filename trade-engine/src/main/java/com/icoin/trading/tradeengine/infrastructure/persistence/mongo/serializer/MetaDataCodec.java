@@ -0,0 +1,40 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.collect.Maps;
+import org.axonframework.domain.MetaData;
+
+import java.util.Map;
+
+/**
+ * Meta data of the event messages, stored next to every payload and mostly empty.
+ */
+public class MetaDataCodec implements ValueCodec<MetaData> {
+    @Override
+    public Class<MetaData> getType() {
+        return MetaData.class;
+    }
+
+    @Override
+    public void write(MetaData value, BinaryEncoder encoder) {
+        encoder.writeVarInt(value.size());
+        for (Map.Entry<String, Object> entry : value.entrySet()) {
+            encoder.writeString(entry.getKey());
+            encoder.writeValue(entry.getValue());
+        }
+    }
+
+    @Override
+    public MetaData read(BinaryDecoder decoder) {
+        final int size = decoder.readVarInt();
+        if (size == 0) {
+            return MetaData.emptyInstance();
+        }
+
+        final Map<String, Object> values = Maps.newHashMapWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            final String key = decoder.readString();
+            values.put(key, decoder.readValue());
+        }
+        return MetaData.from(values);
+    }
+}
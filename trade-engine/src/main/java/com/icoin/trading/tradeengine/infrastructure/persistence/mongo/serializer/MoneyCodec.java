@@ -0,0 +1,26 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+
+/**
+ * Money as its currency code symbol and amount, the amount always has the scale of the currency.
+ */
+public class MoneyCodec implements ValueCodec<Money> {
+    @Override
+    public Class<Money> getType() {
+        return Money.class;
+    }
+
+    @Override
+    public void write(Money value, BinaryEncoder encoder) {
+        encoder.writeSymbol(value.getCurrencyUnit().getCurrencyCode());
+        encoder.writeBigDecimal(value.getAmount());
+    }
+
+    @Override
+    public Money read(BinaryDecoder decoder) {
+        final CurrencyUnit currency = CurrencyUnit.of(decoder.readSymbol());
+        return Money.of(currency, decoder.readBigDecimal());
+    }
+}
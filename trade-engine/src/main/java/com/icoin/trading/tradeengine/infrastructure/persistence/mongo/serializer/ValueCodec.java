@@ -0,0 +1,14 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+/**
+ * Explicit binary form of a value type, written in place of the reflective field by field form.
+ * The id of a codec is part of the stored format and must never be reused for another type.
+ */
+public interface ValueCodec<T> {
+
+    Class<T> getType();
+
+    void write(T value, BinaryEncoder encoder);
+
+    T read(BinaryDecoder decoder);
+}
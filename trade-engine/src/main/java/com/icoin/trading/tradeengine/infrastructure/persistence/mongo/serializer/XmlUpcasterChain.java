@@ -0,0 +1,31 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.upcasting.UpcasterChain;
+import org.axonframework.upcasting.UpcastingContext;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Upcaster chain of the payloads written with xstream. The upcasters work on xml documents, the compact binary
+ * payloads are read by field name and passed as they are, whatever their revision.
+ */
+public class XmlUpcasterChain implements UpcasterChain {
+    private final UpcasterChain delegate;
+
+    public XmlUpcasterChain(UpcasterChain delegate) {
+        notNull(delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<SerializedObject> upcast(SerializedObject serializedObject, UpcastingContext upcastingContext) {
+        if (CompactBinarySerializer.isBinary(serializedObject.getData())) {
+            return Collections.singletonList(serializedObject);
+        }
+        return delegate.upcast(serializedObject, upcastingContext);
+    }
+}
@@ -0,0 +1,74 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.upcasting;
+
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SerializedType;
+import org.axonframework.serializer.SimpleSerializedType;
+import org.axonframework.upcasting.AbstractSingleEntryUpcaster;
+import org.axonframework.upcasting.UpcastingContext;
+import org.springframework.stereotype.Component;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Order book snapshots of before revision 1, which still held the identity field of the aggregate root, to
+ * revision 1, which also keeps the order ids of the top of the book. The ids are simply missing from the older
+ * snapshots, the next refresh of the top of the book records them.
+ */
+@Component
+public class OrderBookSnapshotUpcaster extends AbstractSingleEntryUpcaster<String> {
+    private static final String TYPE = OrderBook.class.getName();
+    static final String REVISION = "1";
+    private static final String IDENTITY_FIELD = "identityField";
+
+    @Override
+    public boolean canUpcast(SerializedType serializedType) {
+        return TYPE.equals(serializedType.getName()) && serializedType.getRevision() == null;
+    }
+
+    @Override
+    public Class<String> expectedRepresentationType() {
+        return String.class;
+    }
+
+    @Override
+    protected String doUpcast(SerializedObject<String> intermediateRepresentation, UpcastingContext context) {
+        try {
+            final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new InputSource(new StringReader(intermediateRepresentation.getData())));
+            final Element root = document.getDocumentElement();
+            for (Node child = root.getFirstChild(); child != null; ) {
+                final Node next = child.getNextSibling();
+                if (child.getNodeType() == Node.ELEMENT_NODE && IDENTITY_FIELD.equals(child.getNodeName())) {
+                    root.removeChild(child);
+                }
+                child = next;
+            }
+
+            final StringWriter writer = new StringWriter();
+            final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            transformer.transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (Exception e) {
+            throw new IllegalStateException("Upcasting the order book snapshot of "
+                    + context.getAggregateIdentifier() + " failed", e);
+        }
+    }
+
+    @Override
+    protected SerializedType doUpcast(SerializedType serializedType) {
+        return new SimpleSerializedType(TYPE, REVISION);
+    }
+}
@@ -0,0 +1,72 @@
+package com.icoin.trading.tradeengine.infrastructure.profiling;
+
+import com.icoin.trading.api.tradeengine.events.order.AbstractOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.portfolio.cash.CashReservedEvent;
+import com.icoin.trading.api.tradeengine.events.portfolio.coin.ItemReservedEvent;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.api.tradeengine.events.transaction.AbstractTransactionCancelledEvent;
+import com.icoin.trading.api.tradeengine.events.transaction.AbstractTransactionConfirmedEvent;
+import com.icoin.trading.api.tradeengine.events.transaction.AbstractTransactionExecutedEvent;
+import com.icoin.trading.api.tradeengine.events.transaction.AbstractTransactionStartedEvent;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.CONFIRMED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.PLACED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.RESERVED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.STARTED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.TRADED;
+
+/**
+ * Stamps the saga stages of a transaction from the events, so the sagas themselves are not touched.
+ */
+@Component
+public class TradeLatencyListener {
+    private TradeLatencyTracer tradeLatencyTracer;
+
+    @EventHandler
+    public void handleTransactionStarted(AbstractTransactionStartedEvent event) {
+        tradeLatencyTracer.record(event.getTransactionIdentifier(), event.getOrderBookIdentifier(), STARTED);
+    }
+
+    @EventHandler
+    public void handleCashReserved(CashReservedEvent event) {
+        tradeLatencyTracer.record(event.getTransactionIdentifier(), null, RESERVED);
+    }
+
+    @EventHandler
+    public void handleItemReserved(ItemReservedEvent event) {
+        tradeLatencyTracer.record(event.getTransactionIdentifier(), null, RESERVED);
+    }
+
+    @EventHandler
+    public void handleTransactionConfirmed(AbstractTransactionConfirmedEvent event) {
+        tradeLatencyTracer.record(event.getTransactionIdentifier(), null, CONFIRMED);
+    }
+
+    @EventHandler
+    public void handleOrderPlaced(AbstractOrderPlacedEvent event) {
+        tradeLatencyTracer.record(event.getTransactionIdentifier(), event.orderBookIdentifier(), PLACED);
+    }
+
+    @EventHandler
+    public void handleTradeExecuted(TradeExecutedEvent event) {
+        tradeLatencyTracer.recordTaker(event, TRADED);
+    }
+
+    @EventHandler
+    public void handleTransactionExecuted(AbstractTransactionExecutedEvent event) {
+        tradeLatencyTracer.finish(event.getTransactionIdentifier());
+    }
+
+    @EventHandler
+    public void handleTransactionCancelled(AbstractTransactionCancelledEvent event) {
+        tradeLatencyTracer.finish(event.getTransactionIdentifier());
+    }
+
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
+}
@@ -0,0 +1,268 @@
+package com.icoin.trading.tradeengine.infrastructure.profiling;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.TradeType;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stamps the stages of every transaction with System.nanoTime, keyed by transaction id, into latency
+ * histograms per stage and per order book. Each stage has the latency since the previous stamp of the
+ * transaction and, for transactions traced from their dispatch, the latency since the dispatch.
+ * Traces are dropped when the transaction ends or when they get older than the max age.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=Profiling,name=tradeLatencyTracer",
+        description = "Order to trade latency per stage, in microseconds")
+public class TradeLatencyTracer {
+    private static Logger logger = LoggerFactory.getLogger(TradeLatencyTracer.class);
+    private final ConcurrentMap<TransactionId, Trace> traces = Maps.newConcurrentMap();
+    private final StageHistograms total = new StageHistograms();
+    private final ConcurrentMap<OrderBookId, StageHistograms> orderBooks = Maps.newConcurrentMap();
+    private volatile boolean enabled = true;
+    private int maxTraces = 100000;
+    private long maxAgeNanos = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * Stamps the stage of the transaction, the first stamp of a transaction starts its trace.
+     *
+     * @param orderBookId the order book of the transaction if known, kept from the first stamp having it
+     */
+    public void record(TransactionId transactionId, OrderBookId orderBookId, TradeStage stage) {
+        if (!enabled || transactionId == null || stage == null) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        Trace trace = traces.get(transactionId);
+        if (trace == null) {
+            if (traces.size() >= maxTraces && expire(now) == 0) {
+                //too many transactions in flight, the new ones are not traced until the old ones end or expire
+                return;
+            }
+
+            trace = traces.putIfAbsent(transactionId, new Trace(stage, orderBookId, now));
+            if (trace == null) {
+                return;
+            }
+        }
+
+        trace.stamp(stage, orderBookId, now);
+    }
+
+    /**
+     * Stamps the stage of the taker of the trade only, the maker has been resting in the order book and
+     * its latency since the previous stamp is not the one of the trading.
+     */
+    public void recordTaker(TradeExecutedEvent event, TradeStage stage) {
+        final TransactionId taker = event.getTradeType() == TradeType.BUY
+                ? event.getBuyTransactionId()
+                : event.getSellTransactionId();
+        record(taker, event.getOrderBookId(), stage);
+    }
+
+    /**
+     * Drops the trace of a transaction executed or cancelled.
+     */
+    public void finish(TransactionId transactionId) {
+        if (transactionId != null) {
+            traces.remove(transactionId);
+        }
+    }
+
+    private int expire(long now) {
+        int expired = 0;
+        for (Iterator<Trace> iterator = traces.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().startNanos > maxAgeNanos) {
+                iterator.remove();
+                expired++;
+            }
+        }
+        logger.debug("expired {} traces, {} traces left", expired, traces.size());
+        return expired;
+    }
+
+    private StageHistograms histogramsOf(OrderBookId orderBookId) {
+        StageHistograms histograms = orderBooks.get(orderBookId);
+        if (histograms == null) {
+            final StageHistograms created = new StageHistograms();
+            histograms = orderBooks.putIfAbsent(orderBookId, created);
+            if (histograms == null) {
+                histograms = created;
+            }
+        }
+        return histograms;
+    }
+
+    public LatencyHistogram getStageHistogram(TradeStage stage) {
+        return total.sincePrevious.get(stage);
+    }
+
+    public LatencyHistogram getDispatchHistogram(TradeStage stage) {
+        return total.sinceDispatch.get(stage);
+    }
+
+    @ManagedAttribute(description = "Latency of every stage since the previous stage")
+    public Map<String, String> getStageLatencies() {
+        return total.describe(total.sincePrevious);
+    }
+
+    @ManagedAttribute(description = "Latency of every stage since the order was dispatched")
+    public Map<String, String> getDispatchLatencies() {
+        return total.describe(total.sinceDispatch);
+    }
+
+    @ManagedOperation(description = "Latency of every stage since the previous stage of one order book")
+    public Map<String, String> orderBookStageLatencies(String orderBookId) {
+        final StageHistograms histograms = orderBooks.get(new OrderBookId(orderBookId));
+        return histograms == null ? ImmutableMap.<String, String>of() : histograms.describe(histograms.sincePrevious);
+    }
+
+    @ManagedOperation(description = "Latency of every stage since the order was dispatched of one order book")
+    public Map<String, String> orderBookDispatchLatencies(String orderBookId) {
+        final StageHistograms histograms = orderBooks.get(new OrderBookId(orderBookId));
+        return histograms == null ? ImmutableMap.<String, String>of() : histograms.describe(histograms.sinceDispatch);
+    }
+
+    @ManagedAttribute(description = "Transactions being traced")
+    public int getTraces() {
+        return traces.size();
+    }
+
+    @ManagedAttribute
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @ManagedAttribute
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @ManagedOperation(description = "Clears the histograms and the traces")
+    public void reset() {
+        traces.clear();
+        total.reset();
+        orderBooks.clear();
+    }
+
+    /**
+     * All histograms as text, one line per stage.
+     */
+    public String describe() {
+        final StringBuilder builder = new StringBuilder();
+        append(builder, "since previous stage", total.sincePrevious);
+        append(builder, "since dispatched", total.sinceDispatch);
+        for (Map.Entry<OrderBookId, StageHistograms> entry : orderBooks.entrySet()) {
+            append(builder, "order book " + entry.getKey() + " since previous stage", entry.getValue().sincePrevious);
+        }
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, String title, Map<TradeStage, LatencyHistogram> histograms) {
+        builder.append(title).append('\n');
+        for (Map.Entry<TradeStage, LatencyHistogram> entry : histograms.entrySet()) {
+            builder.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+    }
+
+    @Value("${trading.latency.enabled:true}")
+    public void setEnabledOnStartup(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Value("${trading.latency.maxTraces:100000}")
+    public void setMaxTraces(int maxTraces) {
+        this.maxTraces = maxTraces;
+    }
+
+    @Value("${trading.latency.maxAgeSeconds:600}")
+    public void setMaxAgeSeconds(long maxAgeSeconds) {
+        this.maxAgeNanos = TimeUnit.SECONDS.toNanos(maxAgeSeconds);
+    }
+
+    private class Trace {
+        private final TradeStage origin;
+        private final long startNanos;
+        private OrderBookId orderBookId;
+        private long lastNanos;
+
+        private Trace(TradeStage origin, OrderBookId orderBookId, long startNanos) {
+            this.origin = origin;
+            this.orderBookId = orderBookId;
+            this.startNanos = startNanos;
+            this.lastNanos = startNanos;
+        }
+
+        private void stamp(TradeStage stage, OrderBookId orderBookId, long now) {
+            final long sincePrevious;
+            final OrderBookId book;
+            synchronized (this) {
+                if (this.orderBookId == null) {
+                    this.orderBookId = orderBookId;
+                }
+                sincePrevious = now - lastNanos;
+                lastNanos = now;
+                book = this.orderBookId;
+            }
+
+            final long sinceDispatch = origin == TradeStage.DISPATCHED ? now - startNanos : -1L;
+            total.record(stage, sincePrevious, sinceDispatch);
+            if (book != null) {
+                histogramsOf(book).record(stage, sincePrevious, sinceDispatch);
+            }
+        }
+    }
+
+    private static class StageHistograms {
+        private final Map<TradeStage, LatencyHistogram> sincePrevious = create();
+        private final Map<TradeStage, LatencyHistogram> sinceDispatch = create();
+
+        private static Map<TradeStage, LatencyHistogram> create() {
+            final EnumMap<TradeStage, LatencyHistogram> histograms = new EnumMap<TradeStage, LatencyHistogram>(TradeStage.class);
+            for (TradeStage stage : TradeStage.values()) {
+                histograms.put(stage, new LatencyHistogram());
+            }
+            return histograms;
+        }
+
+        private void record(TradeStage stage, long sincePreviousNanos, long sinceDispatchNanos) {
+            sincePrevious.get(stage).recordNanos(sincePreviousNanos);
+            if (sinceDispatchNanos >= 0) {
+                sinceDispatch.get(stage).recordNanos(sinceDispatchNanos);
+            }
+        }
+
+        private Map<String, String> describe(Map<TradeStage, LatencyHistogram> histograms) {
+            final Map<String, String> described = Maps.newLinkedHashMap();
+            for (Map.Entry<TradeStage, LatencyHistogram> entry : histograms.entrySet()) {
+                described.put(entry.getKey().name(), entry.getValue().toString());
+            }
+            return described;
+        }
+
+        private void reset() {
+            for (LatencyHistogram histogram : sincePrevious.values()) {
+                histogram.reset();
+            }
+            for (LatencyHistogram histogram : sinceDispatch.values()) {
+                histogram.reset();
+            }
+        }
+    }
+}
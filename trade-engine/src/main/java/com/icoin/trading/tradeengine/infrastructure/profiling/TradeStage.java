@@ -0,0 +1,27 @@
+package com.icoin.trading.tradeengine.infrastructure.profiling;
+
+/**
+ * Stages of an order from the start transaction command to the query model of its trades, in order.
+ */
+public enum TradeStage {
+    //start transaction command sent by the trade facade
+    DISPATCHED,
+    //transaction started event
+    STARTED,
+    //cash or items reserved for the transaction by the saga
+    RESERVED,
+    //transaction confirmed, the saga sends the create order command
+    CONFIRMED,
+    //order placed event
+    PLACED,
+    //order published to the ring buffer of its order book
+    ENQUEUED,
+    //order drained from the ring buffer
+    DEQUEUED,
+    //matching of the taker against the resting orders done
+    MATCHED,
+    //trade executed event published
+    TRADED,
+    //trade executed query model saved
+    QUERY_UPDATED
+}
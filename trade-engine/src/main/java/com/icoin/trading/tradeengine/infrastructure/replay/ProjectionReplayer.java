@@ -0,0 +1,566 @@
+package com.icoin.trading.tradeengine.infrastructure.replay;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import com.icoin.trading.tradeengine.infrastructure.eventhandling.ProjectionFence;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.annotation.AnnotationEventListenerAdapter;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.eventstore.management.Criteria;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Rebuilds query models from the event store without touching the live collections until the end.
+ * <p/>
+ * The events are streamed in the order of the store, time stamp then sequence number, and handled in batches.
+ * An event is replayed once, the last sequence number replayed is kept per aggregate, and every pass reads again
+ * from a look back before the checkpoint so the events stored after the events of a later time stamp are found.
+ * The events of a batch are split in partitions by aggregate identifier and the partitions are handled in
+ * parallel, so the events of one aggregate keep their order. The listeners of the selected projections live in
+ * a child context of their own, not subscribed to the event bus, whose template and projection writer write the
+ * projections to shadow collections and read the projections not rebuilt from the live ones. After each batch the buffered
+ * entities are written and the position is checkpointed, a stopped or failed replay resumes from there.
+ * <p/>
+ * Once the stream is drained the live projection listeners are held back by the projection fence, the last
+ * events are caught up with and the shadow collections replace the live ones, one rename per collection. The
+ * held back listeners then skip the events replayed, by aggregate sequence number, and handle the others on the
+ * new collections.
+ * A listener reading a projection rebuilt by another listener only sees it as of the previous batch, such
+ * projections are best rebuilt with one partition.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=Replay,name=projectionReplayer")
+public class ProjectionReplayer implements ApplicationContextAware {
+    private static Logger logger = LoggerFactory.getLogger(ProjectionReplayer.class);
+    static final String SHADOW_SUFFIX = "_replay";
+    private static final String REPLAY_CONTEXT = "classpath:com/icoin/trading/tradeengine/infrastructure/replay/replay-context.xml";
+    private static final String CHECKPOINT_COLLECTION = "projectionReplay";
+    private static final String CHECKPOINT_ID = "projectionReplay";
+    private static final String SEQUENCES_COLLECTION = "projectionReplaySequences";
+
+    private final int partitions;
+    private final int batchSize;
+    private long lookBackMillis = 60000L;
+
+    private ApplicationContext applicationContext;
+    private PartitionedEventStore eventStore;
+    private MongoTemplate mongoTemplate;
+    private ProjectionFence projectionFence;
+
+    private volatile boolean running;
+    private volatile boolean cancelled;
+    private volatile String state = "IDLE";
+    private volatile String projections = "";
+    private Thread replayer;
+
+    //position of the last batch written, only touched by the replay thread, the sequence numbers are handed to
+    //the fence once swapped so every replay has its own
+    private String checkpointTimestamp;
+    private Map<String, Long> replayedSequences = Maps.newHashMap();
+
+    private final AtomicLong replayedEvents = new AtomicLong();
+    private volatile long startedMillis;
+    private volatile long lastBatchMillis;
+
+    @Autowired
+    public ProjectionReplayer(@Value("${trading.replay.partitions:4}") int partitions,
+                              @Value("${trading.replay.batchSize:1000}") int batchSize) {
+        isTrue(partitions > 0, "Partitions should be greater than 0!");
+        isTrue(batchSize > 0, "Batch size should be greater than 0!");
+        this.partitions = partitions;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Replays all the events into new shadow collections of the projections.
+     *
+     * @param names comma separated {@link ReplayProjection} names
+     */
+    @ManagedOperation
+    public synchronized void start(String names) {
+        isTrue(!running, "A replay is running already!");
+        final Set<ReplayProjection> selected = ReplayProjection.parse(names);
+        isTrue(!selected.isEmpty(), "No projection to replay!");
+
+        for (String shadow : shadowCollections(selected)) {
+            mongoTemplate.dropCollection(shadow);
+        }
+        mongoTemplate.dropCollection(SEQUENCES_COLLECTION);
+        checkpointTimestamp = null;
+        replayedSequences = Maps.newHashMap();
+        replayedEvents.set(0L);
+        saveCheckpoint(selected, "RUNNING");
+
+        launch(selected, true);
+    }
+
+    /**
+     * Resumes the replay stopped or failed from its last checkpoint.
+     */
+    @ManagedOperation
+    public synchronized void resume() {
+        isTrue(!running, "A replay is running already!");
+        final DBObject checkpoint = mongoTemplate.getCollection(CHECKPOINT_COLLECTION)
+                .findOne(new BasicDBObject("_id", CHECKPOINT_ID));
+        notNull(checkpoint, "No replay to resume!");
+        isTrue(!"COMPLETED".equals(checkpoint.get("state")), "The last replay completed, start a new one!");
+
+        final Set<ReplayProjection> selected = ReplayProjection.parse((String) checkpoint.get("projections"));
+        checkpointTimestamp = (String) checkpoint.get("timeStamp");
+        replayedSequences = loadSequences();
+        final Number events = (Number) checkpoint.get("events");
+        replayedEvents.set(events == null ? 0L : events.longValue());
+
+        launch(selected, false);
+    }
+
+    /**
+     * Stops the replay after the current batch, it can be resumed later.
+     */
+    @ManagedOperation
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        cancelled = true;
+        if (replayer != null) {
+            replayer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    private void launch(final Set<ReplayProjection> selected, final boolean fresh) {
+        running = true;
+        cancelled = false;
+        state = "RUNNING";
+        projections = Joiner.on(',').join(selected);
+        startedMillis = System.currentTimeMillis();
+
+        replayer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replay(selected, fresh);
+                } catch (RuntimeException e) {
+                    state = "FAILED";
+                    saveCheckpoint(selected, state);
+                    logger.error("replay of " + selected + " failed after " + replayedEvents.get()
+                            + " events, resume it once fixed", e);
+                } finally {
+                    running = false;
+                }
+            }
+        }, "projection-replayer");
+        replayer.setDaemon(true);
+        replayer.start();
+        logger.info("replaying {} in {} partitions, fresh: {}", selected, partitions, fresh);
+    }
+
+    private void replay(Set<ReplayProjection> selected, boolean fresh) {
+        //the store is read in time stamp order, without the index mongo sorts it in memory
+        eventStore.ensureIndexes();
+
+        final AnnotationConfigApplicationContext context = createContext(selected, fresh);
+        final ExecutorService executor = Executors.newFixedThreadPool(partitions);
+        try {
+            final ReplayMongoTemplate template = context.getBean("trade.mongoTemplate", ReplayMongoTemplate.class);
+            final List<EventListener> listeners = Lists.newArrayList();
+            for (ReplayProjection projection : selected) {
+                for (Class<?> listenerType : projection.getListeners()) {
+                    listeners.add(new AnnotationEventListenerAdapter(context.getBean(listenerType)));
+                }
+            }
+
+            //events keep being stored while replaying, catch up until a pass is shorter than a batch
+            long replayed;
+            do {
+                replayed = replayPass(new Batch(selected, template, listeners, executor));
+            } while (replayed >= batchSize && !cancelled);
+
+            if (!cancelled) {
+                fencedSwap(selected, new Batch(selected, template, listeners, executor));
+            }
+            if (cancelled) {
+                state = "STOPPED";
+                saveCheckpoint(selected, state);
+                logger.info("replay of {} stopped after {} events", selected, replayedEvents.get());
+                return;
+            }
+
+            state = "COMPLETED";
+            saveCheckpoint(selected, state);
+            logger.info("replay of {} completed with {} events in {} ms",
+                    selected, replayedEvents.get(), System.currentTimeMillis() - startedMillis);
+        } finally {
+            executor.shutdownNow();
+            context.close();
+        }
+    }
+
+    private long replayPass(final Batch batch) {
+        final Criteria criteria = checkpointTimestamp == null
+                ? null
+                : eventStore.newCriteriaBuilder().property("timeStamp").greaterThanEquals(
+                DateTime.parse(checkpointTimestamp).minus(lookBackMillis).toString());
+        final EventVisitor visitor = new EventVisitor() {
+            @Override
+            public void doWithEvent(DomainEventMessage domainEvent) {
+                if (cancelled) {
+                    throw new ReplayCancelledException();
+                }
+                if (!isReplayed(domainEvent)) {
+                    batch.add(domainEvent);
+                }
+            }
+        };
+
+        try {
+            if (criteria == null) {
+                eventStore.visitEvents(visitor);
+            } else {
+                eventStore.visitEvents(criteria, visitor);
+            }
+            batch.flush();
+        } catch (ReplayCancelledException e) {
+            batch.flush();
+        }
+        return batch.replayed;
+    }
+
+    private boolean isReplayed(DomainEventMessage event) {
+        final Long replayed = replayedSequences.get(event.getAggregateIdentifier().toString());
+        return replayed != null && event.getSequenceNumber() <= replayed;
+    }
+
+    AnnotationConfigApplicationContext createContext(Set<ReplayProjection> selected, boolean fresh) {
+        final List<String> entities = Lists.newArrayList();
+        for (ReplayProjection projection : selected) {
+            for (Class<?> entity : projection.getEntities()) {
+                entities.add(entity.getName());
+            }
+        }
+
+        final Map<String, Object> properties = Maps.newHashMap();
+        properties.put("trading.replay.suffix", SHADOW_SUFFIX);
+        properties.put("trading.replay.entities", Joiner.on(',').join(entities));
+        properties.put("trading.replay.bulkInserts", String.valueOf(fresh));
+        properties.put("trading.projection.windowMillis", "0");
+
+        final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setParent(applicationContext);
+        context.setDisplayName("projection replay");
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("replay", properties));
+
+        final XmlBeanDefinitionReader reader = new XmlBeanDefinitionReader(context);
+        reader.setEnvironment(context.getEnvironment());
+        reader.loadBeanDefinitions(REPLAY_CONTEXT);
+        for (ReplayProjection projection : selected) {
+            context.register(projection.getListeners().toArray(new Class<?>[projection.getListeners().size()]));
+        }
+        context.refresh();
+        return context;
+    }
+
+    private List<String> shadowCollections(Set<ReplayProjection> selected) {
+        final List<String> collections = Lists.newArrayList();
+        for (ReplayProjection projection : selected) {
+            for (Class<?> entity : projection.getEntities()) {
+                collections.add(mongoTemplate.getCollectionName(entity) + SHADOW_SUFFIX);
+            }
+        }
+        return collections;
+    }
+
+    /**
+     * Catches up with the last events and swaps the collections while the live listeners are held back, the
+     * events stored meanwhile are either in the shadow collections or handled live after the swap.
+     */
+    private void fencedSwap(Set<ReplayProjection> selected, Batch batch) {
+        if (projectionFence == null) {
+            swap(selected);
+            return;
+        }
+
+        projectionFence.close();
+        boolean swapped = false;
+        try {
+            replayPass(batch);
+            if (!cancelled) {
+                swap(selected);
+                swapped = true;
+            }
+        } finally {
+            if (swapped && !replayedSequences.isEmpty()) {
+                projectionFence.open(listenerTypes(selected), replayedSequences);
+            } else {
+                projectionFence.open();
+            }
+        }
+    }
+
+    private static List<Class<?>> listenerTypes(Set<ReplayProjection> selected) {
+        final List<Class<?>> listenerTypes = Lists.newArrayList();
+        for (ReplayProjection projection : selected) {
+            listenerTypes.addAll(projection.getListeners());
+        }
+        return listenerTypes;
+    }
+
+    /**
+     * Replaces every live collection by its shadow, a rename dropping the target is atomic on the server.
+     */
+    private void swap(Set<ReplayProjection> selected) {
+        for (ReplayProjection projection : selected) {
+            for (Class<?> entity : projection.getEntities()) {
+                final String live = mongoTemplate.getCollectionName(entity);
+                final String shadow = live + SHADOW_SUFFIX;
+                if (mongoTemplate.collectionExists(shadow)) {
+                    mongoTemplate.getCollection(shadow).rename(live, true);
+                } else {
+                    //no event wrote the projection
+                    mongoTemplate.dropCollection(live);
+                }
+                logger.info("collection {} replaced by {}", live, shadow);
+            }
+        }
+    }
+
+    /**
+     * Records the last sequence number replayed of every aggregate of the batch and the latest time stamp, a
+     * resume reads again from a look back before it and skips what the sequence numbers tell replayed.
+     */
+    private void checkpoint(DomainEventMessage last, List<DomainEventMessage> batch) {
+        final Map<String, Long> changed = Maps.newHashMap();
+        for (DomainEventMessage event : batch) {
+            final String aggregateIdentifier = event.getAggregateIdentifier().toString();
+            final Long sequenceNumber = changed.get(aggregateIdentifier);
+            if (sequenceNumber == null || event.getSequenceNumber() > sequenceNumber) {
+                changed.put(aggregateIdentifier, event.getSequenceNumber());
+            }
+        }
+
+        final DBCollection sequences = mongoTemplate.getCollection(SEQUENCES_COLLECTION);
+        for (Map.Entry<String, Long> sequence : changed.entrySet()) {
+            sequences.save(new BasicDBObject("_id", sequence.getKey()).append("sequenceNumber", sequence.getValue()));
+        }
+        replayedSequences.putAll(changed);
+
+        final String timestamp = last.getTimestamp().toString();
+        if (checkpointTimestamp == null || timestamp.compareTo(checkpointTimestamp) > 0) {
+            checkpointTimestamp = timestamp;
+        }
+    }
+
+    private Map<String, Long> loadSequences() {
+        final Map<String, Long> sequences = Maps.newHashMap();
+        final DBCursor cursor = mongoTemplate.getCollection(SEQUENCES_COLLECTION).find();
+        try {
+            while (cursor.hasNext()) {
+                final DBObject sequence = cursor.next();
+                sequences.put(String.valueOf(sequence.get("_id")), ((Number) sequence.get("sequenceNumber")).longValue());
+            }
+        } finally {
+            cursor.close();
+        }
+        return sequences;
+    }
+
+    private void saveCheckpoint(Set<ReplayProjection> selected, String state) {
+        mongoTemplate.getCollection(CHECKPOINT_COLLECTION).save(new BasicDBObject("_id", CHECKPOINT_ID)
+                .append("projections", Joiner.on(',').join(selected))
+                .append("timeStamp", checkpointTimestamp)
+                .append("events", replayedEvents.get())
+                .append("state", state)
+                .append("updated", new Date()));
+    }
+
+    private int partitionOf(DomainEventMessage event) {
+        return (event.getAggregateIdentifier().hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    /**
+     * Events of one batch, handed to the partitions once full.
+     */
+    private class Batch {
+        private final Set<ReplayProjection> selected;
+        private final ReplayMongoTemplate template;
+        private final List<EventListener> listeners;
+        private final ExecutorService executor;
+        private final List<DomainEventMessage> events = Lists.newArrayList();
+        private long replayed;
+
+        private Batch(Set<ReplayProjection> selected, ReplayMongoTemplate template,
+                      List<EventListener> listeners, ExecutorService executor) {
+            this.selected = selected;
+            this.template = template;
+            this.listeners = listeners;
+            this.executor = executor;
+        }
+
+        private void add(DomainEventMessage event) {
+            events.add(event);
+            if (events.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (events.isEmpty()) {
+                return;
+            }
+
+            final long start = System.currentTimeMillis();
+            final List<List<DomainEventMessage>> split = Lists.newArrayListWithCapacity(partitions);
+            for (int i = 0; i < partitions; i++) {
+                split.add(Lists.<DomainEventMessage>newArrayList());
+            }
+            for (DomainEventMessage event : events) {
+                split.get(partitionOf(event)).add(event);
+            }
+
+            final List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(partitions);
+            for (final List<DomainEventMessage> partition : split) {
+                if (!partition.isEmpty()) {
+                    tasks.add(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            for (DomainEventMessage event : partition) {
+                                for (EventListener listener : listeners) {
+                                    listener.handle(event);
+                                }
+                            }
+                            return null;
+                        }
+                    });
+                }
+            }
+            await(tasks);
+
+            template.flush();
+            checkpoint(events.get(events.size() - 1), events);
+            replayed += events.size();
+            replayedEvents.addAndGet(events.size());
+            saveCheckpoint(selected, "RUNNING");
+            events.clear();
+            lastBatchMillis = System.currentTimeMillis() - start;
+        }
+
+        private void await(List<Callable<Void>> tasks) {
+            try {
+                for (Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while replaying a batch", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Replaying a batch failed, it is replayed again on resume", e.getCause());
+            }
+        }
+    }
+
+    private static class ReplayCancelledException extends RuntimeException {
+    }
+
+    @ManagedAttribute
+    public boolean isRunning() {
+        return running;
+    }
+
+    @ManagedAttribute
+    public String getState() {
+        return state;
+    }
+
+    @ManagedAttribute
+    public String getProjections() {
+        return projections;
+    }
+
+    @ManagedAttribute
+    public long getReplayedEvents() {
+        return replayedEvents.get();
+    }
+
+    @ManagedAttribute
+    public long getEventsPerSecond() {
+        final long elapsed = System.currentTimeMillis() - startedMillis;
+        return startedMillis == 0L || elapsed == 0L ? 0L : replayedEvents.get() * 1000L / elapsed;
+    }
+
+    @ManagedAttribute
+    public long getLastBatchMillis() {
+        return lastBatchMillis;
+    }
+
+    @ManagedAttribute
+    public int getPartitions() {
+        return partitions;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        this.applicationContext = applicationContext;
+    }
+
+    @Resource(name = "eventStore")
+    public void setEventStore(PartitionedEventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Value("${trading.replay.lookBackMillis:60000}")
+    public void setLookBackMillis(long lookBackMillis) {
+        isTrue(lookBackMillis >= 0, "Look back should not be negative!");
+        this.lookBackMillis = lookBackMillis;
+    }
+
+    @Autowired(required = false)
+    public void setProjectionFence(ProjectionFence projectionFence) {
+        this.projectionFence = projectionFence;
+    }
+}
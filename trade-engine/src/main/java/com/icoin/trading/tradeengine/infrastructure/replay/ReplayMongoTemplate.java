@@ -0,0 +1,246 @@
+package com.icoin.trading.tradeengine.infrastructure.replay;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.mongodb.WriteResult;
+import org.springframework.data.mapping.PersistentProperty;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Template of the replay buffering the entities saved until {@link #flush()}. An entity saved twice before
+ * the flush is written once, entities never written are inserted with one bulk insert per collection and
+ * {@link #findById(Object, Class, String)} reads the buffered entity first. Any other query or update flushes
+ * the buffer before it runs.
+ * <p/>
+ * Bulk inserts are only safe on collections this template filled from empty, a resumed replay turns them
+ * off for the entities with an id.
+ */
+public class ReplayMongoTemplate extends MongoTemplate {
+    //collection name -> buffered entity per id, and the entities saved without an id
+    private final Map<String, Map<Object, Object>> pending = Maps.newHashMap();
+    private final Map<String, List<Object>> pendingWithoutId = Maps.newHashMap();
+    private final Map<String, Set<Object>> written = Maps.newHashMap();
+    private boolean bulkInserts = true;
+    private long flushedEntities;
+
+    public ReplayMongoTemplate(MongoDbFactory mongoDbFactory, MongoConverter mongoConverter) {
+        super(mongoDbFactory, mongoConverter);
+    }
+
+    public void setBulkInserts(boolean bulkInserts) {
+        this.bulkInserts = bulkInserts;
+    }
+
+    @Override
+    public void save(Object objectToSave, String collectionName) {
+        buffer(objectToSave, collectionName);
+    }
+
+    @Override
+    public void insert(Object objectToSave, String collectionName) {
+        buffer(objectToSave, collectionName);
+    }
+
+    @Override
+    public <T> T findById(Object id, Class<T> entityClass, String collectionName) {
+        synchronized (pending) {
+            final Map<Object, Object> entities = pending.get(collectionName);
+            final Object entity = entities == null ? null : entities.get(id);
+            if (entity != null && entityClass.isInstance(entity)) {
+                return entityClass.cast(entity);
+            }
+        }
+        return super.findById(id, entityClass, collectionName);
+    }
+
+    @Override
+    public <T> List<T> find(Query query, Class<T> entityClass, String collectionName) {
+        flush();
+        return super.find(query, entityClass, collectionName);
+    }
+
+    @Override
+    public <T> T findOne(Query query, Class<T> entityClass, String collectionName) {
+        flush();
+        return super.findOne(query, entityClass, collectionName);
+    }
+
+    @Override
+    public long count(Query query, Class<?> entityClass, String collectionName) {
+        flush();
+        return super.count(query, entityClass, collectionName);
+    }
+
+    @Override
+    public boolean exists(Query query, Class<?> entityClass, String collectionName) {
+        flush();
+        return super.exists(query, entityClass, collectionName);
+    }
+
+    @Override
+    public WriteResult updateFirst(Query query, Update update, Class<?> entityClass, String collectionName) {
+        flush();
+        return super.updateFirst(query, update, entityClass, collectionName);
+    }
+
+    @Override
+    public WriteResult updateMulti(Query query, Update update, Class<?> entityClass, String collectionName) {
+        flush();
+        return super.updateMulti(query, update, entityClass, collectionName);
+    }
+
+    @Override
+    public WriteResult upsert(Query query, Update update, Class<?> entityClass, String collectionName) {
+        flush();
+        return super.upsert(query, update, entityClass, collectionName);
+    }
+
+    @Override
+    public WriteResult remove(Query query, Class<?> entityClass, String collectionName) {
+        flush();
+        return super.remove(query, entityClass, collectionName);
+    }
+
+    @Override
+    public <T> T findAndModify(Query query, Update update, FindAndModifyOptions options, Class<T> entityClass, String collectionName) {
+        flush();
+        return super.findAndModify(query, update, options, entityClass, collectionName);
+    }
+
+    @Override
+    public <T> T findAndRemove(Query query, Class<T> entityClass, String collectionName) {
+        flush();
+        return super.findAndRemove(query, entityClass, collectionName);
+    }
+
+    private void buffer(Object entity, String collectionName) {
+        final Object id = idOf(entity);
+        synchronized (pending) {
+            if (id == null) {
+                listOf(collectionName).add(entity);
+                return;
+            }
+
+            Map<Object, Object> entities = pending.get(collectionName);
+            if (entities == null) {
+                entities = new LinkedHashMap<Object, Object>();
+                pending.put(collectionName, entities);
+            }
+            entities.put(id, entity);
+        }
+    }
+
+    private List<Object> listOf(String collectionName) {
+        List<Object> entities = pendingWithoutId.get(collectionName);
+        if (entities == null) {
+            entities = Lists.newArrayList();
+            pendingWithoutId.put(collectionName, entities);
+        }
+        return entities;
+    }
+
+    private Object idOf(Object entity) {
+        final MongoPersistentEntity<?> persistentEntity = persistentEntityOf(entity);
+        return persistentEntity == null ? null : valueOf(persistentEntity.getIdProperty(), entity);
+    }
+
+    private MongoPersistentEntity<?> persistentEntityOf(Object entity) {
+        return getConverter().getMappingContext().getPersistentEntity(entity.getClass());
+    }
+
+    private static Object valueOf(PersistentProperty<?> property, Object entity) {
+        if (property == null) {
+            return null;
+        }
+
+        final Field field = property.getField();
+        ReflectionUtils.makeAccessible(field);
+        return ReflectionUtils.getField(field, entity);
+    }
+
+    /**
+     * A bulk insert leaves the version as it is, versioned entities start at 0 as a single insert does.
+     */
+    private List<Object> versioned(List<Object> entities) {
+        for (Object entity : entities) {
+            final MongoPersistentEntity<?> persistentEntity = persistentEntityOf(entity);
+            if (persistentEntity == null || !persistentEntity.hasVersionProperty()) {
+                continue;
+            }
+
+            final Field field = persistentEntity.getVersionProperty().getField();
+            ReflectionUtils.makeAccessible(field);
+            if (ReflectionUtils.getField(field, entity) != null) {
+                continue;
+            }
+            if (Long.class.equals(field.getType())) {
+                ReflectionUtils.setField(field, entity, 0L);
+            } else if (Integer.class.equals(field.getType())) {
+                ReflectionUtils.setField(field, entity, 0);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Writes the buffered entities, new ones with one insert per collection.
+     */
+    public void flush() {
+        synchronized (pending) {
+            for (Map.Entry<String, List<Object>> entry : pendingWithoutId.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    super.insert(versioned(entry.getValue()), entry.getKey());
+                    flushedEntities += entry.getValue().size();
+                }
+            }
+            pendingWithoutId.clear();
+
+            for (Map.Entry<String, Map<Object, Object>> entry : pending.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            pending.clear();
+        }
+    }
+
+    private void write(String collectionName, Map<Object, Object> entities) {
+        Set<Object> writtenIds = written.get(collectionName);
+        if (writtenIds == null) {
+            writtenIds = Sets.newHashSet();
+            written.put(collectionName, writtenIds);
+        }
+
+        final List<Object> inserts = Lists.newArrayList();
+        for (Map.Entry<Object, Object> entry : entities.entrySet()) {
+            if (bulkInserts && writtenIds.add(entry.getKey())) {
+                inserts.add(entry.getValue());
+            } else {
+                super.save(entry.getValue(), collectionName);
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            super.insert(versioned(inserts), collectionName);
+        }
+        flushedEntities += entities.size();
+    }
+
+    public long getFlushedEntities() {
+        synchronized (pending) {
+            return flushedEntities;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.icoin.trading.tradeengine.infrastructure.replay;
+
+import com.google.common.collect.ImmutableList;
+import com.icoin.trading.tradeengine.query.activity.ExecutedAlarmActivity;
+import com.icoin.trading.tradeengine.query.activity.PortfolioActivity;
+import com.icoin.trading.tradeengine.query.activity.PortfolioAlarmActivity;
+import com.icoin.trading.tradeengine.query.activity.listeners.ExecutedAlarmActivityListener;
+import com.icoin.trading.tradeengine.query.activity.listeners.PortfolioActivityListener;
+import com.icoin.trading.tradeengine.query.activity.listeners.PortfolioAlarmListener;
+import com.icoin.trading.tradeengine.query.coin.CoinEntry;
+import com.icoin.trading.tradeengine.query.coin.CoinListener;
+import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
+import com.icoin.trading.tradeengine.query.order.OrderBookListener;
+import com.icoin.trading.tradeengine.query.order.OrderEntry;
+import com.icoin.trading.tradeengine.query.order.OrderListener;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioEntry;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioItemEventListener;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioMoneyEventListener;
+import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
+import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedListener;
+import com.icoin.trading.tradeengine.query.transaction.TransactionEntry;
+import com.icoin.trading.tradeengine.query.transaction.TransactionEventListener;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.homhon.util.Asserts.hasLength;
+
+/**
+ * Query models the projection replayer rebuilds, with the listeners writing them and the entities they write.
+ */
+public enum ReplayProjection {
+    COIN(list(CoinListener.class), list(CoinEntry.class)),
+    ORDER_BOOK(list(OrderBookListener.class), list(OrderBookEntry.class)),
+    ORDER(list(OrderListener.class), list(OrderEntry.class)),
+    TRADE_EXECUTED(list(TradeExecutedListener.class), list(TradeExecutedEntry.class)),
+    PORTFOLIO(list(PortfolioMoneyEventListener.class, PortfolioItemEventListener.class), list(PortfolioEntry.class)),
+    TRANSACTION(list(TransactionEventListener.class), list(TransactionEntry.class)),
+    PORTFOLIO_ACTIVITY(list(PortfolioActivityListener.class), list(PortfolioActivity.class)),
+    PORTFOLIO_ALARM(list(PortfolioAlarmListener.class), list(PortfolioAlarmActivity.class)),
+    EXECUTED_ALARM(list(ExecutedAlarmActivityListener.class), list(ExecutedAlarmActivity.class));
+
+    private final List<Class<?>> listeners;
+    private final List<Class<?>> entities;
+
+    private ReplayProjection(List<Class<?>> listeners, List<Class<?>> entities) {
+        this.listeners = listeners;
+        this.entities = entities;
+    }
+
+    private static List<Class<?>> list(Class<?>... classes) {
+        return ImmutableList.copyOf(classes);
+    }
+
+    public List<Class<?>> getListeners() {
+        return listeners;
+    }
+
+    public List<Class<?>> getEntities() {
+        return entities;
+    }
+
+    /**
+     * @param names comma separated projection names, case insensitive
+     */
+    public static Set<ReplayProjection> parse(String names) {
+        hasLength(names);
+        final Set<ReplayProjection> projections = EnumSet.noneOf(ReplayProjection.class);
+        for (String name : names.split(",")) {
+            if (name.trim().length() > 0) {
+                projections.add(valueOf(name.trim().toUpperCase()));
+            }
+        }
+        return projections;
+    }
+}
@@ -0,0 +1,69 @@
+package com.icoin.trading.tradeengine.infrastructure.replay;
+
+import com.google.common.collect.ImmutableSet;
+import com.homhon.mongo.core.MongoMappingBaseContext;
+import org.springframework.beans.BeansException;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.mapping.BasicMongoPersistentEntity;
+import org.springframework.data.util.TypeInformation;
+
+import java.util.Set;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Mapping context of the replay, the shadowed entities are mapped to their collection followed by the suffix,
+ * the others stay on their live collection.
+ */
+public class ShadowMongoMappingContext extends MongoMappingBaseContext {
+    private final String suffix;
+    private final Set<Class<?>> shadowed;
+    private ApplicationContext applicationContext;
+
+    public ShadowMongoMappingContext(String suffix, Class<?>[] shadowed) {
+        hasLength(suffix);
+        notNull(shadowed);
+        this.suffix = suffix;
+        this.shadowed = ImmutableSet.copyOf(shadowed);
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
+        super.setApplicationContext(applicationContext);
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    protected <T> BasicMongoPersistentEntity<T> createPersistentEntity(TypeInformation<T> typeInformation) {
+        final BasicMongoPersistentEntity<T> entity = super.createPersistentEntity(typeInformation);
+        if (!shadowed.contains(typeInformation.getType())) {
+            return entity;
+        }
+
+        final ShadowPersistentEntity<T> shadow =
+                new ShadowPersistentEntity<T>(typeInformation, entity.getCollection() + suffix);
+        if (applicationContext != null) {
+            shadow.setApplicationContext(applicationContext);
+        }
+        return shadow;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    private static class ShadowPersistentEntity<T> extends BasicMongoPersistentEntity<T> {
+        private final String collection;
+
+        private ShadowPersistentEntity(TypeInformation<T> typeInformation, String collection) {
+            super(typeInformation);
+            this.collection = collection;
+        }
+
+        @Override
+        public String getCollection() {
+            return collection;
+        }
+    }
+}
@@ -17,7 +17,8 @@ import java.util.Date;
  * To change this template use File | Settings | File Templates.
  */
 @CompoundIndexes({
-        @CompoundIndex(name = "executedExceptionActivity_time_checked", def = "{'tradeTime': 1, 'checked': -1}", unique = true)
+        @CompoundIndex(name = "executedExceptionActivity_time_checked", def = "{'tradeTime': 1, 'checked': -1}", unique = true),
+        @CompoundIndex(name = "executedExceptionActivity_time_id", def = "{'tradeTime': 1, '_id': 1}")
 })
 public class ExecutedAlarmActivity extends VersionedEntitySupport<ExecutedAlarmActivity, String, Long> {
     private String buyOrderId;
@@ -3,11 +3,8 @@ package com.icoin.trading.tradeengine.query.activity.repositories;
 import com.homhon.base.domain.repository.GenericCrudRepository;
 import com.icoin.trading.tradeengine.query.activity.ExecutedAlarmActivity;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
-import java.util.Date;
-
 /**
  * Created with IntelliJ IDEA.
  * User: jihual
@@ -17,10 +14,8 @@ import java.util.Date;
  */
 public interface ExecutedAlarmActivityQueryRepository
         extends GenericCrudRepository<ExecutedAlarmActivity, String>,
-        PagingAndSortingRepository<ExecutedAlarmActivity, String> {
-
-    @Query(value = "{ 'tradeTime' : { '$gte' : ?0, '$lt' : ?1}")
-    ExecutedAlarmActivity findByTradeTime(Date start, Date end, Pageable pageable);
+        PagingAndSortingRepository<ExecutedAlarmActivity, String>,
+        ExecutedAlarmActivityQueryRepositoryCustom {
 
     ExecutedAlarmActivity findBySellUsername(String username, Pageable pageable);
 
@@ -0,0 +1,14 @@
+package com.icoin.trading.tradeengine.query.activity.repositories;
+
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
+import com.icoin.trading.tradeengine.query.activity.ExecutedAlarmActivity;
+
+import java.util.Date;
+
+public interface ExecutedAlarmActivityQueryRepositoryCustom {
+    /**
+     * @param continuationToken the next token of the page before, null for the first page
+     * @return the alarms of the trades from the start on and before the end, in the order they executed
+     */
+    KeysetPage<ExecutedAlarmActivity> findByTradeTime(Date start, Date end, String continuationToken, int limit);
+}
@@ -0,0 +1,55 @@
+package com.icoin.trading.tradeengine.query.activity.repositories;
+
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.Keyset;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
+import com.icoin.trading.tradeengine.query.activity.ExecutedAlarmActivity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.List;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.Keyset.page;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.Keyset.seek;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ExecutedAlarmActivityQueryRepositoryImpl implements ExecutedAlarmActivityQueryRepositoryCustom {
+    private static Logger logger = LoggerFactory.getLogger(ExecutedAlarmActivityQueryRepositoryImpl.class);
+
+    private static final Keyset.Position<ExecutedAlarmActivity> BY_TRADE_TIME = new Keyset.Position<ExecutedAlarmActivity>() {
+        @Override
+        public Keyset of(ExecutedAlarmActivity activity) {
+            return Keyset.of(activity.getTradeTime(), activity.getPrimaryKey());
+        }
+    };
+
+    private MongoTemplate mongoTemplate;
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public KeysetPage<ExecutedAlarmActivity> findByTradeTime(Date start, Date end, String continuationToken, int limit) {
+        notNull(start);
+        notNull(end);
+        isTrue(limit > 0);
+
+        final Query query = seek(new Query(), where("tradeTime").gte(start).lt(end),
+                Sort.Direction.ASC, continuationToken, limit);
+
+        final List<ExecutedAlarmActivity> activities = mongoTemplate.find(query, ExecutedAlarmActivity.class);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("findByTradeTime Queried with {} : {} activities", query, activities.size());
+        }
+        return page(activities, limit, BY_TRADE_TIME);
+    }
+}
@@ -0,0 +1,136 @@
+package com.icoin.trading.tradeengine.query.candle;
+
+import com.homhon.mongo.domainsupport.modelsupport.entity.AuditAwareEntitySupport;
+import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
+import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolumeBuilder;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+
+import java.util.Date;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Open, high, low, close and volume of the trades of an order book within a candle period, prices and volume as
+ * scaled longs. Only candles with trades exist.
+ */
+@CompoundIndexes({
+        @CompoundIndex(name = "candleEntry_orderBook_period_start", def = "{'orderBookIdentifier': 1, 'period': 1, 'start': 1}", unique = true)
+})
+public class CandleEntry extends AuditAwareEntitySupport<CandleEntry, String, Long> {
+    private String orderBookIdentifier;
+    private CandlePeriod period;
+    private Date start;
+    private String priceCurrency;
+    private String amountCurrency;
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+    private long volume;
+    private long trades;
+    private Long lastSequenceNumber;
+
+    @SuppressWarnings("unused")
+    private CandleEntry() {
+    }
+
+    public CandleEntry(String orderBookIdentifier, CandlePeriod period, Date start, String priceCurrency, String amountCurrency) {
+        hasLength(orderBookIdentifier);
+        notNull(period);
+        notNull(start);
+        hasLength(priceCurrency);
+        hasLength(amountCurrency);
+        this.orderBookIdentifier = orderBookIdentifier;
+        this.period = period;
+        this.start = start;
+        this.priceCurrency = priceCurrency;
+        this.amountCurrency = amountCurrency;
+        setPrimaryKey(identifierOf(orderBookIdentifier, period, start.getTime()));
+    }
+
+    public static String identifierOf(String orderBookIdentifier, CandlePeriod period, long start) {
+        return orderBookIdentifier + '-' + period.getCode() + '-' + start;
+    }
+
+    /**
+     * Adds a trade, trades are added in the order they executed. The candle keeps the highest sequence number of its
+     * trades.
+     */
+    public void traded(long price, long amount, Long sequenceNumber) {
+        if (trades == 0L) {
+            open = price;
+            high = price;
+            low = price;
+        } else {
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+        }
+        close = price;
+        volume += amount;
+        trades++;
+        if (sequenceNumber != null && (lastSequenceNumber == null || sequenceNumber > lastSequenceNumber)) {
+            lastSequenceNumber = sequenceNumber;
+        }
+    }
+
+    public OpenHighLowCloseVolume toOpenHighLowCloseVolume() {
+        return new OpenHighLowCloseVolumeBuilder(priceCurrency, amountCurrency)
+                .withDate(start)
+                .withOpen(open)
+                .withHigh(high)
+                .withLow(low)
+                .withClose(close)
+                .withVolume(volume)
+                .build();
+    }
+
+    public String getOrderBookIdentifier() {
+        return orderBookIdentifier;
+    }
+
+    public CandlePeriod getPeriod() {
+        return period;
+    }
+
+    public Date getStart() {
+        return start;
+    }
+
+    public String getPriceCurrency() {
+        return priceCurrency;
+    }
+
+    public String getAmountCurrency() {
+        return amountCurrency;
+    }
+
+    public long getOpen() {
+        return open;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public long getClose() {
+        return close;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public long getTrades() {
+        return trades;
+    }
+
+    public Long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+}
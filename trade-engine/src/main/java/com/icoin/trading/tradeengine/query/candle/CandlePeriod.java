@@ -0,0 +1,51 @@
+package com.icoin.trading.tradeengine.query.candle;
+
+import java.util.Date;
+
+/**
+ * Length of a candle, candles start at a multiple of their length since the epoch. Every length divides a day, so
+ * no candle spans two days.
+ */
+public enum CandlePeriod {
+    ONE_MINUTE("1m", 60 * 1000L),
+    FIVE_MINUTES("5m", 5 * 60 * 1000L),
+    FIFTEEN_MINUTES("15m", 15 * 60 * 1000L),
+    ONE_HOUR("1h", 60 * 60 * 1000L),
+    ONE_DAY("1d", 24 * 60 * 60 * 1000L);
+
+    private final String code;
+    private final long millis;
+
+    private CandlePeriod(String code, long millis) {
+        this.code = code;
+        this.millis = millis;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return the start of the candle of the period the time falls in
+     */
+    public long startOf(long time) {
+        return time - ((time % millis) + millis) % millis;
+    }
+
+    public Date startOf(Date time) {
+        return new Date(startOf(time.getTime()));
+    }
+
+    public static CandlePeriod of(String code) {
+        for (CandlePeriod period : values()) {
+            if (period.code.equals(code)) {
+                return period;
+            }
+        }
+        throw new IllegalArgumentException("Unknown candle period " + code);
+    }
+}
@@ -0,0 +1,338 @@
+package com.icoin.trading.tradeengine.query.candle;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.tradeengine.MoneyUtils;
+import com.icoin.trading.tradeengine.query.candle.repositories.CandleQueryRepository;
+import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
+import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
+import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
+import com.icoin.trading.tradeengine.query.tradeexecuted.repositories.TradeExecutedQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.joda.money.BigMoney;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.homhon.util.TimeUtils.currentTime;
+
+/**
+ * Candles of every order book and period kept up to date from the trade executed events: the recent candles are
+ * held in memory, every candle traded is written to the candle collection. Charts are read from memory when the
+ * range is recent enough, otherwise from the candle index, never from the executed trades.
+ * <p/>
+ * The candles of the past are built from the executed trades by {@link #backfill(String)}, a day at a time in
+ * parallel as no candle spans two days. The backfill rewrites the candles of the days it covers, it is to be run
+ * while the order book does not trade. The candles keep the sequence number of the last trade event they cover, so
+ * the events handled after the backfill are applied once; trades recorded before the sequence number was kept
+ * have none.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=Candle,name=candleProjection")
+public class CandleProjection {
+    private static Logger logger = LoggerFactory.getLogger(CandleProjection.class);
+    private static final long DAY = CandlePeriod.ONE_DAY.getMillis();
+
+    private final ConcurrentMap<String, OrderBookCandles> orderBooks = Maps.newConcurrentMap();
+    private CandleQueryRepository candleRepository;
+    private TradeExecutedQueryRepository tradeExecutedRepository;
+    private OrderBookQueryRepository orderBookRepository;
+    private int recentCandles = 1440;
+    private int backfillThreads = 4;
+
+    private final AtomicLong tradesApplied = new AtomicLong();
+    private final AtomicLong rangesFromMemory = new AtomicLong();
+    private final AtomicLong rangesFromStore = new AtomicLong();
+    private final AtomicLong backfilledTrades = new AtomicLong();
+
+    private OrderBookCandles candles(String orderBookIdentifier) {
+        final OrderBookCandles candles = orderBooks.get(orderBookIdentifier);
+        if (candles != null) {
+            return candles;
+        }
+
+        final OrderBookCandles loaded = load(orderBookIdentifier);
+        final OrderBookCandles existing = orderBooks.putIfAbsent(orderBookIdentifier, loaded);
+        return existing == null ? loaded : existing;
+    }
+
+    private OrderBookCandles load(String orderBookIdentifier) {
+        final OrderBookCandles candles = new OrderBookCandles();
+        for (CandlePeriod period : CandlePeriod.values()) {
+            final List<CandleEntry> latest = Lists.newArrayList(candleRepository.findByOrderBookIdentifierAndPeriod(
+                    orderBookIdentifier, period, new PageRequest(0, recentCandles, Sort.Direction.DESC, "start")));
+            Collections.reverse(latest);
+            candles.series.put(period, new CandleSeries(period, recentCandles, latest, latest.size() < recentCandles));
+
+            for (CandleEntry candle : latest) {
+                if (candle.getLastSequenceNumber() != null && candle.getLastSequenceNumber() > candles.lastSequenceNumber) {
+                    candles.lastSequenceNumber = candle.getLastSequenceNumber();
+                }
+            }
+        }
+        logger.info("candles of order book {} loaded up to event {}", orderBookIdentifier, candles.lastSequenceNumber);
+        return candles;
+    }
+
+    @EventHandler
+    public void handleTradeExecuted(TradeExecutedEvent event, DomainEventMessage message) {
+        final String orderBookIdentifier = event.getOrderBookId().toString();
+        final OrderBookCandles candles = candles(orderBookIdentifier);
+
+        synchronized (candles) {
+            if (message.getSequenceNumber() <= candles.lastSequenceNumber) {
+                logger.debug("trade {} of order book {} is in the candles already", message.getSequenceNumber(), orderBookIdentifier);
+                return;
+            }
+
+            for (CandleSeries series : candles.series.values()) {
+                CandleEntry candle = series.traded(orderBookIdentifier, event.getTradeTime().getTime(),
+                        event.getTradedPrice().getCurrencyUnit().getCode(), event.getTradeAmount().getCurrencyUnit().getCode(),
+                        MoneyUtils.convertToLong(event.getTradedPrice()), MoneyUtils.convertToLong(event.getTradeAmount()),
+                        message.getSequenceNumber());
+                if (candle == null) {
+                    candle = storedCandle(orderBookIdentifier, series.getPeriod(), event.getTradeTime(),
+                            event.getTradedPrice(), event.getTradeAmount());
+                    candle.traded(MoneyUtils.convertToLong(event.getTradedPrice()),
+                            MoneyUtils.convertToLong(event.getTradeAmount()), message.getSequenceNumber());
+                }
+                candleRepository.writeTraded(candle);
+            }
+            candles.lastSequenceNumber = message.getSequenceNumber();
+        }
+        tradesApplied.incrementAndGet();
+    }
+
+    //a trade older than the candles in memory, out of order by the clock
+    private CandleEntry storedCandle(String orderBookIdentifier, CandlePeriod period, Date tradeTime,
+                                     BigMoney tradedPrice, BigMoney tradeAmount) {
+        final long start = period.startOf(tradeTime.getTime());
+        final CandleEntry stored = candleRepository.findOne(CandleEntry.identifierOf(orderBookIdentifier, period, start));
+        return stored != null
+                ? stored
+                : new CandleEntry(orderBookIdentifier, period, new Date(start),
+                tradedPrice.getCurrencyUnit().getCode(), tradeAmount.getCurrencyUnit().getCode());
+    }
+
+    /**
+     * @return the candles of the period starting from the start on and before the end, oldest first, periods
+     *         without trades have no candle
+     */
+    public List<OpenHighLowCloseVolume> findCandles(String orderBookIdentifier, CandlePeriod period, Date start, Date end) {
+        hasLength(orderBookIdentifier);
+        notNull(period);
+        notNull(start);
+        notNull(end);
+
+        final List<OpenHighLowCloseVolume> recent =
+                candles(orderBookIdentifier).series.get(period).range(start.getTime(), end.getTime());
+        if (recent != null) {
+            rangesFromMemory.incrementAndGet();
+            return recent;
+        }
+
+        rangesFromStore.incrementAndGet();
+        final List<CandleEntry> stored = candleRepository.findCandles(orderBookIdentifier, period, start, end);
+        final List<OpenHighLowCloseVolume> candles = Lists.newArrayListWithCapacity(stored.size());
+        for (CandleEntry candle : stored) {
+            candles.add(candle.toOpenHighLowCloseVolume());
+        }
+        return candles;
+    }
+
+    /**
+     * Builds the candles of the order book from all its executed trades.
+     *
+     * @return the number of trades read
+     */
+    @ManagedOperation
+    public long backfill(String orderBookIdentifier) {
+        hasLength(orderBookIdentifier);
+        final List<TradeExecutedEntry> first = tradeExecutedRepository.findByOrderBookIdentifier(
+                orderBookIdentifier, new PageRequest(0, 1, Sort.Direction.ASC, "tradeTime"));
+        if (first.isEmpty()) {
+            return 0L;
+        }
+        return backfill(orderBookIdentifier, first.get(0).getTradeTime(), currentTime());
+    }
+
+    /**
+     * Builds the candles of the days from the day of the start to the day of the end from the executed trades of
+     * the order book, the days in parallel.
+     *
+     * @return the number of trades read
+     */
+    public long backfill(final String orderBookIdentifier, Date start, Date end) {
+        hasLength(orderBookIdentifier);
+        notNull(start);
+        notNull(end);
+        final long startTime = System.currentTimeMillis();
+
+        final List<Callable<Long>> days = Lists.newArrayList();
+        for (long day = CandlePeriod.ONE_DAY.startOf(start.getTime()); day <= end.getTime(); day += DAY) {
+            final Date dayStart = new Date(day);
+            final Date dayEnd = new Date(day + DAY);
+            days.add(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    return backfillDay(orderBookIdentifier, dayStart, dayEnd);
+                }
+            });
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(backfillThreads, Math.max(days.size(), 1)));
+        long trades = 0L;
+        try {
+            for (Future<Long> day : executor.invokeAll(days)) {
+                trades += day.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backfilling the candles of " + orderBookIdentifier, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Backfilling the candles of " + orderBookIdentifier + " failed, to be run again", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            //read again with the backfilled candles
+            orderBooks.remove(orderBookIdentifier);
+        }
+
+        backfilledTrades.addAndGet(trades);
+        logger.info("backfilled the candles of order book {} from {} trades of {} days in {} ms",
+                orderBookIdentifier, trades, days.size(), System.currentTimeMillis() - startTime);
+        return trades;
+    }
+
+    private long backfillDay(String orderBookIdentifier, Date dayStart, Date dayEnd) {
+        final List<TradeExecutedEntry> trades = tradeExecutedRepository.findTrades(orderBookIdentifier, dayStart, dayEnd);
+        final Map<String, CandleEntry> candles = new LinkedHashMap<String, CandleEntry>();
+        for (TradeExecutedEntry trade : trades) {
+            final long price = MoneyUtils.convertToLong(trade.getTradedPrice());
+            final long amount = MoneyUtils.convertToLong(trade.getTradedAmount());
+            for (CandlePeriod period : CandlePeriod.values()) {
+                final long start = period.startOf(trade.getTradeTime().getTime());
+                final String identifier = CandleEntry.identifierOf(orderBookIdentifier, period, start);
+                CandleEntry candle = candles.get(identifier);
+                if (candle == null) {
+                    candle = new CandleEntry(orderBookIdentifier, period, new Date(start),
+                            trade.getTradedPrice().getCurrencyUnit().getCode(),
+                            trade.getTradedAmount().getCurrencyUnit().getCode());
+                    candles.put(identifier, candle);
+                }
+                candle.traded(price, amount, trade.getSequenceNumber());
+            }
+        }
+
+        for (CandleEntry candle : candles.values()) {
+            candleRepository.write(candle);
+        }
+        return trades.size();
+    }
+
+    /**
+     * @return the number of trades read
+     */
+    @ManagedOperation
+    public long backfillAll() {
+        long trades = 0L;
+        for (OrderBookEntry orderBook : orderBookRepository.findAll()) {
+            trades += backfill(orderBook.getPrimaryKey());
+        }
+        return trades;
+    }
+
+    @ManagedAttribute
+    public long getTradesApplied() {
+        return tradesApplied.get();
+    }
+
+    @ManagedAttribute
+    public long getRangesFromMemory() {
+        return rangesFromMemory.get();
+    }
+
+    @ManagedAttribute
+    public long getRangesFromStore() {
+        return rangesFromStore.get();
+    }
+
+    @ManagedAttribute
+    public long getBackfilledTrades() {
+        return backfilledTrades.get();
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getLastSequenceNumbers() {
+        final Map<String, Long> sequenceNumbers = Maps.newHashMap();
+        for (Map.Entry<String, OrderBookCandles> entry : orderBooks.entrySet()) {
+            sequenceNumbers.put(entry.getKey(), entry.getValue().lastSequenceNumber);
+        }
+        return sequenceNumbers;
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setCandleRepository(CandleQueryRepository candleRepository) {
+        this.candleRepository = candleRepository;
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setTradeExecutedRepository(TradeExecutedQueryRepository tradeExecutedRepository) {
+        this.tradeExecutedRepository = tradeExecutedRepository;
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setOrderBookRepository(OrderBookQueryRepository orderBookRepository) {
+        this.orderBookRepository = orderBookRepository;
+    }
+
+    @Value("${trading.candle.recentCandles:1440}")
+    public void setRecentCandles(int recentCandles) {
+        isTrue(recentCandles > 0, "Recent candles should be greater than 0!");
+        this.recentCandles = recentCandles;
+    }
+
+    @Value("${trading.candle.backfillThreads:4}")
+    public void setBackfillThreads(int backfillThreads) {
+        isTrue(backfillThreads > 0, "Backfill threads should be greater than 0!");
+        this.backfillThreads = backfillThreads;
+    }
+
+    /**
+     * The candle series of an order book and the sequence number of the last trade event in them, changed by one
+     * event at a time.
+     */
+    private static class OrderBookCandles {
+        private final Map<CandlePeriod, CandleSeries> series = new EnumMap<CandlePeriod, CandleSeries>(CandlePeriod.class);
+        private volatile long lastSequenceNumber = -1L;
+    }
+}
@@ -0,0 +1,113 @@
+package com.icoin.trading.tradeengine.query.candle;
+
+import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * The most recent candles of an order book for one period, oldest first, bounded by the capacity. The series covers
+ * the time from its oldest candle on, or all the time when it holds every stored candle, and answers the ranges it
+ * covers without reading the stored candles.
+ */
+class CandleSeries {
+    private final CandlePeriod period;
+    private final int capacity;
+    private final List<CandleEntry> candles;
+    private boolean complete;
+
+    /**
+     * @param latest   the latest stored candles, oldest first
+     * @param complete true when the latest candles are all the stored ones
+     */
+    CandleSeries(CandlePeriod period, int capacity, List<CandleEntry> latest, boolean complete) {
+        notNull(period);
+        isTrue(capacity > 0, "Capacity should be greater than 0!");
+        notNull(latest);
+        this.period = period;
+        this.capacity = capacity;
+        this.candles = new ArrayList<CandleEntry>(latest);
+        this.complete = complete;
+        evict();
+    }
+
+    /**
+     * Adds the trade to the candle of its time, created when it is newer than the last one or within the covered
+     * time.
+     *
+     * @return the candle traded, null when it is older than the covered time and has to be read from the stored
+     *         candles
+     */
+    synchronized CandleEntry traded(String orderBookIdentifier, long time, String priceCurrency, String amountCurrency,
+                                    long price, long amount, Long sequenceNumber) {
+        final long start = period.startOf(time);
+        final int index = indexOf(start);
+        final CandleEntry candle;
+        if (index < candles.size() && candles.get(index).getStart().getTime() == start) {
+            candle = candles.get(index);
+        } else if (index == 0 && !complete && !candles.isEmpty()) {
+            return null;
+        } else {
+            candle = new CandleEntry(orderBookIdentifier, period, new Date(start), priceCurrency, amountCurrency);
+            candles.add(index, candle);
+            evict();
+        }
+
+        candle.traded(price, amount, sequenceNumber);
+        return candle;
+    }
+
+    private void evict() {
+        while (candles.size() > capacity) {
+            candles.remove(0);
+            complete = false;
+        }
+    }
+
+    /**
+     * @return the candles starting from the start on and before the end, null when the start is older than the
+     *         covered time
+     */
+    synchronized List<OpenHighLowCloseVolume> range(long start, long end) {
+        if (!covers(start)) {
+            return null;
+        }
+
+        final List<OpenHighLowCloseVolume> range = new ArrayList<OpenHighLowCloseVolume>();
+        for (int i = indexOf(start); i < candles.size() && candles.get(i).getStart().getTime() < end; i++) {
+            range.add(candles.get(i).toOpenHighLowCloseVolume());
+        }
+        return range;
+    }
+
+    private boolean covers(long start) {
+        return complete || (!candles.isEmpty() && start >= candles.get(0).getStart().getTime());
+    }
+
+    //the index of the first candle starting at or after the start
+    private int indexOf(long start) {
+        int low = 0;
+        int high = candles.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (candles.get(middle).getStart().getTime() < start) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    synchronized int size() {
+        return candles.size();
+    }
+
+    CandlePeriod getPeriod() {
+        return period;
+    }
+}
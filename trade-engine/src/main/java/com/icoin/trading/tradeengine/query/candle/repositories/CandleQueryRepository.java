@@ -0,0 +1,17 @@
+package com.icoin.trading.tradeengine.query.candle.repositories;
+
+import com.homhon.base.domain.repository.GenericCrudRepository;
+import com.icoin.trading.tradeengine.query.candle.CandleEntry;
+import com.icoin.trading.tradeengine.query.candle.CandlePeriod;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.PagingAndSortingRepository;
+
+import java.util.List;
+
+public interface CandleQueryRepository extends
+        PagingAndSortingRepository<CandleEntry, String>,
+        GenericCrudRepository<CandleEntry, String>,
+        CandleQueryRepositoryCustom {
+
+    List<CandleEntry> findByOrderBookIdentifierAndPeriod(String orderBookIdentifier, CandlePeriod period, Pageable pageable);
+}
@@ -0,0 +1,25 @@
+package com.icoin.trading.tradeengine.query.candle.repositories;
+
+import com.icoin.trading.tradeengine.query.candle.CandleEntry;
+import com.icoin.trading.tradeengine.query.candle.CandlePeriod;
+
+import java.util.Date;
+import java.util.List;
+
+public interface CandleQueryRepositoryCustom {
+
+    /**
+     * @return the candles starting from the start on and before the end, oldest first, read from the candle index
+     */
+    List<CandleEntry> findCandles(String orderBookIdentifier, CandlePeriod period, Date start, Date end);
+
+    /**
+     * Writes the whole candle over the stored one, inserted when missing.
+     */
+    void write(CandleEntry candle);
+
+    /**
+     * Writes the fields a trade changes of the candle, the whole candle for its first trade or when it is missing.
+     */
+    void writeTraded(CandleEntry candle);
+}
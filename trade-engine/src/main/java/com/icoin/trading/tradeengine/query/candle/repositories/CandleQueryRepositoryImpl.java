@@ -0,0 +1,90 @@
+package com.icoin.trading.tradeengine.query.candle.repositories;
+
+import com.icoin.trading.tradeengine.query.candle.CandleEntry;
+import com.icoin.trading.tradeengine.query.candle.CandlePeriod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.annotation.Resource;
+import java.util.Date;
+import java.util.List;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.byIdentifier;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class CandleQueryRepositoryImpl implements CandleQueryRepositoryCustom {
+    private static Logger logger = LoggerFactory.getLogger(CandleQueryRepositoryImpl.class);
+
+    private MongoTemplate mongoTemplate;
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<CandleEntry> findCandles(String orderBookIdentifier, CandlePeriod period, Date start, Date end) {
+        hasLength(orderBookIdentifier);
+        notNull(period);
+        notNull(start);
+        notNull(end);
+        isTrue(!end.before(start), "End should not be before start!");
+
+        final Query query = query(where("orderBookIdentifier").is(orderBookIdentifier)
+                .and("period").is(period.toString())
+                .and("start").gte(start).lt(end))
+                .with(new Sort(Sort.Direction.ASC, "start"));
+
+        final List<CandleEntry> candles = mongoTemplate.find(query, CandleEntry.class);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("findCandles Queried with {} : {} candles", query, candles.size());
+        }
+        return candles;
+    }
+
+    @Override
+    public void write(CandleEntry candle) {
+        notNull(candle);
+        mongoTemplate.upsert(byIdentifier(candle.getPrimaryKey()),
+                new Update()
+                        .set("orderBookIdentifier", candle.getOrderBookIdentifier())
+                        .set("period", candle.getPeriod().toString())
+                        .set("start", candle.getStart())
+                        .set("priceCurrency", candle.getPriceCurrency())
+                        .set("amountCurrency", candle.getAmountCurrency())
+                        .set("open", candle.getOpen())
+                        .set("high", candle.getHigh())
+                        .set("low", candle.getLow())
+                        .set("close", candle.getClose())
+                        .set("volume", candle.getVolume())
+                        .set("trades", candle.getTrades())
+                        .set("lastSequenceNumber", candle.getLastSequenceNumber()),
+                CandleEntry.class);
+    }
+
+    @Override
+    public void writeTraded(CandleEntry candle) {
+        notNull(candle);
+        if (candle.getTrades() > 1L && mongoTemplate.updateFirst(byIdentifier(candle.getPrimaryKey()),
+                new Update()
+                        .set("high", candle.getHigh())
+                        .set("low", candle.getLow())
+                        .set("close", candle.getClose())
+                        .set("volume", candle.getVolume())
+                        .set("trades", candle.getTrades())
+                        .set("lastSequenceNumber", candle.getLastSequenceNumber()),
+                CandleEntry.class).getN() > 0) {
+            return;
+        }
+        write(candle);
+    }
+}
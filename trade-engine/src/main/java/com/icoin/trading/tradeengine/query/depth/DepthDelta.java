@@ -0,0 +1,48 @@
+package com.icoin.trading.tradeengine.query.depth;
+
+import com.homhon.base.domain.model.ValueObjectSupport;
+import com.icoin.trading.tradeengine.MoneyUtils;
+import com.icoin.trading.tradeengine.query.order.OrderType;
+import org.joda.money.BigMoney;
+
+/**
+ * Change of one price level of a market depth, the amount is the new aggregated amount of the level,
+ * zero when the level is gone.
+ */
+public class DepthDelta extends ValueObjectSupport<DepthDelta> {
+    private final long version;
+    private final OrderType type;
+    private final long price;
+    private final long amount;
+    private final String priceCurrency;
+    private final String amountCurrency;
+
+    public DepthDelta(long version, OrderType type, long price, long amount, String priceCurrency, String amountCurrency) {
+        this.version = version;
+        this.type = type;
+        this.price = price;
+        this.amount = amount;
+        this.priceCurrency = priceCurrency;
+        this.amountCurrency = amountCurrency;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public OrderType getType() {
+        return type;
+    }
+
+    public BigMoney getPrice() {
+        return MoneyUtils.convertToBigMoney(priceCurrency, price);
+    }
+
+    public BigMoney getAmount() {
+        return MoneyUtils.convertToBigMoney(amountCurrency, amount);
+    }
+
+    public boolean isRemoved() {
+        return amount <= 0;
+    }
+}
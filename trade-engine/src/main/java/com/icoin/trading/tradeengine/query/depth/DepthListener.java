@@ -0,0 +1,9 @@
+package com.icoin.trading.tradeengine.query.depth;
+
+/**
+ * Told about every change of a market depth once the projection applied it, the changes themselves are read from
+ * the projection by version.
+ */
+public interface DepthListener {
+    void depthChanged(String orderBookIdentifier);
+}
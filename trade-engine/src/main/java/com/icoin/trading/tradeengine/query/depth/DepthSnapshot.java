@@ -0,0 +1,40 @@
+package com.icoin.trading.tradeengine.query.depth;
+
+import com.homhon.base.domain.model.ValueObjectSupport;
+import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Top levels of both sides of a market depth at a version, deltas after the version bring it up to date.
+ */
+public class DepthSnapshot extends ValueObjectSupport<DepthSnapshot> {
+    private final String orderBookIdentifier;
+    private final long version;
+    private final List<PriceAggregate> bids;
+    private final List<PriceAggregate> asks;
+
+    public DepthSnapshot(String orderBookIdentifier, long version, List<PriceAggregate> bids, List<PriceAggregate> asks) {
+        this.orderBookIdentifier = orderBookIdentifier;
+        this.version = version;
+        this.bids = Collections.unmodifiableList(bids);
+        this.asks = Collections.unmodifiableList(asks);
+    }
+
+    public String getOrderBookIdentifier() {
+        return orderBookIdentifier;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<PriceAggregate> getBids() {
+        return bids;
+    }
+
+    public List<PriceAggregate> getAsks() {
+        return asks;
+    }
+}
@@ -0,0 +1,199 @@
+package com.icoin.trading.tradeengine.query.depth;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.trading.tradeengine.query.order.OrderType;
+import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import org.joda.money.BigMoney;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.MoneyUtils.convertToLong;
+
+/**
+ * Aggregated remaining amount per price level of one order book. Amounts and prices are kept as the long
+ * values stored in mongo, every level change bumps the version and is kept as a delta, the oldest deltas
+ * are dropped when there are more than max deltas.
+ */
+public class MarketDepth {
+    private final String orderBookIdentifier;
+    private final int maxDeltas;
+    private final NavigableMap<Long, Long> bids = new TreeMap<Long, Long>(Collections.<Long>reverseOrder());
+    private final NavigableMap<Long, Long> asks = new TreeMap<Long, Long>();
+    private final Map<String, RestingOrder> orders = Maps.newHashMap();
+    private final Deque<DepthDelta> deltas = new ArrayDeque<DepthDelta>();
+    private String priceCurrency;
+    private String amountCurrency;
+    private long version;
+
+    public MarketDepth(String orderBookIdentifier, int maxDeltas) {
+        hasLength(orderBookIdentifier);
+        isTrue(maxDeltas > 0, "Max deltas should be greater than 0!");
+        this.orderBookIdentifier = orderBookIdentifier;
+        this.maxDeltas = maxDeltas;
+    }
+
+    /**
+     * Adds the remaining amount of a pending order to its level, an order already known is ignored.
+     */
+    public void placed(String orderId, OrderType type, BigMoney price, BigMoney remaining) {
+        placed(orderId, type, price, remaining, null);
+    }
+
+    /**
+     * Adds the remaining amount of a pending order loaded from its entry, the trades up to the last sequence
+     * number of the entry are in the remaining amount already and are not taken off again.
+     */
+    public synchronized void placed(String orderId, OrderType type, BigMoney price, BigMoney remaining,
+                                    Long lastSequenceNumber) {
+        hasLength(orderId);
+        notNull(type);
+        notNull(price);
+        notNull(remaining);
+
+        if (orders.containsKey(orderId) || !remaining.isPositive()) {
+            return;
+        }
+
+        priceCurrency = price.getCurrencyUnit().getCurrencyCode();
+        amountCurrency = remaining.getCurrencyUnit().getCurrencyCode();
+
+        final RestingOrder order = new RestingOrder(type, convertToLong(price), convertToLong(remaining));
+        order.lastSequenceNumber = lastSequenceNumber;
+        orders.put(orderId, order);
+        change(type, order.price, order.remaining);
+    }
+
+    /**
+     * Takes the traded amount off the level of the order, orders not in the depth are ignored.
+     */
+    public void traded(String orderId, BigMoney tradedAmount) {
+        traded(orderId, tradedAmount, null);
+    }
+
+    /**
+     * Takes the traded amount off the level of the order, unless the trade is at or before the last sequence
+     * number of the order book seen by the order. Orders not in the depth are ignored.
+     */
+    public synchronized void traded(String orderId, BigMoney tradedAmount, Long sequenceNumber) {
+        notNull(tradedAmount);
+        final RestingOrder order = orders.get(orderId);
+        if (order == null) {
+            return;
+        }
+        if (sequenceNumber != null) {
+            if (order.lastSequenceNumber != null && sequenceNumber <= order.lastSequenceNumber) {
+                return;
+            }
+            order.lastSequenceNumber = sequenceNumber;
+        }
+
+        final long traded = Math.min(convertToLong(tradedAmount), order.remaining);
+        order.remaining -= traded;
+        if (order.remaining <= 0) {
+            orders.remove(orderId);
+        }
+        change(order.type, order.price, -traded);
+    }
+
+    private void change(OrderType type, long price, long amount) {
+        if (amount == 0) {
+            return;
+        }
+
+        final NavigableMap<Long, Long> levels = levelsOf(type);
+        final Long current = levels.get(price);
+        final long updated = (current == null ? 0L : current) + amount;
+
+        if (updated > 0) {
+            levels.put(price, updated);
+        } else {
+            levels.remove(price);
+        }
+
+        version++;
+        deltas.addLast(new DepthDelta(version, type, price, Math.max(updated, 0L), priceCurrency, amountCurrency));
+        if (deltas.size() > maxDeltas) {
+            deltas.removeFirst();
+        }
+    }
+
+    /**
+     * Best levels first, buy levels from the highest price and sell levels from the lowest.
+     */
+    public synchronized List<PriceAggregate> top(OrderType type, int limit) {
+        notNull(type);
+        isTrue(limit > 0, "Limit should be greater than 0!");
+
+        final List<PriceAggregate> levels = Lists.newArrayListWithCapacity(limit);
+        for (Map.Entry<Long, Long> level : levelsOf(type).entrySet()) {
+            if (levels.size() >= limit) {
+                break;
+            }
+            levels.add(new PriceAggregate(level.getKey(), priceCurrency, amountCurrency, level.getValue()));
+        }
+        return levels;
+    }
+
+    public synchronized DepthSnapshot snapshot(int limit) {
+        return new DepthSnapshot(orderBookIdentifier, version, top(OrderType.BUY, limit), top(OrderType.SELL, limit));
+    }
+
+    /**
+     * @return the deltas after the version, null if some of them are dropped already and a snapshot is needed
+     */
+    public synchronized List<DepthDelta> deltasSince(long fromVersion) {
+        if (fromVersion >= version) {
+            return Collections.emptyList();
+        }
+        if (deltas.isEmpty() || deltas.peekFirst().getVersion() > fromVersion + 1) {
+            return null;
+        }
+
+        final List<DepthDelta> list = Lists.newArrayListWithCapacity((int) (version - fromVersion));
+        for (DepthDelta delta : deltas) {
+            if (delta.getVersion() > fromVersion) {
+                list.add(delta);
+            }
+        }
+        return list;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized int getLevels() {
+        return bids.size() + asks.size();
+    }
+
+    public String getOrderBookIdentifier() {
+        return orderBookIdentifier;
+    }
+
+    private NavigableMap<Long, Long> levelsOf(OrderType type) {
+        return type == OrderType.BUY ? bids : asks;
+    }
+
+    private static class RestingOrder {
+        private final OrderType type;
+        private final long price;
+        private long remaining;
+        private Long lastSequenceNumber;
+
+        private RestingOrder(OrderType type, long price, long remaining) {
+            this.type = type;
+            this.price = price;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.icoin.trading.tradeengine.query.depth;
+
+import com.google.common.collect.Maps;
+import com.icoin.trading.api.tradeengine.events.order.AbstractOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.order.BuyOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.order.SellOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
+import com.icoin.trading.tradeengine.query.order.OrderEntry;
+import com.icoin.trading.tradeengine.query.order.OrderType;
+import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import com.icoin.trading.tradeengine.query.order.repositories.OrderQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Collections.isEmpty;
+
+/**
+ * Market depth of every order book kept in memory from the placed and trade executed events, replaces the
+ * aggregation over the pending order entries. The depths are loaded from the pending order entries at
+ * startup, order books created later start empty. A depth loaded while its events are handled may hold the
+ * trades the order entries recorded already, those are told by the sequence number and not applied again.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=MarketDepth,name=marketDepthProjection")
+public class MarketDepthProjection {
+    private static Logger logger = LoggerFactory.getLogger(MarketDepthProjection.class);
+    private final ConcurrentMap<String, MarketDepth> depths = Maps.newConcurrentMap();
+    private OrderQueryRepository orderQueryRepository;
+    private OrderBookQueryRepository orderBookQueryRepository;
+    private List<DepthListener> listeners = Collections.emptyList();
+    private int maxDeltas = 1024;
+
+    @PostConstruct
+    public void initialize() {
+        try {
+            for (OrderBookEntry orderBook : orderBookQueryRepository.findAll()) {
+                load(orderBook.getPrimaryKey());
+            }
+        } catch (RuntimeException e) {
+            //loaded on first use instead
+            logger.error("loading market depths failed", e);
+        }
+    }
+
+    private MarketDepth load(String orderBookIdentifier) {
+        final MarketDepth depth = new MarketDepth(orderBookIdentifier, maxDeltas);
+        final List<OrderEntry> orders =
+                orderQueryRepository.findByOrderBookIdentifierAndOrderStatus(orderBookIdentifier, OrderStatus.PENDING);
+
+        if (!isEmpty(orders)) {
+            for (OrderEntry order : orders) {
+                depth.placed(order.getPrimaryKey(), order.getType(), order.getItemPrice(), order.getItemRemaining(),
+                        order.getLastSequenceNumber());
+            }
+        }
+
+        final MarketDepth existing = depths.putIfAbsent(orderBookIdentifier, depth);
+        logger.info("market depth of order book {} loaded with {} levels", orderBookIdentifier, depth.getLevels());
+        return existing == null ? depth : existing;
+    }
+
+    private MarketDepth depth(String orderBookIdentifier) {
+        final MarketDepth depth = depths.get(orderBookIdentifier);
+        return depth != null ? depth : load(orderBookIdentifier);
+    }
+
+    @EventHandler
+    public void handleBuyOrderPlaced(BuyOrderPlacedEvent event) {
+        placed(event, OrderType.BUY);
+    }
+
+    @EventHandler
+    public void handleSellOrderPlaced(SellOrderPlacedEvent event) {
+        placed(event, OrderType.SELL);
+    }
+
+    private void placed(AbstractOrderPlacedEvent event, OrderType type) {
+        final String orderBookIdentifier = event.orderBookIdentifier().toString();
+        depth(orderBookIdentifier)
+                .placed(event.getOrderId().toString(), type, event.getItemPrice(), event.getTradeAmount());
+        changed(orderBookIdentifier);
+    }
+
+    @EventHandler
+    public void handleTradeExecuted(TradeExecutedEvent event, DomainEventMessage message) {
+        final String orderBookIdentifier = event.getOrderBookId().toString();
+        final MarketDepth depth = depth(orderBookIdentifier);
+        depth.traded(event.getBuyOrderId(), event.getTradeAmount(), message.getSequenceNumber());
+        depth.traded(event.getSellOrderId(), event.getTradeAmount(), message.getSequenceNumber());
+        changed(orderBookIdentifier);
+    }
+
+    private void changed(String orderBookIdentifier) {
+        for (DepthListener listener : listeners) {
+            try {
+                listener.depthChanged(orderBookIdentifier);
+            } catch (RuntimeException e) {
+                //the depth is applied already, listeners catch up with the next change
+                logger.error("depth listener " + listener + " failed on order book " + orderBookIdentifier, e);
+            }
+        }
+    }
+
+    /**
+     * Same levels as the aggregation over the pending order entries, best price first.
+     */
+    public List<PriceAggregate> findOrderAggregatedPrice(String orderBookIdentifier, OrderType type, int limit) {
+        hasLength(orderBookIdentifier);
+        return depth(orderBookIdentifier).top(type, limit);
+    }
+
+    public DepthSnapshot findSnapshot(String orderBookIdentifier, int limit) {
+        hasLength(orderBookIdentifier);
+        return depth(orderBookIdentifier).snapshot(limit);
+    }
+
+    /**
+     * @return whether the depth of the order book is in memory, read without going to the order entries
+     */
+    public boolean isLoaded(String orderBookIdentifier) {
+        hasLength(orderBookIdentifier);
+        return depths.containsKey(orderBookIdentifier);
+    }
+
+    /**
+     * @return the deltas after the version, null if the version is too old and a snapshot is needed
+     */
+    public List<DepthDelta> findDeltasSince(String orderBookIdentifier, long version) {
+        hasLength(orderBookIdentifier);
+        final MarketDepth depth = depths.get(orderBookIdentifier);
+        return depth == null ? Collections.<DepthDelta>emptyList() : depth.deltasSince(version);
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getVersions() {
+        final Map<String, Long> versions = Maps.newHashMap();
+        for (MarketDepth depth : depths.values()) {
+            versions.put(depth.getOrderBookIdentifier(), depth.getVersion());
+        }
+        return versions;
+    }
+
+    @ManagedAttribute
+    public Map<String, Integer> getLevels() {
+        final Map<String, Integer> levels = Maps.newHashMap();
+        for (MarketDepth depth : depths.values()) {
+            levels.put(depth.getOrderBookIdentifier(), depth.getLevels());
+        }
+        return levels;
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setOrderQueryRepository(OrderQueryRepository orderQueryRepository) {
+        this.orderQueryRepository = orderQueryRepository;
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setOrderBookQueryRepository(OrderBookQueryRepository orderBookQueryRepository) {
+        this.orderBookQueryRepository = orderBookQueryRepository;
+    }
+
+    @Autowired(required = false)
+    public void setListeners(List<DepthListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    @Value("${trading.depth.maxDeltas:1024}")
+    public void setMaxDeltas(int maxDeltas) {
+        this.maxDeltas = maxDeltas;
+    }
+}
@@ -0,0 +1,93 @@
+package com.icoin.trading.tradeengine.query.marketdata;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * A market data message of an order book, encoded once as a server sent event frame and written as is to every
+ * subscriber of the order book. Depth messages carry the versions of the depth deltas in them.
+ */
+final class MarketDataMessage {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    enum Type {
+        SNAPSHOT("snapshot"),
+        DEPTH("depth"),
+        TOP("top"),
+        TRADE("trade"),
+        //the deltas are lost, subscribers need a snapshot
+        RESET("reset");
+
+        private final String event;
+
+        private Type(String event) {
+            this.event = event;
+        }
+
+        String getEvent() {
+            return event;
+        }
+    }
+
+    private final String orderBookIdentifier;
+    private final Type type;
+    private final long fromVersion;
+    private final long toVersion;
+    private final byte[] frame;
+
+    private MarketDataMessage(String orderBookIdentifier, Type type, long fromVersion, long toVersion, byte[] frame) {
+        hasLength(orderBookIdentifier);
+        notNull(type);
+        this.orderBookIdentifier = orderBookIdentifier;
+        this.type = type;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.frame = frame;
+    }
+
+    static MarketDataMessage of(String orderBookIdentifier, Type type, long fromVersion, long toVersion, String json) {
+        hasLength(json);
+        final String frame = "event: " + type.getEvent() + "\ndata: " + json + "\n\n";
+        return new MarketDataMessage(orderBookIdentifier, type, fromVersion, toVersion, frame.getBytes(UTF_8));
+    }
+
+    static MarketDataMessage reset(String orderBookIdentifier, long version) {
+        return new MarketDataMessage(orderBookIdentifier, Type.RESET, version, version, new byte[0]);
+    }
+
+    /**
+     * @return a buffer of its own over the shared frame
+     */
+    ByteBuffer frame() {
+        return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    String getOrderBookIdentifier() {
+        return orderBookIdentifier;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    long getFromVersion() {
+        return fromVersion;
+    }
+
+    long getToVersion() {
+        return toVersion;
+    }
+
+    @Override
+    public String toString() {
+        return "MarketDataMessage{" +
+                "orderBookIdentifier='" + orderBookIdentifier + '\'' +
+                ", type=" + type +
+                ", fromVersion=" + fromVersion +
+                ", toVersion=" + toVersion +
+                '}';
+    }
+}
@@ -0,0 +1,51 @@
+package com.icoin.trading.tradeengine.query.marketdata;
+
+import java.util.List;
+
+import static com.homhon.util.Asserts.isTrue;
+import static com.homhon.util.Asserts.notNull;
+
+/**
+ * Bounded ring of the published market data messages, numbered by sequence. The event handlers publish, the push
+ * server reads from the sequence it got to, a reader overrun by more than the capacity has lost messages.
+ */
+class MarketDataRing {
+    private final MarketDataMessage[] messages;
+    private long next;
+
+    MarketDataRing(int capacity) {
+        isTrue(capacity > 0, "Capacity should be greater than 0!");
+        this.messages = new MarketDataMessage[capacity];
+    }
+
+    synchronized long publish(MarketDataMessage message) {
+        notNull(message);
+        messages[(int) (next % messages.length)] = message;
+        return next++;
+    }
+
+    /**
+     * Adds the messages from the sequence on.
+     *
+     * @return the sequence to read from next, -1 when messages from the sequence on are overwritten already
+     */
+    synchronized long read(long from, List<MarketDataMessage> into) {
+        notNull(into);
+        if (next - from > messages.length) {
+            return -1L;
+        }
+
+        for (long sequence = from; sequence < next; sequence++) {
+            into.add(messages[(int) (sequence % messages.length)]);
+        }
+        return next;
+    }
+
+    synchronized long getNext() {
+        return next;
+    }
+
+    int getCapacity() {
+        return messages.length;
+    }
+}
@@ -0,0 +1,603 @@
+package com.icoin.trading.tradeengine.query.marketdata;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.isTrue;
+
+/**
+ * Embedded non blocking push server of the market data, server sent events over plain http on a port of its own:
+ * {@code GET /marketdata/<orderBookId>} streams the depth snapshot, then the depth deltas, the top of book and the
+ * trades of the order book. One selector thread reads the published messages from the ring once and queues the
+ * shared frames of every message to the subscribers of its order book.
+ * <p/>
+ * Every subscriber has a bounded queue of frames. A subscriber falling behind by more than the bound is conflated:
+ * its queued frames are dropped and it gets a new snapshot, queued tops of book are replaced by the latest one.
+ * <p/>
+ * The selector thread never waits on the store: a request for an order book whose depth is not in memory yet is
+ * resolved by a worker thread, which hands the subscriber back to the selector. The server is off unless a port
+ * is configured.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=MarketData,name=marketDataServer")
+public class MarketDataServer {
+    private static Logger logger = LoggerFactory.getLogger(MarketDataServer.class);
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final String PATH = "/marketdata/";
+    private static final byte[] STREAM_HEADERS = ("HTTP/1.1 200 OK\r\n" +
+            "Content-Type: text/event-stream;charset=UTF-8\r\n" +
+            "Cache-Control: no-cache\r\n" +
+            "Access-Control-Allow-Origin: *\r\n" +
+            "\r\n" +
+            "retry: 3000\n\n").getBytes(ASCII);
+    private static final byte[] NOT_FOUND = ("HTTP/1.1 404 Not Found\r\n" +
+            "Content-Length: 0\r\n" +
+            "Connection: close\r\n" +
+            "\r\n").getBytes(ASCII);
+    private static final byte[] HEARTBEAT = ":\n\n".getBytes(ASCII);
+    private static final int MAX_REQUEST = 4096;
+    private static final int MAX_RESOLVING = 256;
+
+    private final Map<String, Set<Subscriber>> subscribers = Maps.newHashMap();
+    private final List<MarketDataMessage> batch = Lists.newArrayList();
+    private MarketDataStream marketDataStream;
+    private int port = 0;
+    private int maxPendingFrames = 256;
+    private long heartbeatMillis = 15000L;
+
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private ThreadPoolExecutor resolver;
+    private final Queue<Resolution> resolved = new ConcurrentLinkedQueue<Resolution>();
+    private long sequence;
+    private long lastHeartbeat;
+
+    private volatile int subscriberCount;
+    private final AtomicLong framesQueued = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong conflations = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+
+    @PostConstruct
+    public void start() {
+        if (port <= 0) {
+            logger.info("market data server disabled");
+            return;
+        }
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            //trading goes on without the push
+            logger.error("market data server cannot listen on port " + port, e);
+            return;
+        }
+
+        sequence = marketDataStream.getNextSequence();
+        lastHeartbeat = System.currentTimeMillis();
+        running = true;
+        resolver = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(MAX_RESOLVING),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread resolving = new Thread(runnable, "market-data-resolver");
+                        resolving.setDaemon(true);
+                        return resolving;
+                    }
+                });
+        marketDataStream.onPublished(new Runnable() {
+            @Override
+            public void run() {
+                selector.wakeup();
+            }
+        });
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "market-data-server");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("market data server listening on port {}", port);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        resolver.shutdownNow();
+        marketDataStream.onPublished(null);
+        selector.wakeup();
+        thread.join(heartbeatMillis);
+    }
+
+    private void serve() {
+        try {
+            while (running) {
+                selector.select(heartbeatMillis);
+
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                subscribeResolved();
+                fanOut();
+                heartbeat();
+            }
+        } catch (IOException e) {
+            logger.error("market data server stopped", e);
+        } catch (ClosedSelectorException e) {
+            logger.warn("market data server selector closed");
+        } catch (RuntimeException e) {
+            logger.error("market data server stopped", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+
+            final Subscriber subscriber = (Subscriber) key.attachment();
+            if (key.isReadable()) {
+                read(subscriber);
+            }
+            if (key.isValid() && key.isWritable()) {
+                write(subscriber);
+            }
+        } catch (IOException e) {
+            logger.debug("market data connection failed", e);
+            close((Subscriber) key.attachment());
+        } catch (RuntimeException e) {
+            logger.error("market data connection failed", e);
+            close((Subscriber) key.attachment());
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final Subscriber subscriber = new Subscriber(channel);
+        subscriber.key = channel.register(selector, SelectionKey.OP_READ, subscriber);
+    }
+
+    private void read(Subscriber subscriber) throws IOException {
+        if (subscriber.request == null) {
+            //streaming already, reads tell when the watcher goes away
+            final ByteBuffer ignored = ByteBuffer.allocate(256);
+            if (subscriber.channel.read(ignored) < 0) {
+                close(subscriber);
+            }
+            return;
+        }
+
+        if (subscriber.channel.read(subscriber.request) < 0) {
+            close(subscriber);
+            return;
+        }
+
+        final String request = new String(subscriber.request.array(), 0, subscriber.request.position(), ASCII);
+        if (!request.contains("\r\n\r\n")) {
+            if (!subscriber.request.hasRemaining()) {
+                reject(subscriber);
+            }
+            return;
+        }
+
+        subscriber.request = null;
+        final String orderBookIdentifier = orderBookOf(request);
+        if (orderBookIdentifier == null) {
+            reject(subscriber);
+        } else if (marketDataStream.isKnownOrderBook(orderBookIdentifier)) {
+            subscribe(subscriber, orderBookIdentifier);
+        } else {
+            resolve(subscriber, orderBookIdentifier);
+        }
+    }
+
+    //looks the order book up off the selector thread, the subscriber waits meanwhile
+    private void resolve(final Subscriber subscriber, final String orderBookIdentifier) {
+        try {
+            resolver.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean found = false;
+                    try {
+                        found = marketDataStream.resolveOrderBook(orderBookIdentifier);
+                    } catch (RuntimeException e) {
+                        logger.error("resolving market data order book " + orderBookIdentifier + " failed", e);
+                    }
+                    resolved.add(new Resolution(subscriber, orderBookIdentifier, found));
+                    selector.wakeup();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warn("too many market data order books to resolve, rejecting {}", orderBookIdentifier);
+            reject(subscriber);
+        }
+    }
+
+    private void subscribeResolved() {
+        Resolution resolution;
+        while ((resolution = resolved.poll()) != null) {
+            if (!resolution.subscriber.key.isValid()) {
+                //gone while resolved
+                continue;
+            }
+            if (resolution.found) {
+                subscribe(resolution.subscriber, resolution.orderBookIdentifier);
+            } else {
+                reject(resolution.subscriber);
+            }
+        }
+    }
+
+    private void subscribe(Subscriber subscriber, String orderBookIdentifier) {
+        subscriber.orderBookIdentifier = orderBookIdentifier;
+        subscriber.pending.add(ByteBuffer.wrap(STREAM_HEADERS).asReadOnlyBuffer());
+        Set<Subscriber> ofBook = subscribers.get(orderBookIdentifier);
+        if (ofBook == null) {
+            ofBook = Sets.newHashSet();
+            subscribers.put(orderBookIdentifier, ofBook);
+        }
+        ofBook.add(subscriber);
+        subscriberCount++;
+        //queued by the fan out right after
+        subscriber.needsSnapshot = true;
+    }
+
+    //GET /marketdata/<orderBookId>[?...] HTTP/1.1
+    private static String orderBookOf(String request) {
+        final String[] requestLine = request.substring(0, request.indexOf("\r\n")).split(" ");
+        if (requestLine.length != 3 || !"GET".equals(requestLine[0]) || !requestLine[1].startsWith(PATH)) {
+            return null;
+        }
+
+        String orderBookIdentifier = requestLine[1].substring(PATH.length());
+        final int query = orderBookIdentifier.indexOf('?');
+        if (query >= 0) {
+            orderBookIdentifier = orderBookIdentifier.substring(0, query);
+        }
+        return orderBookIdentifier.isEmpty() || orderBookIdentifier.contains("/") ? null : orderBookIdentifier;
+    }
+
+    private void reject(Subscriber subscriber) {
+        subscriber.request = null;
+        subscriber.closeWhenWritten = true;
+        subscriber.pending.add(ByteBuffer.wrap(NOT_FOUND).asReadOnlyBuffer());
+        subscriber.key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void write(Subscriber subscriber) throws IOException {
+        while (!subscriber.pending.isEmpty()) {
+            final ByteBuffer frame = subscriber.pending.peekFirst();
+            bytesWritten.addAndGet(subscriber.channel.write(frame));
+            if (frame.hasRemaining()) {
+                return;
+            }
+            subscriber.pending.removeFirst();
+            if (subscriber.pending.isEmpty()) {
+                subscriber.lastIsTop = false;
+            }
+        }
+
+        if (subscriber.closeWhenWritten) {
+            close(subscriber);
+        } else {
+            subscriber.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void fanOut() {
+        batch.clear();
+        final long next = marketDataStream.read(sequence, batch);
+        if (next < 0) {
+            //fell behind the ring, every subscriber starts over
+            overruns.incrementAndGet();
+            sequence = marketDataStream.getNextSequence();
+            for (Set<Subscriber> ofBook : subscribers.values()) {
+                for (Subscriber subscriber : ofBook) {
+                    conflate(subscriber);
+                }
+            }
+        } else {
+            sequence = next;
+            for (MarketDataMessage message : batch) {
+                final Set<Subscriber> ofBook = subscribers.get(message.getOrderBookIdentifier());
+                if (ofBook == null) {
+                    continue;
+                }
+                for (Subscriber subscriber : ofBook) {
+                    deliver(subscriber, message);
+                }
+            }
+        }
+
+        //one snapshot per order book, shared by its subscribers needing one
+        final Map<String, MarketDataMessage> snapshotsOfBooks = Maps.newHashMap();
+        for (Map.Entry<String, Set<Subscriber>> ofBook : subscribers.entrySet()) {
+            for (Subscriber subscriber : ofBook.getValue()) {
+                if (subscriber.needsSnapshot) {
+                    MarketDataMessage snapshot = snapshotsOfBooks.get(ofBook.getKey());
+                    if (snapshot == null) {
+                        snapshot = snapshotOf(ofBook.getKey());
+                        snapshotsOfBooks.put(ofBook.getKey(), snapshot);
+                    }
+                    if (snapshot != null) {
+                        snapshot(subscriber, snapshot);
+                    }
+                }
+                if (!subscriber.pending.isEmpty() && subscriber.key.isValid()) {
+                    subscriber.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+    }
+
+    //tried again on the next round when the depth cannot be read
+    private MarketDataMessage snapshotOf(String orderBookIdentifier) {
+        try {
+            return marketDataStream.snapshot(orderBookIdentifier);
+        } catch (RuntimeException e) {
+            logger.error("market data snapshot of order book " + orderBookIdentifier + " failed", e);
+            return null;
+        }
+    }
+
+    private void deliver(Subscriber subscriber, MarketDataMessage message) {
+        switch (message.getType()) {
+            case RESET:
+                conflate(subscriber);
+                return;
+            case DEPTH:
+                if (subscriber.needsSnapshot || message.getToVersion() <= subscriber.depthVersion) {
+                    return;
+                }
+                subscriber.depthVersion = message.getToVersion();
+                break;
+            case TOP:
+                if (subscriber.lastIsTop && subscriber.pending.size() > 1) {
+                    //only the latest top of book is worth sending
+                    subscriber.pending.removeLast();
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (subscriber.pending.size() >= maxPendingFrames) {
+            conflate(subscriber);
+            return;
+        }
+        subscriber.pending.addLast(message.frame());
+        subscriber.lastIsTop = message.getType() == MarketDataMessage.Type.TOP;
+        framesQueued.incrementAndGet();
+    }
+
+    //drops the queued frames but the one partly written, a new snapshot follows
+    private void conflate(Subscriber subscriber) {
+        final ByteBuffer head = subscriber.pending.peekFirst();
+        subscriber.pending.clear();
+        if (head != null && head.position() > 0) {
+            subscriber.pending.add(head);
+        }
+        subscriber.lastIsTop = false;
+        subscriber.needsSnapshot = true;
+        conflations.incrementAndGet();
+    }
+
+    private void snapshot(Subscriber subscriber, MarketDataMessage snapshot) {
+        subscriber.pending.addLast(snapshot.frame());
+        subscriber.depthVersion = snapshot.getToVersion();
+        subscriber.needsSnapshot = false;
+        subscriber.lastIsTop = false;
+        snapshots.incrementAndGet();
+    }
+
+    private void heartbeat() {
+        final long now = System.currentTimeMillis();
+        if (now - lastHeartbeat < heartbeatMillis) {
+            return;
+        }
+        lastHeartbeat = now;
+        for (Set<Subscriber> ofBook : subscribers.values()) {
+            for (Subscriber subscriber : ofBook) {
+                if (subscriber.pending.isEmpty() && subscriber.key.isValid()) {
+                    subscriber.pending.add(ByteBuffer.wrap(HEARTBEAT).asReadOnlyBuffer());
+                    subscriber.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+        }
+    }
+
+    private void close(Subscriber subscriber) {
+        if (subscriber == null) {
+            return;
+        }
+        subscriber.key.cancel();
+        try {
+            subscriber.channel.close();
+        } catch (IOException e) {
+            logger.debug("closing market data connection failed", e);
+        }
+
+        if (subscriber.orderBookIdentifier != null) {
+            final Set<Subscriber> ofBook = subscribers.get(subscriber.orderBookIdentifier);
+            if (ofBook != null && ofBook.remove(subscriber)) {
+                subscriberCount--;
+                if (ofBook.isEmpty()) {
+                    subscribers.remove(subscriber.orderBookIdentifier);
+                }
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException e) {
+                logger.debug("closing market data channel failed", e);
+            }
+        }
+        subscribers.clear();
+        subscriberCount = 0;
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("closing market data selector failed", e);
+        }
+        logger.info("market data server on port {} stopped", port);
+    }
+
+    @ManagedAttribute
+    public int getSubscribers() {
+        return subscriberCount;
+    }
+
+    @ManagedAttribute
+    public long getFramesQueued() {
+        return framesQueued.get();
+    }
+
+    @ManagedAttribute
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @ManagedAttribute
+    public long getSnapshots() {
+        return snapshots.get();
+    }
+
+    @ManagedAttribute
+    public long getConflations() {
+        return conflations.get();
+    }
+
+    @ManagedAttribute
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setMarketDataStream(MarketDataStream marketDataStream) {
+        this.marketDataStream = marketDataStream;
+    }
+
+    /**
+     * @param port 0 to disable the server
+     */
+    @Value("${trading.marketData.port:0}")
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    @Value("${trading.marketData.maxPendingFrames:256}")
+    public void setMaxPendingFrames(int maxPendingFrames) {
+        isTrue(maxPendingFrames > 1, "Max pending frames should be greater than 1!");
+        this.maxPendingFrames = maxPendingFrames;
+    }
+
+    @Value("${trading.marketData.heartbeatMillis:15000}")
+    public void setHeartbeatMillis(long heartbeatMillis) {
+        isTrue(heartbeatMillis > 0, "Heartbeat millis should be greater than 0!");
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    /**
+     * A connection, reading its request until it streams the market data of an order book. Only touched by the
+     * selector thread.
+     */
+    private static class Subscriber {
+        private final SocketChannel channel;
+        private final Deque<ByteBuffer> pending = new ArrayDeque<ByteBuffer>();
+        private SelectionKey key;
+        private ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+        private String orderBookIdentifier;
+        private long depthVersion = -1L;
+        private boolean needsSnapshot;
+        private boolean lastIsTop;
+        private boolean closeWhenWritten;
+
+        private Subscriber(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * An order book looked up by the worker thread for a subscriber.
+     */
+    private static class Resolution {
+        private final Subscriber subscriber;
+        private final String orderBookIdentifier;
+        private final boolean found;
+
+        private Resolution(Subscriber subscriber, String orderBookIdentifier, boolean found) {
+            this.subscriber = subscriber;
+            this.orderBookIdentifier = orderBookIdentifier;
+            this.found = found;
+        }
+    }
+}
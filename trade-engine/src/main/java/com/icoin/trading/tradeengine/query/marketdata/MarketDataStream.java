@@ -0,0 +1,306 @@
+package com.icoin.trading.tradeengine.query.marketdata;
+
+import com.google.common.collect.Maps;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.tradeengine.query.depth.DepthDelta;
+import com.icoin.trading.tradeengine.query.depth.DepthListener;
+import com.icoin.trading.tradeengine.query.depth.DepthSnapshot;
+import com.icoin.trading.tradeengine.query.depth.MarketDepthProjection;
+import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import org.axonframework.eventhandling.annotation.EventHandler;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.joda.money.BigMoney;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.isTrue;
+
+/**
+ * Market data of every order book published once into the ring the push server fans out from: the trades, the
+ * top of book and the depth deltas read from the market depth projection by version. Every message is encoded
+ * once, however many watchers there are.
+ * <p/>
+ * The protocol is snapshot then deltas: a subscriber gets a snapshot of the depth first, then the depth deltas
+ * after its version. A reset tells that deltas are lost and a new snapshot is needed.
+ */
+@Component
+@ManagedResource(objectName = "icoin:type=MarketData,name=marketDataStream")
+public class MarketDataStream implements DepthListener {
+    private static Logger logger = LoggerFactory.getLogger(MarketDataStream.class);
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final ConcurrentMap<String, PublishedBook> books = Maps.newConcurrentMap();
+    private MarketDepthProjection marketDepthProjection;
+    private OrderBookQueryRepository orderBookRepository;
+    private MarketDataRing ring = new MarketDataRing(4096);
+    private int depthLevels = 20;
+    private volatile Runnable onPublished;
+
+    private final AtomicLong trades = new AtomicLong();
+    private final AtomicLong depthMessages = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+
+    @EventHandler
+    public void handleTradeExecuted(TradeExecutedEvent event) {
+        final String orderBookIdentifier = event.getOrderBookId().toString();
+        try {
+            final StringWriter writer = new StringWriter();
+            final JsonGenerator g = jsonFactory.createJsonGenerator(writer);
+            g.writeStartObject();
+            g.writeStringField("orderBookId", orderBookIdentifier);
+            writeMoney(g, "price", event.getTradedPrice());
+            writeMoney(g, "amount", event.getTradeAmount());
+            g.writeNumberField("time", event.getTradeTime().getTime());
+            g.writeStringField("type", String.valueOf(event.getTradeType()));
+            g.writeEndObject();
+            g.close();
+
+            publish(MarketDataMessage.of(orderBookIdentifier, MarketDataMessage.Type.TRADE, -1L, -1L, writer.toString()));
+            trades.incrementAndGet();
+        } catch (IOException e) {
+            logger.error("encoding the trade of order book " + orderBookIdentifier + " failed", e);
+        }
+    }
+
+    /**
+     * Publishes the depth deltas after the ones published already and the top of book when it changed.
+     */
+    @Override
+    public void depthChanged(String orderBookIdentifier) {
+        final PublishedBook book = book(orderBookIdentifier);
+
+        synchronized (book) {
+            final List<DepthDelta> deltas = book.version < 0
+                    ? null
+                    : marketDepthProjection.findDeltasSince(orderBookIdentifier, book.version);
+            final DepthSnapshot top = marketDepthProjection.findSnapshot(orderBookIdentifier, 1);
+
+            if (deltas == null) {
+                publish(MarketDataMessage.reset(orderBookIdentifier, top.getVersion()));
+                book.version = top.getVersion();
+                resets.incrementAndGet();
+            } else if (!deltas.isEmpty()) {
+                final long to = deltas.get(deltas.size() - 1).getVersion();
+                publish(MarketDataMessage.of(orderBookIdentifier, MarketDataMessage.Type.DEPTH,
+                        book.version, to, encodeDeltas(orderBookIdentifier, book.version, to, deltas)));
+                book.version = to;
+                depthMessages.incrementAndGet();
+            }
+
+            final String topJson = encodeTop(top);
+            if (!topJson.equals(book.top)) {
+                publish(MarketDataMessage.of(orderBookIdentifier, MarketDataMessage.Type.TOP,
+                        top.getVersion(), top.getVersion(), topJson));
+                book.top = topJson;
+            }
+        }
+    }
+
+    private PublishedBook book(String orderBookIdentifier) {
+        final PublishedBook book = books.get(orderBookIdentifier);
+        if (book != null) {
+            return book;
+        }
+        final PublishedBook created = new PublishedBook();
+        final PublishedBook existing = books.putIfAbsent(orderBookIdentifier, created);
+        return existing == null ? created : existing;
+    }
+
+    /**
+     * @return the snapshot of the depth of the order book, its version as the version of the message, read from
+     *         memory as the order book is known
+     */
+    MarketDataMessage snapshot(String orderBookIdentifier) {
+        hasLength(orderBookIdentifier);
+        isTrue(isKnownOrderBook(orderBookIdentifier), "Order book " + orderBookIdentifier + " should be known!");
+        final DepthSnapshot snapshot = marketDepthProjection.findSnapshot(orderBookIdentifier, depthLevels);
+        return MarketDataMessage.of(orderBookIdentifier, MarketDataMessage.Type.SNAPSHOT,
+                snapshot.getVersion(), snapshot.getVersion(), encodeSnapshot(snapshot));
+    }
+
+    /**
+     * @return whether the order book has its depth in memory, without going to the store
+     */
+    boolean isKnownOrderBook(String orderBookIdentifier) {
+        return marketDepthProjection.isLoaded(orderBookIdentifier);
+    }
+
+    /**
+     * Looks the order book up in the store and loads its depth, blocking, so it is known from then on.
+     *
+     * @return whether the order book exists
+     */
+    boolean resolveOrderBook(String orderBookIdentifier) {
+        if (isKnownOrderBook(orderBookIdentifier)) {
+            return true;
+        }
+        if (!orderBookRepository.exists(orderBookIdentifier)) {
+            return false;
+        }
+        //loads the depth
+        marketDepthProjection.findSnapshot(orderBookIdentifier, 1);
+        return true;
+    }
+
+    private void publish(MarketDataMessage message) {
+        ring.publish(message);
+        final Runnable callback = onPublished;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    long read(long from, List<MarketDataMessage> into) {
+        return ring.read(from, into);
+    }
+
+    long getNextSequence() {
+        return ring.getNext();
+    }
+
+    /**
+     * The push server is woken up by every message published.
+     */
+    void onPublished(Runnable onPublished) {
+        this.onPublished = onPublished;
+    }
+
+    private String encodeDeltas(String orderBookIdentifier, long from, long to, List<DepthDelta> deltas) {
+        try {
+            final StringWriter writer = new StringWriter();
+            final JsonGenerator g = jsonFactory.createJsonGenerator(writer);
+            g.writeStartObject();
+            g.writeStringField("orderBookId", orderBookIdentifier);
+            g.writeNumberField("from", from);
+            g.writeNumberField("to", to);
+            g.writeArrayFieldStart("deltas");
+            for (DepthDelta delta : deltas) {
+                g.writeStartObject();
+                g.writeNumberField("version", delta.getVersion());
+                g.writeStringField("side", String.valueOf(delta.getType()));
+                writeMoney(g, "price", delta.getPrice());
+                writeMoney(g, "amount", delta.getAmount());
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+            g.writeEndObject();
+            g.close();
+            return writer.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Encoding the depth deltas of " + orderBookIdentifier + " failed", e);
+        }
+    }
+
+    private String encodeSnapshot(DepthSnapshot snapshot) {
+        try {
+            final StringWriter writer = new StringWriter();
+            final JsonGenerator g = jsonFactory.createJsonGenerator(writer);
+            g.writeStartObject();
+            g.writeStringField("orderBookId", snapshot.getOrderBookIdentifier());
+            g.writeNumberField("version", snapshot.getVersion());
+            writeLevels(g, "bids", snapshot.getBids());
+            writeLevels(g, "asks", snapshot.getAsks());
+            g.writeEndObject();
+            g.close();
+            return writer.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Encoding the depth snapshot of " + snapshot.getOrderBookIdentifier() + " failed", e);
+        }
+    }
+
+    private String encodeTop(DepthSnapshot top) {
+        try {
+            final StringWriter writer = new StringWriter();
+            final JsonGenerator g = jsonFactory.createJsonGenerator(writer);
+            g.writeStartObject();
+            g.writeStringField("orderBookId", top.getOrderBookIdentifier());
+            writeLevels(g, "bid", top.getBids());
+            writeLevels(g, "ask", top.getAsks());
+            g.writeEndObject();
+            g.close();
+            return writer.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Encoding the top of book of " + top.getOrderBookIdentifier() + " failed", e);
+        }
+    }
+
+    private static void writeLevels(JsonGenerator g, String name, List<PriceAggregate> levels) throws IOException {
+        g.writeArrayFieldStart(name);
+        for (PriceAggregate level : levels) {
+            g.writeStartObject();
+            writeMoney(g, "price", level.getPrice());
+            writeMoney(g, "amount", level.getSumUpAmountPerPrice());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    private static void writeMoney(JsonGenerator g, String name, BigMoney money) throws IOException {
+        g.writeStringField(name, money.getAmount().toPlainString());
+    }
+
+    @ManagedAttribute
+    public long getPublishedMessages() {
+        return ring.getNext();
+    }
+
+    @ManagedAttribute
+    public long getTrades() {
+        return trades.get();
+    }
+
+    @ManagedAttribute
+    public long getDepthMessages() {
+        return depthMessages.get();
+    }
+
+    @ManagedAttribute
+    public long getResets() {
+        return resets.get();
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setMarketDepthProjection(MarketDepthProjection marketDepthProjection) {
+        this.marketDepthProjection = marketDepthProjection;
+    }
+
+    @SuppressWarnings("SpringJavaAutowiringInspection")
+    @Autowired
+    public void setOrderBookRepository(OrderBookQueryRepository orderBookRepository) {
+        this.orderBookRepository = orderBookRepository;
+    }
+
+    @Value("${trading.marketData.ringSize:4096}")
+    public void setRingSize(int ringSize) {
+        this.ring = new MarketDataRing(ringSize);
+    }
+
+    @Value("${trading.marketData.depthLevels:20}")
+    public void setDepthLevels(int depthLevels) {
+        isTrue(depthLevels > 0, "Depth levels should be greater than 0!");
+        this.depthLevels = depthLevels;
+    }
+
+    /**
+     * The depth version and the top of book published last for an order book, -1 before the first change seen.
+     */
+    private static class PublishedBook {
+        private long version = -1L;
+        private String top;
+    }
+}
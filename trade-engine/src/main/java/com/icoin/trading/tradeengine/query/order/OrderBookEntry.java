@@ -43,6 +43,8 @@ public class OrderBookEntry extends AuditAwareEntitySupport<OrderBookEntry, Stri
     private String sellTransactionId;
 
     private Date lastTradedTime;
+    //the sequence number of the last order book event applied
+    private Long lastSequenceNumber;
 
     public String getCoinIdentifier() {
         return coinIdentifier;
@@ -140,6 +142,10 @@ public class OrderBookEntry extends AuditAwareEntitySupport<OrderBookEntry, Stri
         this.sellTransactionId = sellTransactionId;
     }
 
+    public Long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
     public Date getLastTradedTime() {
         return lastTradedTime;
     }
@@ -16,7 +16,6 @@
 
 package com.icoin.trading.tradeengine.query.order;
 
-import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.events.coin.OrderBookAddedToCoinEvent;
 import com.icoin.trading.api.tradeengine.events.order.RefreshedHighestBuyPriceEvent;
 import com.icoin.trading.api.tradeengine.events.order.RefreshedLowestSellPriceEvent;
@@ -24,6 +23,7 @@ import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
 import com.icoin.trading.tradeengine.query.coin.CoinEntry;
 import com.icoin.trading.tradeengine.query.coin.repositories.CoinQueryRepository;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -50,31 +50,25 @@ public class OrderBookListener {
     }
 
     @EventHandler
-    public void handleRefreshedHighestBuyPrice(RefreshedHighestBuyPriceEvent event) {
-        OrderBookEntry orderBook = orderBookRepository.findOne(event.getOrderBookId().toString());
-        orderBook.setHighestBuyId(event.getHighestBuyOrderId());
-        orderBook.setHighestBuyPrice(event.getPrice());
-        orderBookRepository.save(orderBook);
+    public void handleRefreshedHighestBuyPrice(RefreshedHighestBuyPriceEvent event, DomainEventMessage message) {
+        orderBookRepository.refreshHighestBuyPrice(event.getOrderBookId().toString(),
+                event.getHighestBuyOrderId(), event.getPrice(), message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleRefreshedLowestSellPrice(RefreshedLowestSellPriceEvent event) {
-        OrderBookEntry orderBook = orderBookRepository.findOne(event.getOrderBookId().toString());
-        orderBook.setLowestSellId(event.getLowestSellOrderId());
-        orderBook.setLowestSellPrice(event.getPrice());
-        orderBookRepository.save(orderBook);
+    public void handleRefreshedLowestSellPrice(RefreshedLowestSellPriceEvent event, DomainEventMessage message) {
+        orderBookRepository.refreshLowestSellPrice(event.getOrderBookId().toString(),
+                event.getLowestSellOrderId(), event.getPrice(), message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleTradeExecuted(TradeExecutedEvent event) {
-        OrderBookId orderBookIdentifier = event.getOrderBookIdentifier();
-        OrderBookEntry orderBookEntry = orderBookRepository.findOne(orderBookIdentifier.toString());
-
-        orderBookEntry.setTradedPrice(event.getTradedPrice());
-        orderBookEntry.setBuyTransactionId(event.getBuyTransactionId().toString());
-        orderBookEntry.setSellTransactionId(event.getSellTransactionId().toString());
-        orderBookEntry.setLastTradedTime(event.getTradeTime());
-        orderBookRepository.save(orderBookEntry);
+    public void handleTradeExecuted(TradeExecutedEvent event, DomainEventMessage message) {
+        orderBookRepository.recordTraded(event.getOrderBookIdentifier().toString(),
+                event.getTradedPrice(),
+                event.getBuyTransactionId().toString(),
+                event.getSellTransactionId().toString(),
+                event.getTradeTime(),
+                message.getSequenceNumber());
     }
 
     @SuppressWarnings("SpringJavaAutowiringInspection")
@@ -20,6 +20,8 @@ import com.homhon.mongo.domainsupport.modelsupport.entity.AuditAwareEntitySuppor
 import com.icoin.trading.api.coin.domain.CurrencyPair;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
 import org.joda.money.BigMoney;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 
 import java.util.Date;
 
@@ -28,6 +30,10 @@ import static com.homhon.util.TimeUtils.currentTime;
 /**
  * @author Jettro Coenradie
  */
+@CompoundIndexes({
+        @CompoundIndex(name = "orderEntry_portfolio_placedDate_id", def = "{'portfolioId': 1, 'placedDate': -1, '_id': -1}"),
+        @CompoundIndex(name = "orderEntry_orderBook_type_price_id", def = "{'orderBookIdentifier': 1, 'type': 1, 'itemPrice.amount': 1, '_id': 1}")
+})
 public class OrderEntry extends AuditAwareEntitySupport<OrderEntry, String, Long> {
     private String orderBookIdentifier;
     private String transactionIdentifier;
@@ -43,6 +49,8 @@ public class OrderEntry extends AuditAwareEntitySupport<OrderEntry, String, Long
     private Date placedDate;
     private CurrencyPair currencyPair;
     private OrderStatus orderStatus = OrderStatus.PENDING;
+    //the sequence number of the last order book event recorded
+    private Long lastSequenceNumber;
 
 
     public String getTransactionIdentifier() {
@@ -160,6 +168,10 @@ public class OrderEntry extends AuditAwareEntitySupport<OrderEntry, String, Long
         return orderStatus;
     }
 
+    public Long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
     private void completeOrder(Date completeDate) {
         this.completeDate = completeDate == null ? currentTime() : completeDate;
         this.orderStatus = OrderStatus.DONE;
@@ -21,6 +21,7 @@ import com.icoin.trading.api.tradeengine.events.order.BuyOrderPlacedEvent;
 import com.icoin.trading.api.tradeengine.events.order.SellOrderPlacedEvent;
 import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.joda.money.BigMoney;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -46,17 +47,11 @@ public class OrderListener {
     }
 
     @EventHandler
-    public void handleTradeExecuted(TradeExecutedEvent event) {
-        String buyOrderId = event.getBuyOrderId();
-        String sellOrderId = event.getSellOrderId();
-
-        final OrderEntry buyOrder = orderRepository.findOne(buyOrderId);
-        buyOrder.recordTraded(event.getTradeAmount(), event.getBuyCommission(), event.getTradeTime());
-        orderRepository.save(buyOrder);
-
-        final OrderEntry sellOrder = orderRepository.findOne(sellOrderId);
-        sellOrder.recordTraded(event.getTradeAmount(), event.getSellCommission(), event.getTradeTime());
-        orderRepository.save(sellOrder);
+    public void handleTradeExecuted(TradeExecutedEvent event, DomainEventMessage message) {
+        orderRepository.recordTraded(event.getBuyOrderId(),
+                event.getTradeAmount(), event.getBuyCommission(), event.getTradeTime(), message.getSequenceNumber());
+        orderRepository.recordTraded(event.getSellOrderId(),
+                event.getTradeAmount(), event.getSellCommission(), event.getTradeTime(), message.getSequenceNumber());
     }
 
     private OrderEntry createPlacedOrder(AbstractOrderPlacedEvent event, OrderType type) {
@@ -26,7 +26,7 @@ import java.util.List;
 /**
  * @author Jettro Coenradie
  */
-public interface OrderBookQueryRepository extends PagingAndSortingRepository<OrderBookEntry, String>, GenericCrudRepository<OrderBookEntry, String> {
+public interface OrderBookQueryRepository extends PagingAndSortingRepository<OrderBookEntry, String>, OrderBookQueryRepositoryCustom, GenericCrudRepository<OrderBookEntry, String> {
 
     List<OrderBookEntry> findByCoinIdentifier(String coinIdentifier);
 
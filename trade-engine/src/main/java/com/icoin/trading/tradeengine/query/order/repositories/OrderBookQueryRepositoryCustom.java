@@ -0,0 +1,19 @@
+package com.icoin.trading.tradeengine.query.order.repositories;
+
+import org.joda.money.BigMoney;
+
+import java.util.Date;
+
+/**
+ * Atomic updates of an order book by the order book event of the sequence number, written with the next batch of the
+ * projection writer. An update of an order book missing or having the event applied already is dropped.
+ */
+public interface OrderBookQueryRepositoryCustom {
+
+    void refreshHighestBuyPrice(String orderBookId, String highestBuyId, BigMoney highestBuyPrice, long sequenceNumber);
+
+    void refreshLowestSellPrice(String orderBookId, String lowestSellId, BigMoney lowestSellPrice, long sequenceNumber);
+
+    void recordTraded(String orderBookId, BigMoney tradedPrice, String buyTransactionId, String sellTransactionId,
+                      Date tradedTime, long sequenceNumber);
+}
@@ -0,0 +1,56 @@
+package com.icoin.trading.tradeengine.query.order.repositories;
+
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionWriter;
+import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
+import org.joda.money.BigMoney;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import javax.annotation.Resource;
+import java.util.Date;
+
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.applied;
+
+public class OrderBookQueryRepositoryImpl implements OrderBookQueryRepositoryCustom {
+    private ProjectionWriter projectionWriter;
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        //written through when no writer is configured
+        if (projectionWriter == null) {
+            projectionWriter = new ProjectionWriter(mongoTemplate);
+        }
+    }
+
+    @Autowired(required = false)
+    public void setProjectionWriter(ProjectionWriter projectionWriter) {
+        this.projectionWriter = projectionWriter;
+    }
+
+    @Override
+    public void refreshHighestBuyPrice(String orderBookId, String highestBuyId, BigMoney highestBuyPrice, long sequenceNumber) {
+        projectionWriter.write(OrderBookEntry.class, orderBookId, sequenceNumber,
+                applied(sequenceNumber)
+                        .set("highestBuyId", highestBuyId)
+                        .set("highestBuyPrice", highestBuyPrice));
+    }
+
+    @Override
+    public void refreshLowestSellPrice(String orderBookId, String lowestSellId, BigMoney lowestSellPrice, long sequenceNumber) {
+        projectionWriter.write(OrderBookEntry.class, orderBookId, sequenceNumber,
+                applied(sequenceNumber)
+                        .set("lowestSellId", lowestSellId)
+                        .set("lowestSellPrice", lowestSellPrice));
+    }
+
+    @Override
+    public void recordTraded(String orderBookId, BigMoney tradedPrice, String buyTransactionId, String sellTransactionId,
+                             Date tradedTime, long sequenceNumber) {
+        projectionWriter.write(OrderBookEntry.class, orderBookId, sequenceNumber,
+                applied(sequenceNumber)
+                        .set("tradedPrice", tradedPrice)
+                        .set("buyTransactionId", buyTransactionId)
+                        .set("sellTransactionId", sellTransactionId)
+                        .set("lastTradedTime", tradedTime));
+    }
+}
@@ -18,6 +18,7 @@ package com.icoin.trading.tradeengine.query.order.repositories;
 
 import com.homhon.base.domain.repository.GenericCrudRepository;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
 import com.icoin.trading.tradeengine.query.order.OrderEntry;
 import com.icoin.trading.tradeengine.query.order.OrderType;
 import com.icoin.trading.tradeengine.query.order.PriceAggregate;
@@ -50,11 +51,11 @@ public interface OrderQueryRepository extends
 
     List<OrderEntry> findUserActiveOrders(String userId, String orderBookId);
 
-//    List<OrderEntry> findActiveHintSellOrders(String orderBookId, int start, int limit);
+//    KeysetPage<OrderEntry> findActiveHintSellOrders(String orderBookId, String continuationToken, int limit);
 
-//    List<OrderEntry> findActiveHintBuyOrders(String orderBookId, int start, int limit);
+//    KeysetPage<OrderEntry> findActiveHintBuyOrders(String orderBookId, String continuationToken, int limit);
 
-    List<OrderEntry> findAllUserOrders(String userId, int start, int limit);
+    KeysetPage<OrderEntry> findAllUserOrders(String portfolioId, String continuationToken, int limit);
 
     @Override
     List<PriceAggregate> findOrderAggregatedPrice(String orderBookIdentifier, OrderType type, Date toDate, int limit);
@@ -16,9 +16,11 @@
 
 package com.icoin.trading.tradeengine.query.order.repositories;
 
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
 import com.icoin.trading.tradeengine.query.order.OrderEntry;
 import com.icoin.trading.tradeengine.query.order.OrderType;
 import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import org.joda.money.BigMoney;
 
 import java.util.Date;
 import java.util.List;
@@ -30,11 +32,23 @@ public interface OrderQueryRepositoryCustom {
 
     List<PriceAggregate> findOrderAggregatedPrice(String orderBookIdentifier, OrderType type, Date toDate, int limit);
 
-    List<OrderEntry> findAllUserOrders(String userId, int start, int limit);
+    /**
+     * @param portfolioId       the portfolio of the user, the orders are placed by portfolio
+     * @param continuationToken the next token of the page before, null for the first page
+     * @return the orders of the portfolio, the latest placed first
+     */
+    KeysetPage<OrderEntry> findAllUserOrders(String portfolioId, String continuationToken, int limit);
 
-//    List<OrderEntry> findActiveHintSellOrders(String orderBookId, int start, int limit);
+//    KeysetPage<OrderEntry> findActiveHintSellOrders(String orderBookId, String continuationToken, int limit);
 
-//    List<OrderEntry> findActiveHintBuyOrders(String orderBookId, int start, int limit);
+//    KeysetPage<OrderEntry> findActiveHintBuyOrders(String orderBookId, String continuationToken, int limit);
 
     List<OrderEntry> findUserActiveOrders(String userId, String orderBookId);
+
+    /**
+     * Atomically takes the amount traded off the order and adds the commission, the order is done once nothing
+     * remains. Written with the next batch of the projection writer, dropped when the order is missing or the trade
+     * of the sequence number was recorded already.
+     */
+    void recordTraded(String orderId, BigMoney tradeAmount, BigMoney commission, Date tradedTime, long sequenceNumber);
 }
@@ -16,12 +16,18 @@
 
 package com.icoin.trading.tradeengine.query.order.repositories;
 
+import com.icoin.trading.tradeengine.MoneyUtils;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.Keyset;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionWriter;
 import com.icoin.trading.tradeengine.query.order.OrderEntry;
 import com.icoin.trading.tradeengine.query.order.OrderType;
 import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import org.joda.money.BigMoney;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
@@ -29,6 +35,7 @@ import org.springframework.data.mongodb.core.aggregation.Fields;
 import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import javax.annotation.Resource;
 import java.util.Date;
@@ -38,6 +45,13 @@ import static com.homhon.util.Asserts.hasLength;
 import static com.homhon.util.Asserts.hasText;
 import static com.homhon.util.Asserts.isTrue;
 import static com.homhon.util.Asserts.notNull;
+import static com.homhon.util.TimeUtils.currentTime;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.Keyset.page;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.Keyset.seek;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.ID;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.amountOf;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.applied;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.inc;
 import static org.springframework.data.domain.Sort.Direction.ASC;
 import static org.springframework.data.domain.Sort.Direction.DESC;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
@@ -47,6 +61,7 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.newA
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.previousOperation;
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 /**
  * @author Jettro Coenradie
@@ -55,11 +70,35 @@ public class OrderQueryRepositoryImpl implements OrderQueryRepositoryCustom {
 
     private static Logger logger = LoggerFactory.getLogger(OrderQueryRepositoryImpl.class);
 
+    private static final Keyset.Position<OrderEntry> BY_PLACED_DATE = new Keyset.Position<OrderEntry>() {
+        @Override
+        public Keyset of(OrderEntry order) {
+            return Keyset.of(order.getPlacedDate(), order.getPrimaryKey());
+        }
+    };
+
+    private static final Keyset.Position<OrderEntry> BY_PRICE = new Keyset.Position<OrderEntry>() {
+        @Override
+        public Keyset of(OrderEntry order) {
+            return Keyset.of(MoneyUtils.convertToLong(order.getItemPrice()), order.getPrimaryKey());
+        }
+    };
+
     private MongoTemplate mongoTemplate;
+    private ProjectionWriter projectionWriter;
 
     @Resource(name = "trade.mongoTemplate")
     public void setMongoTemplate(MongoTemplate mongoTemplate) {
         this.mongoTemplate = mongoTemplate;
+        //written through when no writer is configured
+        if (projectionWriter == null) {
+            projectionWriter = new ProjectionWriter(mongoTemplate);
+        }
+    }
+
+    @Autowired(required = false)
+    public void setProjectionWriter(ProjectionWriter projectionWriter) {
+        this.projectionWriter = projectionWriter;
     }
 
     @Override
@@ -95,63 +134,54 @@ public class OrderQueryRepositoryImpl implements OrderQueryRepositoryCustom {
     }
 
     @Override
-    public List<OrderEntry> findAllUserOrders(String userId, int start, int limit) {
-        notNull(userId);
-        isTrue(start >= 0);
+    public KeysetPage<OrderEntry> findAllUserOrders(String portfolioId, String continuationToken, int limit) {
+        notNull(portfolioId);
         isTrue(limit > 0);
 
-        final Query query = new Query()
-                .addCriteria(Criteria.where("userId").is(userId))
-                .with(new Sort(Sort.Direction.DESC, "placedDate"))
-                .skip(start)
-                .limit(limit);
+        final Query query = seek(new Query()
+                .addCriteria(Criteria.where("portfolioId").is(portfolioId)),
+                "placedDate", Sort.Direction.DESC, continuationToken, limit);
 
         final List<OrderEntry> orders = mongoTemplate.find(query, OrderEntry.class);
 
         if (logger.isDebugEnabled()) {
             logger.debug("findAllUserOrders Queried with {} : {}", query, orders);
         }
-        return orders;
+        return page(orders, limit, BY_PLACED_DATE);
     }
 
-    public List<OrderEntry> findActiveHintSellOrders(String orderBookId, int start, int limit) {
+    public KeysetPage<OrderEntry> findActiveHintSellOrders(String orderBookId, String continuationToken, int limit) {
         notNull(orderBookId);
-        isTrue(start >= 0);
         isTrue(limit > 0);
 
-        final Query query = new Query()
+        final Query query = seek(new Query()
                 .addCriteria(Criteria.where("orderBookIdentifier").is(orderBookId))
-                .addCriteria(Criteria.where("type").is(OrderType.SELL))
-                .with(new Sort(Sort.Direction.ASC, "itemPrice.amount"))
-                .skip(start)
-                .limit(limit);
+                .addCriteria(Criteria.where("type").is(OrderType.SELL)),
+                "itemPrice.amount", Sort.Direction.ASC, continuationToken, limit);
 
         final List<OrderEntry> orders = mongoTemplate.find(query, OrderEntry.class);
 
         if (logger.isDebugEnabled()) {
             logger.debug("findActiveHintSellOrders Queried with {} : {}", query, orders);
         }
-        return orders;
+        return page(orders, limit, BY_PRICE);
     }
 
-    public List<OrderEntry> findActiveHintBuyOrders(String orderBookId, int start, int limit) {
+    public KeysetPage<OrderEntry> findActiveHintBuyOrders(String orderBookId, String continuationToken, int limit) {
         notNull(orderBookId);
-        isTrue(start >= 0);
         isTrue(limit > 0);
 
-        final Query query = new Query()
+        final Query query = seek(new Query()
                 .addCriteria(Criteria.where("orderBookIdentifier").is(orderBookId))
-                .addCriteria(Criteria.where("type").is(OrderType.BUY))
-                .with(new Sort(Sort.Direction.DESC, "itemPrice.amount"))
-                .skip(start)
-                .limit(limit);
+                .addCriteria(Criteria.where("type").is(OrderType.BUY)),
+                "itemPrice.amount", Sort.Direction.DESC, continuationToken, limit);
 
         final List<OrderEntry> orders = mongoTemplate.find(query, OrderEntry.class);
 
         if (logger.isDebugEnabled()) {
             logger.debug("findActiveHintBuyOrders Queried with {} : {}", query, orders);
         }
-        return orders;
+        return page(orders, limit, BY_PRICE);
     }
 
     @Override
@@ -172,4 +202,21 @@ public class OrderQueryRepositoryImpl implements OrderQueryRepositoryCustom {
         }
         return orders;
     }
+
+    @Override
+    public void recordTraded(String orderId, BigMoney tradeAmount, BigMoney commission, Date tradedTime, long sequenceNumber) {
+        notNull(tradeAmount);
+        notNull(commission);
+
+        final Update update = applied(sequenceNumber).set("lastTradedTime", tradedTime);
+        inc(update, "itemRemaining", tradeAmount.negated());
+        inc(update, "executedCommission", commission);
+        projectionWriter.write(OrderEntry.class, orderId, sequenceNumber, update,
+                query(where(ID).is(orderId)
+                        .and("orderStatus").is(OrderStatus.PENDING.toString())
+                        .and(amountOf("itemRemaining")).lte(0L)),
+                new Update()
+                        .set("orderStatus", OrderStatus.DONE.toString())
+                        .set("completeDate", tradedTime == null ? currentTime() : tradedTime));
+    }
 }
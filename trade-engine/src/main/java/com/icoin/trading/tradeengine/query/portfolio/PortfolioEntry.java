@@ -37,6 +37,8 @@ public class PortfolioEntry extends AuditAwareEntitySupport<PortfolioEntry, Stri
 //    private BigMoney lowestPrice = BigDecimal.valueOf(0.00000001);
 
     private Map<String, ItemEntry> items = new HashMap<String, ItemEntry>();
+    //the sequence number of the last portfolio event applied
+    private Long lastSequenceNumber;
 
 //    @Value("${trade.lowestPrice}")
 //    public void setLowestPrice(BigDecimal lowestPrice) {
@@ -201,6 +203,10 @@ public class PortfolioEntry extends AuditAwareEntitySupport<PortfolioEntry, Stri
         this.username = username;
     }
 
+    public Long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
     public String getFullName() {
         return fullName;
     }
@@ -24,7 +24,9 @@ import com.icoin.trading.api.tradeengine.events.portfolio.coin.ItemReservedEvent
 import com.icoin.trading.tradeengine.query.coin.CoinEntry;
 import com.icoin.trading.tradeengine.query.coin.repositories.CoinQueryRepository;
 import com.icoin.trading.tradeengine.query.portfolio.repositories.PortfolioQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
 import org.axonframework.eventhandling.annotation.EventHandler;
+import org.joda.money.BigMoney;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -41,7 +43,7 @@ public class PortfolioItemEventListener {
     private CoinQueryRepository coinQueryRepository;
 
     @EventHandler
-    public void handleEvent(ItemAddedToPortfolioEvent event) {
+    public void handleEvent(ItemAddedToPortfolioEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle ItemAddedToPortfolioEvent {} for coin {} with amount {}", event.getPortfolioIdentifier(),
                     event.getCoinId(), event.getAmountOfItemAdded());
@@ -53,15 +55,8 @@ public class PortfolioItemEventListener {
             return;
         }
 
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-
-        if (!portfolioEntry.hasItem(event.getCoinId().toString())) {
-            portfolioEntry.createItem(coin.getPrimaryKey(), coin.getName());
-        }
-
-        portfolioEntry.addItemInPossession(coin.getPrimaryKey(), event.getAmountOfItemAdded());
-
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.addItem(event.getPortfolioIdentifier().toString(), coin.getPrimaryKey(), coin.getName(),
+                event.getAmountOfItemAdded(), null, message.getSequenceNumber());
     }
 
     private CoinEntry findCoinEntry(CoinId coinId) {
@@ -69,57 +64,37 @@ public class PortfolioItemEventListener {
     }
 
     @EventHandler
-    public void handleEvent(ItemReservationCancelledForPortfolioEvent event) {
+    public void handleEvent(ItemReservationCancelledForPortfolioEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle ItemReservationCancelledForPortfolioEvent {} for coin {}, left commission {}, left total item {}", event.getPortfolioIdentifier(),
                     event.getCoinId(), event.getLeftCommission(), event.getLeftTotalItem());
         }
-        CoinEntry coin = findCoinEntry(event.getCoinId());
-
-        if (coin == null) {
-            logger.error("coin {} cannot be found.", event.getCoinId());
-            return;
-        }
-
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-        portfolioEntry.cancelReserved(coin.getPrimaryKey(), event.getLeftTotalItem().plus(event.getLeftCommission()));
 
-        portfolioRepository.save(portfolioEntry);
+        final BigMoney left = event.getLeftTotalItem().plus(event.getLeftCommission());
+        portfolioRepository.addItem(event.getPortfolioIdentifier().toString(), event.getCoinId().toString(), null,
+                null, left.negated(), message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleEvent(ItemReservationConfirmedForPortfolioEvent event) {
-        logger.debug("Handle ItemReservationConfirmedForPortfolioEvent {} for coin {}, amount {}, commission {}", event.getPortfolioIdentifier(),
-                event.getCoinId(), event.getAmount(), event.getCommission());
-        CoinEntry coin = findCoinEntry(event.getCoinId());
-
-        if (coin == null) {
-            logger.error("coin {} cannot be found.", event.getCoinId());
-            return;
+    public void handleEvent(ItemReservationConfirmedForPortfolioEvent event, DomainEventMessage message) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Handle ItemReservationConfirmedForPortfolioEvent {} for coin {}, amount {}, commission {}", event.getPortfolioIdentifier(),
+                    event.getCoinId(), event.getAmount(), event.getCommission());
         }
 
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-        portfolioEntry.confirmReserved(event.getCoinId().toString(), event.getAmount().plus(event.getCommission()));
-
-        portfolioRepository.save(portfolioEntry);
+        final BigMoney confirmed = event.getAmount().plus(event.getCommission());
+        portfolioRepository.addItem(event.getPortfolioIdentifier().toString(), event.getCoinId().toString(), null,
+                confirmed.negated(), confirmed.negated(), message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleEvent(ItemReservedEvent event) {
+    public void handleEvent(ItemReservedEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle ItemReservedEvent {} for coin {}, amount {}", event.getPortfolioIdentifier(), event.getCoinId(), event.getAmountOfItemReserved());
         }
-        final CoinEntry coin = findCoinEntry(event.getCoinId());
-
-        if (coin == null) {
-            logger.error("coin {} cannot be found.", event.getCoinId());
-            return;
-        }
-
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-        portfolioEntry.addReserved(coin.getPrimaryKey(), event.getAmountOfItemReserved());
 
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.addItem(event.getPortfolioIdentifier().toString(), event.getCoinId().toString(), null,
+                null, event.getAmountOfItemReserved(), message.getSequenceNumber());
     }
 
     @SuppressWarnings("SpringJavaAutowiringInspection")
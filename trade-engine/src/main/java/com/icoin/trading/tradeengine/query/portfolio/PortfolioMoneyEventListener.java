@@ -26,6 +26,7 @@ import com.icoin.trading.tradeengine.Constants;
 import com.icoin.trading.tradeengine.query.portfolio.repositories.PortfolioQueryRepository;
 import com.icoin.trading.users.query.UserEntry;
 import com.icoin.trading.users.query.repositories.UserQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.joda.money.BigMoney;
 import org.slf4j.Logger;
@@ -64,72 +65,57 @@ public class PortfolioMoneyEventListener {
     }
 
     @EventHandler
-    public void handleEvent(CashDepositedEvent event) {
+    public void handleEvent(CashDepositedEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle CashDepositedEvent {} to add money {} ",
                     event.getPortfolioIdentifier(), event.getMoneyAdded());
         }
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-        portfolioEntry.setAmountOfMoney(portfolioEntry.getAmountOfMoney().plus(event.getMoneyAdded()));
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.addMoney(event.getPortfolioIdentifier().toString(),
+                event.getMoneyAdded(), null, message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleEvent(CashWithdrawnEvent event) {
+    public void handleEvent(CashWithdrawnEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle CashWithdrawnEvent {} to withdraw money {} ",
                     event.getPortfolioIdentifier(), event.getAmountPaid());
         }
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-        portfolioEntry.setAmountOfMoney(portfolioEntry.getAmountOfMoney().minus(event.getAmountPaid()));
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.addMoney(event.getPortfolioIdentifier().toString(),
+                event.getAmountPaid().negated(), null, message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleEvent(CashReservedEvent event) {
+    public void handleEvent(CashReservedEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle CashReservedEvent {} to withdraw money {} '+' commission {}",
                     event.getPortfolioIdentifier(), event.getTotalMoney(), event.getTotalCommission());
         }
 
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
         final BigMoney total = event.getTotalMoney().plus(event.getTotalCommission());
-        portfolioEntry.setReservedAmountOfMoney(portfolioEntry.getReservedAmountOfMoney().plus(total));
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.addMoney(event.getPortfolioIdentifier().toString(),
+                null, total, message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleEvent(CashReservationCancelledEvent event) {
+    public void handleEvent(CashReservationCancelledEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle CashReservationCancelledEvent {} with left money {} '+' left commission {}",
                     event.getPortfolioIdentifier(), event.getLeftTotalMoney(), event.getLeftCommission());
         }
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
         final BigMoney totalLeft = event.getLeftTotalMoney().plus(event.getLeftCommission());
-        portfolioEntry.setReservedAmountOfMoney(
-                portfolioEntry.getReservedAmountOfMoney().minus(totalLeft));
-
-//        portfolioEntry.setAmountOfMoney(portfolioEntry.getAmountOfMoney().plus(totalLeft));
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.addMoney(event.getPortfolioIdentifier().toString(),
+                null, totalLeft.negated(), message.getSequenceNumber());
     }
 
     @EventHandler
-    public void handleEvent(CashReservationConfirmedEvent event) {
+    public void handleEvent(CashReservationConfirmedEvent event, DomainEventMessage message) {
         if (logger.isDebugEnabled()) {
             logger.debug("Handle CashReservationConfirmedEvent {} with money {} '+'  commission {}",
                     event.getPortfolioIdentifier(), event.getAmountOfMoney(), event.getCommission());
         }
-        PortfolioEntry portfolioEntry = portfolioRepository.findOne(event.getPortfolioIdentifier().toString());
-        BigMoney reservedAmountOfMoney = portfolioEntry.getReservedAmountOfMoney();
         BigMoney amountOfMoneyConfirmed = event.getAmountOfMoney().plus(event.getCommission());
-        if (amountOfMoneyConfirmed.compareTo(reservedAmountOfMoney) < 0) {
-            portfolioEntry.setReservedAmountOfMoney(reservedAmountOfMoney.minus(amountOfMoneyConfirmed));
-        } else {
-            portfolioEntry.setReservedAmountOfMoney(BigMoney.zero(event.getAmountOfMoney().getCurrencyUnit()));
-        }
-
-        portfolioEntry.setAmountOfMoney(portfolioEntry.getAmountOfMoney().minus(amountOfMoneyConfirmed));
-        portfolioRepository.save(portfolioEntry);
+        portfolioRepository.confirmReservedMoney(event.getPortfolioIdentifier().toString(),
+                amountOfMoneyConfirmed, message.getSequenceNumber());
     }
 
     @SuppressWarnings("SpringJavaAutowiringInspection")
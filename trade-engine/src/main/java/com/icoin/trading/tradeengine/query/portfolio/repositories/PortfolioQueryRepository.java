@@ -23,7 +23,7 @@ import org.springframework.data.repository.PagingAndSortingRepository;
 /**
  * @author Jettro Coenradie
  */
-public interface PortfolioQueryRepository extends PagingAndSortingRepository<PortfolioEntry, String>, GenericCrudRepository<PortfolioEntry, String> {
+public interface PortfolioQueryRepository extends PagingAndSortingRepository<PortfolioEntry, String>, PortfolioQueryRepositoryCustom, GenericCrudRepository<PortfolioEntry, String> {
 
     PortfolioEntry findByUserIdentifier(String userIdentifier);
 }
@@ -0,0 +1,32 @@
+package com.icoin.trading.tradeengine.query.portfolio.repositories;
+
+import org.joda.money.BigMoney;
+
+/**
+ * Atomic updates of a portfolio by the event of the sequence number, written with the next batch of the projection
+ * writer. An update of a portfolio missing or having the event applied already is dropped.
+ */
+public interface PortfolioQueryRepositoryCustom {
+
+    /**
+     * @param amountOfMoney         the money added, negative when withdrawn, null when unchanged
+     * @param reservedAmountOfMoney the money reserved, negative when released, null when unchanged
+     */
+    void addMoney(String portfolioIdentifier, BigMoney amountOfMoney, BigMoney reservedAmountOfMoney, long sequenceNumber);
+
+    /**
+     * Takes the money confirmed out of the portfolio and out of its reservations, the reservations never go below
+     * zero.
+     */
+    void confirmReservedMoney(String portfolioIdentifier, BigMoney amountConfirmed, long sequenceNumber);
+
+    /**
+     * Adds to the item of the coin, created when missing.
+     *
+     * @param coinName           the name of the coin, null to keep it
+     * @param amountInPossession the amount added, negative when taken out, null when unchanged
+     * @param reservedAmount     the amount reserved, negative when released, null when unchanged
+     */
+    void addItem(String portfolioIdentifier, String coinIdentifier, String coinName,
+                 BigMoney amountInPossession, BigMoney reservedAmount, long sequenceNumber);
+}
@@ -0,0 +1,81 @@
+package com.icoin.trading.tradeengine.query.portfolio.repositories;
+
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionWriter;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioEntry;
+import org.joda.money.BigMoney;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.annotation.Resource;
+
+import static com.homhon.util.Asserts.hasLength;
+import static com.homhon.util.Asserts.notNull;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.ID;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.amountOf;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.applied;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.inc;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class PortfolioQueryRepositoryImpl implements PortfolioQueryRepositoryCustom {
+    private static final String AMOUNT_OF_MONEY = "amountOfMoney";
+    private static final String RESERVED_AMOUNT_OF_MONEY = "reservedAmountOfMoney";
+    private static final String ITEMS = "items.";
+
+    private ProjectionWriter projectionWriter;
+
+    @Resource(name = "trade.mongoTemplate")
+    public void setMongoTemplate(MongoTemplate mongoTemplate) {
+        //written through when no writer is configured
+        if (projectionWriter == null) {
+            projectionWriter = new ProjectionWriter(mongoTemplate);
+        }
+    }
+
+    @Autowired(required = false)
+    public void setProjectionWriter(ProjectionWriter projectionWriter) {
+        this.projectionWriter = projectionWriter;
+    }
+
+    @Override
+    public void addMoney(String portfolioIdentifier, BigMoney amountOfMoney, BigMoney reservedAmountOfMoney, long sequenceNumber) {
+        final Update update = applied(sequenceNumber);
+        if (amountOfMoney != null) {
+            inc(update, AMOUNT_OF_MONEY, amountOfMoney);
+        }
+        if (reservedAmountOfMoney != null) {
+            inc(update, RESERVED_AMOUNT_OF_MONEY, reservedAmountOfMoney);
+        }
+        projectionWriter.write(PortfolioEntry.class, portfolioIdentifier, sequenceNumber, update);
+    }
+
+    @Override
+    public void confirmReservedMoney(String portfolioIdentifier, BigMoney amountConfirmed, long sequenceNumber) {
+        notNull(amountConfirmed);
+        final Update update = applied(sequenceNumber);
+        inc(update, AMOUNT_OF_MONEY, amountConfirmed.negated());
+        inc(update, RESERVED_AMOUNT_OF_MONEY, amountConfirmed.negated());
+        projectionWriter.write(PortfolioEntry.class, portfolioIdentifier, sequenceNumber, update,
+                query(where(ID).is(portfolioIdentifier).and(amountOf(RESERVED_AMOUNT_OF_MONEY)).lt(0L)),
+                new Update().set(amountOf(RESERVED_AMOUNT_OF_MONEY), 0L));
+    }
+
+    @Override
+    public void addItem(String portfolioIdentifier, String coinIdentifier, String coinName,
+                        BigMoney amountInPossession, BigMoney reservedAmount, long sequenceNumber) {
+        hasLength(coinIdentifier);
+        final String item = ITEMS + coinIdentifier;
+        final Update update = applied(sequenceNumber).set(item + ".coinIdentifier", coinIdentifier);
+        if (coinName != null) {
+            update.set(item + ".coinName", coinName);
+        }
+        if (amountInPossession != null) {
+            inc(update, item + ".amountInPossession", amountInPossession);
+        }
+        if (reservedAmount != null) {
+            inc(update, item + ".reservedAmount", reservedAmount);
+        }
+        projectionWriter.write(PortfolioEntry.class, portfolioIdentifier, sequenceNumber, update);
+    }
+}
@@ -32,40 +32,39 @@ public class OpenHighLowCloseVolumeBuilder {
         this.amountCurrency = CurrencyUnit.of(amountCurrency);
     }
 
-    public void withDate(Date date) {
+    public OpenHighLowCloseVolumeBuilder withDate(Date date) {
         this.date = date;
+        return this;
     }
 
-    public void withOpen(Long open) {
+    public OpenHighLowCloseVolumeBuilder withOpen(Long open) {
         this.open = open;
+        return this;
     }
 
-    public void withHigh(Long high) {
+    public OpenHighLowCloseVolumeBuilder withHigh(Long high) {
         this.high = high;
+        return this;
     }
 
-    public void withLow(Long low) {
+    public OpenHighLowCloseVolumeBuilder withLow(Long low) {
         this.low = low;
+        return this;
     }
 
-    public void withClose(Long close) {
+    public OpenHighLowCloseVolumeBuilder withClose(Long close) {
         this.close = close;
+        return this;
     }
 
-    public void withVolume(Long volume) {
+    public OpenHighLowCloseVolumeBuilder withVolume(Long volume) {
         this.volume = volume;
+        return this;
     }
 
     public OpenHighLowCloseVolume build() {
-//        BigMoney o = MoneyUtils.convertToBigMoney(priceCurrency, open);
-//        BigMoney h = MoneyUtils.convertToBigMoney(priceCurrency, open);
-//        BigMoney l = MoneyUtils.convertToBigMoney(priceCurrency, open);
-//        BigMoney c = MoneyUtils.convertToBigMoney(priceCurrency, open);
-//        BigMoney v = MoneyUtils.convertToBigMoney(priceCurrency, open);
-//
-//
-//        return new OpenHighLowCloseVolume(priceCurrency, amountCurrency, date, o, h, l, c, v);
-
-        return null;
+        notNull(date);
+        return new OpenHighLowCloseVolume(priceCurrency.getCode(), amountCurrency.getCode(),
+                date, open, high, low, close, volume);
     }
 }
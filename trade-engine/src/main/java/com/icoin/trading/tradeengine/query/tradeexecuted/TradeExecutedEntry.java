@@ -18,12 +18,17 @@ package com.icoin.trading.tradeengine.query.tradeexecuted;
 
 import com.homhon.mongo.domainsupport.modelsupport.entity.AuditAwareEntitySupport;
 import org.joda.money.BigMoney;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 
 import java.util.Date;
 
 /**
  * @author Jettro Coenradie
  */
+@CompoundIndexes({
+        @CompoundIndex(name = "tradeExecuted_orderBook_tradeTime_id", def = "{'orderBookIdentifier': 1, 'tradeTime': -1, '_id': -1}")
+})
 public class TradeExecutedEntry extends AuditAwareEntitySupport<TradeExecutedEntry, String, Long> {
     private String buyOrderId;
     private String sellOrderId;
@@ -37,6 +42,7 @@ public class TradeExecutedEntry extends AuditAwareEntitySupport<TradeExecutedEnt
     private String coinId;
     private String orderBookIdentifier;
     private Date tradeTime;
+    private Long sequenceNumber;
 
     private TradeType tradeType;
 
@@ -121,6 +127,17 @@ public class TradeExecutedEntry extends AuditAwareEntitySupport<TradeExecutedEnt
         this.tradeTime = tradeTime;
     }
 
+    /**
+     * @return the sequence number of the trade executed event in its order book, missing on the trades of before
+     */
+    public Long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public void setSequenceNumber(Long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
     public TradeType getTradeType() {
         return tradeType;
     }
@@ -1,11 +1,15 @@
 package com.icoin.trading.tradeengine.query.tradeexecuted;
 
 import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.tradeengine.infrastructure.profiling.TradeLatencyTracer;
 import com.icoin.trading.tradeengine.query.tradeexecuted.repositories.TradeExecutedQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
 import org.axonframework.eventhandling.annotation.EventHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.QUERY_UPDATED;
+
 /**
  * Created with IntelliJ IDEA.
  * User: liougehooa
@@ -17,9 +21,10 @@ import org.springframework.stereotype.Component;
 public class TradeExecutedListener {
     //    private OrderBookQueryRepository orderBookRepository;
     private TradeExecutedQueryRepository tradeExecutedRepository;
+    private TradeLatencyTracer tradeLatencyTracer;
 
     @EventHandler
-    public void handleTradeExecuted(TradeExecutedEvent event) {
+    public void handleTradeExecuted(TradeExecutedEvent event, DomainEventMessage message) {
 //        OrderBookId orderBookIdentifier = event.getOrderBookIdentifier();
 //        OrderBookEntry orderBookEntry = orderBookRepository.findOne(orderBookIdentifier.toString());
 
@@ -34,11 +39,16 @@ public class TradeExecutedListener {
         tradeExecutedEntry.setExecutedMoney(event.getExecutedMoney());
         tradeExecutedEntry.setTradedPrice(event.getTradedPrice());
         tradeExecutedEntry.setTradeTime(event.getTradeTime());
+        tradeExecutedEntry.setSequenceNumber(message.getSequenceNumber());
         tradeExecutedEntry.setTradeType(TradeType.convert(event.getTradeType()));
         tradeExecutedEntry.setBuyPortfolioId(event.getBuyPortfolioId().toString());
         tradeExecutedEntry.setSellPortfolioId(event.getSellPortfolioId().toString());
 
         tradeExecutedRepository.save(tradeExecutedEntry);
+
+        if (tradeLatencyTracer != null) {
+            tradeLatencyTracer.recordTaker(event, QUERY_UPDATED);
+        }
     }
 
 //    @SuppressWarnings("SpringJavaAutowiringInspection")
@@ -52,4 +62,9 @@ public class TradeExecutedListener {
     public void setTradeExecutedRepository(TradeExecutedQueryRepository tradeExecutedRepository) {
         this.tradeExecutedRepository = tradeExecutedRepository;
     }
-}
+
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
+}
\ No newline at end of file
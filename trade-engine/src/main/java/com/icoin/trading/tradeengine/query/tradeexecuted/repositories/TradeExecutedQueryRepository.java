@@ -17,12 +17,10 @@
 package com.icoin.trading.tradeengine.query.tradeexecuted.repositories;
 
 import com.homhon.base.domain.repository.GenericCrudRepository;
-import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
 import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.PagingAndSortingRepository;
 
-import java.util.Date;
 import java.util.List;
 
 /**
@@ -34,7 +32,4 @@ public interface TradeExecutedQueryRepository extends
         TradeExecutedQueryRepositoryCustom {
 
     List<TradeExecutedEntry> findByOrderBookIdentifier(String orderBookIdentifier, Pageable pageable);
-
-    @Override
-    List<OpenHighLowCloseVolume> ohlc(String orderBookIdentifier, Date startD, Date end, Pageable pageable);
 }
@@ -16,8 +16,8 @@
 
 package com.icoin.trading.tradeengine.query.tradeexecuted.repositories;
 
-import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
-import org.springframework.data.domain.Pageable;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
+import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
 
 import java.util.Date;
 import java.util.List;
@@ -26,5 +26,14 @@ import java.util.List;
  * @author Jettro Coenradie
  */
 public interface TradeExecutedQueryRepositoryCustom {
-    List<OpenHighLowCloseVolume> ohlc(String orderBookIdentifier, Date startD, Date end, Pageable pageable);
+    /**
+     * @return the trades of the order book from the start on and before the end, in the order they executed
+     */
+    List<TradeExecutedEntry> findTrades(String orderBookIdentifier, Date start, Date end);
+
+    /**
+     * @param continuationToken the next token of the page before, null for the first page
+     * @return the trades of the order book, the latest first
+     */
+    KeysetPage<TradeExecutedEntry> findExecutedTrades(String orderBookIdentifier, String continuationToken, int limit);
 }
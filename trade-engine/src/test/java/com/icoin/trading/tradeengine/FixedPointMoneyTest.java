@@ -0,0 +1,96 @@
+package com.icoin.trading.tradeengine;
+
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.tradeengine.domain.model.commission.Commission;
+import com.icoin.trading.tradeengine.domain.model.commission.FixedRateCommissionPolicy;
+import com.icoin.trading.tradeengine.domain.model.order.BuyOrder;
+import com.icoin.trading.tradeengine.domain.model.order.SellOrder;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class FixedPointMoneyTest {
+    private final CurrencyUnit btc = CurrencyUnit.of("BTC");
+    private final CurrencyUnit cny = CurrencyUnit.of("CNY");
+
+    @Test
+    public void testToScaled() throws Exception {
+        assertThat(FixedPointMoney.isScaled(BigMoney.of(btc, BigDecimal.TEN)), is(true));
+        assertThat(FixedPointMoney.isScaled(BigMoney.of(cny, new BigDecimal("1.2345"))), is(false));
+
+        assertThat(FixedPointMoney.toScaled(BigMoney.of(btc, new BigDecimal("1.5"))), equalTo(150000000L));
+        assertThat(FixedPointMoney.toScaled(BigMoney.of(cny, new BigDecimal("-2.01"))), equalTo(-2010L));
+        assertThat(FixedPointMoney.toBigMoney(cny, 2010L).isEqual(BigMoney.of(cny, new BigDecimal("2.01"))), is(true));
+    }
+
+    @Test
+    public void testMultiplySameAsConvertTo() throws Exception {
+        final BigMoney[] amounts = {
+                BigMoney.of(btc, new BigDecimal("100.009")),
+                BigMoney.of(btc, new BigDecimal("0.00000001")),
+                BigMoney.of(btc, new BigDecimal("12345.12345678"))};
+        final BigMoney[] prices = {
+                BigMoney.of(cny, new BigDecimal("100.03")),
+                BigMoney.of(cny, new BigDecimal("0.005")),
+                BigMoney.of(cny, new BigDecimal("4321.999"))};
+
+        for (BigMoney amount : amounts) {
+            for (BigMoney price : prices) {
+                final BigMoney expected = MoneyUtils.convertTo(amount, price).toBigMoney();
+                assertThat(FixedPointMoney.multiply(amount, price), equalTo(expected));
+            }
+        }
+
+        //the scaled price kept by the order
+        assertThat(FixedPointMoney.multiply(amounts[0], prices[0], 10003L),
+                equalTo(MoneyUtils.convertTo(amounts[0], prices[0]).toBigMoney()));
+
+        //more decimals than the currency
+        final BigMoney amount = BigMoney.of(btc, new BigDecimal("1.123456789"));
+        assertThat(FixedPointMoney.multiply(amount, prices[0]),
+                equalTo(MoneyUtils.convertTo(amount, prices[0]).toBigMoney()));
+    }
+
+    @Test
+    public void testMultiplyDivide() throws Exception {
+        assertThat(FixedPointMoney.multiplyDivide(5, 1, 10), equalTo(0L));
+        assertThat(FixedPointMoney.multiplyDivide(15, 1, 10), equalTo(2L));
+        assertThat(FixedPointMoney.multiplyDivide(-15, 1, 10), equalTo(-2L));
+        assertThat(FixedPointMoney.multiplyDivide(-14, 1, 10), equalTo(-1L));
+        assertThat(FixedPointMoney.multiplyDivide(16, 1, 10), equalTo(2L));
+
+        //overflows long
+        final long big = Long.MAX_VALUE / 2;
+        final long expected = BigDecimal.valueOf(big).multiply(BigDecimal.valueOf(6))
+                .divide(BigDecimal.valueOf(8), 0, RoundingMode.HALF_EVEN).longValueExact();
+        assertThat(FixedPointMoney.multiplyDivide(big, 6, 8), equalTo(expected));
+        assertThat(FixedPointMoney.multiplyDivide(big, 3, 2, 8), equalTo(expected));
+    }
+
+    @Test
+    public void testFixedRateCommission() throws Exception {
+        final FixedRateCommissionPolicy policy = new FixedRateCommissionPolicy();
+        final BigDecimal rate = BigDecimal.valueOf(0.005);
+        final BigMoney amount = BigMoney.of(btc, new BigDecimal("3.33333333"));
+        final BigMoney price = BigMoney.of(cny, new BigDecimal("4321.999"));
+
+        final BuyOrder buyOrder = new BuyOrder();
+        buyOrder.setCurrencyPair(new CurrencyPair("BTC", "CNY"));
+        final Commission buyCommission = policy.calculateBuyCommission(buyOrder, amount, price);
+        assertThat(buyCommission.getCommission(),
+                equalTo(amount.convertedTo(cny, price.getAmount()).multipliedBy(rate).toMoney(RoundingMode.HALF_EVEN)));
+
+        final SellOrder sellOrder = new SellOrder();
+        sellOrder.setCurrencyPair(new CurrencyPair("BTC", "CNY"));
+        final Commission sellCommission = policy.calculateSellCommission(sellOrder, amount, price);
+        assertThat(sellCommission.getCommission(),
+                equalTo(amount.multipliedBy(rate).toMoney(RoundingMode.HALF_EVEN)));
+    }
+}
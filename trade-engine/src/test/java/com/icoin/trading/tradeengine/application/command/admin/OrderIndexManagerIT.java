@@ -0,0 +1,66 @@
+package com.icoin.trading.tradeengine.application.command.admin;
+
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.annotation.Resource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("dev")
+@ContextConfiguration({"classpath:com/icoin/trading/tradeengine/infrastructure/persistence/mongo/tradeengine-persistence-mongo.xml"})
+@SuppressWarnings("SpringJavaAutowiringInspection")
+public class OrderIndexManagerIT {
+    @Resource(name = "trade.mongoTemplate")
+    private MongoTemplate mongoTemplate;
+
+    private OrderIndexManager indexManager;
+
+    @Before
+    public void setUp() throws Exception {
+        mongoTemplate.dropCollection(Order.class);
+
+        indexManager = new OrderIndexManager();
+        indexManager.setMongoTemplate(mongoTemplate);
+        indexManager.setVerifyOnStartup(false);
+    }
+
+    @Test
+    public void testMatchingQueriesUseIndexes() throws Exception {
+        //without the indexes every matching query scans the collection
+        mongoTemplate.createCollection(Order.class);
+        assertThat(indexManager.explainQueries(), is(6));
+
+        indexManager.ensureIndexes();
+
+        assertThat(indexManager.explainQueries(), is(0));
+    }
+
+    @Test
+    public void testPriceTimeIndexHasCurrency() throws Exception {
+        indexManager.ensureIndexes();
+
+        IndexInfo priceTime = null;
+        for (IndexInfo indexInfo : mongoTemplate.indexOps(Order.class).getIndexInfo()) {
+            if ("order_book_type_status_price_time_currency_idx".equals(indexInfo.getName())) {
+                priceTime = indexInfo;
+            }
+        }
+
+        assertThat(priceTime, notNullValue());
+        assertThat(priceTime.getIndexFields(), hasItem(IndexField.create("itemPrice.currency", Sort.Direction.ASC)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.icoin.trading.tradeengine.application.command.order.book;
+
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import static com.homhon.util.TimeUtils.currentTime;
+import static com.homhon.util.TimeUtils.futureMinute;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class InMemoryOrderBookTest {
+    private final OrderBookId orderBookId = new OrderBookId();
+    private final Date now = currentTime();
+
+    @Test
+    public void testSellOrdersInPriceTimePriority() throws Exception {
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(orderBookId);
+
+        Order sell1 = createOrder(OrderType.SELL, 10.5, futureMinute(now, 1));
+        Order sell2 = createOrder(OrderType.SELL, 10, futureMinute(now, 2));
+        Order sell3 = createOrder(OrderType.SELL, 10.5, futureMinute(now, 3));
+        Order sell4 = createOrder(OrderType.SELL, 11, futureMinute(now, 4));
+        orderBook.add(sell1);
+        orderBook.add(sell2);
+        orderBook.add(sell3);
+        orderBook.add(sell4);
+
+        List<Order> found = orderBook.findSellOrders(futureMinute(now, 10), money(10.5), 100);
+
+        assertThat(found, hasSize(3));
+        assertThat(found.get(0), sameInstance(sell2));
+        assertThat(found.get(1), sameInstance(sell1));
+        assertThat(found.get(2), sameInstance(sell3));
+        assertThat(orderBook.lowestSell(), sameInstance(sell2));
+
+        found = orderBook.findSellOrders(futureMinute(now, 2), money(11), 100);
+        assertThat(found, hasSize(2));
+
+        found = orderBook.findSellOrders(futureMinute(now, 10), money(11), 1);
+        assertThat(found, hasSize(1));
+    }
+
+    @Test
+    public void testBuyOrdersInPriceTimePriority() throws Exception {
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(orderBookId);
+
+        Order buy1 = createOrder(OrderType.BUY, 10, futureMinute(now, 1));
+        Order buy2 = createOrder(OrderType.BUY, 10.5, futureMinute(now, 2));
+        Order buy3 = createOrder(OrderType.BUY, 9, futureMinute(now, 3));
+        orderBook.add(buy1);
+        orderBook.add(buy2);
+        orderBook.add(buy3);
+
+        List<Order> found = orderBook.findBuyOrders(futureMinute(now, 10), money(10), 100);
+
+        assertThat(found, hasSize(2));
+        assertThat(found.get(0), sameInstance(buy2));
+        assertThat(found.get(1), sameInstance(buy1));
+        assertThat(orderBook.highestBuy(), sameInstance(buy2));
+    }
+
+    @Test
+    public void testTradedOrderRemoved() throws Exception {
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(orderBookId);
+
+        Order sell = createOrder(OrderType.SELL, 10, now);
+        orderBook.add(sell);
+        assertThat(orderBook.add(sell), is(false));
+        assertThat(orderBook.find(sell.getPrimaryKey()), sameInstance(sell));
+
+        sell.recordTraded(BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(0.5)), money(0), now);
+        orderBook.traded(sell);
+        assertThat(orderBook.size(), equalTo(1));
+
+        sell.recordTraded(BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(0.5)), money(0), now);
+        orderBook.traded(sell);
+        assertThat(orderBook.size(), equalTo(0));
+        assertThat(orderBook.find(sell.getPrimaryKey()), nullValue());
+        assertThat(orderBook.lowestSell(), nullValue());
+    }
+
+    @Test
+    public void testLevelsKeyedByScaledPrice() throws Exception {
+        InMemoryOrderBook orderBook = new InMemoryOrderBook(orderBookId);
+
+        Order sell1 = createOrder(OrderType.SELL, 10.5, futureMinute(now, 1));
+        Order sell2 = createOrder(OrderType.SELL, 10.5, futureMinute(now, 2));
+        //same price of another scale
+        sell2.setItemPrice(BigMoney.of(CurrencyUnit.CNY, new BigDecimal("10.50")));
+        orderBook.add(sell1);
+        orderBook.add(sell2);
+
+        assertThat(sell1.getScaledItemPrice(), equalTo(1050L));
+        assertThat(sell2.getScaledItemPrice(), equalTo(1050L));
+        assertThat(orderBook.findSellOrders(futureMinute(now, 10), 1050L, 100), hasSize(2));
+        assertThat(orderBook.findSellOrders(futureMinute(now, 10), 1049L, 100), hasSize(0));
+
+        orderBook.remove(sell1.getPrimaryKey());
+        assertThat(orderBook.lowestSell(), sameInstance(sell2));
+        orderBook.remove(sell2.getPrimaryKey());
+        assertThat(orderBook.lowestSell(), nullValue());
+    }
+
+    private BigMoney money(double amount) {
+        return BigMoney.of(CurrencyUnit.CNY, BigDecimal.valueOf(amount));
+    }
+
+    private Order createOrder(OrderType orderType, double price, Date placeDate) {
+        Order order = new Order(orderType);
+        order.setPrimaryKey(new OrderId().toString());
+        order.setOrderBookId(orderBookId);
+        order.setItemPrice(money(price));
+        order.setPlaceDate(placeDate);
+        order.setItemRemaining(BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.ONE));
+        order.setLeftCommission(money(1));
+        return order;
+    }
+}
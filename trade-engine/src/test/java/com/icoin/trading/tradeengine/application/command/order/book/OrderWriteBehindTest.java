@@ -0,0 +1,139 @@
+package com.icoin.trading.tradeengine.application.command.order.book;
+
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderFill;
+import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
+import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class OrderWriteBehindTest {
+    private final OrderBookId orderBookId = new OrderBookId();
+    private final OrderRepository orderRepository = mock(OrderRepository.class);
+
+    @Test
+    public void testCoalesceFillsPerOrder() throws Exception {
+        OrderWriteBehind writeBehind = new OrderWriteBehind(orderRepository, 16, 8, 50L);
+
+        Order buyOrder = createOrder(OrderType.BUY, 10);
+        Order sellOrder1 = createOrder(OrderType.SELL, 4);
+        Order sellOrder2 = createOrder(OrderType.SELL, 6);
+
+        trade(writeBehind, buyOrder, sellOrder1, 4);
+        trade(writeBehind, buyOrder, sellOrder2, 6);
+        assertThat(writeBehind.getBufferedFills(), equalTo(4));
+
+        assertThat(writeBehind.flush(), is(true));
+
+        ArgumentCaptor<OrderFill> captor = ArgumentCaptor.forClass(OrderFill.class);
+        verify(orderRepository, times(3)).updateTraded(captor.capture());
+
+        List<OrderFill> fills = captor.getAllValues();
+        OrderFill buyFill = fills.get(0);
+        assertThat(buyFill.getOrderId(), equalTo(buyOrder.getPrimaryKey()));
+        assertThat(buyFill.getFills(), equalTo(2));
+        assertThat(buyFill.getFillSequence(), equalTo(2L));
+        assertThat(buyFill.getItemRemaining().isZero(), is(true));
+        assertThat(buyFill.getLeftCommission().isEqual(btc(8)), is(true));
+        assertThat(buyFill.getOrderStatus(), equalTo(OrderStatus.DONE));
+
+        assertThat(fills.get(1).getOrderId(), equalTo(sellOrder1.getPrimaryKey()));
+        assertThat(fills.get(2).getOrderId(), equalTo(sellOrder2.getPrimaryKey()));
+        assertThat(writeBehind.getWrittenFills(), equalTo(4L));
+        assertThat(writeBehind.getWrittenUpdates(), equalTo(3L));
+        assertThat(writeBehind.getPendingOrders(), equalTo(0));
+    }
+
+    @Test
+    public void testKeepFillsWhenWriteFailed() throws Exception {
+        OrderWriteBehind writeBehind = new OrderWriteBehind(orderRepository, 16, 8, 50L);
+        Order buyOrder = createOrder(OrderType.BUY, 10);
+        Order sellOrder = createOrder(OrderType.SELL, 4);
+        trade(writeBehind, buyOrder, sellOrder, 4);
+
+        doThrow(new IllegalStateException("mongo is down")).when(orderRepository).updateTraded(any(OrderFill.class));
+
+        assertThat(writeBehind.flush(), is(false));
+        assertThat(writeBehind.getPendingOrders(), equalTo(2));
+        assertThat(writeBehind.getFailedUpdates(), equalTo(1L));
+    }
+
+    @Test
+    public void testRetryWritesStateAfterLatestFill() throws Exception {
+        OrderWriteBehind writeBehind = new OrderWriteBehind(orderRepository, 16, 8, 50L);
+        Order buyOrder = createOrder(OrderType.BUY, 10);
+        Order sellOrder = createOrder(OrderType.SELL, 10);
+        trade(writeBehind, buyOrder, sellOrder, 4);
+
+        //the first write may have reached mongo before failing, it is retried with the fill sequence it guards on
+        doThrow(new IllegalStateException("timed out")).doNothing().when(orderRepository).updateTraded(any(OrderFill.class));
+        assertThat(writeBehind.flush(), is(false));
+
+        trade(writeBehind, buyOrder, sellOrder, 5);
+        assertThat(writeBehind.flush(), is(true));
+
+        ArgumentCaptor<OrderFill> captor = ArgumentCaptor.forClass(OrderFill.class);
+        verify(orderRepository, times(3)).updateTraded(captor.capture());
+        OrderFill retried = captor.getAllValues().get(1);
+        assertThat(retried.getOrderId(), equalTo(buyOrder.getPrimaryKey()));
+        assertThat(retried.getFillSequence(), equalTo(2L));
+        assertThat(retried.getItemRemaining().isEqual(btc(1)), is(true));
+    }
+
+    @Test
+    public void testMergeKeepsLatestFill() throws Exception {
+        Order order = createOrder(OrderType.BUY, 10);
+        order.recordTraded(btc(4), btc(1), new Date());
+        OrderFill first = OrderFill.of(order);
+        order.recordTraded(btc(6), btc(1), new Date());
+        OrderFill second = OrderFill.of(order);
+
+        OrderFill merged = second.merge(first);
+
+        assertThat(merged.getFillSequence(), equalTo(2L));
+        assertThat(merged.getItemRemaining().isZero(), is(true));
+        assertThat(merged.getOrderStatus(), equalTo(OrderStatus.DONE));
+        assertThat(merged.getFills(), equalTo(2));
+    }
+
+    private void trade(OrderWriteBehind writeBehind, Order buyOrder, Order sellOrder, int amount) {
+        final Date tradedDate = new Date();
+        buyOrder.recordTraded(btc(amount), btc(amount / 5D), tradedDate);
+        sellOrder.recordTraded(btc(amount), btc(amount / 5D), tradedDate);
+
+        writeBehind.traded(OrderFill.of(buyOrder));
+        writeBehind.traded(OrderFill.of(sellOrder));
+    }
+
+    private Order createOrder(OrderType orderType, int amount) {
+        Order order = new Order(orderType);
+        order.setPrimaryKey(new OrderId().toString());
+        order.setOrderBookId(orderBookId);
+        order.setTradeAmount(btc(amount));
+        order.setItemRemaining(btc(amount));
+        order.setLeftCommission(btc(amount));
+        return order;
+    }
+
+    private BigMoney btc(double amount) {
+        return BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(amount));
+    }
+}
@@ -0,0 +1,92 @@
+package com.icoin.trading.tradeengine.application.command.order.dispatch;
+
+import com.google.common.collect.Lists;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class OrderRingBufferTest {
+    private final OrderBookId orderBookId = new OrderBookId();
+
+    @Test
+    public void testDrainInPublishedOrder() throws Exception {
+        OrderRingBuffer ringBuffer = new OrderRingBuffer(orderBookId, 6, WaitStrategies.BLOCKING.create());
+        assertThat(ringBuffer.getBufferSize(), equalTo(8));
+
+        Order order1 = createOrder();
+        Order order2 = createOrder();
+        Order order3 = createOrder();
+        ringBuffer.publish(order1);
+        ringBuffer.publish(order2);
+        ringBuffer.publish(order3);
+        assertThat(ringBuffer.getDepth(), equalTo(3L));
+
+        List<Order> batch = Lists.newArrayList();
+        assertThat(ringBuffer.drain(batch, 2), equalTo(2));
+        assertThat(batch.get(0), sameInstance(order1));
+        assertThat(batch.get(1), sameInstance(order2));
+
+        batch.clear();
+        assertThat(ringBuffer.drain(batch, 10), equalTo(1));
+        assertThat(batch.get(0), sameInstance(order3));
+        assertThat(ringBuffer.getDepth(), equalTo(0L));
+        assertThat(ringBuffer.getMaxBatchSize(), equalTo(2));
+        assertThat(ringBuffer.getLastBatchSize(), equalTo(1));
+
+        batch.clear();
+        assertThat(ringBuffer.drain(batch, 10), equalTo(0));
+    }
+
+    @Test(timeout = 30000L)
+    public void testProducersWrapAroundConsumer() throws Exception {
+        final OrderRingBuffer ringBuffer = new OrderRingBuffer(orderBookId, 4, WaitStrategies.YIELDING.create());
+        final int producers = 4;
+        final int perProducer = 500;
+
+        List<Thread> threads = Lists.newArrayList();
+        for (int i = 0; i < producers; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < perProducer; j++) {
+                            ringBuffer.publish(createOrder());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        List<Order> drained = Lists.newArrayList();
+        while (drained.size() < producers * perProducer) {
+            ringBuffer.drain(drained, 3);
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(drained, hasSize(producers * perProducer));
+        assertThat(ringBuffer.getDepth(), equalTo(0L));
+    }
+
+    private Order createOrder() {
+        Order order = new Order(OrderType.BUY);
+        order.setOrderBookId(orderBookId);
+        order.setPrimaryKey(new OrderId().toString());
+        return order;
+    }
+}
@@ -0,0 +1,250 @@
+package com.icoin.trading.tradeengine.application.command.order.handler;
+
+import com.google.common.collect.Lists;
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteBuyOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrdersCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteSellOrderCommand;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.tradeengine.events.order.OrderBookCreatedEvent;
+import com.icoin.trading.api.tradeengine.events.order.RefreshedHighestBuyPriceEvent;
+import com.icoin.trading.api.tradeengine.events.order.RefreshedLowestSellPriceEvent;
+import com.icoin.trading.tradeengine.application.command.order.BuyOrderExecutor;
+import com.icoin.trading.tradeengine.application.command.order.OrderBatchExecutor;
+import com.icoin.trading.tradeengine.application.command.order.OrderExecutorHelper;
+import com.icoin.trading.tradeengine.application.command.order.SellOrderExecutor;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBook;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
+import com.icoin.trading.tradeengine.domain.model.commission.Commission;
+import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicy;
+import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicyFactory;
+import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
+import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.axonframework.test.FixtureConfiguration;
+import org.axonframework.test.Fixtures;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrderBatchExecutorIT {
+    private OrderBookId orderBookId = new OrderBookId();
+    private OrderId highestBuyOrderId = new OrderId();
+    private OrderId lowestSellOrderId = new OrderId();
+    private BigMoney tradeAmount = BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(100.009));
+    private BigMoney lowestSellPrice = BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.03));
+    private BigMoney highestBuyPrice = BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.01));
+    private LocalDate placeDate = LocalDate.now();
+
+    private FixtureConfiguration fixture;
+    private OrderExecutorHelper helper;
+    private OrderRepository orderRepository = mock(OrderRepository.class);
+    private CommissionPolicyFactory commissionPolicyFactory = mock(CommissionPolicyFactory.class);
+
+    @Before
+    public void setUp() throws Exception {
+        fixture = Fixtures.newGivenWhenThenFixture(OrderBook.class);
+
+        helper = new OrderExecutorHelper();
+        helper.setOrderRepository(orderRepository);
+        helper.setCommissionPolicyFactory(commissionPolicyFactory);
+
+        BuyOrderExecutor buyOrderExecutor = new BuyOrderExecutor();
+        buyOrderExecutor.setOrderBookRepository(fixture.getRepository());
+        buyOrderExecutor.setOrderExecutorHelper(helper);
+
+        SellOrderExecutor sellOrderExecutor = new SellOrderExecutor();
+        sellOrderExecutor.setOrderBookRepository(fixture.getRepository());
+        sellOrderExecutor.setOrderExecutorHelper(helper);
+
+        OrderBatchExecutor commandHandler = new OrderBatchExecutor();
+        commandHandler.setOrderBookRepository(fixture.getRepository());
+        commandHandler.setBuyOrderExecutor(buyOrderExecutor);
+        commandHandler.setSellOrderExecutor(sellOrderExecutor);
+        fixture.registerAnnotatedCommandHandler(commandHandler);
+    }
+
+    @Test
+    public void testExecuteOrdersNotBetterThanTopOfBook() throws Exception {
+        ExecuteOrdersCommand command = new ExecuteOrdersCommand(orderBookId,
+                Arrays.<ExecuteOrderCommand>asList(
+                        createBuyCommand(BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.0))),
+                        createSellCommand(BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.05)))));
+
+        fixture.given(
+                new OrderBookCreatedEvent(
+                        orderBookId,
+                        new CurrencyPair("BTC", "AUD")),
+                new RefreshedHighestBuyPriceEvent(
+                        orderBookId,
+                        highestBuyOrderId.toString(),
+                        highestBuyPrice),
+                new RefreshedLowestSellPriceEvent(
+                        orderBookId,
+                        lowestSellOrderId.toString(),
+                        lowestSellPrice))
+                .when(command)
+                .expectEvents();
+    }
+
+    @Test
+    public void testExecuteOrdersInOneUnitOfWork() throws Exception {
+        BigMoney buyPrice = BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.02));
+        BigMoney sellPrice = BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.025));
+        ExecuteBuyOrderCommand buyCommand = createBuyCommand(buyPrice);
+        ExecuteSellOrderCommand sellCommand = createSellCommand(sellPrice);
+
+        ExecuteOrdersCommand command = new ExecuteOrdersCommand(orderBookId,
+                Arrays.<ExecuteOrderCommand>asList(buyCommand, sellCommand));
+
+        fixture.given(
+                new OrderBookCreatedEvent(
+                        orderBookId,
+                        new CurrencyPair("BTC", "AUD")),
+                new RefreshedHighestBuyPriceEvent(
+                        orderBookId,
+                        highestBuyOrderId.toString(),
+                        highestBuyPrice),
+                new RefreshedLowestSellPriceEvent(
+                        orderBookId,
+                        lowestSellOrderId.toString(),
+                        lowestSellPrice))
+                .when(command)
+                .expectEvents(
+                        new RefreshedHighestBuyPriceEvent(
+                                orderBookId,
+                                buyCommand.getOrderId().toString(),
+                                buyPrice),
+                        new RefreshedLowestSellPriceEvent(
+                                orderBookId,
+                                sellCommand.getOrderId().toString(),
+                                sellPrice));
+    }
+
+    @Test
+    public void testFailingOrderRollsBackBatch() throws Exception {
+        final BigMoney orderAmount = BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.TEN);
+        final BigMoney zero = BigMoney.zero(CurrencyUnit.AUD);
+        final ExecuteSellOrderCommand failingCommand = createSellCommand(BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.0)));
+        final ExecuteSellOrderCommand otherCommand = createSellCommand(BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.0)));
+
+        //the second resident buy order cannot be charged, the failing sell order fails after trading the first one
+        OrderRepository residentOrderRepository = mock(OrderRepository.class);
+        when(residentOrderRepository.findPendingOrders(eq(orderBookId))).thenReturn(
+                residentOrders(failingCommand, otherCommand, orderAmount, zero),
+                residentOrders(failingCommand, otherCommand, orderAmount, zero));
+        InMemoryOrderBooks inMemoryOrderBooks = new InMemoryOrderBooks(residentOrderRepository);
+        inMemoryOrderBooks.rebuild(Arrays.asList(orderBookId));
+
+        CommissionPolicy policy = mock(CommissionPolicy.class);
+        when(commissionPolicyFactory.createCommissionPolicy(any(Order.class))).thenReturn(policy);
+        when(policy.calculateSellCommission(any(Order.class), any(BigMoney.class), any(BigMoney.class)))
+                .thenReturn(new Commission(zero, "sell"));
+        when(policy.calculateBuyCommission(any(Order.class), any(BigMoney.class), any(BigMoney.class)))
+                .thenAnswer(new Answer<Commission>() {
+                    @Override
+                    public Commission answer(InvocationOnMock invocation) throws Throwable {
+                        if ("buyOrder2".equals(((Order) invocation.getArguments()[0]).getPrimaryKey())) {
+                            throw new IllegalStateException("no commission policy for buyOrder2");
+                        }
+                        return new Commission(BigMoney.zero(CurrencyUnit.AUD), "buy");
+                    }
+                });
+        helper.setOrderRepository(residentOrderRepository);
+        helper.setInMemoryOrderBooks(inMemoryOrderBooks);
+
+        fixture.given(
+                new OrderBookCreatedEvent(
+                        orderBookId,
+                        new CurrencyPair("BTC", "AUD")),
+                new RefreshedHighestBuyPriceEvent(
+                        orderBookId,
+                        highestBuyOrderId.toString(),
+                        highestBuyPrice),
+                new RefreshedLowestSellPriceEvent(
+                        orderBookId,
+                        lowestSellOrderId.toString(),
+                        lowestSellPrice))
+                .when(new ExecuteOrdersCommand(orderBookId,
+                        Arrays.<ExecuteOrderCommand>asList(failingCommand, otherCommand)))
+                .expectException(IllegalStateException.class)
+                .expectEvents();
+
+        //the first trade of the failing order is rolled back, the other orders are left as they were
+        InMemoryOrderBook orderBook = inMemoryOrderBooks.get(orderBookId);
+        assertThat(orderBook.size(), is(4));
+        assertThat(orderBook.find("buyOrder1").getItemRemaining(), equalTo(orderAmount));
+        assertThat(orderBook.find(failingCommand.getOrderId().toString()).getItemRemaining(), equalTo(orderAmount.multipliedBy(2)));
+        assertThat(orderBook.find(otherCommand.getOrderId().toString()).getItemRemaining(), equalTo(orderAmount));
+        verify(residentOrderRepository, never()).save(any(Order.class));
+    }
+
+    private List<Order> residentOrders(ExecuteSellOrderCommand failingCommand,
+                                       ExecuteSellOrderCommand otherCommand,
+                                       BigMoney amount,
+                                       BigMoney commission) {
+        return Lists.newArrayList(
+                residentOrder(OrderType.BUY, "buyOrder1", highestBuyPrice, amount, commission),
+                residentOrder(OrderType.BUY, "buyOrder2", highestBuyPrice.minus(BigDecimal.valueOf(0.005)), amount, commission),
+                residentOrder(OrderType.SELL, failingCommand.getOrderId().toString(), failingCommand.getItemPrice(), amount.multipliedBy(2), commission),
+                residentOrder(OrderType.SELL, otherCommand.getOrderId().toString(), otherCommand.getItemPrice(), amount, commission));
+    }
+
+    private Order residentOrder(OrderType orderType, String orderId, BigMoney price, BigMoney amount, BigMoney commission) {
+        Order order = new Order(orderType);
+        order.setPrimaryKey(orderId);
+        order.setOrderBookId(orderBookId);
+        order.setItemPrice(price);
+        order.setTradeAmount(amount);
+        order.setItemRemaining(amount);
+        order.setLeftCommission(commission);
+        order.setPlaceDate(new Date(0L));
+        return order;
+    }
+
+    private ExecuteBuyOrderCommand createBuyCommand(BigMoney price) {
+        return new ExecuteBuyOrderCommand(
+                new OrderId(),
+                new PortfolioId(),
+                orderBookId,
+                new TransactionId(),
+                tradeAmount,
+                price,
+                placeDate.toDate());
+    }
+
+    private ExecuteSellOrderCommand createSellCommand(BigMoney price) {
+        return new ExecuteSellOrderCommand(
+                new OrderId(),
+                new PortfolioId(),
+                orderBookId,
+                new TransactionId(),
+                tradeAmount,
+                price,
+                placeDate.toDate());
+    }
+}
@@ -6,6 +6,7 @@ import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.domain.OrderId;
 import com.icoin.trading.tradeengine.Constants;
 import com.icoin.trading.tradeengine.application.command.order.OrderExecutorHelper;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
 import com.icoin.trading.tradeengine.domain.model.coin.Currencies;
 import com.icoin.trading.tradeengine.domain.model.commission.Commission;
 import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicy;
@@ -14,6 +15,8 @@ import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
 import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
 import com.icoin.trading.tradeengine.domain.model.order.OrderType;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.joda.time.LocalDate;
@@ -30,10 +33,12 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -210,6 +215,39 @@ public class OrderExecutorHelperTest {
         verify(orderRepository).findHighestPricePendingBuyOrder(eq(orderBookId));
     }
 
+    @Test
+    public void testRefreshFromResidentOrderBook() throws Exception {
+        OrderBookId orderBookId = new OrderBookId();
+        BigMoney lowestSellPrice = BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(100.23));
+        BigMoney highestBuyPrice = lowestSellPrice.minus(1);
+
+        OrderBook orderBook = mock(OrderBook.class);
+        when(orderBook.getOrderBookId()).thenReturn(orderBookId);
+        when(orderBook.getCurrencyPair()).thenReturn(new CurrencyPair(Currencies.BTC, Currencies.AUD));
+
+        List<Order> buyOrders = createBuyOrders(highestBuyPrice.minus(BigDecimal.ONE), highestBuyPrice);
+        List<Order> sellOrders = createSellOrders(lowestSellPrice.plus(BigDecimal.ONE), lowestSellPrice);
+        List<Order> pendingOrders = Lists.newArrayList(buyOrders);
+        pendingOrders.addAll(sellOrders);
+
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        when(orderRepository.findPendingOrders(eq(orderBookId))).thenReturn(pendingOrders);
+        InMemoryOrderBooks inMemoryOrderBooks = new InMemoryOrderBooks(orderRepository);
+        inMemoryOrderBooks.rebuild(Lists.newArrayList(orderBookId));
+
+        OrderExecutorHelper helper = new OrderExecutorHelper();
+        helper.setOrderRepository(orderRepository);
+        helper.setInMemoryOrderBooks(inMemoryOrderBooks);
+
+        helper.refresh(orderBook);
+
+        verify(orderBook).resetHighestBuyPrice(buyOrders.get(1).getPrimaryKey(), highestBuyPrice);
+        verify(orderBook).resetLowestSellPrice(sellOrders.get(1).getPrimaryKey(), lowestSellPrice);
+
+        verify(orderRepository, never()).findLowestPricePendingSellOrder(any(OrderBookId.class));
+        verify(orderRepository, never()).findHighestPricePendingBuyOrder(any(OrderBookId.class));
+    }
+
     @Test
     public void testRefreshWithoutOrders() throws Exception {
         OrderBookId orderBookId = new OrderBookId();
@@ -276,6 +314,89 @@ public class OrderExecutorHelperTest {
         verify(orderRepository).save(eq(sellOrder));
     }
 
+    @Test
+    public void testResidentOrderBookRebuiltOnRollback() throws Exception {
+        OrderBookId orderBookId = new OrderBookId();
+        BigMoney tradeAmount = BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(10));
+        BigMoney price = BigMoney.of(CurrencyUnit.of("CNY"), BigDecimal.valueOf(100));
+        BigMoney commission = BigMoney.of(CurrencyUnit.of("CNY"), BigDecimal.valueOf(1));
+
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        when(orderRepository.findPendingOrders(eq(orderBookId))).thenReturn(
+                Lists.newArrayList(residentOrder(OrderType.BUY, "buyOrder", orderBookId, price, tradeAmount, commission),
+                        residentOrder(OrderType.SELL, "sellOrder", orderBookId, price, tradeAmount, commission)),
+                Lists.newArrayList(residentOrder(OrderType.BUY, "buyOrder", orderBookId, price, tradeAmount, commission),
+                        residentOrder(OrderType.SELL, "sellOrder", orderBookId, price, tradeAmount, commission)));
+        InMemoryOrderBooks inMemoryOrderBooks = new InMemoryOrderBooks(orderRepository);
+        inMemoryOrderBooks.rebuild(Lists.newArrayList(orderBookId));
+
+        OrderExecutorHelper helper = new OrderExecutorHelper();
+        helper.setOrderRepository(orderRepository);
+        helper.setInMemoryOrderBooks(inMemoryOrderBooks);
+
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        Order buyOrder = helper.findBuyOrder(orderBookId, new OrderId("buyOrder"));
+        Order sellOrder = helper.findSellOrder(orderBookId, new OrderId("sellOrder"));
+        helper.recordTraded(buyOrder, sellOrder, commission, commission, tradeAmount, price, new Date());
+
+        //fully traded orders leave the book at once, they are not written before commit
+        assertThat(inMemoryOrderBooks.get(orderBookId).size(), is(0));
+        verify(orderRepository, never()).save(any(Order.class));
+
+        unitOfWork.rollback();
+
+        assertThat(inMemoryOrderBooks.get(orderBookId).size(), is(2));
+        assertThat(helper.findBuyOrder(orderBookId, new OrderId("buyOrder")).getItemRemaining(), equalTo(tradeAmount));
+        verify(orderRepository, never()).save(any(Order.class));
+    }
+
+    @Test
+    public void testResidentOrdersWrittenAfterCommit() throws Exception {
+        OrderBookId orderBookId = new OrderBookId();
+        BigMoney tradeAmount = BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(10));
+        BigMoney price = BigMoney.of(CurrencyUnit.of("CNY"), BigDecimal.valueOf(100));
+        BigMoney commission = BigMoney.of(CurrencyUnit.of("CNY"), BigDecimal.valueOf(1));
+
+        Order buyOrder = residentOrder(OrderType.BUY, "buyOrder", orderBookId, price, tradeAmount.multipliedBy(2), commission);
+        Order sellOrder = residentOrder(OrderType.SELL, "sellOrder", orderBookId, price, tradeAmount, commission);
+        OrderRepository orderRepository = mock(OrderRepository.class);
+        when(orderRepository.findPendingOrders(eq(orderBookId))).thenReturn(Lists.newArrayList(buyOrder, sellOrder));
+        InMemoryOrderBooks inMemoryOrderBooks = new InMemoryOrderBooks(orderRepository);
+        inMemoryOrderBooks.rebuild(Lists.newArrayList(orderBookId));
+
+        OrderExecutorHelper helper = new OrderExecutorHelper();
+        helper.setOrderRepository(orderRepository);
+        helper.setInMemoryOrderBooks(inMemoryOrderBooks);
+
+        UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        helper.recordTraded(buyOrder, sellOrder, commission, commission, tradeAmount, price, new Date());
+        verify(orderRepository, never()).save(any(Order.class));
+
+        unitOfWork.commit();
+
+        verify(orderRepository).save(eq(buyOrder));
+        verify(orderRepository).save(eq(sellOrder));
+        assertThat(inMemoryOrderBooks.get(orderBookId).find("buyOrder"), is(buyOrder));
+        assertThat(inMemoryOrderBooks.get(orderBookId).find("sellOrder"), nullValue());
+    }
+
+    private static Order residentOrder(OrderType orderType,
+                                       String orderId,
+                                       OrderBookId orderBookId,
+                                       BigMoney price,
+                                       BigMoney amount,
+                                       BigMoney commission) {
+        Order order = new Order(orderType);
+        order.setPrimaryKey(orderId);
+        order.setOrderBookId(orderBookId);
+        order.setItemPrice(price);
+        order.setTradeAmount(amount);
+        order.setItemRemaining(amount);
+        order.setLeftCommission(commission);
+        order.setPlaceDate(new Date(0L));
+        return order;
+    }
+
     @Test
     public void testCalcExecutedBuyCommission() throws Exception {
         final BigMoney price = BigMoney.of(CurrencyUnit.of(Currencies.CNY), 100);
@@ -2,9 +2,12 @@ package com.icoin.trading.tradeengine.application.command.order.handler;
 
 
 import com.google.common.collect.Lists;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrderCommand;
+import com.icoin.trading.api.tradeengine.command.order.ExecuteOrdersCommand;
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.domain.OrderId;
 import com.icoin.trading.tradeengine.application.command.order.QueuedTradeExecutor;
+import com.icoin.trading.tradeengine.application.command.order.book.InMemoryOrderBooks;
 import com.icoin.trading.tradeengine.domain.TradingSystemService;
 import com.icoin.trading.tradeengine.domain.model.admin.TradingSystemStatus;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
@@ -12,24 +15,31 @@ import com.icoin.trading.tradeengine.domain.model.order.OrderRepository;
 import com.icoin.trading.tradeengine.domain.model.order.OrderType;
 import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import org.axonframework.commandhandling.CommandCallback;
 import org.axonframework.commandhandling.gateway.CommandGateway;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.homhon.util.TimeUtils.currentTime;
 import static com.homhon.util.TimeUtils.futureMinute;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.eq;
@@ -55,18 +65,29 @@ public class QueuedTradeExecutorTest {
     private OrderRepository orderRepository = mock(OrderRepository.class);
     private final Random random = new Random();
     private volatile int count = 0;
+    private volatile int sent = 0;
+    private volatile int sentBatches = 0;
     private TradingSystemStatus goodTradingStatus = new TradingSystemStatus();
 
     @Before
     public void setUp() throws Exception {
-        doAnswer(new Answer() {
+        final Answer send = new Answer() {
             @Override
             public synchronized Object answer(InvocationOnMock invocation) throws Throwable {
                 TimeUnit.MILLISECONDS.sleep(10 + random.nextInt(20));
-                count++;
+                final Object command = invocation.getArguments()[0];
+                count += command instanceof ExecuteOrdersCommand ? ((ExecuteOrdersCommand) command).size() : 1;
+                if (invocation.getArguments().length > 1) {
+                    sentBatches++;
+                    ((CommandCallback) invocation.getArguments()[1]).onSuccess(null);
+                } else {
+                    sent++;
+                }
                 return null;
             }
-        }).when(commandGateway).send(anyObject());
+        };
+        doAnswer(send).when(commandGateway).send(anyObject());
+        doAnswer(send).when(commandGateway).send(anyObject(), any(CommandCallback.class));
     }
 
     @Test(timeout = 30000L)
@@ -99,7 +120,8 @@ public class QueuedTradeExecutorTest {
 
         assertThat(count, equalTo(sellOrderQuantity + buyOrderQuantity));
 
-        verify(commandGateway, times(count)).send(anyObject());
+        verify(commandGateway, times(sent)).send(anyObject());
+        verify(commandGateway, times(sentBatches)).send(anyObject(), any(CommandCallback.class));
         verify(tradingSystemService, times(count)).currentStatus();
     }
 
@@ -156,7 +178,8 @@ public class QueuedTradeExecutorTest {
 
         assertThat(count, equalTo(sellOrderQuantity + buyOrderQuantity + 10));
 
-        verify(commandGateway, times(count)).send(anyObject());
+        verify(commandGateway, times(sent)).send(anyObject());
+        verify(commandGateway, times(sentBatches)).send(anyObject(), any(CommandCallback.class));
         verify(tradingSystemService, times(count)).currentStatus();
     }
 
@@ -232,10 +255,122 @@ public class QueuedTradeExecutorTest {
         }
         assertThat(count, equalTo(sellOrderQuantity + buyOrderQuantity + preCount + 10));
 
-        verify(commandGateway, times(count)).send(anyObject());
+        verify(commandGateway, times(sent)).send(anyObject());
+        verify(commandGateway, times(sentBatches)).send(anyObject(), any(CommandCallback.class));
         verify(tradingSystemService, times(count)).currentStatus();
     }
 
+    @Test(timeout = 30000L)
+    public void testFailedBatchExecutedOneByOne() throws Exception {
+        final CountDownLatch executing = new CountDownLatch(1);
+        final CountDownLatch queued = new CountDownLatch(1);
+        final List<Object> executed = Collections.synchronizedList(new ArrayList<Object>());
+        final CommandGateway failingGateway = mock(CommandGateway.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                executed.add(invocation.getArguments()[0]);
+                executing.countDown();
+                queued.await();
+                return null;
+            }
+        }).when(failingGateway).send(anyObject());
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                ((CommandCallback) invocation.getArguments()[1]).onFailure(new IllegalStateException("order failed"));
+                return null;
+            }
+        }).when(failingGateway).send(any(ExecuteOrdersCommand.class), any(CommandCallback.class));
+
+        when(tradingSystemService.currentStatus()).thenReturn(goodTradingStatus);
+        when(orderBookQueryRepository.findAll()).thenReturn(createOrderBooks(orderBookId));
+        final QueuedTradeExecutor executor =
+                new QueuedTradeExecutor(orderBookQueryRepository,
+                        failingGateway,
+                        orderRepository,
+                        tradingSystemService);
+
+        final List<Order> orders = createOrders(4, orderBookId);
+        executor.execute(orders.get(0));
+        executing.await();
+        //queued while the consumer is busy, drained as one batch
+        for (Order order : orders.subList(1, 4)) {
+            executor.execute(order);
+        }
+        queued.countDown();
+
+        while (executed.size() < 4) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+
+        verify(failingGateway).send(any(ExecuteOrdersCommand.class), any(CommandCallback.class));
+        verify(failingGateway, times(4)).send(anyObject());
+        for (int i = 0; i < 4; i++) {
+            assertThat(((ExecuteOrderCommand) executed.get(i)).getOrderId().toString(),
+                    equalTo(orders.get(i).getPrimaryKey()));
+        }
+    }
+
+    @Test(timeout = 30000L)
+    public void testReinitializeWaitsForConsumers() throws Exception {
+        final CountDownLatch executing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean consuming = new AtomicBoolean();
+        final CommandGateway blockingGateway = mock(CommandGateway.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                consuming.set(true);
+                executing.countDown();
+                release.await();
+                consuming.set(false);
+                return null;
+            }
+        }).when(blockingGateway).send(anyObject());
+
+        final List<Boolean> consumingAtRebuild = Collections.synchronizedList(new ArrayList<Boolean>());
+        final InMemoryOrderBooks inMemoryOrderBooks = mock(InMemoryOrderBooks.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                consumingAtRebuild.add(consuming.get());
+                return null;
+            }
+        }).when(inMemoryOrderBooks).rebuild(Matchers.<Iterable<OrderBookId>>any());
+
+        when(tradingSystemService.currentStatus()).thenReturn(goodTradingStatus);
+        when(orderBookQueryRepository.findAll()).thenReturn(createOrderBooks(orderBookId));
+        final QueuedTradeExecutor executor =
+                new QueuedTradeExecutor(orderBookQueryRepository,
+                        blockingGateway,
+                        orderRepository,
+                        tradingSystemService,
+                        inMemoryOrderBooks,
+                        "BLOCKING",
+                        QueuedTradeExecutor.DEFAULT_BUFFER_SIZE,
+                        QueuedTradeExecutor.DEFAULT_BATCH_SIZE);
+
+        executor.execute(createOrders(1, orderBookId).get(0));
+        executing.await();
+
+        final Thread reinitialize = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                executor.reinitialize();
+            }
+        });
+        reinitialize.start();
+
+        //the consumer is still executing its order, the books cannot be rebuilt yet
+        reinitialize.join(500L);
+        assertThat(reinitialize.isAlive(), is(true));
+
+        release.countDown();
+        reinitialize.join();
+        assertThat(consumingAtRebuild, contains(false, false));
+    }
+
     @Test(timeout = 60000L)
     public void testHaltWithoutResolvingNotExecuted() throws Exception {
         final int sellOrderQuantity = random.nextInt(10);
@@ -279,7 +414,8 @@ public class QueuedTradeExecutorTest {
 
         assertThat(count, equalTo(sellOrderQuantity + buyOrderQuantity - executed));
 
-        verify(commandGateway, times(count)).send(anyObject());
+        verify(commandGateway, times(sent)).send(anyObject());
+        verify(commandGateway, times(sentBatches)).send(anyObject(), any(CommandCallback.class));
         verify(tradingSystemService, times(sellOrderQuantity + buyOrderQuantity)).currentStatus();
     }
 
@@ -352,7 +488,8 @@ public class QueuedTradeExecutorTest {
 
         assertThat(count, equalTo(sellOrderQuantity + buyOrderQuantity - executed + 105));
 
-        verify(commandGateway, times(count)).send(anyObject());
+        verify(commandGateway, times(sent)).send(anyObject());
+        verify(commandGateway, times(sentBatches)).send(anyObject(), any(CommandCallback.class));
         verify(tradingSystemService, times(sellOrderQuantity + buyOrderQuantity + 105)).currentStatus();
     }
 
@@ -423,7 +560,8 @@ public class QueuedTradeExecutorTest {
 
         assertThat(count, equalTo(sellOrderQuantity + buyOrderQuantity - executed + 105));
 
-        verify(commandGateway, times(count)).send(anyObject());
+        verify(commandGateway, times(sent)).send(anyObject());
+        verify(commandGateway, times(sentBatches)).send(anyObject(), any(CommandCallback.class));
         verify(tradingSystemService, times(sellOrderQuantity + buyOrderQuantity + 105)).currentStatus();
     }
 
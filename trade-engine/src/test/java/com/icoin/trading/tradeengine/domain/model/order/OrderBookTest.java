@@ -0,0 +1,46 @@
+package com.icoin.trading.tradeengine.domain.model.order;
+
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class OrderBookTest {
+    private final String buyOrderId = new OrderId().toString();
+    private final String sellOrderId = new OrderId().toString();
+
+    @Test
+    public void testResetOnlyWhenTopMoved() throws Exception {
+        OrderBook orderBook = new OrderBook(new OrderBookId(), new CurrencyPair("BTC", "AUD"));
+        assertThat(orderBook.getUncommittedEventCount(), equalTo(1));
+
+        orderBook.resetHighestBuyPrice(buyOrderId, aud(100.01));
+        orderBook.resetLowestSellPrice(sellOrderId, aud(100.03));
+        assertThat(orderBook.getUncommittedEventCount(), equalTo(3));
+
+        //same order at the same price, scale ignored
+        orderBook.resetHighestBuyPrice(buyOrderId, aud(100.010));
+        orderBook.resetLowestSellPrice(sellOrderId, BigMoney.of(CurrencyUnit.AUD, new BigDecimal("100.0300")));
+        assertThat(orderBook.getUncommittedEventCount(), equalTo(3));
+
+        //another order at the same price
+        orderBook.resetHighestBuyPrice(new OrderId().toString(), aud(100.01));
+        assertThat(orderBook.getUncommittedEventCount(), equalTo(4));
+
+        //same order at another price
+        orderBook.resetLowestSellPrice(sellOrderId, aud(100.02));
+        assertThat(orderBook.getUncommittedEventCount(), equalTo(5));
+        assertThat(orderBook.getLowestSellPrice(), equalTo(aud(100.02)));
+    }
+
+    private BigMoney aud(double amount) {
+        return BigMoney.of(CurrencyUnit.AUD, BigDecimal.valueOf(amount));
+    }
+}
@@ -0,0 +1,102 @@
+package com.icoin.trading.tradeengine.infrastructure.cache;
+
+import com.icoin.trading.tradeengine.infrastructure.commandhandling.CommandBusConfiguration;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.jcache.JCache;
+import org.axonframework.eventhandling.EventBus;
+import org.axonframework.eventsourcing.Snapshotter;
+import org.axonframework.eventstore.EventStore;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.util.ReflectionTestUtils.getField;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+public class AggregateCachesTest {
+    private static CacheManager cacheManager;
+
+    private AggregateCaches aggregateCaches;
+
+    @BeforeClass
+    public static void createCacheManager() throws Exception {
+        cacheManager = new CacheManager(AggregateCachesTest.class.getResource("/ehcache.xml"));
+    }
+
+    @AfterClass
+    public static void shutdownCacheManager() throws Exception {
+        cacheManager.shutdown();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cacheManager.clearAll();
+        aggregateCaches = new AggregateCaches();
+        aggregateCaches.setCacheManager(cacheManager);
+        aggregateCaches.clearStatistics();
+    }
+
+    @Test
+    public void testEachRepositoryHasItsOwnRegion() throws Exception {
+        final JCache orderBookCache = new JCache(cacheManager.getEhcache("orderBookCache"));
+        final JCache portfolioCache = new JCache(cacheManager.getEhcache("portfolioCache"));
+        final JCache transactionCache = new JCache(cacheManager.getEhcache("transactionCache"));
+
+        final CommandBusConfiguration configuration = new CommandBusConfiguration();
+        setField(configuration, "eventStore", mock(EventStore.class));
+        setField(configuration, "eventBus", mock(EventBus.class));
+        setField(configuration, "snapshotter", mock(Snapshotter.class));
+        setField(configuration, "aggregateCaches", aggregateCaches);
+        setField(configuration, "orderBookCache", orderBookCache);
+        setField(configuration, "portfolioCache", portfolioCache);
+        setField(configuration, "transactionCache", transactionCache);
+        setField(configuration, "snapshotMinEvents", 20);
+        setField(configuration, "snapshotTargetReloadMillis", 20L);
+        setField(configuration, "snapshotMaxTrackedAggregates", 1000);
+        setField(configuration, "orderBookSnapshotMaxEvents", 500);
+        setField(configuration, "portfolioSnapshotMaxEvents", 200);
+        setField(configuration, "transactionSnapshotMaxEvents", 200);
+
+        assertThat(getField(configuration.orderBookRepository(), "cache"), sameInstance((Object) orderBookCache));
+        assertThat(getField(configuration.portfolioRepository(), "cache"), sameInstance((Object) portfolioCache));
+        assertThat(getField(configuration.transactionRepository(), "cache"), sameInstance((Object) transactionCache));
+
+        assertThat(aggregateCaches.getLoads(), hasKey("orderBookCache"));
+        assertThat(aggregateCaches.getLoads(), hasKey("portfolioCache"));
+        assertThat(aggregateCaches.getLoads(), hasKey("transactionCache"));
+    }
+
+    @Test
+    public void testRegionsConfiguredPerAggregateType() throws Exception {
+        assertThat(cacheManager.getEhcache("orderBookCache").getCacheConfiguration().isEternal(), is(true));
+        assertThat(cacheManager.getEhcache("coinCache").getCacheConfiguration().isEternal(), is(true));
+        assertThat(cacheManager.getEhcache("portfolioCache").getCacheConfiguration().getTimeToIdleSeconds(), is(1800L));
+        assertThat(cacheManager.getEhcache("userCache").getCacheConfiguration().getTimeToIdleSeconds(), is(1800L));
+        assertThat(cacheManager.getEhcache("transactionCache").getCacheConfiguration().getTimeToIdleSeconds(), is(600L));
+    }
+
+    @Test
+    public void testEntriesEvictedBeyondTheBound() throws Exception {
+        final Ehcache transactionCache = cacheManager.getEhcache("transactionCache");
+        final long maxEntries = transactionCache.getCacheConfiguration().getMaxEntriesLocalHeap();
+
+        for (int i = 0; i <= maxEntries; i++) {
+            transactionCache.put(new Element("transaction-" + i, i));
+        }
+
+        assertThat((long) transactionCache.getSize(), lessThanOrEqualTo(maxEntries));
+        assertThat(aggregateCaches.getEvictions().get("transactionCache"), greaterThan(0L));
+        assertThat(aggregateCaches.getEvictions().get("portfolioCache"), is(0L));
+        assertThat(aggregateCaches.getSizes().get("transactionCache"), lessThanOrEqualTo(maxEntries));
+    }
+}
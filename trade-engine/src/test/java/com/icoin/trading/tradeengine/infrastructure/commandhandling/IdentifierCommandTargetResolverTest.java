@@ -0,0 +1,77 @@
+package com.icoin.trading.tradeengine.infrastructure.commandhandling;
+
+import com.google.common.collect.ImmutableList;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import org.axonframework.commandhandling.VersionedAggregateIdentifier;
+import org.axonframework.commandhandling.annotation.TargetAggregateIdentifier;
+import org.junit.Test;
+
+import static org.axonframework.commandhandling.GenericCommandMessage.asCommandMessage;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class IdentifierCommandTargetResolverTest {
+    private final IdentifierCommandTargetResolver resolver =
+            new IdentifierCommandTargetResolver(ImmutableList.of("getPortfolioIdentifier", "getPortfolioId"));
+
+    @Test
+    public void testResolvesAnnotatedTarget() throws Exception {
+        final OrderBookId orderBookId = new OrderBookId();
+        final PortfolioId portfolioId = new PortfolioId();
+
+        final VersionedAggregateIdentifier target =
+                resolver.resolveTarget(asCommandMessage(new AnnotatedCommand(orderBookId, portfolioId)));
+
+        assertThat(target.getIdentifier(), equalTo((Object) orderBookId));
+        assertThat(target.getVersion(), nullValue());
+    }
+
+    @Test
+    public void testResolvesTargetFromGetter() throws Exception {
+        final PortfolioId portfolioId = new PortfolioId();
+
+        final VersionedAggregateIdentifier target =
+                resolver.resolveTarget(asCommandMessage(new PortfolioCommand(portfolioId)));
+
+        assertThat(target.getIdentifier(), equalTo((Object) portfolioId));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNullTarget() throws Exception {
+        resolver.resolveTarget(asCommandMessage(new PortfolioCommand(null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsCommandWithoutTarget() throws Exception {
+        resolver.resolveTarget(asCommandMessage("no target"));
+    }
+
+    private static class AnnotatedCommand {
+        @TargetAggregateIdentifier
+        private final OrderBookId orderBookId;
+        private final PortfolioId portfolioId;
+
+        private AnnotatedCommand(OrderBookId orderBookId, PortfolioId portfolioId) {
+            this.orderBookId = orderBookId;
+            this.portfolioId = portfolioId;
+        }
+
+        public PortfolioId getPortfolioIdentifier() {
+            return portfolioId;
+        }
+    }
+
+    private static class PortfolioCommand {
+        private final PortfolioId portfolioId;
+
+        private PortfolioCommand(PortfolioId portfolioId) {
+            this.portfolioId = portfolioId;
+        }
+
+        public PortfolioId getPortfolioId() {
+            return portfolioId;
+        }
+    }
+}
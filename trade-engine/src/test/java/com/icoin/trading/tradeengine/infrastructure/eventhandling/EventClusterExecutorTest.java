@@ -0,0 +1,77 @@
+package com.icoin.trading.tradeengine.infrastructure.eventhandling;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+public class EventClusterExecutorTest {
+    private EventClusterExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new EventClusterExecutor("test", 1, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCallerRunsWhenQueueIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<String> workerName = new AtomicReference<String>();
+        final AtomicReference<Thread> callerThread = new AtomicReference<Thread>();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                workerName.set(Thread.currentThread().getName());
+                started.countDown();
+                awaitQuietly(release);
+            }
+        });
+        started.await(5, TimeUnit.SECONDS);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        assertThat(executor.getQueueDepth(), is(1));
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callerThread.set(Thread.currentThread());
+            }
+        });
+
+        assertThat(callerThread.get(), equalTo(Thread.currentThread()));
+        assertThat(executor.getCallerRuns(), is(1L));
+        assertThat(workerName.get(), startsWith("test-events-"));
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(executor.getCompletedTaskCount(), is(2L));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
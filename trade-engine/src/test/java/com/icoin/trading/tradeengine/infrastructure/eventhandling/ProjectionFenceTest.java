@@ -0,0 +1,178 @@
+package com.icoin.trading.tradeengine.infrastructure.eventhandling;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.axonframework.domain.EventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.MetaData;
+import org.axonframework.eventhandling.EventListener;
+import org.axonframework.eventhandling.EventListenerProxy;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProjectionFenceTest {
+    private static final DateTime CHECKPOINT = new DateTime(2014, 5, 3, 10, 0, 0, 0);
+
+    private ProjectionFence fence;
+    private EventListenerProxy replayedListener;
+    private EventListenerProxy otherListener;
+
+    @Before
+    public void setUp() throws Exception {
+        fence = new ProjectionFence();
+        replayedListener = listener(ReplayedProjectionListener.class);
+        otherListener = listener(OtherProjectionListener.class);
+    }
+
+    @Test
+    public void testHandlesWhileOpen() throws Exception {
+        final EventMessage event = event("aggregate", 1L, CHECKPOINT.minusMinutes(1));
+
+        fence.fenced(replayedListener).handle(event);
+
+        verify(replayedListener).handle(event);
+        assertThat(fence.getSkippedEvents(), is(0L));
+    }
+
+    @Test
+    public void testHeldBackListenersSkipWhatTheSwapReplayed() throws Exception {
+        final EventMessage before = event("aggregate", 1L, CHECKPOINT.minusMillis(1));
+        final EventMessage atCheckpoint = event("aggregate", 2L, CHECKPOINT);
+        final EventMessage notReplayed = event("other", 1L, CHECKPOINT);
+        final EventMessage after = event("aggregate", 3L, CHECKPOINT.plusMillis(1));
+        final EventListener replayed = fence.fenced(replayedListener);
+        final EventListener other = fence.fenced(otherListener);
+
+        fence.close();
+        final Thread live = handleInThread(ImmutableList.of(replayed, other), before, atCheckpoint, notReplayed, after);
+        awaitHeldBack();
+        verify(replayedListener, never()).handle(before);
+
+        //the final catch-up replayed the aggregate up to sequence number 2, then the collections were swapped
+        fence.open(ImmutableList.<Class<?>>of(ReplayedProjectionListener.class), ImmutableMap.of("aggregate", 2L));
+        live.join(TimeUnit.SECONDS.toMillis(5));
+
+        verify(replayedListener, never()).handle(before);
+        verify(replayedListener, never()).handle(atCheckpoint);
+        verify(replayedListener).handle(notReplayed);
+        verify(replayedListener).handle(after);
+        verify(otherListener).handle(before);
+        verify(otherListener).handle(atCheckpoint);
+        assertThat(fence.getSkippedEvents(), is(2L));
+    }
+
+    @Test
+    public void testHeldBackListenersHandleAllWhenNothingSwapped() throws Exception {
+        final EventMessage event = event("aggregate", 1L, CHECKPOINT);
+        final EventListener replayed = fence.fenced(replayedListener);
+
+        fence.close();
+        final Thread live = handleInThread(ImmutableList.of(replayed), event);
+        awaitHeldBack();
+        fence.open();
+        live.join(TimeUnit.SECONDS.toMillis(5));
+
+        verify(replayedListener).handle(event);
+        assertThat(fence.getSkippedEvents(), is(0L));
+    }
+
+    @Test
+    public void testQueuedEventsReplayedAreSkippedAfterSwap() throws Exception {
+        final EventMessage queued = event("aggregate", 1L, CHECKPOINT.minusMinutes(1));
+        final EventMessage later = event("aggregate", 5L, CHECKPOINT.plusSeconds(1));
+        fence.close();
+        fence.open(ImmutableList.<Class<?>>of(ReplayedProjectionListener.class), ImmutableMap.of("aggregate", 2L));
+
+        fence.fenced(replayedListener).handle(queued);
+        fence.fenced(replayedListener).handle(later);
+
+        verify(replayedListener, never()).handle(queued);
+        verify(replayedListener).handle(later);
+    }
+
+    @Test
+    public void testEventStoredLateIsHandledWhateverItsTimestamp() throws Exception {
+        //stored after the replay read past its time stamp
+        final EventMessage late = event("aggregate", 3L, CHECKPOINT.minusMinutes(1));
+        fence.close();
+        fence.open(ImmutableList.<Class<?>>of(ReplayedProjectionListener.class), ImmutableMap.of("aggregate", 2L));
+
+        fence.fenced(replayedListener).handle(late);
+
+        verify(replayedListener).handle(late);
+        assertThat(fence.getSkippedEvents(), is(0L));
+    }
+
+    @Test
+    public void testNextCloseForgetsTheSwap() throws Exception {
+        final EventMessage event = event("aggregate", 1L, CHECKPOINT.minusMinutes(1));
+        fence.close();
+        fence.open(ImmutableList.<Class<?>>of(ReplayedProjectionListener.class), ImmutableMap.of("aggregate", 2L));
+        fence.close();
+        fence.open();
+
+        fence.fenced(replayedListener).handle(event);
+
+        verify(replayedListener).handle(event);
+    }
+
+    @Test
+    public void testFencedListenerEqualsForUnsubscribe() throws Exception {
+        final EventListener fenced = fence.fenced(replayedListener);
+
+        assertThat(fenced, equalTo(fence.fenced(replayedListener)));
+        assertThat(fence.fenced(fenced), equalTo(fenced));
+        assertThat((Object) ((EventListenerProxy) fenced).getTargetType(), equalTo((Object) ReplayedProjectionListener.class));
+    }
+
+    private void awaitHeldBack() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!fence.isHoldingBack() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertThat(fence.isHoldingBack(), is(true));
+    }
+
+    private static Thread handleInThread(final ImmutableList<EventListener> listeners, final EventMessage... events) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (EventMessage event : events) {
+                    for (EventListener listener : listeners) {
+                        listener.handle(event);
+                    }
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static EventListenerProxy listener(Class<?> targetType) {
+        final EventListenerProxy listener = mock(EventListenerProxy.class);
+        when(listener.getTargetType()).thenReturn(targetType);
+        return listener;
+    }
+
+    private static EventMessage event(String aggregateIdentifier, long sequenceNumber, DateTime timestamp) {
+        return new GenericDomainEventMessage<String>(aggregateIdentifier + "-" + sequenceNumber, timestamp,
+                aggregateIdentifier, sequenceNumber, "payload", MetaData.emptyInstance());
+    }
+
+    private static class ReplayedProjectionListener {
+    }
+
+    private static class OtherProjectionListener {
+    }
+}
@@ -5,6 +5,7 @@ import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.tradeengine.Constants;
 import com.icoin.trading.tradeengine.domain.model.coin.Currencies;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
+import com.icoin.trading.tradeengine.domain.model.order.OrderFill;
 import com.icoin.trading.tradeengine.domain.model.order.OrderType;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
@@ -27,6 +28,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 
@@ -157,4 +159,30 @@ public class BuyOrderRepositoryMongoIT {
 
         assertThat(buyOrderList, anyOf(nullValue(), empty()));
     }
+
+    @Test
+    public void testUpdateTradedRetriedOrOutOfOrder() throws Exception {
+        buyOrder1.setLeftCommission(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(10)));
+        orderRepository.save(buyOrder1);
+
+        buyOrder1.recordTraded(BigMoney.of(CurrencyUnit.of(Currencies.BTC), BigDecimal.valueOf(10)),
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(1)),
+                placeDate.plusMinutes(1).toDate());
+        final OrderFill first = OrderFill.of(buyOrder1);
+
+        buyOrder1.recordTraded(BigMoney.of(CurrencyUnit.of(Currencies.BTC), BigDecimal.valueOf(20)),
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(2)),
+                placeDate.plusMinutes(2).toDate());
+        final OrderFill second = OrderFill.of(buyOrder1);
+
+        orderRepository.updateTraded(second);
+        //a retried write and a stale fill change nothing
+        orderRepository.updateTraded(second);
+        orderRepository.updateTraded(first);
+
+        final Order stored = orderRepository.findOne(buyOrder1.getPrimaryKey());
+        assertThat(stored.getFillSequence(), is(2L));
+        assertThat(stored.getItemRemaining().isEqual(BigMoney.of(CurrencyUnit.of(Currencies.BTC), BigDecimal.valueOf(70))), is(true));
+        assertThat(stored.getLeftCommission().isEqual(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(7))), is(true));
+    }
 }
@@ -0,0 +1,136 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.google.common.collect.Lists;
+import com.icoin.axonsupport.infrastructure.eventstore.EventArchiver;
+import com.icoin.axonsupport.infrastructure.eventstore.EventStorePartition;
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import com.icoin.axonsupport.infrastructure.mongo.EventStoreTemplete;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.DomainEventStream;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.axonframework.domain.MetaData;
+import org.axonframework.domain.SimpleDomainEventStream;
+import org.axonframework.eventstore.EventVisitor;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Archival, restore and read-through of a partition of the event store on its own collections.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("dev")
+@ContextConfiguration({"classpath:com/icoin/trading/tradeengine/infrastructure/persistence/mongo/tradeengine-persistence-mongo.xml"})
+@SuppressWarnings("SpringJavaAutowiringInspection")
+public class EventArchiveIT {
+    private static final String TYPE = "Order";
+    private static final DateTime APRIL = new DateTime(2014, 4, 20, 10, 0, 0, 0, DateTimeZone.UTC);
+    private static final DateTime MAY = new DateTime(2014, 5, 3, 10, 0, 0, 0, DateTimeZone.UTC);
+
+    @Resource(name = "trade.mongoDbFactory")
+    private MongoDbFactory mongoDbFactory;
+
+    private EventStorePartition partition;
+    private PartitionedEventStore eventStore;
+    private EventArchiver archiver;
+
+    @Before
+    public void setUp() throws Exception {
+        partition = new EventStorePartition("archiveIT",
+                new EventStoreTemplete("archiveitevents", "archiveitsnapshots", mongoDbFactory), new XStreamSerializer());
+        for (String bucket : partition.archiveCollectionNames()) {
+            partition.archiveCollection(bucket).drop();
+        }
+        partition.getTemplate().domainEventCollection().drop();
+        partition.getTemplate().snapshotEventCollection().drop();
+
+        eventStore = new PartitionedEventStore(partition);
+        archiver = new EventArchiver(2);
+
+        //a and b interleaved, a2 and a3 stored at the same time
+        eventStore.appendEvents(TYPE, new SimpleDomainEventStream(
+                event("a", 0L, APRIL), event("a", 1L, APRIL.plusDays(1)),
+                event("a", 2L, MAY), event("a", 3L, MAY), event("a", 4L, MAY.plusSeconds(2))));
+        eventStore.appendEvents(TYPE, new SimpleDomainEventStream(
+                event("b", 0L, APRIL.plusHours(1)), event("b", 1L, MAY.plusSeconds(1))));
+        eventStore.appendSnapshotEvent(TYPE, event("a", 2L, MAY.plusSeconds(3)));
+    }
+
+    @Test
+    public void testArchivesTheSnapshottedEventsPerMonth() throws Exception {
+        assertThat(archiver.archive(partition), is(3L));
+
+        assertThat(partition.archiveCollectionNames(), contains("archiveitevents_archive_2014_04", "archiveitevents_archive_2014_05"));
+        assertThat(partition.archiveCollection("archiveitevents_archive_2014_04").count(), is(2L));
+        assertThat(partition.archiveCollection("archiveitevents_archive_2014_05").count(), is(1L));
+        //b has no snapshot
+        assertThat(partition.getTemplate().domainEventCollection().count(), is(4L));
+
+        //the hot collection is enough to load from the snapshot on
+        assertThat(sequenceNumbers(eventStore.readEvents(TYPE, "a")), contains(2L, 3L, 4L));
+    }
+
+    @Test
+    public void testArchivalRunAgainMovesNothingMore() throws Exception {
+        archiver.archive(partition);
+
+        assertThat(archiver.archive(partition), is(0L));
+        assertThat(archiver.getArchivedEvents(), is(3L));
+    }
+
+    @Test
+    public void testVisitReadsThroughTheArchivesInOrder() throws Exception {
+        archiver.archive(partition);
+
+        assertThat(visit(), contains("a0", "b0", "a1", "a2", "a3", "b1", "a4"));
+    }
+
+    @Test
+    public void testRestoreMovesTheEventsBack() throws Exception {
+        archiver.archive(partition);
+
+        assertThat(archiver.restore(partition, TYPE, "a"), is(3L));
+
+        assertThat(partition.getTemplate().domainEventCollection().count(), is(7L));
+        assertThat(partition.archiveCollection("archiveitevents_archive_2014_04").count(), is(0L));
+        assertThat(visit(), contains("a0", "b0", "a1", "a2", "a3", "b1", "a4"));
+    }
+
+    private List<String> visit() {
+        final List<String> visited = Lists.newArrayList();
+        eventStore.visitEvents(new EventVisitor() {
+            @Override
+            public void doWithEvent(DomainEventMessage domainEvent) {
+                visited.add(domainEvent.getAggregateIdentifier() + "" + domainEvent.getSequenceNumber());
+            }
+        });
+        return visited;
+    }
+
+    private static List<Long> sequenceNumbers(DomainEventStream stream) {
+        final List<Long> sequenceNumbers = Lists.newArrayList();
+        while (stream.hasNext()) {
+            sequenceNumbers.add(stream.next().getSequenceNumber());
+        }
+        return sequenceNumbers;
+    }
+
+    private static DomainEventMessage event(String aggregateIdentifier, long sequenceNumber, DateTime timestamp) {
+        return new GenericDomainEventMessage<String>(aggregateIdentifier + sequenceNumber + "@" + timestamp.getMillis(),
+                timestamp, aggregateIdentifier, sequenceNumber, "payload", MetaData.emptyInstance());
+    }
+}
@@ -0,0 +1,69 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.google.common.collect.ImmutableList;
+import com.icoin.axonsupport.infrastructure.eventstore.EventArchiver;
+import com.icoin.axonsupport.infrastructure.eventstore.EventRevisionRewriter;
+import com.icoin.axonsupport.infrastructure.eventstore.EventStorePartition;
+import com.icoin.axonsupport.infrastructure.eventstore.PartitionedEventStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class EventArchiveJobTest {
+    private PartitionedEventStore eventStore;
+    private EventArchiver archiver;
+    private EventRevisionRewriter rewriter;
+    private EventStorePartition defaultPartition;
+    private EventStorePartition orderPartition;
+    private EventArchiveJob job;
+
+    @Before
+    public void setUp() throws Exception {
+        eventStore = mock(PartitionedEventStore.class);
+        archiver = mock(EventArchiver.class);
+        rewriter = mock(EventRevisionRewriter.class);
+        defaultPartition = mock(EventStorePartition.class);
+        orderPartition = mock(EventStorePartition.class);
+        when(eventStore.getPartitions()).thenReturn(ImmutableList.of(defaultPartition, orderPartition));
+        when(eventStore.getDefaultPartition()).thenReturn(defaultPartition);
+        when(eventStore.partitionOf("Order")).thenReturn(orderPartition);
+
+        job = new EventArchiveJob(eventStore, archiver, rewriter, 0L);
+    }
+
+    @Test
+    public void testArchivesEveryPartition() throws Exception {
+        when(archiver.archive(defaultPartition)).thenReturn(3L);
+        when(archiver.archive(orderPartition)).thenReturn(4L);
+
+        assertThat(job.archive(), is(7L));
+    }
+
+    @Test
+    public void testRestoresFromThePartitionOfTheType() throws Exception {
+        when(archiver.restore(orderPartition, "Order", "order")).thenReturn(2L);
+
+        assertThat(job.restore("Order", "order"), is(2L));
+    }
+
+    @Test
+    public void testMigratesFromTheDefaultPartition() throws Exception {
+        job.migrate("Order");
+
+        verify(archiver).migrate(defaultPartition, orderPartition, "Order");
+    }
+
+    @Test
+    public void testNotScheduledWithoutInterval() throws Exception {
+        job.start();
+        job.stop();
+
+        verifyZeroInteractions(archiver);
+    }
+}
@@ -0,0 +1,99 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.google.common.collect.ImmutableList;
+import com.mongodb.DBObject;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class KeysetTest {
+    private static final Keyset.Position<String> BY_LENGTH = new Keyset.Position<String>() {
+        @Override
+        public Keyset of(String document) {
+            return Keyset.of(document.length(), document);
+        }
+    };
+
+    @Test
+    public void testTokenRoundTrip() throws Exception {
+        final Date tradeTime = new Date(1399080000000L);
+
+        final Keyset date = Keyset.parse(Keyset.of(tradeTime, "trade|1").toToken());
+        final Keyset price = Keyset.parse(Keyset.of(-1050L, "order").toToken());
+
+        assertThat(date.getValue(), equalTo((Object) tradeTime));
+        assertThat(date.getIdentifier(), is("trade|1"));
+        assertThat(price.getValue(), equalTo((Object) (-1050L)));
+        assertThat(price.getIdentifier(), is("order"));
+    }
+
+    @Test
+    public void testNoTokenIsFirstPage() throws Exception {
+        assertThat(Keyset.parse(null), nullValue());
+        assertThat(Keyset.parse(" "), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidToken() throws Exception {
+        Keyset.parse("bm90IGEgdG9rZW4");
+    }
+
+    @Test
+    public void testSeekAfterPosition() throws Exception {
+        final String token = Keyset.of(new Date(1000L), "order").toToken();
+
+        final Query query = Keyset.seek(new Query(), "placedDate", Sort.Direction.DESC, token, 20);
+
+        assertThat(query.getLimit(), is(21));
+        assertThat(query.getQueryObject().get("$or"), notNullValue());
+        //the index is scanned from the position on
+        assertThat(((DBObject) query.getQueryObject().get("placedDate")).get("$lte"), equalTo((Object) new Date(1000L)));
+        final DBObject sort = query.getSortObject();
+        assertThat(sort.get("placedDate"), equalTo((Object) (-1)));
+        assertThat(sort.get(ProjectionUpdates.ID), equalTo((Object) (-1)));
+    }
+
+    @Test
+    public void testSeekWithinRange() throws Exception {
+        final String token = Keyset.of(new Date(2000L), "activity").toToken();
+
+        final Query first = Keyset.seek(new Query(), where("tradeTime").gte(new Date(1000L)).lt(new Date(5000L)),
+                Sort.Direction.ASC, null, 10);
+        final Query next = Keyset.seek(new Query(), where("tradeTime").gte(new Date(1000L)).lt(new Date(5000L)),
+                Sort.Direction.ASC, token, 10);
+
+        final DBObject firstRange = (DBObject) first.getQueryObject().get("tradeTime");
+        assertThat(firstRange.get("$gte"), equalTo((Object) new Date(1000L)));
+        assertThat(first.getQueryObject().get("$or"), nullValue());
+
+        final DBObject nextRange = (DBObject) next.getQueryObject().get("tradeTime");
+        assertThat(nextRange.get("$gte"), equalTo((Object) new Date(2000L)));
+        assertThat(nextRange.get("$lt"), equalTo((Object) new Date(5000L)));
+        assertThat(next.getQueryObject().get("$or"), notNullValue());
+        assertThat(next.getSortObject().get("tradeTime"), equalTo((Object) 1));
+    }
+
+    @Test
+    public void testPage() throws Exception {
+        final List<String> found = ImmutableList.of("a", "bb", "ccc");
+
+        final KeysetPage<String> page = Keyset.page(found, 2, BY_LENGTH);
+        final KeysetPage<String> last = Keyset.page(found, 3, BY_LENGTH);
+
+        assertThat(page.getContent(), contains("a", "bb"));
+        assertThat(Keyset.parse(page.getNextToken()).getIdentifier(), is("bb"));
+        assertThat(last.getContent(), contains("a", "bb", "ccc"));
+        assertThat(last.hasNext(), is(false));
+    }
+}
@@ -0,0 +1,203 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo;
+
+import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
+import com.icoin.trading.tradeengine.query.order.OrderEntry;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import org.axonframework.unitofwork.DefaultUnitOfWork;
+import org.axonframework.unitofwork.UnitOfWork;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.List;
+
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.applied;
+import static com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionUpdates.byIdentifier;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+public class ProjectionWriterTest {
+    private static final String ORDER_BOOK_ID = "orderBook";
+
+    private MongoTemplate mongoTemplate;
+    private WriteResult applied;
+    private WriteResult none;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        mongoTemplate = mock(MongoTemplate.class);
+        final MongoConverter converter = mock(MongoConverter.class);
+        final MappingContext mappingContext = mock(MappingContext.class);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(converter.getMappingContext()).thenReturn(mappingContext);
+
+        applied = mock(WriteResult.class);
+        when(applied.getN()).thenReturn(1);
+        none = mock(WriteResult.class);
+        when(none.getN()).thenReturn(0);
+    }
+
+    @Test
+    public void testWriteThroughOutsideUnitOfWork() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class))).thenReturn(applied);
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 1L, applied(1L).set("tradedPrice", 10L));
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 2L, applied(2L).set("tradedPrice", 11L));
+
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class));
+        assertThat(writer.getFlushes(), is(2L));
+        assertThat(writer.getPendingDocuments(), is(0));
+    }
+
+    @Test
+    public void testMergeUpdatesOfUnitOfWork() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class))).thenReturn(applied);
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 3L, applied(3L).set("tradedPrice", 10L).inc("volume", 2L));
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 4L, applied(4L).set("tradedPrice", 11L).inc("volume", 5L));
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 5L, applied(5L).set("lowestSellId", "sell"));
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class));
+        assertThat(writer.getPendingDocuments(), is(1));
+
+        unitOfWork.commit();
+
+        final ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), captor.capture(), eq(OrderBookEntry.class));
+        final DBObject set = (DBObject) captor.getValue().getUpdateObject().get("$set");
+        final DBObject inc = (DBObject) captor.getValue().getUpdateObject().get("$inc");
+        assertThat(set.get("tradedPrice"), equalTo((Object) 11L));
+        assertThat(set.get("lowestSellId"), equalTo((Object) "sell"));
+        assertThat(set.get(ProjectionUpdates.LAST_SEQUENCE_NUMBER), equalTo((Object) 5L));
+        assertThat(inc.get("volume"), equalTo((Object) 7L));
+
+        assertThat(writer.getUpdates(), is(3L));
+        assertThat(writer.getDocumentsWritten(), is(1L));
+        assertThat(writer.getLastBatchSize(), is(1));
+        assertThat(writer.getPendingDocuments(), is(0));
+    }
+
+    @Test
+    public void testDropUpdatesOfRolledBackUnitOfWork() throws Exception {
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 3L, applied(3L).set("tradedPrice", 10L));
+        unitOfWork.rollback();
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), any(Class.class));
+        assertThat(writer.getPendingDocuments(), is(0));
+    }
+
+    @Test
+    public void testWriteOneByOneWhenMergedUpdateMatchesNothing() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderEntry.class)))
+                .thenReturn(none, none, applied);
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+        final Query followUpQuery = byIdentifier("order");
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        //the first trade is redelivered, the second one is new
+        writer.write(OrderEntry.class, "order", 6L, applied(6L).inc("itemRemaining.amount", -1L),
+                followUpQuery, new Update().set("orderStatus", "DONE"));
+        writer.write(OrderEntry.class, "order", 7L, applied(7L).inc("itemRemaining.amount", -2L),
+                followUpQuery, new Update().set("orderStatus", "DONE"));
+        unitOfWork.commit();
+
+        final ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(4)).updateFirst(any(Query.class), captor.capture(), eq(OrderEntry.class));
+        final List<Update> updates = captor.getAllValues();
+        assertThat(((DBObject) updates.get(0).getUpdateObject().get("$inc")).get("itemRemaining.amount"), equalTo((Object) (-3L)));
+        assertThat(((DBObject) updates.get(1).getUpdateObject().get("$inc")).get("itemRemaining.amount"), equalTo((Object) (-1L)));
+        assertThat(((DBObject) updates.get(2).getUpdateObject().get("$inc")).get("itemRemaining.amount"), equalTo((Object) (-2L)));
+        //the follow up is run once
+        assertThat(((DBObject) updates.get(3).getUpdateObject().get("$set")).get("orderStatus"), equalTo((Object) "DONE"));
+    }
+
+    @Test
+    public void testRequeueFailedDocumentAheadOfNewerUpdates() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class)))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(applied);
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+        setField(writer, "windowMillis", 20L);
+
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 3L, applied(3L).set("tradedPrice", 10L).inc("volume", 2L));
+        writer.flush();
+        assertThat(writer.getFailures(), is(1L));
+        assertThat(writer.getPendingDocuments(), is(1));
+
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 4L, applied(4L).set("tradedPrice", 11L).inc("volume", 5L));
+        writer.flush();
+
+        final ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), captor.capture(), eq(OrderBookEntry.class));
+        final DBObject set = (DBObject) captor.getValue().getUpdateObject().get("$set");
+        final DBObject inc = (DBObject) captor.getValue().getUpdateObject().get("$inc");
+        assertThat(set.get("tradedPrice"), equalTo((Object) 11L));
+        assertThat(set.get(ProjectionUpdates.LAST_SEQUENCE_NUMBER), equalTo((Object) 4L));
+        assertThat(inc.get("volume"), equalTo((Object) 7L));
+        assertThat(writer.getPendingDocuments(), is(0));
+    }
+
+    @Test
+    public void testDropFailedDocumentAfterMaxRetries() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class)))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+        setField(writer, "windowMillis", 20L);
+        setField(writer, "maxRetries", 1);
+
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 3L, applied(3L).set("tradedPrice", 10L));
+        writer.flush();
+        writer.flush();
+        writer.flush();
+
+        verify(mongoTemplate, times(2)).updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class));
+        assertThat(writer.getDroppedDocuments(), is(1L));
+        assertThat(writer.getPendingDocuments(), is(0));
+    }
+
+    @Test
+    public void testFailBatchOfUnitOfWorkAfterWritingTheRest() throws Exception {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderBookEntry.class)))
+                .thenThrow(new DataAccessResourceFailureException("down"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OrderEntry.class))).thenReturn(applied);
+        final ProjectionWriter writer = new ProjectionWriter(mongoTemplate);
+
+        final UnitOfWork unitOfWork = DefaultUnitOfWork.startAndGet();
+        writer.write(OrderBookEntry.class, ORDER_BOOK_ID, 3L, applied(3L).set("tradedPrice", 10L));
+        writer.write(OrderEntry.class, "order", 6L, applied(6L).inc("itemRemaining.amount", -1L));
+        try {
+            unitOfWork.commit();
+            fail("the batch should fail");
+        } catch (IllegalStateException e) {
+            assertThat(e.getCause() instanceof DataAccessResourceFailureException, is(true));
+        }
+
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(OrderEntry.class));
+        assertThat(writer.getFailures(), is(1L));
+        assertThat(writer.getPendingDocuments(), is(0));
+    }
+}
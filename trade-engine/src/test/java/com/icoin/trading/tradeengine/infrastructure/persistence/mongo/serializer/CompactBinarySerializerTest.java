@@ -0,0 +1,175 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.icoin.money.converter.JodaMoneyConverter;
+import com.icoin.trading.api.coin.domain.CoinId;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TradeType;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.api.users.domain.UserId;
+import org.axonframework.domain.MetaData;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.joda.money.Money;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
+
+public class CompactBinarySerializerTest {
+    private final CurrencyUnit btc = CurrencyUnit.of("BTC");
+    private final CurrencyUnit cny = CurrencyUnit.of("CNY");
+    private XStreamSerializer xStreamSerializer;
+    private CompactBinarySerializer serializer;
+    private TradeExecutedEvent event;
+
+    @Before
+    public void setUp() throws Exception {
+        xStreamSerializer = new XStreamSerializer();
+        xStreamSerializer.getXStream().registerConverter(new JodaMoneyConverter());
+        serializer = new CompactBinarySerializer(xStreamSerializer);
+
+        event = new TradeExecutedEvent(
+                new OrderBookId(),
+                new CoinId("BTC"),
+                BigMoney.of(btc, new BigDecimal("1.50000000")),
+                BigMoney.of(cny, new BigDecimal("3200.5")),
+                BigMoney.of(cny, new BigDecimal("4800.750")),
+                "buyOrder",
+                "sellOrder",
+                BigMoney.of(cny, new BigDecimal("0.12")),
+                BigMoney.of(btc, new BigDecimal("0.00001")),
+                new TransactionId(),
+                new TransactionId(),
+                new PortfolioId(),
+                new PortfolioId(),
+                new UserId(),
+                new UserId(),
+                new Date(),
+                TradeType.SELL);
+    }
+
+    @Test
+    public void testRoundTripEvent() throws Exception {
+        final SerializedObject<byte[]> serialized = serializer.serialize(event, byte[].class);
+
+        assertThat(serialized.getType().getName(), equalTo(TradeExecutedEvent.class.getName()));
+
+        final TradeExecutedEvent read = serializer.deserialize(serialized);
+
+        assertEvent(read);
+    }
+
+    @Test
+    public void testRoundTripAsText() throws Exception {
+        final SerializedObject<String> serialized = serializer.serialize(event, String.class);
+
+        assertThat(serialized.getData(), startsWith(CompactBinarySerializer.TEXT_PREFIX));
+
+        final TradeExecutedEvent read = serializer.deserialize(serialized);
+
+        assertEvent(read);
+    }
+
+    @Test
+    public void testReadsLegacyXml() throws Exception {
+        final SerializedObject<String> xml = xStreamSerializer.serialize(event, String.class);
+
+        final TradeExecutedEvent read = serializer.deserialize(xml);
+
+        assertEvent(read);
+    }
+
+    @Test
+    public void testSmallerThanXml() throws Exception {
+        final byte[] xml = xStreamSerializer.serialize(event, byte[].class).getData();
+        final byte[] binary = serializer.serialize(event, byte[].class).getData();
+        final String text = serializer.serialize(event, String.class).getData();
+
+        assertThat(binary.length * 2, lessThan(xml.length));
+        assertThat(text.length(), lessThan(xml.length));
+    }
+
+    @Test
+    public void testMetaData() throws Exception {
+        final MetaData metaData = MetaData.from(ImmutableMap.<String, Object>of(
+                "user", "admin",
+                "amount", Money.of(cny, new BigDecimal("12.30")),
+                "sequence", 42L));
+
+        final MetaData read = serializer.deserialize(serializer.serialize(metaData, byte[].class));
+        assertThat(read, equalTo(metaData));
+
+        final MetaData empty = serializer.deserialize(serializer.serialize(MetaData.emptyInstance(), byte[].class));
+        assertThat(empty.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testSharedAndCyclicReferences() throws Exception {
+        final Node root = new Node("root");
+        final Node child = new Node("child");
+        root.children.add(child);
+        root.children.add(child);
+        child.parent = root;
+        root.attributes.put("currency", btc);
+        root.attributes.put("price", BigMoney.of(cny, new BigDecimal("1.001")));
+
+        final Node read = serializer.deserialize(serializer.serialize(root, byte[].class));
+
+        assertThat(read.name, equalTo("root"));
+        assertThat(read.children.size(), is(2));
+        assertThat(read.children.get(0), sameInstance(read.children.get(1)));
+        assertThat(read.children.get(0).parent, sameInstance(read));
+        assertThat(read.attributes.get("currency"), equalTo((Object) btc));
+        assertThat(read.attributes.get("price"), equalTo((Object) BigMoney.of(cny, new BigDecimal("1.001"))));
+        assertThat(read.type, equalTo(TradeType.BUY));
+    }
+
+    private void assertEvent(TradeExecutedEvent read) {
+        assertThat(read, notNullValue());
+        assertThat(read.getOrderBookId(), equalTo(event.getOrderBookId()));
+        assertThat(read.getCoinId(), equalTo(event.getCoinId()));
+        assertThat(read.getTradeAmount(), equalTo(event.getTradeAmount()));
+        assertThat(read.getTradedPrice(), equalTo(event.getTradedPrice()));
+        assertThat(read.getExecutedMoney(), equalTo(event.getExecutedMoney()));
+        assertThat(read.getBuyOrderId(), equalTo(event.getBuyOrderId()));
+        assertThat(read.getSellOrderId(), equalTo(event.getSellOrderId()));
+        assertThat(read.getBuyCommission(), equalTo(event.getBuyCommission()));
+        assertThat(read.getSellCommission(), equalTo(event.getSellCommission()));
+        assertThat(read.getBuyTransactionId(), equalTo(event.getBuyTransactionId()));
+        assertThat(read.getSellTransactionId(), equalTo(event.getSellTransactionId()));
+        assertThat(read.getBuyPortfolioId(), equalTo(event.getBuyPortfolioId()));
+        assertThat(read.getSellPortfolioId(), equalTo(event.getSellPortfolioId()));
+        assertThat(read.getTradeTime(), equalTo(event.getTradeTime()));
+        assertThat(read.getTradeType(), equalTo(event.getTradeType()));
+    }
+
+    private static class Node {
+        private final String name;
+        private final List<Node> children = Lists.newArrayList();
+        private final Map<String, Object> attributes = Maps.newLinkedHashMap();
+        private final TradeType type = TradeType.BUY;
+        private Node parent;
+
+        private Node(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer;
+
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.axonframework.upcasting.UpcasterChain;
+import org.axonframework.upcasting.UpcastingContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class XmlUpcasterChainTest {
+    private static final byte[] BINARY = {(byte) CompactBinarySerializer.MAGIC, CompactBinarySerializer.VERSION, 0};
+
+    private UpcasterChain delegate;
+    private UpcastingContext context;
+    private XmlUpcasterChain chain;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(UpcasterChain.class);
+        context = mock(UpcastingContext.class);
+        chain = new XmlUpcasterChain(delegate);
+    }
+
+    @Test
+    public void testBinaryPayloadsPassedAsTheyAre() throws Exception {
+        final SerializedObject<byte[]> bytes = new SimpleSerializedObject<byte[]>(BINARY, byte[].class, "Event", null);
+        final SerializedObject<String> text = new SimpleSerializedObject<String>(
+                CompactBinarySerializer.TEXT_PREFIX + DatatypeConverter.printBase64Binary(BINARY), String.class, "Event", null);
+
+        final List<SerializedObject> fromBytes = chain.upcast(bytes, context);
+        final List<SerializedObject> fromText = chain.upcast(text, context);
+
+        assertThat(fromBytes.get(0), sameInstance((SerializedObject) bytes));
+        assertThat(fromText.get(0), sameInstance((SerializedObject) text));
+        verify(delegate, never()).upcast(any(SerializedObject.class), any(UpcastingContext.class));
+    }
+
+    @Test
+    public void testXmlPayloadsUpcast() throws Exception {
+        final SerializedObject<String> xml = new SimpleSerializedObject<String>("<event/>", String.class, "Event", null);
+        final SerializedObject<String> upcast = new SimpleSerializedObject<String>("<event/>", String.class, "Event", "1");
+        when(delegate.upcast(xml, context)).thenReturn(Collections.<SerializedObject>singletonList(upcast));
+
+        assertThat(chain.upcast(xml, context), contains((SerializedObject) upcast));
+    }
+}
@@ -0,0 +1,92 @@
+package com.icoin.trading.tradeengine.infrastructure.persistence.mongo.upcasting;
+
+import com.google.common.collect.ImmutableList;
+import com.icoin.money.converter.JodaMoneyConverter;
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.tradeengine.domain.model.order.OrderBook;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.serializer.XmlUpcasterChain;
+import com.thoughtworks.xstream.XStreamException;
+import org.axonframework.serializer.SerializedObject;
+import org.axonframework.serializer.SimpleSerializedObject;
+import org.axonframework.serializer.xml.XStreamSerializer;
+import org.axonframework.upcasting.LazyUpcasterChain;
+import org.axonframework.upcasting.Upcaster;
+import org.axonframework.upcasting.UpcasterChain;
+import org.axonframework.upcasting.UpcastingContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Mockito.mock;
+
+public class OrderBookSnapshotUpcasterTest {
+    private final OrderBookId orderBookId = new OrderBookId();
+    private XStreamSerializer serializer;
+    private UpcasterChain upcasterChain;
+    private UpcastingContext context;
+    private String current;
+
+    @Before
+    public void setUp() throws Exception {
+        serializer = new XStreamSerializer();
+        serializer.getXStream().registerConverter(new JodaMoneyConverter());
+        upcasterChain = new XmlUpcasterChain(new LazyUpcasterChain(serializer.getConverterFactory(),
+                ImmutableList.<Upcaster>of(new OrderBookSnapshotUpcaster())));
+        context = mock(UpcastingContext.class);
+
+        final OrderBook orderBook = new OrderBook(orderBookId, new CurrencyPair("BTC", "CNY"));
+        orderBook.commitEvents();
+        current = serializer.serialize(orderBook, String.class).getData();
+    }
+
+    @Test
+    public void testCurrentSnapshotsAreRevisioned() throws Exception {
+        assertThat(serializer.typeForClass(OrderBook.class).getRevision(), is(OrderBookSnapshotUpcaster.REVISION));
+    }
+
+    @Test
+    public void testLegacySnapshotRoundTrip() throws Exception {
+        final List<SerializedObject> upcast = upcasterChain.upcast(legacySnapshot(), context);
+
+        assertThat(upcast, hasSize(1));
+        assertThat(upcast.get(0).getType().getRevision(), is(OrderBookSnapshotUpcaster.REVISION));
+        assertThat((String) upcast.get(0).getData(), not(containsString("identityField")));
+
+        final OrderBook orderBook = (OrderBook) serializer.deserialize(upcast.get(0));
+        assertThat(orderBook.identity(), equalTo(orderBookId));
+    }
+
+    @Test(expected = XStreamException.class)
+    public void testLegacySnapshotUnreadableAsItIs() throws Exception {
+        serializer.deserialize(legacySnapshot());
+    }
+
+    @Test
+    public void testCurrentSnapshotLeftAsItIs() throws Exception {
+        final SerializedObject<String> snapshot = new SimpleSerializedObject<String>(
+                current, String.class, OrderBook.class.getName(), OrderBookSnapshotUpcaster.REVISION);
+
+        final List<SerializedObject> upcast = upcasterChain.upcast(snapshot, context);
+
+        assertThat(upcast, hasSize(1));
+        assertThat((String) upcast.get(0).getData(), equalTo(current));
+        assertThat(((OrderBook) serializer.deserialize(upcast.get(0))).identity(), equalTo(orderBookId));
+    }
+
+    //an unrevisioned snapshot still held the identity field of the aggregate root
+    private SerializedObject<String> legacySnapshot() {
+        final int rootEnd = current.indexOf('>', current.indexOf("<" + OrderBook.class.getName())) + 1;
+        final String legacy = current.substring(0, rootEnd)
+                + "<identityField><name>orderBookId</name><clazz>" + OrderBook.class.getName() + "</clazz></identityField>"
+                + current.substring(rootEnd);
+        return new SimpleSerializedObject<String>(legacy, String.class, OrderBook.class.getName(), null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.icoin.trading.tradeengine.infrastructure.profiling;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() throws Exception {
+        for (long value = 0; value < 64; value++) {
+            assertThat(LatencyHistogram.valueOf(LatencyHistogram.indexOf(value)), equalTo(value));
+        }
+
+        assertThat(LatencyHistogram.indexOf(64L), equalTo(64));
+        assertThat(LatencyHistogram.indexOf(65L), equalTo(64));
+        assertThat(LatencyHistogram.valueOf(64), equalTo(65L));
+        assertThat(LatencyHistogram.valueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)), equalTo(Long.MAX_VALUE));
+
+        final Random random = new Random(42L);
+        for (int i = 0; i < 10000; i++) {
+            final long value = random.nextLong() >>> (1 + random.nextInt(63));
+            final long highest = LatencyHistogram.valueOf(LatencyHistogram.indexOf(value));
+
+            assertThat(highest, greaterThanOrEqualTo(value));
+            assertThat(highest - value, lessThanOrEqualTo(value / 32));
+        }
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getValueAtPercentile(99D), equalTo(0L));
+
+        for (long micros = 1000; micros > 0; micros--) {
+            histogram.record(micros);
+        }
+
+        assertThat(histogram.getCount(), equalTo(1000L));
+        assertThat(histogram.getMax(), equalTo(1000L));
+        assertThat(histogram.getMean(), closeTo(500.5D, 0.001D));
+
+        assertThat(histogram.getValueAtPercentile(50D), greaterThanOrEqualTo(500L));
+        assertThat(histogram.getValueAtPercentile(50D), lessThanOrEqualTo(500L + 500L / 32));
+        assertThat(histogram.getValueAtPercentile(90D), greaterThanOrEqualTo(900L));
+        assertThat(histogram.getValueAtPercentile(90D), lessThanOrEqualTo(900L + 900L / 32));
+        assertThat(histogram.getValueAtPercentile(100D), equalTo(1000L));
+    }
+
+    @Test
+    public void testRecordNanosAndReset() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(2500L);
+        histogram.recordNanos(-1L);
+
+        assertThat(histogram.getCount(), equalTo(2L));
+        assertThat(histogram.getMax(), equalTo(2L));
+        assertThat(histogram.getValueAtPercentile(50D), equalTo(0L));
+
+        histogram.reset();
+
+        assertThat(histogram.getCount(), equalTo(0L));
+        assertThat(histogram.getMax(), equalTo(0L));
+        assertThat(histogram.getMean(), is(0D));
+    }
+}
@@ -0,0 +1,72 @@
+package com.icoin.trading.tradeengine.infrastructure.profiling;
+
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import org.junit.Test;
+
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.DISPATCHED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.PLACED;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.STARTED;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+
+public class TradeLatencyTracerTest {
+    private final OrderBookId orderBookId = new OrderBookId();
+
+    @Test
+    public void testRecordSinceDispatched() throws Exception {
+        final TradeLatencyTracer tracer = new TradeLatencyTracer();
+        final TransactionId transactionId = new TransactionId();
+
+        tracer.record(transactionId, orderBookId, DISPATCHED);
+        tracer.record(transactionId, null, STARTED);
+        tracer.record(transactionId, null, PLACED);
+
+        assertThat(tracer.getTraces(), equalTo(1));
+        assertThat(tracer.getStageHistogram(DISPATCHED).getCount(), equalTo(0L));
+        assertThat(tracer.getStageHistogram(STARTED).getCount(), equalTo(1L));
+        assertThat(tracer.getDispatchHistogram(PLACED).getCount(), equalTo(1L));
+        assertThat(tracer.orderBookStageLatencies(orderBookId.toString()), hasKey("PLACED"));
+
+        tracer.finish(transactionId);
+
+        assertThat(tracer.getTraces(), equalTo(0));
+    }
+
+    @Test
+    public void testRecordNotDispatched() throws Exception {
+        final TradeLatencyTracer tracer = new TradeLatencyTracer();
+        final TransactionId transactionId = new TransactionId();
+
+        tracer.record(transactionId, orderBookId, STARTED);
+        tracer.record(transactionId, orderBookId, PLACED);
+
+        assertThat(tracer.getStageHistogram(PLACED).getCount(), equalTo(1L));
+        assertThat(tracer.getDispatchHistogram(PLACED).getCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testDisabledAndExpired() throws Exception {
+        final TradeLatencyTracer tracer = new TradeLatencyTracer();
+        tracer.setEnabled(false);
+        tracer.record(new TransactionId(), orderBookId, DISPATCHED);
+
+        assertThat(tracer.getTraces(), equalTo(0));
+
+        tracer.setEnabled(true);
+        tracer.setMaxTraces(1);
+        tracer.setMaxAgeSeconds(0);
+        tracer.record(new TransactionId(), orderBookId, DISPATCHED);
+        Thread.sleep(1);
+        tracer.record(new TransactionId(), orderBookId, DISPATCHED);
+
+        assertThat(tracer.getTraces(), equalTo(1));
+
+        tracer.reset();
+
+        assertThat(tracer.getTraces(), equalTo(0));
+        assertThat(tracer.isEnabled(), is(true));
+    }
+}
@@ -0,0 +1,170 @@
+package com.icoin.trading.tradeengine.infrastructure.replay;
+
+import com.icoin.trading.api.coin.domain.CoinId;
+import com.icoin.trading.api.coin.domain.CurrencyPair;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.OrderId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TradeType;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.tradeengine.events.order.BuyOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.order.SellOrderPlacedEvent;
+import com.icoin.trading.api.tradeengine.events.portfolio.PortfolioCreatedEvent;
+import com.icoin.trading.api.tradeengine.events.portfolio.cash.CashDepositedEvent;
+import com.icoin.trading.api.tradeengine.events.portfolio.cash.CashReservedEvent;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.api.users.domain.UserId;
+import com.icoin.trading.tradeengine.Constants;
+import com.icoin.trading.tradeengine.domain.model.coin.Currencies;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionWriter;
+import com.icoin.trading.tradeengine.query.order.OrderEntry;
+import com.icoin.trading.tradeengine.query.order.OrderListener;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioEntry;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioMoneyEventListener;
+import com.icoin.trading.users.query.UserEntry;
+import com.icoin.trading.users.query.repositories.UserQueryRepository;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.EnumSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The listeners of a replay write the shadow collections, the live projections are left as they are.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("dev")
+@ContextConfiguration({"classpath:com/icoin/trading/tradeengine/infrastructure/persistence/mongo/tradeengine-persistence-mongo.xml"})
+@SuppressWarnings("SpringJavaAutowiringInspection")
+public class ProjectionReplayIT {
+    private static final CurrencyUnit BTC = CurrencyUnit.of(Currencies.BTC);
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private AnnotationConfigApplicationContext live;
+    private AnnotationConfigApplicationContext replay;
+    private final PortfolioId portfolioId = new PortfolioId();
+    private final UserId userId = new UserId();
+    private final OrderBookId orderBookId = new OrderBookId();
+    private final OrderId buyOrderId = new OrderId();
+    private final OrderId sellOrderId = new OrderId();
+
+    @Before
+    public void setUp() throws Exception {
+        for (Class<?> entity : new Class<?>[]{PortfolioEntry.class, OrderEntry.class}) {
+            mongoTemplate.dropCollection(entity);
+            mongoTemplate.dropCollection(shadowOf(entity));
+        }
+
+        final UserEntry user = new UserEntry();
+        user.setUsername("buyer");
+        final UserQueryRepository userQueryRepository = mock(UserQueryRepository.class);
+        when(userQueryRepository.findOne(userId.toString())).thenReturn(user);
+
+        //the application context of the live projections, with their writer
+        live = new AnnotationConfigApplicationContext();
+        live.setParent(applicationContext);
+        live.getBeanFactory().registerSingleton("userQueryRepository", userQueryRepository);
+        live.register(PropertySourcesPlaceholderConfigurer.class, ProjectionWriter.class);
+        live.refresh();
+
+        final ProjectionReplayer replayer = new ProjectionReplayer(1, 10);
+        replayer.setApplicationContext(live);
+        replay = replayer.createContext(EnumSet.of(ReplayProjection.PORTFOLIO, ReplayProjection.ORDER), true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        replay.close();
+        live.close();
+    }
+
+    @Test
+    public void testPortfolioBalancesReplayedIntoTheShadowCollection() throws Exception {
+        final PortfolioMoneyEventListener listener = replay.getBean(PortfolioMoneyEventListener.class);
+        final CashDepositedEvent deposited = new CashDepositedEvent(portfolioId, cny(100), new Date());
+        final CashReservedEvent reserved = new CashReservedEvent(portfolioId, new TransactionId(), cny(30), cny(1), new Date());
+
+        listener.handleEvent(new PortfolioCreatedEvent(portfolioId, userId, new Date()));
+        listener.handleEvent(deposited, new GenericDomainEventMessage<CashDepositedEvent>(portfolioId, 1L, deposited));
+        listener.handleEvent(reserved, new GenericDomainEventMessage<CashReservedEvent>(portfolioId, 2L, reserved));
+        replay.getBean(ReplayMongoTemplate.class).flush();
+
+        final PortfolioEntry portfolio = mongoTemplate.findById(portfolioId.toString(), PortfolioEntry.class, shadowOf(PortfolioEntry.class));
+        assertThat(portfolio.getAmountOfMoney().isEqual(cny(100)), is(true));
+        assertThat(portfolio.getReservedAmountOfMoney().isEqual(cny(31)), is(true));
+        assertThat(portfolio.getLastSequenceNumber(), is(2L));
+        assertThat(mongoTemplate.count(new Query(), PortfolioEntry.class), is(0L));
+    }
+
+    @Test
+    public void testRemainingAmountsReplayedIntoTheShadowCollection() throws Exception {
+        final OrderListener listener = replay.getBean(OrderListener.class);
+        final CurrencyPair currencyPair = new CurrencyPair("BTC", "CNY");
+        final TradeExecutedEvent traded = new TradeExecutedEvent(
+                orderBookId,
+                new CoinId("BTC"),
+                btc(100),
+                cny(100),
+                cny(10000),
+                buyOrderId.toString(),
+                sellOrderId.toString(),
+                cny(5),
+                btc(1),
+                new TransactionId(),
+                new TransactionId(),
+                portfolioId,
+                new PortfolioId(),
+                new Date(),
+                TradeType.BUY);
+
+        listener.handleBuyOrderPlaced(new BuyOrderPlacedEvent(orderBookId, buyOrderId, new TransactionId(),
+                btc(300), cny(100), cny(15), portfolioId, currencyPair, new Date()));
+        listener.handleSellOrderPlaced(new SellOrderPlacedEvent(orderBookId, sellOrderId, new TransactionId(),
+                btc(300), cny(100), btc(3), new PortfolioId(), currencyPair, new Date()));
+        listener.handleTradeExecuted(traded, new GenericDomainEventMessage<TradeExecutedEvent>(orderBookId, 3L, traded));
+        replay.getBean(ReplayMongoTemplate.class).flush();
+
+        final OrderEntry buyOrder = mongoTemplate.findById(buyOrderId.toString(), OrderEntry.class, shadowOf(OrderEntry.class));
+        final OrderEntry sellOrder = mongoTemplate.findById(sellOrderId.toString(), OrderEntry.class, shadowOf(OrderEntry.class));
+        assertThat(buyOrder.getItemRemaining().isEqual(btc(200)), is(true));
+        assertThat(sellOrder.getItemRemaining().isEqual(btc(200)), is(true));
+        assertThat(mongoTemplate.count(new Query(), OrderEntry.class), is(0L));
+    }
+
+    private String shadowOf(Class<?> entity) {
+        return mongoTemplate.getCollectionName(entity) + ProjectionReplayer.SHADOW_SUFFIX;
+    }
+
+    private static BigMoney cny(long amount) {
+        return BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(amount));
+    }
+
+    private static BigMoney btc(long amount) {
+        return BigMoney.of(BTC, BigDecimal.valueOf(amount));
+    }
+}
@@ -0,0 +1,44 @@
+package com.icoin.trading.tradeengine.infrastructure.replay;
+
+import com.homhon.mongo.core.MongoMappingBaseContext;
+import com.icoin.trading.tradeengine.query.coin.CoinEntry;
+import com.icoin.trading.tradeengine.query.order.OrderEntry;
+import com.icoin.trading.tradeengine.query.portfolio.PortfolioEntry;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ShadowMongoMappingContextTest {
+    private final MongoMappingBaseContext live = new MongoMappingBaseContext();
+
+    @Test
+    public void testShadowedEntitiesUseSuffixedCollection() throws Exception {
+        final ShadowMongoMappingContext shadow =
+                new ShadowMongoMappingContext("_replay", new Class<?>[]{OrderEntry.class, PortfolioEntry.class});
+
+        assertThat(shadow.getPersistentEntity(OrderEntry.class).getCollection(),
+                equalTo(live.getPersistentEntity(OrderEntry.class).getCollection() + "_replay"));
+        assertThat(shadow.getPersistentEntity(PortfolioEntry.class).getCollection(),
+                equalTo(live.getPersistentEntity(PortfolioEntry.class).getCollection() + "_replay"));
+    }
+
+    @Test
+    public void testOtherEntitiesStayOnLiveCollection() throws Exception {
+        final ShadowMongoMappingContext shadow =
+                new ShadowMongoMappingContext("_replay", new Class<?>[]{OrderEntry.class});
+
+        assertThat(shadow.getPersistentEntity(CoinEntry.class).getCollection(),
+                equalTo(live.getPersistentEntity(CoinEntry.class).getCollection()));
+    }
+
+    @Test
+    public void testParseProjections() throws Exception {
+        final Set<ReplayProjection> projections = ReplayProjection.parse(" order, trade_executed ,ORDER");
+
+        assertThat(projections, contains(ReplayProjection.ORDER, ReplayProjection.TRADE_EXECUTED));
+    }
+}
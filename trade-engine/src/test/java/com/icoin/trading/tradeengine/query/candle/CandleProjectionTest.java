@@ -0,0 +1,113 @@
+package com.icoin.trading.tradeengine.query.candle;
+
+import com.icoin.trading.api.coin.domain.CoinId;
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.api.tradeengine.domain.PortfolioId;
+import com.icoin.trading.api.tradeengine.domain.TradeType;
+import com.icoin.trading.api.tradeengine.domain.TransactionId;
+import com.icoin.trading.api.tradeengine.events.trade.TradeExecutedEvent;
+import com.icoin.trading.tradeengine.Constants;
+import com.icoin.trading.tradeengine.domain.model.coin.Currencies;
+import com.icoin.trading.tradeengine.query.candle.repositories.CandleQueryRepository;
+import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
+import com.icoin.trading.tradeengine.query.tradeexecuted.repositories.TradeExecutedQueryRepository;
+import org.axonframework.domain.GenericDomainEventMessage;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CandleProjectionTest {
+    private static final long DAY = CandlePeriod.ONE_DAY.getMillis();
+    private static final long START = DAY * 16000;
+
+    private final OrderBookId orderBookId = new OrderBookId();
+    private CandleQueryRepository candleRepository;
+    private TradeExecutedQueryRepository tradeExecutedRepository;
+    private CandleProjection projection;
+
+    @Before
+    public void setUp() throws Exception {
+        candleRepository = mock(CandleQueryRepository.class);
+        tradeExecutedRepository = mock(TradeExecutedQueryRepository.class);
+
+        projection = new CandleProjection();
+        projection.setCandleRepository(candleRepository);
+        projection.setTradeExecutedRepository(tradeExecutedRepository);
+        projection.setBackfillThreads(1);
+    }
+
+    @Test
+    public void testBackfilledCandlesKeepTheLastSequenceNumber() throws Exception {
+        when(tradeExecutedRepository.findTrades(eq(orderBookId.toString()), any(Date.class), any(Date.class)))
+                .thenReturn(Arrays.asList(trade(START + 1000, 7L), trade(START + 2000, 5L)));
+
+        assertThat(projection.backfill(orderBookId.toString(), new Date(START), new Date(START + 1000)), is(2L));
+
+        final ArgumentCaptor<CandleEntry> captor = ArgumentCaptor.forClass(CandleEntry.class);
+        verify(candleRepository, times(CandlePeriod.values().length)).write(captor.capture());
+        for (CandleEntry candle : captor.getAllValues()) {
+            assertThat(candle.getTrades(), is(2L));
+            assertThat(candle.getLastSequenceNumber(), is(7L));
+        }
+    }
+
+    @Test
+    public void testTradesWriteTheChangedFieldsOfTheCandles() throws Exception {
+        projection.handleTradeExecuted(tradeExecuted(START + 1000),
+                new GenericDomainEventMessage<Object>(orderBookId, 1L, "trade"));
+        projection.handleTradeExecuted(tradeExecuted(START + 2000),
+                new GenericDomainEventMessage<Object>(orderBookId, 2L, "trade"));
+        //a redelivered trade is in the candles already
+        projection.handleTradeExecuted(tradeExecuted(START + 2000),
+                new GenericDomainEventMessage<Object>(orderBookId, 2L, "trade"));
+
+        verify(candleRepository, times(2 * CandlePeriod.values().length)).writeTraded(any(CandleEntry.class));
+        verify(candleRepository, never()).write(any(CandleEntry.class));
+        assertThat(projection.getTradesApplied(), is(2L));
+    }
+
+    private TradeExecutedEntry trade(long tradeTime, long sequenceNumber) {
+        final TradeExecutedEntry trade = new TradeExecutedEntry();
+        trade.setOrderBookIdentifier(orderBookId.toString());
+        trade.setTradeTime(new Date(tradeTime));
+        trade.setTradedPrice(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(125)));
+        trade.setTradedAmount(BigMoney.of(CurrencyUnit.of(Currencies.BTC), BigDecimal.valueOf(3)));
+        trade.setSequenceNumber(sequenceNumber);
+        return trade;
+    }
+
+    private TradeExecutedEvent tradeExecuted(long tradeTime) {
+        return new TradeExecutedEvent(
+                orderBookId,
+                new CoinId("BTC"),
+                BigMoney.of(CurrencyUnit.of(Currencies.BTC), BigDecimal.valueOf(3)),
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(125)),
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(375)),
+                "buyOrder",
+                "sellOrder",
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(125)),
+                BigMoney.of(CurrencyUnit.of(Currencies.BTC), BigDecimal.valueOf(3)),
+                new TransactionId(),
+                new TransactionId(),
+                new PortfolioId(),
+                new PortfolioId(),
+                new Date(tradeTime),
+                TradeType.BUY);
+    }
+}
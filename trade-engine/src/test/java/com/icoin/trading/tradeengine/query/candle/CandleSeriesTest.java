@@ -0,0 +1,81 @@
+package com.icoin.trading.tradeengine.query.candle;
+
+import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class CandleSeriesTest {
+    private static final String ORDER_BOOK_ID = "orderBook";
+    private static final long MINUTE = CandlePeriod.ONE_MINUTE.getMillis();
+    private static final long START = CandlePeriod.ONE_DAY.getMillis() * 16000;
+
+    @Test
+    public void testTradesOfAMinuteMakeOneCandle() throws Exception {
+        final CandleSeries series = new CandleSeries(CandlePeriod.ONE_MINUTE, 10, Collections.<CandleEntry>emptyList(), true);
+
+        series.traded(ORDER_BOOK_ID, START + 1000, "CNY", "BTC", 100L, 1L, 1L);
+        series.traded(ORDER_BOOK_ID, START + 2000, "CNY", "BTC", 120L, 2L, 2L);
+        series.traded(ORDER_BOOK_ID, START + 3000, "CNY", "BTC", 90L, 3L, 3L);
+        final CandleEntry candle = series.traded(ORDER_BOOK_ID, START + 59999, "CNY", "BTC", 110L, 4L, 4L);
+
+        assertThat(series.size(), is(1));
+        assertThat(candle.getStart().getTime(), is(START));
+        assertThat(candle.getOpen(), is(100L));
+        assertThat(candle.getHigh(), is(120L));
+        assertThat(candle.getLow(), is(90L));
+        assertThat(candle.getClose(), is(110L));
+        assertThat(candle.getVolume(), is(10L));
+        assertThat(candle.getLastSequenceNumber(), is(4L));
+    }
+
+    @Test
+    public void testRangeOfCoveredTime() throws Exception {
+        final CandleSeries series = new CandleSeries(CandlePeriod.ONE_MINUTE, 10, Collections.<CandleEntry>emptyList(), true);
+        for (int i = 0; i < 5; i++) {
+            series.traded(ORDER_BOOK_ID, START + i * MINUTE, "CNY", "BTC", 100L + i, 1L, (long) i);
+        }
+
+        final List<OpenHighLowCloseVolume> range = series.range(START + MINUTE, START + 3 * MINUTE);
+
+        assertThat(range, notNullValue());
+        assertThat(range.size(), is(2));
+        assertThat(range.get(0).getDate().getTime(), is(START + MINUTE));
+        assertThat(range.get(1).getDate().getTime(), is(START + 2 * MINUTE));
+        //complete series covers all the time before its first candle too
+        assertThat(series.range(START - 10 * MINUTE, START + MINUTE).size(), is(1));
+    }
+
+    @Test
+    public void testEvictedTimeIsNotCovered() throws Exception {
+        final CandleSeries series = new CandleSeries(CandlePeriod.ONE_MINUTE, 3, Collections.<CandleEntry>emptyList(), true);
+        for (int i = 0; i < 5; i++) {
+            series.traded(ORDER_BOOK_ID, START + i * MINUTE, "CNY", "BTC", 100L, 1L, (long) i);
+        }
+
+        assertThat(series.size(), is(3));
+        assertThat(series.range(START, START + 5 * MINUTE), nullValue());
+        assertThat(series.range(START + 2 * MINUTE, START + 5 * MINUTE).size(), is(3));
+        //a trade older than the covered time goes to the stored candles
+        assertThat(series.traded(ORDER_BOOK_ID, START, "CNY", "BTC", 100L, 1L, 6L), nullValue());
+    }
+
+    @Test
+    public void testLateTradeWithinCoveredTime() throws Exception {
+        final CandleSeries series = new CandleSeries(CandlePeriod.ONE_MINUTE, 10, Collections.<CandleEntry>emptyList(), false);
+        series.traded(ORDER_BOOK_ID, START, "CNY", "BTC", 100L, 1L, 1L);
+        series.traded(ORDER_BOOK_ID, START + 3 * MINUTE, "CNY", "BTC", 100L, 1L, 2L);
+
+        final CandleEntry late = series.traded(ORDER_BOOK_ID, START + MINUTE + 10, "CNY", "BTC", 80L, 2L, 3L);
+
+        assertThat(late.getStart().getTime(), equalTo(START + MINUTE));
+        assertThat(series.range(START, START + 4 * MINUTE).size(), is(3));
+    }
+}
@@ -0,0 +1,98 @@
+package com.icoin.trading.tradeengine.query.depth;
+
+import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.tradeengine.query.order.OrderType;
+import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import org.joda.money.BigMoney;
+import org.joda.money.CurrencyUnit;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class MarketDepthTest {
+    private final String orderBookIdentifier = new OrderBookId().toString();
+
+    @Test
+    public void testAggregatePerPriceLevel() throws Exception {
+        MarketDepth depth = new MarketDepth(orderBookIdentifier, 16);
+
+        depth.placed("buy1", OrderType.BUY, cny(100), btc(1));
+        depth.placed("buy2", OrderType.BUY, cny(101), btc(2));
+        depth.placed("buy3", OrderType.BUY, cny(100), btc(3));
+        depth.placed("sell1", OrderType.SELL, cny(103), btc(4));
+        depth.placed("sell2", OrderType.SELL, cny(102), btc(5));
+        //placed again while loading
+        depth.placed("buy1", OrderType.BUY, cny(100), btc(1));
+
+        List<PriceAggregate> bids = depth.top(OrderType.BUY, 10);
+        assertThat(bids, hasSize(2));
+        assertThat(bids.get(0).getPrice().isEqual(cny(101)), is(true));
+        assertThat(bids.get(1).getPrice().isEqual(cny(100)), is(true));
+        assertThat(bids.get(1).getSumUpAmountPerPrice().isEqual(btc(4)), is(true));
+
+        List<PriceAggregate> asks = depth.top(OrderType.SELL, 1);
+        assertThat(asks, hasSize(1));
+        assertThat(asks.get(0).getPrice().isEqual(cny(102)), is(true));
+
+        depth.traded("buy2", btc(2));
+        depth.traded("sell2", btc(2));
+
+        bids = depth.top(OrderType.BUY, 10);
+        assertThat(bids, hasSize(1));
+        assertThat(bids.get(0).getPrice().isEqual(cny(100)), is(true));
+        assertThat(depth.top(OrderType.SELL, 1).get(0).getSumUpAmountPerPrice().isEqual(btc(3)), is(true));
+    }
+
+    @Test
+    public void testDeltasSinceSnapshot() throws Exception {
+        MarketDepth depth = new MarketDepth(orderBookIdentifier, 2);
+        depth.placed("buy1", OrderType.BUY, cny(100), btc(1));
+
+        DepthSnapshot snapshot = depth.snapshot(5);
+        assertThat(snapshot.getVersion(), equalTo(1L));
+        assertThat(snapshot.getBids(), hasSize(1));
+        assertThat(depth.deltasSince(snapshot.getVersion()).isEmpty(), is(true));
+
+        depth.traded("buy1", btc(1));
+        List<DepthDelta> deltas = depth.deltasSince(snapshot.getVersion());
+        assertThat(deltas, hasSize(1));
+        assertThat(deltas.get(0).getVersion(), equalTo(2L));
+        assertThat(deltas.get(0).isRemoved(), is(true));
+
+        depth.placed("sell1", OrderType.SELL, cny(102), btc(1));
+        //only the last two deltas are kept
+        assertThat(depth.deltasSince(0L), nullValue());
+        assertThat(depth.deltasSince(1L), hasSize(2));
+    }
+
+    @Test
+    public void testTradesRecordedInTheLoadedEntryNotTakenOffAgain() throws Exception {
+        MarketDepth depth = new MarketDepth(orderBookIdentifier, 16);
+        //loaded from an entry with the trade of sequence number 7 applied already
+        depth.placed("buy1", OrderType.BUY, cny(100), btc(2), 7L);
+
+        depth.traded("buy1", btc(1), 7L);
+        assertThat(depth.top(OrderType.BUY, 1).get(0).getSumUpAmountPerPrice().isEqual(btc(2)), is(true));
+
+        depth.traded("buy1", btc(1), 8L);
+        //redelivered
+        depth.traded("buy1", btc(1), 8L);
+        assertThat(depth.top(OrderType.BUY, 1).get(0).getSumUpAmountPerPrice().isEqual(btc(1)), is(true));
+        assertThat(depth.getVersion(), equalTo(2L));
+    }
+
+    private BigMoney cny(double amount) {
+        return BigMoney.of(CurrencyUnit.of("CNY"), BigDecimal.valueOf(amount));
+    }
+
+    private BigMoney btc(double amount) {
+        return BigMoney.of(CurrencyUnit.of("BTC"), BigDecimal.valueOf(amount));
+    }
+}
@@ -0,0 +1,121 @@
+package com.icoin.trading.tradeengine.query.marketdata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.icoin.trading.tradeengine.query.depth.DepthDelta;
+import com.icoin.trading.tradeengine.query.depth.DepthSnapshot;
+import com.icoin.trading.tradeengine.query.depth.MarketDepthProjection;
+import com.icoin.trading.tradeengine.query.order.OrderType;
+import com.icoin.trading.tradeengine.query.order.PriceAggregate;
+import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MarketDataStreamTest {
+    private static final String ORDER_BOOK_ID = "orderBook";
+
+    private MarketDepthProjection projection;
+    private OrderBookQueryRepository orderBookRepository;
+    private MarketDataStream stream;
+
+    @Before
+    public void setUp() throws Exception {
+        projection = mock(MarketDepthProjection.class);
+        stream = new MarketDataStream();
+        orderBookRepository = mock(OrderBookQueryRepository.class);
+        stream.setMarketDepthProjection(projection);
+        stream.setOrderBookRepository(orderBookRepository);
+        stream.setRingSize(4);
+    }
+
+    @Test
+    public void testFirstChangeResetsThenPublishesDeltas() throws Exception {
+        when(projection.findSnapshot(eq(ORDER_BOOK_ID), anyInt())).thenReturn(snapshot(5L, 100L));
+        stream.depthChanged(ORDER_BOOK_ID);
+
+        final DepthDelta delta = new DepthDelta(6L, OrderType.BUY, 101L, 2L, "CNY", "BTC");
+        when(projection.findDeltasSince(ORDER_BOOK_ID, 5L)).thenReturn(ImmutableList.of(delta));
+        when(projection.findSnapshot(eq(ORDER_BOOK_ID), anyInt())).thenReturn(snapshot(6L, 100L));
+        stream.depthChanged(ORDER_BOOK_ID);
+
+        final List<MarketDataMessage> messages = Lists.newArrayList();
+        assertThat(stream.read(0L, messages), is(3L));
+        assertThat(messages, hasSize(3));
+        assertThat(messages.get(0).getType(), is(MarketDataMessage.Type.RESET));
+        assertThat(messages.get(0).getToVersion(), is(5L));
+        assertThat(messages.get(1).getType(), is(MarketDataMessage.Type.TOP));
+        //the top of book did not change the second time
+        assertThat(messages.get(2).getType(), is(MarketDataMessage.Type.DEPTH));
+        assertThat(messages.get(2).getFromVersion(), is(5L));
+        assertThat(messages.get(2).getToVersion(), is(6L));
+    }
+
+    @Test
+    public void testLostDeltasReset() throws Exception {
+        when(projection.findSnapshot(eq(ORDER_BOOK_ID), anyInt())).thenReturn(snapshot(5L, 100L));
+        stream.depthChanged(ORDER_BOOK_ID);
+
+        when(projection.findDeltasSince(ORDER_BOOK_ID, 5L)).thenReturn(null);
+        when(projection.findSnapshot(eq(ORDER_BOOK_ID), anyInt())).thenReturn(snapshot(2000L, 99L));
+        stream.depthChanged(ORDER_BOOK_ID);
+
+        final List<MarketDataMessage> messages = Lists.newArrayList();
+        stream.read(2L, messages);
+        assertThat(messages.get(0).getType(), is(MarketDataMessage.Type.RESET));
+        assertThat(messages.get(0).getToVersion(), is(2000L));
+        assertThat(messages.get(1).getType(), is(MarketDataMessage.Type.TOP));
+    }
+
+    @Test
+    public void testOverrunReader() throws Exception {
+        for (long version = 1; version <= 6; version++) {
+            when(projection.findSnapshot(eq(ORDER_BOOK_ID), anyInt())).thenReturn(snapshot(version, 100L + version));
+            when(projection.findDeltasSince(ORDER_BOOK_ID, version - 1)).thenReturn(Collections.<DepthDelta>emptyList());
+            stream.depthChanged(ORDER_BOOK_ID);
+        }
+
+        assertThat(stream.read(0L, Lists.<MarketDataMessage>newArrayList()), is(-1L));
+        assertThat(stream.read(stream.getNextSequence() - 4, Lists.<MarketDataMessage>newArrayList()),
+                is(stream.getNextSequence()));
+    }
+
+    @Test
+    public void testKnownOrderBooksWithoutTheStore() throws Exception {
+        when(projection.isLoaded(ORDER_BOOK_ID)).thenReturn(true);
+
+        assertThat(stream.isKnownOrderBook(ORDER_BOOK_ID), is(true));
+        assertThat(stream.isKnownOrderBook("other"), is(false));
+        assertThat(stream.resolveOrderBook(ORDER_BOOK_ID), is(true));
+        verify(orderBookRepository, never()).exists(ORDER_BOOK_ID);
+    }
+
+    @Test
+    public void testResolveLoadsTheDepthOfExistingOrderBooks() throws Exception {
+        when(orderBookRepository.exists(ORDER_BOOK_ID)).thenReturn(true);
+        when(projection.findSnapshot(eq(ORDER_BOOK_ID), anyInt())).thenReturn(snapshot(5L, 100L));
+
+        assertThat(stream.resolveOrderBook(ORDER_BOOK_ID), is(true));
+        assertThat(stream.resolveOrderBook("missing"), is(false));
+        verify(projection).findSnapshot(ORDER_BOOK_ID, 1);
+        verify(projection, never()).findSnapshot(eq("missing"), anyInt());
+    }
+
+    private static DepthSnapshot snapshot(long version, long bestBid) {
+        return new DepthSnapshot(ORDER_BOOK_ID, version,
+                ImmutableList.of(new PriceAggregate(bestBid, "CNY", "BTC", 1L)),
+                Collections.<PriceAggregate>emptyList());
+    }
+}
@@ -35,6 +35,7 @@ import com.icoin.trading.tradeengine.query.coin.CoinListener;
 import com.icoin.trading.tradeengine.query.coin.repositories.CoinQueryRepository;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
 import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
+import org.axonframework.domain.GenericDomainEventMessage;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.junit.Before;
@@ -149,7 +150,8 @@ public class OrderBookListenerIT {
                 TradeType.BUY);
 
         //execute
-        orderBookListener.handleTradeExecuted(event);
+        orderBookListener.handleTradeExecuted(event,
+                new GenericDomainEventMessage<TradeExecutedEvent>(orderBookId, 1L, event));
 
         //verify
         Iterable<OrderBookEntry> all = orderBookRepository.findAll();
@@ -174,7 +176,14 @@ public class OrderBookListenerIT {
         final RefreshedHighestBuyPriceEvent event =
                 new RefreshedHighestBuyPriceEvent(orderBookId, orderId.toString(), price);
 
-        orderBookListener.handleRefreshedHighestBuyPrice(event);
+        orderBookListener.handleRefreshedHighestBuyPrice(event,
+                new GenericDomainEventMessage<RefreshedHighestBuyPriceEvent>(orderBookId, 1L, event));
+
+        //redelivered, the event is applied once only
+        final RefreshedHighestBuyPriceEvent redelivered = new RefreshedHighestBuyPriceEvent(
+                orderBookId, new OrderId().toString(), BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(1)));
+        orderBookListener.handleRefreshedHighestBuyPrice(redelivered,
+                new GenericDomainEventMessage<RefreshedHighestBuyPriceEvent>(orderBookId, 1L, redelivered));
 
         Iterable<OrderBookEntry> all = orderBookRepository.findAll();
         OrderBookEntry orderBookEntry = all.iterator().next();
@@ -195,7 +204,8 @@ public class OrderBookListenerIT {
         final RefreshedLowestSellPriceEvent event =
                 new RefreshedLowestSellPriceEvent(orderBookId, orderId.toString(), price);
 
-        orderBookListener.handleRefreshedLowestSellPrice(event);
+        orderBookListener.handleRefreshedLowestSellPrice(event,
+                new GenericDomainEventMessage<RefreshedLowestSellPriceEvent>(orderBookId, 1L, event));
 
         Iterable<OrderBookEntry> all = orderBookRepository.findAll();
         OrderBookEntry orderBookEntry = all.iterator().next();
@@ -31,6 +31,7 @@ import com.icoin.trading.tradeengine.Constants;
 import com.icoin.trading.tradeengine.domain.model.coin.Currencies;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderQueryRepository;
+import org.axonframework.domain.GenericDomainEventMessage;
 import org.hamcrest.Matchers;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
@@ -261,7 +262,8 @@ public class OrderListenerIT {
                         sellPortfolioId,
                         tradeTime,
                         TradeType.BUY);
-        orderListener.handleTradeExecuted(event);
+        orderListener.handleTradeExecuted(event,
+                new GenericDomainEventMessage<TradeExecutedEvent>(orderBookId, 2L, event));
 
         List<OrderEntry> sellOrders =
                 orderRepository.findByOrderBookIdentifierAndType(
@@ -2,6 +2,7 @@ package com.icoin.trading.tradeengine.query.order.repositories;
 
 import com.google.common.collect.Lists;
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
 import com.icoin.trading.tradeengine.query.order.OrderEntry;
 import com.icoin.trading.tradeengine.query.order.OrderType;
 import org.joda.money.BigMoney;
@@ -24,6 +25,7 @@ import static com.homhon.util.TimeUtils.futureMinute;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 
 /**
  * Created with IntelliJ IDEA.
@@ -83,16 +85,21 @@ public class OrderQueryRepositoryIT {
 
     @Test
     public void testFindUserAllOrders() {
-        final List<OrderEntry> allForBuyer1 = repository.findAllUserOrders("buyer1", 0, 10);
-        final List<OrderEntry> twoForBuyer1 = repository.findAllUserOrders("buyer1", 1, 10);
+        final KeysetPage<OrderEntry> allForBuyer1 = repository.findAllUserOrders("buyer1", null, 10);
+        final KeysetPage<OrderEntry> firstTwoForBuyer1 = repository.findAllUserOrders("buyer1", null, 2);
+        final KeysetPage<OrderEntry> lastForBuyer1 =
+                repository.findAllUserOrders("buyer1", firstTwoForBuyer1.getNextToken(), 2);
 
-        assertThat(allForBuyer1, hasSize(3));
-        assertThat(allForBuyer1, contains(sellOrder1, buyOrder1, buyOrder2));
+        assertThat(allForBuyer1.getContent(), hasSize(3));
+        assertThat(allForBuyer1.getContent(), contains(sellOrder1, buyOrder1, buyOrder2));
+        assertThat(allForBuyer1.hasNext(), is(false));
 
-        assertThat(twoForBuyer1, hasSize(2));
-        assertThat(twoForBuyer1, contains(buyOrder1, buyOrder2));
-    }
+        assertThat(firstTwoForBuyer1.getContent(), contains(sellOrder1, buyOrder1));
+        assertThat(firstTwoForBuyer1.hasNext(), is(true));
 
+        assertThat(lastForBuyer1.getContent(), contains(buyOrder2));
+        assertThat(lastForBuyer1.hasNext(), is(false));
+    }
 
 //    @Test
 //    public void testFindActiveHintSellOrders() {
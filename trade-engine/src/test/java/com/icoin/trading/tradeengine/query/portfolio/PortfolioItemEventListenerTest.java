@@ -23,18 +23,16 @@ import com.icoin.trading.api.tradeengine.events.portfolio.coin.ItemAddedToPortfo
 import com.icoin.trading.api.tradeengine.events.portfolio.coin.ItemReservationCancelledForPortfolioEvent;
 import com.icoin.trading.api.tradeengine.events.portfolio.coin.ItemReservationConfirmedForPortfolioEvent;
 import com.icoin.trading.api.tradeengine.events.portfolio.coin.ItemReservedEvent;
-import com.icoin.trading.api.users.domain.UserId;
-import com.icoin.trading.tradeengine.Constants;
 import com.icoin.trading.tradeengine.domain.model.coin.Currencies;
 import com.icoin.trading.tradeengine.query.coin.CoinEntry;
 import com.icoin.trading.tradeengine.query.coin.repositories.CoinQueryRepository;
 import com.icoin.trading.tradeengine.query.portfolio.repositories.PortfolioQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.Matchers;
-import org.mockito.Mockito;
 
 import java.math.BigDecimal;
 import java.util.Date;
@@ -42,11 +40,12 @@ import java.util.Date;
 import static com.homhon.util.TimeUtils.currentTime;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
- * We setup this test with a default portfolio and a default orderBook. The portfolio contains the default amount of
- * items in Reservation. This means that all available items are reserved.
+ * The listener turns every item event into a single atomic update of the portfolio by the event's sequence number.
  *
  * @author Jettro Coenradie
  */
@@ -57,20 +56,15 @@ public class PortfolioItemEventListenerTest {
     private PortfolioQueryRepository portfolioQueryRepository;
     private PortfolioItemEventListener listener;
 
-    final UserId userIdentifier = new UserId();
     final PortfolioId portfolioIdentifier = new PortfolioId();
     final CoinId coinIdentifier = new CoinId("LTC");
     final TransactionId transactionIdentifier = new TransactionId();
-    PortfolioEntry portfolioEntry;
+    final long sequenceNumber = 7L;
 
     @Before
     public void setUp() throws Exception {
         portfolioQueryRepository = mock(PortfolioQueryRepository.class);
 
-//        OrderBookQueryRepository orderBookQueryRepository = Mockito.mock(OrderBookQueryRepository.class);
-//        OrderBookEntry orderBookEntry = createOrderBookEntry();
-//        Mockito.when(orderBookQueryRepository.findOne(itemIdentifier.toString())).thenReturn(orderBookEntry);
-
         final CoinQueryRepository coinQueryRepository = mock(CoinQueryRepository.class);
         final CoinEntry coinEntry = new CoinEntry();
         coinEntry.setPrimaryKey(coinIdentifier.toString());
@@ -80,10 +74,10 @@ public class PortfolioItemEventListenerTest {
         listener = new PortfolioItemEventListener();
         listener.setPortfolioRepository(portfolioQueryRepository);
         listener.setCoinQueryRepository(coinQueryRepository);
+    }
 
-
-        portfolioEntry = createPortfolioEntry();
-        Mockito.when(portfolioQueryRepository.findOne(portfolioIdentifier.toString())).thenReturn(portfolioEntry);
+    private DomainEventMessage message(Object event) {
+        return new GenericDomainEventMessage<Object>(portfolioIdentifier, sequenceNumber, event);
     }
 
     @Test
@@ -96,13 +90,29 @@ public class PortfolioItemEventListenerTest {
                         BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(100)),
                         time);
 
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(event));
 
-        Mockito.verify(portfolioQueryRepository).save(Matchers.argThat(
-                new PortfolioEntryMatcher(
-                        coinIdentifier.toString(),
-                        DEFAULT_AMOUNT_ITEM.multipliedBy(BigDecimal.valueOf(2)),
-                        BigMoney.zero(CurrencyUnit.of(Currencies.LTC)))));
+        verify(portfolioQueryRepository).addItem(
+                portfolioIdentifier.toString(),
+                coinIdentifier.toString(),
+                "test",
+                DEFAULT_AMOUNT_ITEM,
+                null,
+                sequenceNumber);
+    }
+
+    @Test
+    public void testHandleEventAddItemsOfUnknownCoin() throws Exception {
+        ItemAddedToPortfolioEvent event =
+                new ItemAddedToPortfolioEvent(
+                        portfolioIdentifier,
+                        new CoinId("BTC"),
+                        DEFAULT_AMOUNT_ITEM,
+                        currentTime());
+
+        listener.handleEvent(event, message(event));
+
+        verifyZeroInteractions(portfolioQueryRepository);
     }
 
     @Test
@@ -116,20 +126,20 @@ public class PortfolioItemEventListenerTest {
                         DEFAULT_AMOUNT_COMMISSION.minus(0.1),
                         time);
 
-        portfolioEntry.addReserved(coinIdentifier.toString(), DEFAULT_AMOUNT_ITEM);
-        portfolioEntry.confirmReserved(coinIdentifier.toString(),
-                BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(1.1)));
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(event));
 
-        Mockito.verify(portfolioQueryRepository).save(Matchers.argThat(new PortfolioEntryMatcher(
+        verify(portfolioQueryRepository).addItem(
+                portfolioIdentifier.toString(),
                 coinIdentifier.toString(),
-                BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(98.9)),
-                BigMoney.zero(CurrencyUnit.of(Currencies.LTC)))));
+                null,
+                null,
+                BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(-98.9)),
+                sequenceNumber);
     }
 
     /**
-     * We are going to confirm 50 of the items in the reservation. Therefore we expect the reservation to become 50
-     * less than the default amount of items.
+     * We are going to confirm 50 of the items in the reservation and 1 of commission. Therefore we expect both the
+     * items in possession and the reservation to become 51 less.
      */
     @Test
     public void testHandleEventConfirmItemReservation() {
@@ -143,15 +153,16 @@ public class PortfolioItemEventListenerTest {
                         BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(1)),
                         time);
 
-        portfolioEntry.addReserved(coinIdentifier.toString(),
-                BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(100)));
-
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(event));
 
-        Mockito.verify(portfolioQueryRepository).save(Matchers.argThat(new PortfolioEntryMatcher(
+        final BigMoney confirmed = BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(-51));
+        verify(portfolioQueryRepository).addItem(
+                portfolioIdentifier.toString(),
                 coinIdentifier.toString(),
-                DEFAULT_AMOUNT_ITEM.minus(BigDecimal.valueOf(51)),
-                BigMoney.of(CurrencyUnit.of(Currencies.LTC), BigDecimal.valueOf(49)))));
+                null,
+                confirmed,
+                confirmed,
+                sequenceNumber);
     }
 
     @Test
@@ -165,25 +176,14 @@ public class PortfolioItemEventListenerTest {
                         DEFAULT_AMOUNT_ITEM,
                         time);
 
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(event));
 
-        Mockito.verify(portfolioQueryRepository).save(Matchers.argThat(new PortfolioEntryMatcher(
+        verify(portfolioQueryRepository).addItem(
+                portfolioIdentifier.toString(),
                 coinIdentifier.toString(),
+                null,
+                null,
                 DEFAULT_AMOUNT_ITEM,
-                DEFAULT_AMOUNT_ITEM)));
-    }
-
-    private PortfolioEntry createPortfolioEntry() {
-        PortfolioEntry portfolioEntry = new PortfolioEntry();
-        portfolioEntry.setIdentifier(portfolioIdentifier.toString());
-        portfolioEntry.setUserIdentifier(userIdentifier.toString());
-
-        portfolioEntry.createItem(coinIdentifier.toString(), "Lite Coin");
-
-        portfolioEntry.addItemInPossession(coinIdentifier.toString(), DEFAULT_AMOUNT_ITEM);
-//        portfolioEntry.addReserved(coinIdentifier.toString(), DEFAULT_AMOUNT_COMMISSION);
-        portfolioEntry.setReservedAmountOfMoney(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(1000)));
-        portfolioEntry.setAmountOfMoney(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, BigDecimal.valueOf(10000)));
-        return portfolioEntry;
+                sequenceNumber);
     }
 }
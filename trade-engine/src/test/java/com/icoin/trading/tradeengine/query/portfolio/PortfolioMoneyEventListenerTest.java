@@ -1,7 +1,5 @@
 package com.icoin.trading.tradeengine.query.portfolio;
 
-import com.icoin.trading.api.coin.domain.CoinId;
-import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.api.tradeengine.domain.PortfolioId;
 import com.icoin.trading.api.tradeengine.domain.TransactionId;
 import com.icoin.trading.api.tradeengine.events.portfolio.PortfolioCreatedEvent;
@@ -16,6 +14,8 @@ import com.icoin.trading.tradeengine.Constants;
 import com.icoin.trading.tradeengine.query.portfolio.repositories.PortfolioQueryRepository;
 import com.icoin.trading.users.query.UserEntry;
 import com.icoin.trading.users.query.repositories.UserQueryRepository;
+import org.axonframework.domain.DomainEventMessage;
+import org.axonframework.domain.GenericDomainEventMessage;
 import org.joda.money.BigMoney;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -26,8 +26,10 @@ import static com.homhon.util.TimeUtils.currentTime;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -40,8 +42,7 @@ import static org.mockito.Mockito.when;
  */
 public class PortfolioMoneyEventListenerTest {
 
-    private final OrderBookId itemIdentifier = new OrderBookId();
-    private final CoinId coinIdentifier = new CoinId();
+    private static final long SEQUENCE_NUMBER = 3L;
 
 
     @Test
@@ -87,146 +88,95 @@ public class PortfolioMoneyEventListenerTest {
     @Test
     public void testHandleCashDeposited() throws Exception {
         final PortfolioId portfolioIdentifier = new PortfolioId();
-        final BigMoney availableMoney = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 11);
         final BigMoney moneyAdded = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.091);
         final Date time = currentTime();
 
         PortfolioQueryRepository portfolioQueryRepository = mock(PortfolioQueryRepository.class);
-        final PortfolioEntry portfolio = new PortfolioEntry();
-        portfolio.setAmountOfMoney(availableMoney);
-        when(portfolioQueryRepository.findOne(eq(portfolioIdentifier.toString()))).
-                thenReturn(portfolio);
-
         final PortfolioMoneyEventListener listener = new PortfolioMoneyEventListener();
         listener.setPortfolioRepository(portfolioQueryRepository);
 
         final CashDepositedEvent event = new CashDepositedEvent(portfolioIdentifier, moneyAdded, time);
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(portfolioIdentifier, event));
 
-        ArgumentCaptor<PortfolioEntry> captor = ArgumentCaptor.forClass(PortfolioEntry.class);
-        verify(portfolioQueryRepository).save(captor.capture());
-        final PortfolioEntry saved = captor.getValue();
-
-        assertThat(saved, notNullValue());
-        assertThat(saved.getAmountOfMoney(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 21.091)));
+        verify(portfolioQueryRepository).addMoney(portfolioIdentifier.toString(), moneyAdded, null, SEQUENCE_NUMBER);
+        verify(portfolioQueryRepository, never()).save(any(PortfolioEntry.class));
     }
 
     @Test
     public void testHandleCashWithdrawn() throws Exception {
         final Date current = currentTime();
         final PortfolioId portfolioIdentifier = new PortfolioId();
-        final BigMoney availableMoney = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 11);
         final BigMoney moneyWithdrawn = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.091);
 
         PortfolioQueryRepository portfolioQueryRepository = mock(PortfolioQueryRepository.class);
-        final PortfolioEntry portfolio = new PortfolioEntry();
-        portfolio.setAmountOfMoney(availableMoney);
-        when(portfolioQueryRepository.findOne(eq(portfolioIdentifier.toString()))).
-                thenReturn(portfolio);
-
         final PortfolioMoneyEventListener listener = new PortfolioMoneyEventListener();
         listener.setPortfolioRepository(portfolioQueryRepository);
 
         final CashWithdrawnEvent event = new CashWithdrawnEvent(portfolioIdentifier, moneyWithdrawn, current);
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(portfolioIdentifier, event));
 
-        ArgumentCaptor<PortfolioEntry> captor = ArgumentCaptor.forClass(PortfolioEntry.class);
-        verify(portfolioQueryRepository).save(captor.capture());
-        final PortfolioEntry saved = captor.getValue();
-
-        assertThat(saved, notNullValue());
-        assertThat(saved.getAmountOfMoney(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0.909)));
+        verify(portfolioQueryRepository).addMoney(portfolioIdentifier.toString(),
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, -10.091), null, SEQUENCE_NUMBER);
     }
 
     @Test
     public void testHandleCashReserved() throws Exception {
         final PortfolioId portfolioIdentifier = new PortfolioId();
-        final BigMoney reserved = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 11);
         final BigMoney total = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.091);
         final BigMoney commission = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.091);
         final TransactionId transactionIdentifier = new TransactionId();
         final Date time = currentTime();
 
         PortfolioQueryRepository portfolioQueryRepository = mock(PortfolioQueryRepository.class);
-        final PortfolioEntry portfolio = new PortfolioEntry();
-        portfolio.setReservedAmountOfMoney(reserved);
-        when(portfolioQueryRepository.findOne(eq(portfolioIdentifier.toString()))).
-                thenReturn(portfolio);
-
         final PortfolioMoneyEventListener listener = new PortfolioMoneyEventListener();
         listener.setPortfolioRepository(portfolioQueryRepository);
 
         final CashReservedEvent event = new CashReservedEvent(portfolioIdentifier, transactionIdentifier, total, commission, time);
-        listener.handleEvent(event);
-
-        ArgumentCaptor<PortfolioEntry> captor = ArgumentCaptor.forClass(PortfolioEntry.class);
-        verify(portfolioQueryRepository).save(captor.capture());
-        final PortfolioEntry saved = captor.getValue();
+        listener.handleEvent(event, message(portfolioIdentifier, event));
 
-        assertThat(saved, notNullValue());
-        assertThat(saved.getReservedAmountOfMoney(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 31.182)));
+        verify(portfolioQueryRepository).addMoney(portfolioIdentifier.toString(),
+                null, BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 20.182), SEQUENCE_NUMBER);
     }
 
     @Test
     public void testHandleCashReservationCancelled() throws Exception {
         final PortfolioId portfolioIdentifier = new PortfolioId();
-        final BigMoney reserved = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 11);
         final BigMoney total = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.091);
         final BigMoney commission = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0.9);
         final TransactionId transactionIdentifier = new TransactionId();
         final Date time = currentTime();
 
         PortfolioQueryRepository portfolioQueryRepository = mock(PortfolioQueryRepository.class);
-        final PortfolioEntry portfolio = new PortfolioEntry();
-        portfolio.setReservedAmountOfMoney(reserved);
-        when(portfolioQueryRepository.findOne(eq(portfolioIdentifier.toString()))).
-                thenReturn(portfolio);
-
         final PortfolioMoneyEventListener listener = new PortfolioMoneyEventListener();
         listener.setPortfolioRepository(portfolioQueryRepository);
 
         final CashReservationCancelledEvent event = new CashReservationCancelledEvent(portfolioIdentifier, transactionIdentifier, total, commission, time);
-        listener.handleEvent(event);
-
-        ArgumentCaptor<PortfolioEntry> captor = ArgumentCaptor.forClass(PortfolioEntry.class);
-        verify(portfolioQueryRepository).save(captor.capture());
-        final PortfolioEntry saved = captor.getValue();
+        listener.handleEvent(event, message(portfolioIdentifier, event));
 
-        assertThat(saved, notNullValue());
-        assertThat(saved.getReservedAmountOfMoney(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0.009)));
+        verify(portfolioQueryRepository).addMoney(portfolioIdentifier.toString(),
+                null, BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, -10.991), SEQUENCE_NUMBER);
     }
 
     @Test
     public void testHandleCashReservationConfirmed() throws Exception {
         final PortfolioId portfolioIdentifier = new PortfolioId();
-        final BigMoney reserved = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 11);
-        final BigMoney available = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 11);
         final BigMoney total = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.091);
         final BigMoney commission = BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0.9);
         final TransactionId transactionIdentifier = new TransactionId();
         final Date time = currentTime();
 
         PortfolioQueryRepository portfolioQueryRepository = mock(PortfolioQueryRepository.class);
-        final PortfolioEntry portfolio = new PortfolioEntry();
-        portfolio.setReservedAmountOfMoney(reserved);
-        portfolio.setAmountOfMoney(available);
-
-        when(portfolioQueryRepository.findOne(eq(portfolioIdentifier.toString()))).
-                thenReturn(portfolio);
-
         final PortfolioMoneyEventListener listener = new PortfolioMoneyEventListener();
         listener.setPortfolioRepository(portfolioQueryRepository);
 
         final CashReservationConfirmedEvent event = new CashReservationConfirmedEvent(portfolioIdentifier, transactionIdentifier, total, commission, time);
-        listener.handleEvent(event);
+        listener.handleEvent(event, message(portfolioIdentifier, event));
 
-        ArgumentCaptor<PortfolioEntry> captor = ArgumentCaptor.forClass(PortfolioEntry.class);
-        verify(portfolioQueryRepository).save(captor.capture());
-        final PortfolioEntry saved = captor.getValue();
+        verify(portfolioQueryRepository).confirmReservedMoney(portfolioIdentifier.toString(),
+                BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 10.991), SEQUENCE_NUMBER);
+    }
 
-        assertThat(saved, notNullValue());
-        assertThat(saved.getReservedAmountOfMoney(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0.009)));
-        assertThat(saved.getAmountOfMoney(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0.009)));
-        assertThat(saved.obtainMoneyToSpend(), equalTo(BigMoney.of(Constants.DEFAULT_CURRENCY_UNIT, 0).toMoney().toBigMoney()));
+    private static DomainEventMessage message(PortfolioId portfolioIdentifier, Object event) {
+        return new GenericDomainEventMessage<Object>(portfolioIdentifier, SEQUENCE_NUMBER, event);
     }
 }
@@ -19,6 +19,7 @@ import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
 import com.icoin.trading.tradeengine.query.order.OrderBookListener;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
 import com.icoin.trading.tradeengine.query.tradeexecuted.repositories.TradeExecutedQueryRepository;
+import org.axonframework.domain.GenericDomainEventMessage;
 import org.joda.money.BigMoney;
 import org.joda.money.CurrencyUnit;
 import org.junit.Before;
@@ -124,7 +125,8 @@ public class TradeExecutedListenerIT {
                         sellPortfolioId,
                         tradeTime,
                         TradeType.BUY);
-        tradeExecutedListener.handleTradeExecuted(event);
+        tradeExecutedListener.handleTradeExecuted(event,
+                new GenericDomainEventMessage<TradeExecutedEvent>(orderBookId, 3L, event));
 
         Iterable<TradeExecutedEntry> tradeExecutedEntries = tradeExecutedRepository.findAll();
         assertTrue(tradeExecutedEntries.iterator().hasNext());
@@ -137,6 +139,7 @@ public class TradeExecutedListenerIT {
         assertThat(tradeExecutedEntry.getBuyPortfolioId(), equalTo(buyPortfolioId.toString()));
         assertThat(tradeExecutedEntry.getSellPortfolioId(), equalTo(sellPortfolioId.toString()));
         assertThat(tradeExecutedEntry.getTradeType(), equalTo(com.icoin.trading.tradeengine.query.tradeexecuted.TradeType.BUY));
+        assertThat(tradeExecutedEntry.getSequenceNumber(), equalTo(3L));
 
 
         assertThat(tradeExecutedEntry
@@ -2,7 +2,6 @@ package com.icoin.trading.tradeengine.query.tradeexecuted.repositories;
 
 import com.icoin.trading.api.tradeengine.domain.OrderBookId;
 import com.icoin.trading.tradeengine.Constants;
-import com.icoin.trading.tradeengine.query.tradeexecuted.OpenHighLowCloseVolume;
 import com.icoin.trading.tradeengine.query.tradeexecuted.TradeExecutedEntry;
 import com.icoin.trading.tradeengine.query.tradeexecuted.TradeType;
 import org.joda.money.BigMoney;
@@ -11,7 +10,6 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
@@ -21,6 +19,10 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+
 /**
  * Created with IntelliJ IDEA.
  * User: liougehooa
@@ -157,19 +159,17 @@ public class TradeExecutedQueryRepositoryIT {
         return year1;
     }
 
-    //    @Ignore
     @Test
-    public void testOhlc() throws Exception {
-
-        System.err.println("-------------------------------");
-        final List<OpenHighLowCloseVolume> all = repository.ohlc(orderBookIdentifier,
-                date.minusYears(5).toDate(),
-                date.minusSeconds(8).toDate(),
-                new PageRequest(0, 100));
-
-
-        System.out.println(all);
-//        assertThat();
+    public void testFindTrades() throws Exception {
+        final List<TradeExecutedEntry> trades = repository.findTrades(orderBookIdentifier,
+                date.minusHours(2).minusMinutes(4).toDate(),
+                date.toDate());
+
+        assertThat(trades, hasSize(4));
+        assertThat(trades.get(0).getTradeTime(), equalTo(date.minusHours(2).minusMinutes(4).toDate()));
+        assertThat(trades.get(1).getTradeTime(), equalTo(date.minusHours(2).minusMinutes(2).toDate()));
+        assertThat(trades.get(2).getTradeTime(), equalTo(date.minusHours(1).minusMinutes(2).toDate()));
+        assertThat(trades.get(3).getTradeTime(), equalTo(date.minusHours(1).minusMinutes(1).toDate()));
     }
 
 
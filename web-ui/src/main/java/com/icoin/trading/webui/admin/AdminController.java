@@ -21,6 +21,7 @@ import com.icoin.trading.api.tradeengine.command.portfolio.cash.DepositCashComma
 import com.icoin.trading.api.tradeengine.command.portfolio.coin.AddAmountToPortfolioCommand;
 import com.icoin.trading.api.tradeengine.domain.PortfolioId;
 import com.icoin.trading.tradeengine.Constants;
+import com.icoin.trading.tradeengine.infrastructure.profiling.TradeLatencyTracer;
 import com.icoin.trading.tradeengine.query.coin.CoinEntry;
 import com.icoin.trading.tradeengine.query.coin.repositories.CoinQueryRepository;
 import com.icoin.trading.tradeengine.query.order.repositories.OrderBookQueryRepository;
@@ -38,6 +39,7 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.math.BigDecimal;
 
@@ -53,6 +55,7 @@ public class AdminController {
     private PortfolioQueryRepository portfolioQueryRepository;
     private OrderBookQueryRepository orderBookQueryRepository;
     private CoinQueryRepository coinQueryRepository;
+    private TradeLatencyTracer tradeLatencyTracer;
 
     @RequestMapping(value = "/portfolio")
     public String show(Model model) {
@@ -103,6 +106,12 @@ public class AdminController {
         return "redirect:/admin/portfolio/{identifier}";
     }
 
+    @RequestMapping(value = "/latency", produces = "text/plain")
+    @ResponseBody
+    public String latency() {
+        return tradeLatencyTracer.describe();
+    }
+
     /* Setters */
     @SuppressWarnings("SpringJavaAutowiringInspection")
     @Autowired
@@ -127,4 +136,9 @@ public class AdminController {
     public void setCoinQueryRepository(CoinQueryRepository coinQueryRepository) {
         this.coinQueryRepository = coinQueryRepository;
     }
+
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
 }
@@ -67,7 +67,7 @@ public class DashboardController {
 // if>= paged query, search more;
 
 
-//        List<OrderEntry> orders = orderRepository.findAllUserOrders(identifier, 0, 10);
+//        KeysetPage<OrderEntry> orders = orderRepository.findAllUserOrders(portfolio.getIdentifier(), null, 10);
 //        model.addAttribute("orders", orders);
 
         final UserEntry userInfo = userRepository.findOne(identifier);
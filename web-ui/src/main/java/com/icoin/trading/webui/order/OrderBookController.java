@@ -35,7 +35,7 @@ import org.springframework.web.bind.annotation.RequestMethod;
 public class OrderBookController {
 
     private OrderBookQueryRepository repository;
-    private String externalServerUrl;
+    private String marketDataUrl;
 
     @Autowired
     public OrderBookController(OrderBookQueryRepository repository) {
@@ -50,7 +50,8 @@ public class OrderBookController {
 
     @RequestMapping(value = "socket", method = RequestMethod.GET)
     public String getSocket(ModelMap modelMap) {
-        modelMap.addAttribute("externalServerurl", externalServerUrl);
+        modelMap.addAttribute("items", repository.findAll());
+        modelMap.addAttribute("marketDataUrl", marketDataUrl);
         return "orderbook/socket";
     }
 
@@ -61,8 +62,8 @@ public class OrderBookController {
         return "orderbook/orders";
     }
 
-    @Value("#{external.serverUrlEventBus}")
-    public void setExternalServerUrl(String externalServerUrl) {
-        this.externalServerUrl = externalServerUrl;
+    @Value("#{external.serverUrlMarketData}")
+    public void setMarketDataUrl(String marketDataUrl) {
+        this.marketDataUrl = marketDataUrl;
     }
 }
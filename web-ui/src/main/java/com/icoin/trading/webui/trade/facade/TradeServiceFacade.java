@@ -3,6 +3,7 @@ package com.icoin.trading.webui.trade.facade;
 import com.icoin.trading.api.coin.domain.CurrencyPair;
 import com.icoin.trading.api.tradeengine.domain.TransactionId;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
 import com.icoin.trading.tradeengine.query.coin.CoinEntry;
 import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
 import com.icoin.trading.tradeengine.query.order.OrderEntry;
@@ -38,6 +39,14 @@ public interface TradeServiceFacade {
 
     List<TradeExecutedEntry> findExecutedTrades(String orderBookIdentifier);
 
+    KeysetPage<TradeExecutedEntry> findExecutedTrades(String orderBookIdentifier,
+                                                      String continuationToken,
+                                                      int limit);
+
+    KeysetPage<OrderEntry> findUserOrders(String portfolioId,
+                                          String continuationToken,
+                                          int limit);
+
     List<OrderEntry> findUserActiveOrders(String userId,
                                           String orderBookId);
 
@@ -14,8 +14,12 @@ import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicy;
 import com.icoin.trading.tradeengine.domain.model.commission.CommissionPolicyFactory;
 import com.icoin.trading.tradeengine.domain.model.order.Order;
 import com.icoin.trading.tradeengine.domain.model.order.OrderStatus;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.KeysetPage;
+import com.icoin.trading.tradeengine.infrastructure.persistence.mongo.ProjectionWriter;
+import com.icoin.trading.tradeengine.infrastructure.profiling.TradeLatencyTracer;
 import com.icoin.trading.tradeengine.query.coin.CoinEntry;
 import com.icoin.trading.tradeengine.query.coin.repositories.CoinQueryRepository;
+import com.icoin.trading.tradeengine.query.depth.MarketDepthProjection;
 import com.icoin.trading.tradeengine.query.order.OrderBookEntry;
 import com.icoin.trading.tradeengine.query.order.OrderEntry;
 import com.icoin.trading.tradeengine.query.order.OrderType;
@@ -38,9 +42,7 @@ import org.joda.money.Money;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
@@ -53,6 +55,7 @@ import static com.homhon.util.Asserts.hasLength;
 import static com.homhon.util.Asserts.isTrue;
 import static com.homhon.util.Asserts.notNull;
 import static com.homhon.util.TimeUtils.currentTime;
+import static com.icoin.trading.tradeengine.infrastructure.profiling.TradeStage.DISPATCHED;
 
 /**
  * Created with IntelliJ IDEA.
@@ -70,8 +73,11 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
     private TradeExecutedQueryRepository tradeExecutedRepository;
     private CommandGateway commandGateway;
     private OrderQueryRepository orderQueryRepository;
+    private MarketDepthProjection marketDepthProjection;
+    private TradeLatencyTracer tradeLatencyTracer;
     private UserServiceFacade userServiceFacade;
     private CommissionPolicyFactory commissionPolicyFactory;
+    private ProjectionWriter projectionWriter;
 
     /**
      * At the moment we handle the first orderBook found for a coin.
@@ -81,6 +87,7 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
      */
     @Override
     public OrderBookEntry loadOrderBookByCurrencyPair(CurrencyPair currencyPair) {
+        flushProjections();
         OrderBookEntry byCoinIdentifier = orderBookRepository.findByCurrencyPair(currencyPair);
         if (logger.isDebugEnabled()) {
             logger.debug("Find by currencyPair {} : {}", currencyPair, byCoinIdentifier);
@@ -159,6 +166,7 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
 
         //init the portfolio if possible
         if (portfolioEntry == null) {
+            flushProjections();
             portfolioEntry = userServiceFacade.obtainPortfolioForUser();
         }
         if (portfolioEntry != null) {
@@ -192,6 +200,7 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
         order.setSuggestedPrice(amount);
 
         if (portfolioEntry == null) {
+            flushProjections();
             portfolioEntry = userServiceFacade.obtainPortfolioForUser();
         }
         if (portfolioEntry != null) {
@@ -213,12 +222,27 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
 
     @Override
     public List<TradeExecutedEntry> findExecutedTrades(String orderBookIdentifier) {
+        return findExecutedTrades(orderBookIdentifier, null, 20).getContent();
+    }
+
+    @Override
+    public KeysetPage<TradeExecutedEntry> findExecutedTrades(String orderBookIdentifier,
+                                                             String continuationToken,
+                                                             int limit) {
         if (orderBookIdentifier == null) {
-            return Collections.emptyList();
+            return KeysetPage.empty();
         }
 
-        PageRequest pageRequest = new PageRequest(0, 20, Sort.Direction.DESC, "tradeTime");
-        return tradeExecutedRepository.findByOrderBookIdentifier(orderBookIdentifier, pageRequest);
+        return tradeExecutedRepository.findExecutedTrades(orderBookIdentifier, continuationToken, limit);
+    }
+
+    @Override
+    public KeysetPage<OrderEntry> findUserOrders(String portfolioId, String continuationToken, int limit) {
+        if (portfolioId == null) {
+            return KeysetPage.empty();
+        }
+        flushProjections();
+        return orderQueryRepository.findAllUserOrders(portfolioId, continuationToken, limit);
     }
 
     @Override
@@ -226,6 +250,7 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
         if (userId == null || orderBookId == null) {
             return Collections.emptyList();
         }
+        flushProjections();
         return orderQueryRepository.findUserActiveOrders(userId, orderBookId);
     }
 
@@ -236,7 +261,7 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
         if (orderBookIdentifier == null || type == null || toDate == null) {
             return Collections.emptyList();
         }
-        return orderQueryRepository.findOrderAggregatedPrice(orderBookIdentifier, type, toDate, 10);
+        return marketDepthProjection.findOrderAggregatedPrice(orderBookIdentifier, type, 10);
     }
 
     @Override
@@ -247,9 +272,17 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
         if (orderBookIdentifier == null || type == null || orderStatus == null) {
             return Collections.emptyList();
         }
+        flushProjections();
         return orderQueryRepository.findByOrderBookIdentifierAndTypeAndOrderStatus(orderBookIdentifier, type, orderStatus, pageable);
     }
 
+    //the projection updates buffered so far are read back
+    private void flushProjections() {
+        if (projectionWriter != null) {
+            projectionWriter.flushBeforeRead();
+        }
+    }
+
     @Override
     public void sellOrder(final TransactionId transactionId,
                           String coinId,
@@ -269,6 +302,9 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
                         price,
                         currentTime());
 
+        if (tradeLatencyTracer != null) {
+            tradeLatencyTracer.record(transactionId, command.getOrderBookIdentifier(), DISPATCHED);
+        }
         commandGateway.send(command);
     }
 
@@ -291,6 +327,9 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
                         price,
                         currentTime());
 
+        if (tradeLatencyTracer != null) {
+            tradeLatencyTracer.record(transactionId, command.getOrderBookIdentifier(), DISPATCHED);
+        }
         commandGateway.send(command);
     }
 
@@ -334,6 +373,16 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
         this.commandGateway = commandGateway;
     }
 
+    @Autowired
+    public void setMarketDepthProjection(MarketDepthProjection marketDepthProjection) {
+        this.marketDepthProjection = marketDepthProjection;
+    }
+
+    @Autowired
+    public void setTradeLatencyTracer(TradeLatencyTracer tradeLatencyTracer) {
+        this.tradeLatencyTracer = tradeLatencyTracer;
+    }
+
     @SuppressWarnings("SpringJavaAutowiringInspection")
     @Autowired
     public void setOrderQueryRepository(OrderQueryRepository orderQueryRepository) {
@@ -344,4 +393,9 @@ public class TradeServiceFacadeImpl implements TradeServiceFacade {
     public void setCommissionPolicyFactory(CommissionPolicyFactory commissionPolicyFactory) {
         this.commissionPolicyFactory = commissionPolicyFactory;
     }
+
+    @Autowired(required = false)
+    public void setProjectionWriter(ProjectionWriter projectionWriter) {
+        this.projectionWriter = projectionWriter;
+    }
 }
\ No newline at end of file
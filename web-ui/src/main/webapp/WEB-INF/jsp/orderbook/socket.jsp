@@ -20,23 +20,41 @@
 <html lang="en">
 
 <head>
-    <script type="text/javascript" src="${ctx}/js/sockjs-0.2.1.min.js"></script>
-    <script type="text/javascript" src="${ctx}/js/vertxbus-1.1.0-final.js"></script>
 </head>
 <body>
 
 <div>
+    <select id="orderBook">
+        <c:forEach items="${items}" var="item">
+            <option value="<c:out value='${item.primaryKey}'/>"><c:out value='${item.coinName}'/></option>
+        </c:forEach>
+    </select>
     <input type="button" id="connectButton" value="Open connection"/><br>
     <input type="button" id="closeButton" value="Close connection"/><br>
     Connection Status:&nbsp;
     <div id="connectionStatus">Not connected</div>
 </div>
 <div id="lastUpdate"></div>
+<div id="top">
+    Bid:&nbsp;<span id="bestBid"></span>&nbsp;Ask:&nbsp;<span id="bestAsk"></span>
+</div>
+<div id="depth">
+    <table class="table table-striped" id="depthTable">
+        <thead>
+        <tr>
+            <th>Side</th>
+            <th>Price</th>
+            <th>#items</th>
+        </tr>
+        </thead>
+        <tbody></tbody>
+    </table>
+</div>
 <div id="trades">
     <table class="table table-striped" id="tradesTable">
         <thead>
         <tr>
-            <th>Coin</th>
+            <th>Type</th>
             <th>#items</th>
             <th>Price</th>
         </tr>
@@ -45,42 +63,91 @@
     </table>
 </div>
 
-<%-- The script for sockjs --%>
+<%-- The script for the market data server sent events: a depth snapshot first, then depth deltas after its version --%>
 <script type="text/javascript">
-    var eb = null;
+    var source = null;
+    var depth = null;
+
+    function level(side, price) {
+        return side + ":" + price;
+    }
+
+    function showDepth() {
+        var rows = "";
+        $.each(depth.levels, function (key, amount) {
+            var parts = key.split(":");
+            rows += "<tr><td>" + parts[0] + "</td><td>" + parts[1] + "</td><td>" + amount + "</td></tr>";
+        });
+        $('#depthTable tbody').html(rows);
+        $('#lastUpdate').text(" " + new Date());
+    }
 
     function subscribe() {
-        if (eb) {
-            eb.registerHandler("updates.trades", function (msg, replyTo) {
-                var results = msg.tradeExecuted;
-                $('#tradesTable tbody').prepend(
-                        "<tr><td>" + results.coinName +
-                                "</td><td>" + results.count +
-                                "</td><td>" + results.price + "</td></tr>");
-                $('#lastUpdate').text(" " + new Date());
+        source.addEventListener("snapshot", function (e) {
+            var snapshot = JSON.parse(e.data);
+            depth = {version: snapshot.version, levels: {}};
+            $.each(snapshot.bids, function (i, bid) {
+                depth.levels[level("BUY", bid.price)] = bid.amount;
             });
-        }
+            $.each(snapshot.asks, function (i, ask) {
+                depth.levels[level("SELL", ask.price)] = ask.amount;
+            });
+            showDepth();
+        });
+
+        source.addEventListener("depth", function (e) {
+            var deltas = JSON.parse(e.data).deltas;
+            $.each(deltas, function (i, delta) {
+                //deltas up to the version of the snapshot are in it already
+                if (depth && delta.version > depth.version) {
+                    if (parseFloat(delta.amount) > 0) {
+                        depth.levels[level(delta.side, delta.price)] = delta.amount;
+                    } else {
+                        delete depth.levels[level(delta.side, delta.price)];
+                    }
+                    depth.version = delta.version;
+                }
+            });
+            showDepth();
+        });
+
+        source.addEventListener("top", function (e) {
+            var top = JSON.parse(e.data);
+            $('#bestBid').text(top.bid.length ? top.bid[0].price + " x " + top.bid[0].amount : "");
+            $('#bestAsk').text(top.ask.length ? top.ask[0].price + " x " + top.ask[0].amount : "");
+        });
+
+        source.addEventListener("trade", function (e) {
+            var trade = JSON.parse(e.data);
+            $('#tradesTable tbody').prepend(
+                    "<tr><td>" + trade.type +
+                            "</td><td>" + trade.amount +
+                            "</td><td>" + trade.price + "</td></tr>");
+            $('#lastUpdate').text(" " + new Date());
+        });
     }
 
     function closeConn() {
-        if (eb) {
-            eb.close();
+        if (source) {
+            source.close();
+            source = null;
+            depth = null;
+            $("#connectionStatus").text("Not connected");
         }
     }
 
     function openConn() {
-        if (!eb) {
-            eb = new vertx.EventBus("${externalServerurl}");
+        if (!source) {
+            source = new EventSource("${marketDataUrl}" + $("#orderBook").val());
 
-            eb.onopen = function () {
+            source.onopen = function () {
                 $("#connectionStatus").text("Connected");
-                subscribe();
             };
 
-            eb.onclose = function () {
-                $("#connectionStatus").text("Not connected");
-                eb = null;
+            source.onerror = function () {
+                $("#connectionStatus").text("Reconnecting");
             };
+            subscribe();
         }
     }
 